@@ -4,14 +4,17 @@ import java.time.Clock;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Entry point for the MetaDetect AI Image Detection Service.
  * Bootstraps the Spring Boot application and exposes shared infrastructure
  * beans (such as {@link Clock}) used across the service for deterministic and
- * testable timestamps.
+ * testable timestamps. Scheduling is enabled for background work such as
+ * the analysis queue poller.
  */
 @SpringBootApplication
+@EnableScheduling
 public class MetaDetectApplication {
 
   public static void main(String[] args) {
@@ -0,0 +1,110 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses between the in-process JUMBF reader and the c2patool CLI.
+ * Modes (`metadetect.c2pa.engine`):
+ * - `java`: in-process only; unsupported files fail.
+ * - `tool` (default): always fork c2patool.
+ * - `auto`: in-process first, falling back to c2patool only when
+ *   the reader reports an unsupported container or JUMBF layout. A supported
+ *   file without a manifest is not retried; the tool would fail the same way.
+ * The in-process reader does not validate signatures, so reports from
+ * `java` and from `auto` on supported files carry no `validation_status`;
+ * `tool` stays the default until the reader validates.
+ * Channel-based extraction never forks the tool: in `tool` mode, or when the
+ * reader cannot handle the image, it throws {@link UnsupportedManifestException}
+ * and the caller downloads the file instead.
+ */
+public class C2paManifestEngine implements ManifestExtractor {
+
+  private static final Logger log = LoggerFactory.getLogger(C2paManifestEngine.class);
+
+  /** Engine selection. */
+  public enum Mode { JAVA, TOOL, AUTO }
+
+  private final ManifestExtractor reader;
+  private final ManifestExtractor tool;
+  private final Mode mode;
+
+  /**
+   * Constructs the engine.
+   *
+   * @param reader in-process reader
+   * @param tool c2patool wrapper used as the fallback
+   * @param mode engine selection
+   */
+  public C2paManifestEngine(ManifestExtractor reader, ManifestExtractor tool, Mode mode) {
+    this.reader = reader;
+    this.tool = tool;
+    this.mode = mode;
+  }
+
+  /**
+   * Parses a mode name as written in configuration.
+   *
+   * @param value "java", "tool" or "auto" (case-insensitive)
+   * @return the mode
+   * @throws IllegalArgumentException for unknown names
+   */
+  public static Mode parseMode(String value) {
+    try {
+      return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          "metadetect.c2pa.engine must be one of java, tool, auto; got '" + value + "'", e);
+    }
+  }
+
+  @Override
+  public String extractManifest(File imageFile) throws IOException {
+    switch (mode) {
+      case TOOL:
+        return tool.extractManifest(imageFile);
+      case JAVA:
+        return reader.extractManifest(imageFile);
+      default:
+        try {
+          return reader.extractManifest(imageFile);
+        } catch (UnsupportedManifestException e) {
+          log.debug("Falling back to c2patool for {}: {}", imageFile.getName(), e.getMessage());
+          return tool.extractManifest(imageFile);
+        }
+    }
+  }
+
+  @Override
+  public String extractManifest(SeekableByteChannel image) throws IOException {
+    if (mode == Mode.TOOL) {
+      throw new UnsupportedManifestException("Engine configured for c2patool only");
+    }
+    return reader.extractManifest(image);
+  }
+
+  /**
+   * Mode plus the versions of the extractors it may use; in `auto` mode a
+   * result may come from either.
+   */
+  @Override
+  public String version() {
+    switch (mode) {
+      case TOOL:
+        return "tool:" + tool.version();
+      case JAVA:
+        return "java:" + reader.version();
+      default:
+        return "auto:" + reader.version() + "+" + tool.version();
+    }
+  }
+
+  /** Active mode, for diagnostics. */
+  public Mode mode() {
+    return mode;
+  }
+}
@@ -0,0 +1,114 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Cheap check for whether an image can carry a C2PA manifest at all.
+ * Walks container headers only (JPEG segments up to the first scan, PNG
+ * chunks, top-level BMFF boxes) looking for an APP11 JUMBF packet, a `caBX`
+ * chunk or the C2PA `uuid` box. No JUMBF is parsed and nothing is decoded.
+ * Outcomes are deliberately conservative: {@link Presence#ABSENT} is only
+ * returned when the walk reached the end of the metadata; running out of
+ * bytes, unknown containers and read errors all yield {@link Presence#UNKNOWN}.
+ */
+public final class C2paPresenceProbe {
+
+  /** Probe outcome. */
+  public enum Presence { PRESENT, ABSENT, UNKNOWN }
+
+  private C2paPresenceProbe() { }
+
+  /**
+   * Probes any seekable view of the image.
+   *
+   * @param ch image bytes
+   * @return presence of a C2PA marker
+   */
+  public static Presence probe(SeekableByteChannel ch) {
+    try {
+      return ManifestStoreLocator.hasStore(ch) ? Presence.PRESENT : Presence.ABSENT;
+    } catch (IOException e) {
+      return Presence.UNKNOWN;
+    }
+  }
+
+  /**
+   * Probes the leading bytes of an object.
+   *
+   * @param prefix first bytes of the object
+   * @param totalSize full object size, or -1 if unknown
+   * @return presence of a C2PA marker; UNKNOWN if the headers extend past the prefix
+   */
+  public static Presence probe(byte[] prefix, long totalSize) {
+    return probe(new PrefixChannel(prefix, totalSize));
+  }
+
+  /**
+   * Read-only channel over an object's first bytes. Reports the full object
+   * size so header walks see real offsets, and fails reads past the prefix
+   * so they surface as UNKNOWN rather than as end-of-file.
+   */
+  private static final class PrefixChannel implements SeekableByteChannel {
+    private final byte[] prefix;
+    private final long size;
+    private long position;
+
+    PrefixChannel(byte[] prefix, long totalSize) {
+      this.prefix = prefix;
+      this.size = totalSize < 0 ? Long.MAX_VALUE : Math.max(totalSize, prefix.length);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      if (position >= size) {
+        return -1;
+      }
+      if (position >= prefix.length) {
+        throw new IOException("Read past probed prefix at offset " + position);
+      }
+      int n = (int) Math.min(dst.remaining(), prefix.length - position);
+      dst.put(prefix, (int) position, n);
+      position += n;
+      return n;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+      throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() {
+      return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) {
+      this.position = newPosition;
+      return this;
+    }
+
+    @Override
+    public long size() {
+      return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long newSize) {
+      throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+      // nothing to release
+    }
+  }
+}
@@ -1,56 +1,290 @@
 package dev.coms4156.project.metadetect.c2pa;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Scanner;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Invokes the C2PA command-line tool to extract manifests from images.
+ * Execution:
+ * - stdout and stderr are drained concurrently while the tool runs, so a
+ *   large manifest cannot fill a pipe buffer and stall the tool.
+ * - Both streams are captured into bounded buffers. stdout beyond
+ *   {@code maxOutputBytes} kills the tool (the report would be unusable);
+ *   stderr beyond it is truncated.
+ * - Each invocation has a deadline; a tool still running at the deadline
+ *   is killed together with any processes it started.
+ * - Every run is summarized as a {@link ToolRun} (exit code, wall time,
+ *   bytes read).
+ */
+public class C2paToolInvoker implements ManifestExtractor {
+
+  private static final Logger log = LoggerFactory.getLogger(C2paToolInvoker.class);
+
+  /** Default per-invocation deadline. */
+  public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+  /** Default cap on captured output per stream. */
+  public static final int DEFAULT_MAX_OUTPUT_BYTES = 16 * 1024 * 1024;
+
+  /** How long to wait for the pipes to close once the tool has exited or been killed. */
+  private static final long DRAIN_GRACE_MS = 2_000;
+
+  private static final AtomicInteger DRAIN_SEQ = new AtomicInteger();
+
+  /** Pipe readers; two per running invocation, idle threads expire. */
+  private static final ExecutorService DRAINERS = Executors.newCachedThreadPool(r -> {
+    Thread t = new Thread(r, "c2patool-drain-" + DRAIN_SEQ.incrementAndGet());
+    t.setDaemon(true);
+    return t;
+  });
 
-/** Invokes the C2PA command-line tool to extract manifests from images.*/
-public class C2paToolInvoker {
-    
   private final String c2paToolPath;
+  private final Duration timeout;
+  private final int maxOutputBytes;
 
+  /**
+   * Constructs an invoker with the default deadline and output cap.
+   *
+   * @param c2paToolPath path of the c2patool binary
+   */
   public C2paToolInvoker(String c2paToolPath) {
+    this(c2paToolPath, DEFAULT_TIMEOUT, DEFAULT_MAX_OUTPUT_BYTES);
+  }
+
+  /**
+   * Constructs an invoker.
+   *
+   * @param c2paToolPath path of the c2patool binary
+   * @param timeout deadline for one invocation
+   * @param maxOutputBytes most bytes captured from each of stdout and stderr
+   */
+  public C2paToolInvoker(String c2paToolPath, Duration timeout, int maxOutputBytes) {
+    if (timeout.isNegative() || timeout.isZero()) {
+      throw new IllegalArgumentException("timeout must be positive");
+    }
+    if (maxOutputBytes <= 0) {
+      throw new IllegalArgumentException("maxOutputBytes must be positive");
+    }
     this.c2paToolPath = c2paToolPath;
+    this.timeout = timeout;
+    this.maxOutputBytes = maxOutputBytes;
   }
-   
+
+  /** The tool binary is pinned by the build (c2pa.version in the POM). */
+  @Override
+  public String version() {
+    return "c2patool";
+  }
+
   /**
-   *  Executes the C2PA tool to extract the manifest from the given image file.
-  *
-  * @param imageFile The image file to analyze.
-  * @return JSON string of the C2PA manifest.
-  * @throws IOException if the tool fails or the file is invalid.
-  *
-  */
+   * Executes the C2PA tool to extract the manifest from the given image file.
+   *
+   * @param imageFile The image file to analyze.
+   * @return JSON string of the C2PA manifest.
+   * @throws IOException if the tool fails, times out, exceeds the output cap,
+   *     or the file is invalid.
+   */
+  @Override
   public String extractManifest(File imageFile) throws IOException {
-    ProcessBuilder pb = new ProcessBuilder(
-        c2paToolPath,
-        imageFile.getAbsolutePath(),
-        "-d" // your tool version expects this
-    );
-    pb.redirectErrorStream(false);
-
-    Process proc = pb.start();
-    try (InputStream out = proc.getInputStream();
-         InputStream err = proc.getErrorStream();
-         Scanner so = new Scanner(out, StandardCharsets.UTF_8);
-         Scanner se =
-           new Scanner(err, StandardCharsets.UTF_8)) {
-
-      int exit = proc.waitFor();
-      String stdout = so.useDelimiter("\\A").hasNext() ? so.next() : "";
-      String stderr = se.useDelimiter("\\A").hasNext() ? se.next() : "";
-
-      if (exit != 0) {
-        String msg = "C2PA tool failed with exit code " + exit
-            + (stderr.isBlank() ? "" : " | stderr: " + stderr);
-        throw new IOException(msg);
+    return manifestOf(run(manifestArgs(imageFile)));
+  }
+
+  /** Arguments that make the tool print the manifest report of a file. */
+  static String[] manifestArgs(File imageFile) {
+    return new String[] {imageFile.getAbsolutePath(), "-d"}; // your tool version expects -d
+  }
+
+  /**
+   * Returns the manifest report of a finished extraction run.
+   *
+   * @param run result of running the tool with {@link #manifestArgs}
+   * @return stdout, which is JSON from -d
+   * @throws IOException if the tool exited non-zero
+   */
+  static String manifestOf(ToolRun run) throws IOException {
+    if (run.exitCode() != 0) {
+      String msg = "C2PA tool failed with exit code " + run.exitCode()
+          + (run.stderr().isBlank() ? "" : " | stderr: " + run.stderr());
+      throw new IOException(msg);
+    }
+    return run.stdout();
+  }
+
+  /**
+   * Runs the tool with the given arguments and captures its output.
+   * A non-zero exit is reported in the result, not thrown.
+   *
+   * @param args arguments after the binary path
+   * @return summary of the finished run
+   * @throws IOException if the tool cannot start, misses its deadline,
+   *     exceeds the stdout cap ({@link OutputLimitException}), or its output
+   *     cannot be read; {@link InterruptedIOException} if the calling thread
+   *     was interrupted, in which case the tool has been killed
+   */
+  public ToolRun run(String... args) throws IOException {
+    String[] command = new String[args.length + 1];
+    command[0] = c2paToolPath;
+    System.arraycopy(args, 0, command, 1, args.length);
+
+    long startNanos = System.nanoTime();
+    Process proc = new ProcessBuilder(command).redirectErrorStream(false).start();
+    proc.getOutputStream().close(); // the tool reads no input
+
+    Capture out = new Capture(proc.getInputStream(), maxOutputBytes, true, proc);
+    Capture err = new Capture(proc.getErrorStream(), maxOutputBytes, false, proc);
+    Future<?> outDone = DRAINERS.submit(out);
+    Future<?> errDone = DRAINERS.submit(err);
+
+    try {
+      boolean exited = proc.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS);
+      if (!exited) {
+        killTree(proc);
+        long elapsed = elapsedMs(startNanos);
+        log.warn("c2patool exceeded its {} ms deadline after {} ms; killed",
+            timeout.toMillis(), elapsed);
+        throw new IOException("C2PA tool timed out after " + elapsed + " ms");
+      }
+      awaitDrained(outDone, proc);
+      awaitDrained(errDone, proc);
+      if (out.overflowed) {
+        throw new OutputLimitException("C2PA tool output exceeded " + maxOutputBytes + " bytes");
       }
-      return stdout; // should already be JSON from -d
+
+      ToolRun run = new ToolRun(proc.exitValue(), elapsedMs(startNanos),
+          out.bytesRead, err.bytesRead, out.text(), err.text());
+      log.debug("c2patool exited {} in {} ms (stdout {} B, stderr {} B)",
+          run.exitCode(), run.wallTimeMs(), run.stdoutBytes(), run.stderrBytes());
+      return run;
     } catch (InterruptedException ie) {
+      killTree(proc);
       Thread.currentThread().interrupt();
-      throw new IOException("C2PA tool execution was interrupted", ie);
+      InterruptedIOException e = new InterruptedIOException("C2PA tool execution was interrupted");
+      e.initCause(ie);
+      throw e;
+    } finally {
+      if (proc.isAlive()) {
+        killTree(proc);
+      }
+      outDone.cancel(true);
+      errDone.cancel(true);
+    }
+  }
+
+  /** Waits briefly for a pipe reader; the tool has already exited or been killed. */
+  private static void awaitDrained(Future<?> drained, Process proc)
+      throws IOException, InterruptedException {
+    try {
+      drained.get(DRAIN_GRACE_MS, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      // A child the tool started still holds the pipe open
+      killTree(proc);
+      throw new IOException("C2PA tool output did not close after exit", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to read C2PA tool output", e.getCause());
+    }
+  }
+
+  /** Kills the tool and every process it started. */
+  private static void killTree(Process proc) {
+    proc.descendants().forEach(ProcessHandle::destroyForcibly);
+    proc.destroyForcibly();
+  }
+
+  private static long elapsedMs(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Outcome of one tool invocation.
+   *
+   * @param exitCode process exit code
+   * @param wallTimeMs time from start to exit, including draining
+   * @param stdoutBytes bytes read from stdout
+   * @param stderrBytes bytes read from stderr, including any truncated
+   * @param stdout captured stdout (UTF-8)
+   * @param stderr captured stderr (UTF-8), possibly truncated
+   */
+  public record ToolRun(
+      int exitCode,
+      long wallTimeMs,
+      long stdoutBytes,
+      long stderrBytes,
+      String stdout,
+      String stderr
+  ) { }
+
+  /**
+   * The tool's report for one input was larger than the stdout cap. This
+   * says something about the input, not about the binary.
+   */
+  public static class OutputLimitException extends IOException {
+    public OutputLimitException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Reads one stream to its end into a bounded buffer. Bytes past the cap
+   * are counted and discarded so the tool never blocks on a full pipe; a
+   * fatal overflow kills the tool instead.
+   */
+  private static final class Capture implements Runnable {
+    private final InputStream in;
+    private final int cap;
+    private final boolean fatalOverflow;
+    private final Process proc;
+    private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    // Read by the invoking thread only after Future.get, which orders the writes
+    private long bytesRead;
+    private boolean overflowed;
+
+    Capture(InputStream in, int cap, boolean fatalOverflow, Process proc) {
+      this.in = in;
+      this.cap = cap;
+      this.fatalOverflow = fatalOverflow;
+      this.proc = proc;
+    }
+
+    @Override
+    public void run() {
+      byte[] chunk = new byte[8192];
+      try (in) {
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+          bytesRead += n;
+          int room = cap - buf.size();
+          if (room > 0) {
+            buf.write(chunk, 0, Math.min(n, room));
+          }
+          if (n > room && !overflowed) {
+            overflowed = true;
+            if (fatalOverflow) {
+              killTree(proc);
+              return;
+            }
+          }
+        }
+      } catch (IOException e) {
+        // Stream closed under us (process killed); keep what was read
+      }
+    }
+
+    String text() {
+      return buf.toString(StandardCharsets.UTF_8);
     }
   }
 }
@@ -0,0 +1,333 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Managed c2patool installation: a fixed set of worker slots over one
+ * configured binary, with a startup version probe and health tracking.
+ * Lifecycle:
+ * - {@link #start()} runs `c2patool --version` once per worker. This checks
+ *   that the binary runs, records its version, and pages the binary and its
+ *   libraries into the file-system cache before the first real job.
+ * - {@link #version()} includes the probed version, so cache keys and the
+ *   engine_version stamped on each report change with the binary. Instances
+ *   configured with different tool paths can run different versions side
+ *   by side without sharing results.
+ * Health:
+ * - At most {@code concurrency} tool processes run at once; callers wait
+ *   for a free worker.
+ * - Each worker counts its runs and tool faults (failure to start, missed
+ *   deadline, death by signal). A non-zero exit for a bad input, or a report
+ *   too large for the output cap, is a normal result, not a fault. A run
+ *   stopped by interrupting its thread (a cancelled job) is not counted.
+ * - When the fault rate over the last {@code window} runs reaches
+ *   {@code maxFailureRate}, the tool path is quarantined: extraction fails
+ *   fast for {@code quarantine}, then the binary is probed again and
+ *   returns to service if the probe passes.
+ * A binary that fails its startup probe starts out quarantined rather than
+ * failing application startup, so API-only instances still boot.
+ */
+public class C2paToolRuntime implements ManifestExtractor {
+
+  private static final Logger log = LoggerFactory.getLogger(C2paToolRuntime.class);
+
+  /** Exit codes from 128 up mean the tool died from a signal (crash, OOM kill). */
+  private static final int SIGNAL_EXIT_BASE = 128;
+
+  private final String toolPath;
+  private final C2paToolInvoker invoker;
+  private final List<Worker> workers;
+  private final BlockingQueue<Worker> idle;
+  private final boolean[] outcomes;
+  private final double maxFailureRate;
+  private final Duration quarantine;
+  private final Clock clock;
+  /** Serializes re-probes; never held while the window is updated. */
+  private final Object probeLock = new Object();
+
+  private int recorded;
+  private int next;
+  private volatile String toolVersion;
+  private volatile Instant quarantinedUntil;
+
+  /**
+   * Constructs the runtime. Call {@link #start()} before use.
+   *
+   * @param toolPath path of the c2patool binary, for diagnostics
+   * @param invoker runs the binary with deadlines and output caps
+   * @param concurrency worker slots, i.e. tool processes allowed at once
+   * @param window runs considered when computing the fault rate
+   * @param maxFailureRate fault rate (0..1] that quarantines the tool path
+   * @param quarantine how long a quarantined path stays out of service
+   * @param clock time source for quarantine
+   */
+  public C2paToolRuntime(String toolPath,
+                         C2paToolInvoker invoker,
+                         int concurrency,
+                         int window,
+                         double maxFailureRate,
+                         Duration quarantine,
+                         Clock clock) {
+    if (concurrency <= 0) {
+      throw new IllegalArgumentException("toolConcurrency must be positive");
+    }
+    if (window <= 0) {
+      throw new IllegalArgumentException("toolHealthWindow must be positive");
+    }
+    this.toolPath = toolPath;
+    this.invoker = invoker;
+    this.outcomes = new boolean[window];
+    this.maxFailureRate = maxFailureRate;
+    this.quarantine = quarantine;
+    this.clock = clock;
+    this.workers = new ArrayList<>(concurrency);
+    this.idle = new ArrayBlockingQueue<>(concurrency);
+    for (int i = 0; i < concurrency; i++) {
+      Worker w = new Worker(i + 1);
+      workers.add(w);
+      idle.add(w);
+    }
+  }
+
+  /**
+   * Probes the binary once per worker and records its version. A failed
+   * probe quarantines the tool path instead of throwing.
+   */
+  public void start() {
+    for (Worker w : workers) {
+      if (!probe(w)) {
+        quarantine("startup probe failed");
+        return;
+      }
+    }
+    log.info("c2patool {} ready at {} with {} workers", toolVersion, toolPath, workers.size());
+  }
+
+  @Override
+  public String extractManifest(File imageFile) throws IOException {
+    checkAvailable();
+    Worker w = acquire();
+    try {
+      C2paToolInvoker.ToolRun run;
+      try {
+        run = invoker.run(C2paToolInvoker.manifestArgs(imageFile));
+      } catch (InterruptedIOException e) {
+        throw e;
+      } catch (C2paToolInvoker.OutputLimitException e) {
+        record(w, false);
+        throw e;
+      } catch (IOException e) {
+        if (!Thread.currentThread().isInterrupted()) {
+          record(w, true);
+        }
+        throw e;
+      }
+      record(w, run.exitCode() >= SIGNAL_EXIT_BASE);
+      return C2paToolInvoker.manifestOf(run);
+    } finally {
+      idle.add(w);
+    }
+  }
+
+  /**
+   * Tool name and probed version, e.g. "c2patool-0.9.12"; "c2patool" until
+   * a probe has succeeded.
+   */
+  @Override
+  public String version() {
+    String v = toolVersion;
+    return v == null ? "c2patool" : "c2patool-" + v;
+  }
+
+  /** Version reported by the last successful probe, or null. */
+  public String toolVersion() {
+    return toolVersion;
+  }
+
+  /** Whether extraction is currently failing fast. */
+  public boolean isQuarantined() {
+    return quarantinedUntil != null;
+  }
+
+  /** Per-worker run and fault counts, for diagnostics. */
+  public List<WorkerHealth> health() {
+    List<WorkerHealth> out = new ArrayList<>(workers.size());
+    for (Worker w : workers) {
+      synchronized (w) {
+        out.add(new WorkerHealth(w.id, w.runs, w.faults));
+      }
+    }
+    return out;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Health
+  // ---------------------------------------------------------------------------
+
+  /**
+   * Fails fast while quarantined. Once the quarantine has elapsed, one
+   * caller probes the binary again; it returns to service if that passes.
+   */
+  private void checkAvailable() throws IOException {
+    Instant until = quarantinedUntil;
+    if (until == null) {
+      return;
+    }
+    if (clock.instant().isBefore(until)) {
+      throw new IOException("c2patool at " + toolPath + " is quarantined until " + until);
+    }
+    synchronized (probeLock) {
+      if (quarantinedUntil != until) {
+        // Another caller already re-probed
+        checkAvailable();
+        return;
+      }
+      Worker w = acquire();
+      try {
+        if (!probe(w)) {
+          quarantine("re-probe failed");
+          throw new IOException("c2patool at " + toolPath + " failed its health probe");
+        }
+      } finally {
+        idle.add(w);
+      }
+      resetWindow();
+      quarantinedUntil = null;
+      log.info("c2patool {} at {} back in service", toolVersion, toolPath);
+    }
+  }
+
+  /** Runs `--version` on a worker; records the version on success. */
+  private boolean probe(Worker w) {
+    try {
+      C2paToolInvoker.ToolRun run = invoker.run("--version");
+      String version = parseVersion(run.stdout());
+      if (run.exitCode() != 0 || version == null) {
+        log.error("c2patool probe at {} exited {}: {}", toolPath, run.exitCode(),
+            run.stderr().isBlank() ? run.stdout() : run.stderr());
+        record(w, true);
+        return false;
+      }
+      String previous = toolVersion;
+      if (previous != null && !previous.equals(version)) {
+        log.warn("c2patool at {} changed version from {} to {}", toolPath, previous, version);
+      }
+      toolVersion = version;
+      record(w, false);
+      return true;
+    } catch (IOException e) {
+      log.error("c2patool probe at {} failed: {}", toolPath, e.getMessage());
+      record(w, true);
+      return false;
+    }
+  }
+
+  /**
+   * Extracts the version from `--version` output such as "c2patool 0.9.12".
+   *
+   * @param stdout probe output
+   * @return last token of the first line, or null if there is none
+   */
+  static String parseVersion(String stdout) {
+    String firstLine = stdout.strip().lines().findFirst().orElse("").strip();
+    if (firstLine.isEmpty()) {
+      return null;
+    }
+    String[] tokens = firstLine.split("\\s+");
+    return tokens[tokens.length - 1];
+  }
+
+  /** Records one run on the worker and in the path-wide window. */
+  private void record(Worker w, boolean fault) {
+    synchronized (w) {
+      w.runs++;
+      if (fault) {
+        w.faults++;
+      }
+    }
+    boolean trip;
+    synchronized (this) {
+      outcomes[next] = fault;
+      next = (next + 1) % outcomes.length;
+      recorded = Math.min(recorded + 1, outcomes.length);
+      trip = quarantinedUntil == null && recorded == outcomes.length
+          && faultRate() >= maxFailureRate;
+    }
+    if (trip) {
+      quarantine(String.format("fault rate %.2f over the last %d runs",
+          faultRate(), outcomes.length));
+    }
+  }
+
+  private synchronized void resetWindow() {
+    Arrays.fill(outcomes, false);
+    recorded = 0;
+    next = 0;
+  }
+
+  private synchronized double faultRate() {
+    int faults = 0;
+    for (int i = 0; i < recorded; i++) {
+      if (outcomes[i]) {
+        faults++;
+      }
+    }
+    return recorded == 0 ? 0 : (double) faults / recorded;
+  }
+
+  private void quarantine(String reason) {
+    Instant until = clock.instant().plus(quarantine);
+    quarantinedUntil = until;
+    log.error("Quarantining c2patool at {} until {}: {}", toolPath, until, reason);
+  }
+
+  private Worker acquire() throws IOException {
+    try {
+      return idle.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      InterruptedIOException ie = new InterruptedIOException(
+          "Interrupted waiting for a c2patool worker");
+      ie.initCause(e);
+      throw ie;
+    }
+  }
+
+  /**
+   * Run and fault counts of one worker slot.
+   *
+   * @param worker slot number, from 1
+   * @param runs tool invocations on this slot, including probes
+   * @param faults invocations that failed for reasons other than the input
+   */
+  public record WorkerHealth(int worker, long runs, long faults) {
+
+    /** Share of runs that were faults. */
+    public double failureRate() {
+      return runs == 0 ? 0 : (double) faults / runs;
+    }
+  }
+
+  /** One worker slot; counters guarded by the instance. */
+  private static final class Worker {
+    private final int id;
+    private long runs;
+    private long faults;
+
+    Worker(int id) {
+      this.id = id;
+    }
+  }
+}
@@ -0,0 +1,252 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal CBOR (RFC 8949) decoder producing Jackson trees.
+ * Mapping:
+ * - byte strings become {@link com.fasterxml.jackson.databind.node.BinaryNode}
+ *   so callers can decode nested CBOR (e.g. COSE headers) before rendering;
+ * - map keys that are not text (COSE uses integer labels) are stringified;
+ * - tags are dropped and their content kept; `undefined` becomes null.
+ * Input is untrusted, so nesting depth is capped and every length is checked
+ * against the remaining bytes before allocating.
+ */
+final class CborDecoder {
+
+  private static final int MAX_DEPTH = 64;
+  private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+  private final byte[] buf;
+  private int pos;
+  private final int end;
+
+  private CborDecoder(byte[] buf, int off, int len) {
+    this.buf = buf;
+    this.pos = off;
+    this.end = off + len;
+  }
+
+  /**
+   * Decodes a single CBOR data item.
+   *
+   * @param data encoded bytes
+   * @return decoded tree
+   * @throws UnsupportedManifestException if the input is malformed
+   */
+  static JsonNode decode(byte[] data) throws UnsupportedManifestException {
+    return decode(data, 0, data.length);
+  }
+
+  /**
+   * Decodes a single CBOR data item from a slice.
+   *
+   * @param data buffer
+   * @param off first byte of the item
+   * @param len bytes available
+   * @return decoded tree
+   * @throws UnsupportedManifestException if the input is malformed
+   */
+  static JsonNode decode(byte[] data, int off, int len) throws UnsupportedManifestException {
+    CborDecoder d = new CborDecoder(data, off, len);
+    try {
+      return d.item(0);
+    } catch (IndexOutOfBoundsException e) {
+      throw new UnsupportedManifestException("Truncated CBOR data");
+    }
+  }
+
+  private JsonNode item(int depth) throws UnsupportedManifestException {
+    if (depth > MAX_DEPTH) {
+      throw new UnsupportedManifestException("CBOR nesting too deep");
+    }
+    int initial = u8();
+    int major = initial >>> 5;
+    int info = initial & 0x1f;
+
+    switch (major) {
+      case 0:
+        return unsigned(info);
+      case 1: {
+        JsonNode n = unsigned(info);
+        return n.isBigInteger()
+            ? NODES.numberNode(n.bigIntegerValue().negate().subtract(BigInteger.ONE))
+            : NODES.numberNode(-1L - n.longValue());
+      }
+      case 2:
+        return NODES.binaryNode(bytes(info, 2));
+      case 3:
+        return NODES.textNode(new String(bytes(info, 3), StandardCharsets.UTF_8));
+      case 4: {
+        ArrayNode arr = NODES.arrayNode();
+        if (info == 31) {
+          while (peek() != 0xff) {
+            arr.add(item(depth + 1));
+          }
+          pos++;
+        } else {
+          long n = length(info);
+          for (long i = 0; i < n; i++) {
+            arr.add(item(depth + 1));
+          }
+        }
+        return arr;
+      }
+      case 5: {
+        ObjectNode obj = NODES.objectNode();
+        if (info == 31) {
+          while (peek() != 0xff) {
+            entry(obj, depth);
+          }
+          pos++;
+        } else {
+          long n = length(info);
+          for (long i = 0; i < n; i++) {
+            entry(obj, depth);
+          }
+        }
+        return obj;
+      }
+      case 6:
+        argument(info); // tag number; content is what callers care about
+        return item(depth + 1);
+      default:
+        return simple(info);
+    }
+  }
+
+  private void entry(ObjectNode obj, int depth) throws UnsupportedManifestException {
+    JsonNode key = item(depth + 1);
+    String name = key.isTextual() ? key.textValue() : key.asText();
+    obj.set(name, item(depth + 1));
+  }
+
+  private JsonNode simple(int info) throws UnsupportedManifestException {
+    switch (info) {
+      case 20:
+        return NODES.booleanNode(false);
+      case 21:
+        return NODES.booleanNode(true);
+      case 22:
+      case 23:
+        return NODES.nullNode();
+      case 24:
+        u8();
+        return NODES.nullNode();
+      case 25:
+        return NODES.numberNode(halfToFloat((u8() << 8) | u8()));
+      case 26:
+        return NODES.numberNode(Float.intBitsToFloat((int) readBig(4)));
+      case 27:
+        return NODES.numberNode(Double.longBitsToDouble(readBig(8)));
+      default:
+        if (info < 20) {
+          return NODES.nullNode(); // unassigned simple value
+        }
+        throw new UnsupportedManifestException("Unexpected CBOR simple value " + info);
+    }
+  }
+
+  private JsonNode unsigned(int info) throws UnsupportedManifestException {
+    if (info == 27) {
+      long v = readBig(8);
+      if (v < 0) {
+        return NODES.numberNode(new BigInteger(Long.toUnsignedString(v)));
+      }
+      return NODES.numberNode(v);
+    }
+    return NODES.numberNode(argument(info));
+  }
+
+  private byte[] bytes(int info, int major) throws UnsupportedManifestException {
+    if (info != 31) {
+      int n = (int) length(info);
+      byte[] out = new byte[n];
+      System.arraycopy(buf, pos, out, 0, n);
+      pos += n;
+      return out;
+    }
+    // Indefinite length: concatenation of definite chunks of the same type.
+    ByteArrayOutputStream acc = new ByteArrayOutputStream();
+    while (peek() != 0xff) {
+      int chunk = u8();
+      if (chunk >>> 5 != major || (chunk & 0x1f) == 31) {
+        throw new UnsupportedManifestException("Malformed CBOR string chunk");
+      }
+      int n = (int) length(chunk & 0x1f);
+      acc.write(buf, pos, n);
+      pos += n;
+    }
+    pos++;
+    return acc.toByteArray();
+  }
+
+  private long length(int info) throws UnsupportedManifestException {
+    long n = argument(info);
+    if (n < 0 || n > end - pos) {
+      // Every element takes at least one byte, so this bounds arrays and maps too.
+      throw new UnsupportedManifestException("CBOR length exceeds input");
+    }
+    return n;
+  }
+
+  private long argument(int info) throws UnsupportedManifestException {
+    if (info < 24) {
+      return info;
+    }
+    switch (info) {
+      case 24:
+        return u8();
+      case 25:
+        return readBig(2);
+      case 26:
+        return readBig(4);
+      case 27:
+        return readBig(8);
+      default:
+        throw new UnsupportedManifestException("Reserved CBOR additional info " + info);
+    }
+  }
+
+  private long readBig(int n) throws UnsupportedManifestException {
+    long v = 0;
+    for (int i = 0; i < n; i++) {
+      v = (v << 8) | u8();
+    }
+    return v;
+  }
+
+  private int peek() throws UnsupportedManifestException {
+    if (pos >= end) {
+      throw new UnsupportedManifestException("Truncated CBOR data");
+    }
+    return buf[pos] & 0xff;
+  }
+
+  private int u8() throws UnsupportedManifestException {
+    int b = peek();
+    pos++;
+    return b;
+  }
+
+  /** IEEE 754 half precision to float (RFC 8949 appendix D). */
+  static float halfToFloat(int half) {
+    int exp = (half >> 10) & 0x1f;
+    int mant = half & 0x3ff;
+    float val;
+    if (exp == 0) {
+      val = (float) (mant * Math.pow(2, -24));
+    } else if (exp != 31) {
+      val = (float) ((mant + 1024) * Math.pow(2, exp - 25));
+    } else {
+      val = mant == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+    }
+    return (half & 0x8000) != 0 ? -val : val;
+  }
+}
@@ -0,0 +1,214 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One box of a JUMBF (ISO/IEC 19566-5) tree.
+ * Two kinds:
+ * - superbox (`jumb`): has a description (`jumd`) carrying a type UUID and an
+ *   optional label, followed by child boxes;
+ * - content box (`cbor`, `json`, `bfdb`, `bidb`, `uuid`, ...): raw payload.
+ * C2PA names its superbox types with four ASCII characters followed by the
+ * common JUMBF suffix (e.g. "c2pa", "c2ma", "c2as", "cbor"); see
+ * {@link #typeCode()}.
+ */
+final class JumbfBox {
+
+  /** Deepest superbox nesting accepted; C2PA stores use four levels. */
+  private static final int MAX_DEPTH = 16;
+
+  private static final byte[] C2PA_UUID_SUFFIX = {
+      0x00, 0x11, 0x00, 0x10, (byte) 0x80, 0x00, 0x00, (byte) 0xaa,
+      0x00, 0x38, (byte) 0x9b, 0x71
+  };
+
+  private final String boxType;
+  private final UUID descriptionType;
+  private final String typeCode;
+  private final String label;
+  private final List<JumbfBox> children;
+  private final byte[] payload;
+
+  private JumbfBox(String boxType, UUID descriptionType, String typeCode, String label,
+                   List<JumbfBox> children, byte[] payload) {
+    this.boxType = boxType;
+    this.descriptionType = descriptionType;
+    this.typeCode = typeCode;
+    this.label = label;
+    this.children = children;
+    this.payload = payload;
+  }
+
+  /**
+   * Parses a complete JUMBF superbox (the manifest store).
+   *
+   * @param data serialized box, starting at its LBox field
+   * @return root superbox
+   * @throws UnsupportedManifestException if the data is not a JUMBF superbox
+   */
+  static JumbfBox parse(byte[] data) throws UnsupportedManifestException {
+    List<JumbfBox> boxes = parseSequence(ByteBuffer.wrap(data), 0);
+    if (boxes.isEmpty() || !boxes.get(0).isSuperBox()) {
+      throw new UnsupportedManifestException("Data does not start with a JUMBF superbox");
+    }
+    return boxes.get(0);
+  }
+
+  private static List<JumbfBox> parseSequence(ByteBuffer buf, int depth)
+      throws UnsupportedManifestException {
+    if (depth > MAX_DEPTH) {
+      throw new UnsupportedManifestException("JUMBF nesting too deep");
+    }
+    List<JumbfBox> out = new ArrayList<>();
+    while (buf.remaining() >= 8) {
+      int start = buf.position();
+      long size = buf.getInt() & 0xffffffffL;
+      byte[] type = new byte[4];
+      buf.get(type);
+      int header = 8;
+      if (size == 1) {
+        if (buf.remaining() < 8) {
+          throw new UnsupportedManifestException("Truncated JUMBF box header");
+        }
+        size = buf.getLong();
+        header = 16;
+      } else if (size == 0) {
+        size = buf.limit() - start;
+      }
+      if (size < header || size > buf.limit() - start) {
+        throw new UnsupportedManifestException("JUMBF box length out of range");
+      }
+      ByteBuffer body = buf.duplicate();
+      body.position(start + header).limit(start + (int) size);
+      out.add(box(new String(type, StandardCharsets.ISO_8859_1), body.slice(), depth));
+      buf.position(start + (int) size);
+    }
+    return out;
+  }
+
+  private static JumbfBox box(String type, ByteBuffer body, int depth)
+      throws UnsupportedManifestException {
+    if (!"jumb".equals(type)) {
+      byte[] payload = new byte[body.remaining()];
+      body.get(payload);
+      return new JumbfBox(type, null, null, null, List.of(), payload);
+    }
+
+    List<JumbfBox> inner = parseSequence(body, depth + 1);
+    if (inner.isEmpty() || !"jumd".equals(inner.get(0).boxType)) {
+      throw new UnsupportedManifestException("JUMBF superbox without description box");
+    }
+    ByteBuffer desc = ByteBuffer.wrap(inner.get(0).payload);
+    if (desc.remaining() < 17) {
+      throw new UnsupportedManifestException("Truncated JUMBF description box");
+    }
+    byte[] uuid = new byte[16];
+    desc.get(uuid);
+    int toggles = desc.get() & 0xff;
+    String label = null;
+    if ((toggles & 0x02) != 0) {
+      int from = desc.position();
+      int nul = from;
+      while (nul < desc.limit() && desc.get(nul) != 0) {
+        nul++;
+      }
+      label = new String(desc.array(), from, nul - from, StandardCharsets.UTF_8);
+    }
+
+    ByteBuffer u = ByteBuffer.wrap(uuid);
+    UUID descriptionType = new UUID(u.getLong(), u.getLong());
+    return new JumbfBox(type, descriptionType, typeCode(uuid), label,
+        Collections.unmodifiableList(inner.subList(1, inner.size())), null);
+  }
+
+  /** Four-character code for C2PA-style type UUIDs, else the UUID string. */
+  private static String typeCode(byte[] uuid) {
+    for (int i = 0; i < C2PA_UUID_SUFFIX.length; i++) {
+      if (uuid[4 + i] != C2PA_UUID_SUFFIX[i]) {
+        ByteBuffer u = ByteBuffer.wrap(uuid);
+        return new UUID(u.getLong(), u.getLong()).toString();
+      }
+    }
+    return new String(uuid, 0, 4, StandardCharsets.ISO_8859_1);
+  }
+
+  boolean isSuperBox() {
+    return descriptionType != null;
+  }
+
+  /** Box type of this box, e.g. "jumb" or "cbor". */
+  String boxType() {
+    return boxType;
+  }
+
+  /** Superbox type code, e.g. "c2ma"; null for content boxes. */
+  String typeCode() {
+    return typeCode;
+  }
+
+  /** Superbox label, e.g. "c2pa.claim.v2"; null if absent. */
+  String label() {
+    return label;
+  }
+
+  /** Children after the description box (superboxes only). */
+  List<JumbfBox> children() {
+    return children;
+  }
+
+  /** Raw payload (content boxes only). */
+  byte[] payload() {
+    return payload;
+  }
+
+  /**
+   * Finds a child superbox by label.
+   *
+   * @param childLabel label to match
+   * @return the child, or null
+   */
+  JumbfBox child(String childLabel) {
+    for (JumbfBox c : children) {
+      if (childLabel.equals(c.label)) {
+        return c;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * First child superbox whose label starts with the given prefix; used for
+   * versioned labels such as "c2pa.claim" / "c2pa.claim.v2".
+   *
+   * @param prefix label prefix
+   * @return the child, or null
+   */
+  JumbfBox childStartingWith(String prefix) {
+    for (JumbfBox c : children) {
+      if (c.label != null && c.label.startsWith(prefix)) {
+        return c;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * First content box of the given type among the children.
+   *
+   * @param type box type such as "cbor"
+   * @return the box, or null
+   */
+  JumbfBox content(String type) {
+    for (JumbfBox c : children) {
+      if (!c.isSuperBox() && type.equals(c.boxType)) {
+        return c;
+      }
+    }
+    return null;
+  }
+}
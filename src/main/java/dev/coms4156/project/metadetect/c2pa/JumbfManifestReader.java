@@ -0,0 +1,396 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.Map;
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+
+/**
+ * In-process replacement for `c2patool <file> -d`.
+ * Locates the JUMBF manifest store in the image, decodes each manifest's
+ * claim, assertions and COSE signature, and renders the same report shape as
+ * the tool: `active_manifest`, then per manifest `claim`, `assertion_store`,
+ * `credential_store` (if any) and a `signature` summary (alg, issuer, time).
+ * Differences from c2patool:
+ * - No cryptographic validation is performed (hashes and signatures are not
+ *   verified), so `validation_status` is never emitted.
+ * - Byte strings are rendered as arrays of unsigned bytes, matching how the
+ *   tool serializes them.
+ * Unsupported containers or JUMBF layouts raise
+ * {@link UnsupportedManifestException} so the caller can fall back to the tool.
+ */
+public class JumbfManifestReader implements ManifestExtractor {
+
+  /** Report format version; bump when the rendered JSON changes. */
+  public static final String VERSION = "jumbf-1";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  /** COSE algorithm identifiers (RFC 9053) to the names c2patool prints. */
+  private static final Map<Integer, String> COSE_ALGS = Map.of(
+      -7, "es256",
+      -35, "es384",
+      -36, "es512",
+      -37, "ps256",
+      -38, "ps384",
+      -39, "ps512",
+      -8, "ed25519");
+
+  private static final DateTimeFormatter GENERALIZED_TIME =
+      DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+  private static final DateTimeFormatter RFC3339 =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssxxx");
+
+  @Override
+  public String version() {
+    return VERSION;
+  }
+
+  @Override
+  public String extractManifest(File imageFile) throws IOException {
+    try (FileChannel ch = FileChannel.open(imageFile.toPath(), StandardOpenOption.READ)) {
+      return extractManifest(ch);
+    }
+  }
+
+  /**
+   * Reads the manifest store from any seekable source (local file, ranged
+   * remote object, in-memory buffer).
+   *
+   * @param ch image bytes
+   * @return report JSON
+   * @throws IOException if no manifest can be read
+   */
+  @Override
+  public String extractManifest(SeekableByteChannel ch) throws IOException {
+    byte[] store = ManifestStoreLocator.locate(ch);
+    return MAPPER.writeValueAsString(report(JumbfBox.parse(store)));
+  }
+
+  /**
+   * Builds the report tree for a parsed manifest store.
+   *
+   * @param store root `c2pa` superbox
+   * @return report object
+   * @throws UnsupportedManifestException if the store layout is not understood
+   * @throws ManifestNotFoundException if the store holds no manifests
+   */
+  static ObjectNode report(JumbfBox store) throws IOException {
+    if (!"c2pa".equals(store.typeCode())) {
+      throw new UnsupportedManifestException("JUMBF superbox is not a C2PA manifest store");
+    }
+
+    ObjectNode manifests = MAPPER.createObjectNode();
+    String active = null;
+    for (JumbfBox m : store.children()) {
+      if (!m.isSuperBox()
+          || !("c2ma".equals(m.typeCode()) || "c2um".equals(m.typeCode()))) {
+        continue;
+      }
+      if (m.label() == null) {
+        throw new UnsupportedManifestException("Manifest without a label");
+      }
+      manifests.set(m.label(), manifest(m));
+      active = m.label(); // the last manifest in the store is the active one
+    }
+    if (active == null) {
+      throw new ManifestNotFoundException("C2PA manifest store contains no manifests");
+    }
+
+    ObjectNode report = MAPPER.createObjectNode();
+    report.put("active_manifest", active);
+    report.set("manifests", manifests);
+    return report;
+  }
+
+  private static ObjectNode manifest(JumbfBox m) throws UnsupportedManifestException {
+    JumbfBox claimBox = m.childStartingWith("c2pa.claim");
+    JumbfBox assertions = m.child("c2pa.assertions");
+    JumbfBox signatureBox = m.child("c2pa.signature");
+    if (claimBox == null || claimBox.content("cbor") == null
+        || signatureBox == null || signatureBox.content("cbor") == null) {
+      throw new UnsupportedManifestException("Manifest " + m.label() + " is incomplete");
+    }
+
+    ObjectNode out = MAPPER.createObjectNode();
+    out.set("claim", render(CborDecoder.decode(claimBox.content("cbor").payload())));
+
+    ObjectNode store = MAPPER.createObjectNode();
+    if (assertions != null) {
+      for (JumbfBox a : assertions.children()) {
+        if (a.isSuperBox() && a.label() != null) {
+          store.set(a.label(), assertion(a));
+        }
+      }
+    }
+    out.set("assertion_store", store);
+
+    JumbfBox credentials = m.child("c2pa.credentials");
+    if (credentials != null) {
+      ArrayNode vcs = MAPPER.createArrayNode();
+      for (JumbfBox vc : credentials.children()) {
+        JumbfBox json = vc.isSuperBox() ? vc.content("json") : null;
+        if (json != null) {
+          vcs.add(parseJson(json.payload()));
+        }
+      }
+      out.set("credential_store", vcs);
+    }
+
+    out.set("signature", signature(signatureBox.content("cbor").payload()));
+    return out;
+  }
+
+  /** Renders one assertion according to its JUMBF content type. */
+  private static JsonNode assertion(JumbfBox a) throws UnsupportedManifestException {
+    JumbfBox cbor = a.content("cbor");
+    if (cbor != null) {
+      return render(CborDecoder.decode(cbor.payload()));
+    }
+    JumbfBox json = a.content("json");
+    if (json != null) {
+      return parseJson(json.payload());
+    }
+    // Embedded file (thumbnails) or uuid box: describe instead of dumping bytes.
+    ObjectNode desc = MAPPER.createObjectNode();
+    JumbfBox fileDesc = a.content("bfdb");
+    if (fileDesc != null && fileDesc.payload().length > 1) {
+      byte[] p = fileDesc.payload();
+      int end = 1;
+      while (end < p.length && p[end] != 0) {
+        end++;
+      }
+      desc.put("format", new String(p, 1, end - 1, StandardCharsets.UTF_8));
+    }
+    JumbfBox data = a.content("bidb") != null ? a.content("bidb") : a.content("uuid");
+    if (data != null) {
+      desc.put("length", data.payload().length);
+    }
+    return desc;
+  }
+
+  /**
+   * Summarizes a COSE_Sign1 structure: algorithm, signer organization and,
+   * when a RFC 3161 timestamp is attached, its signing time.
+   */
+  private static ObjectNode signature(byte[] coseBytes) throws UnsupportedManifestException {
+    JsonNode cose = CborDecoder.decode(coseBytes);
+    if (!cose.isArray() || cose.size() != 4 || !cose.get(0).isBinary()) {
+      throw new UnsupportedManifestException("Signature is not a COSE_Sign1 structure");
+    }
+    JsonNode protectedHeader = binary(cose.get(0)).length == 0
+        ? MAPPER.createObjectNode()
+        : CborDecoder.decode(binary(cose.get(0)));
+    JsonNode unprotected = cose.get(1);
+
+    ObjectNode sig = MAPPER.createObjectNode();
+    String alg = COSE_ALGS.get(protectedHeader.path("1").asInt(0));
+    if (alg == null) {
+      throw new UnsupportedManifestException("Unknown COSE signing algorithm");
+    }
+    sig.put("alg", alg);
+
+    X509Certificate signer = leafCertificate(header(protectedHeader, unprotected, "33"));
+    if (signer == null) {
+      signer = leafCertificate(header(protectedHeader, unprotected, "x5chain"));
+    }
+    if (signer != null) {
+      String issuer = organization(signer);
+      if (issuer != null) {
+        sig.put("issuer", issuer);
+      }
+      sig.put("cert_serial_number", signer.getSerialNumber().toString());
+    }
+
+    JsonNode tst = header(protectedHeader, unprotected, "sigTst");
+    if (tst == null) {
+      tst = header(protectedHeader, unprotected, "sigTst2");
+    }
+    JsonNode token = tst == null ? null : tst.path("tstTokens").path(0).get("val");
+    if (token != null && token.isBinary()) {
+      String time = timestampGenTime(binary(token));
+      if (time != null) {
+        sig.put("time", time);
+      }
+    }
+    return sig;
+  }
+
+  private static JsonNode header(JsonNode protectedHeader, JsonNode unprotected, String key) {
+    JsonNode v = protectedHeader.get(key);
+    return v != null ? v : unprotected.get(key);
+  }
+
+  private static X509Certificate leafCertificate(JsonNode x5chain) {
+    if (x5chain == null) {
+      return null;
+    }
+    JsonNode leaf = x5chain.isArray() ? x5chain.path(0) : x5chain;
+    if (!leaf.isBinary()) {
+      return null;
+    }
+    try {
+      return (X509Certificate) CertificateFactory.getInstance("X.509")
+          .generateCertificate(new ByteArrayInputStream(binary(leaf)));
+    } catch (CertificateException e) {
+      return null;
+    }
+  }
+
+  /** Subject O (falling back to CN), which c2patool reports as the issuer. */
+  private static String organization(X509Certificate cert) {
+    try {
+      LdapName name = new LdapName(cert.getSubjectX500Principal().getName());
+      String cn = null;
+      for (Rdn rdn : name.getRdns()) {
+        if ("O".equalsIgnoreCase(rdn.getType())) {
+          return rdn.getValue().toString();
+        }
+        if ("CN".equalsIgnoreCase(rdn.getType())) {
+          cn = rdn.getValue().toString();
+        }
+      }
+      return cn;
+    } catch (InvalidNameException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Extracts `genTime` from a DER TimeStampToken:
+   * ContentInfo → [0] SignedData → encapContentInfo → [0] OCTET STRING →
+   * TSTInfo (version, policy, messageImprint, serialNumber, genTime).
+   */
+  static String timestampGenTime(byte[] der) {
+    try {
+      Der contentInfo = Der.read(der, 0);
+      Der signedData = contentInfo.child(1).child(0);
+      Der encap = signedData.child(2);
+      Der octets = encap.child(1).child(0);
+      Der tstInfo = Der.read(der, octets.contentStart);
+      Der genTime = tstInfo.child(4);
+      if (genTime.tag != 0x18) {
+        return null;
+      }
+      String s = new String(der, genTime.contentStart, genTime.length, StandardCharsets.US_ASCII);
+      LocalDateTime t = LocalDateTime.parse(s.substring(0, 14), GENERALIZED_TIME);
+      return t.atOffset(ZoneOffset.UTC).format(RFC3339);
+    } catch (RuntimeException e) {
+      return null; // malformed token: report without a time
+    }
+  }
+
+  /** Just enough DER to walk definite-length TLVs. */
+  private static final class Der {
+    final byte[] buf;
+    final int tag;
+    final int contentStart;
+    final int length;
+
+    private Der(byte[] buf, int tag, int contentStart, int length) {
+      this.buf = buf;
+      this.tag = tag;
+      this.contentStart = contentStart;
+      this.length = length;
+    }
+
+    static Der read(byte[] buf, int off) {
+      int tag = buf[off] & 0xff;
+      int p = off + 1;
+      int len = buf[p++] & 0xff;
+      if (len > 0x7f) {
+        int n = len & 0x7f;
+        if (n == 0 || n > 4) {
+          throw new IllegalArgumentException("Unsupported DER length");
+        }
+        len = 0;
+        for (int i = 0; i < n; i++) {
+          len = (len << 8) | (buf[p++] & 0xff);
+        }
+      }
+      if (len < 0 || p + len > buf.length) {
+        throw new IllegalArgumentException("DER length out of range");
+      }
+      return new Der(buf, tag, p, len);
+    }
+
+    Der child(int index) {
+      int p = contentStart;
+      for (int i = 0; ; i++) {
+        if (p >= contentStart + length) {
+          throw new IllegalArgumentException("DER child missing");
+        }
+        Der c = read(buf, p);
+        if (i == index) {
+          return c;
+        }
+        p = c.contentStart + c.length;
+      }
+    }
+  }
+
+  /** Replaces binary nodes with arrays of unsigned bytes, recursively. */
+  static JsonNode render(JsonNode node) {
+    if (node.isBinary()) {
+      ArrayNode arr = MAPPER.createArrayNode();
+      for (byte b : binary(node)) {
+        arr.add(b & 0xff);
+      }
+      return arr;
+    }
+    if (node.isArray()) {
+      ArrayNode arr = MAPPER.createArrayNode();
+      for (JsonNode c : node) {
+        arr.add(render(c));
+      }
+      return arr;
+    }
+    if (node.isObject()) {
+      ObjectNode obj = MAPPER.createObjectNode();
+      Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+      while (it.hasNext()) {
+        Map.Entry<String, JsonNode> e = it.next();
+        obj.set(e.getKey(), render(e.getValue()));
+      }
+      return obj;
+    }
+    return node;
+  }
+
+  private static byte[] binary(JsonNode node) {
+    try {
+      return node.binaryValue();
+    } catch (IOException e) {
+      return new byte[0];
+    }
+  }
+
+  private static JsonNode parseJson(byte[] payload) throws UnsupportedManifestException {
+    try {
+      return MAPPER.readTree(payload);
+    } catch (JsonProcessingException e) {
+      throw new UnsupportedManifestException("Malformed JSON assertion");
+    } catch (IOException e) {
+      throw new UnsupportedManifestException("Unreadable JSON assertion");
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Extracts the C2PA manifest store embedded in an image as JSON.
+ * Implementations emit the shape of `c2patool <file> -d`:
+ * {"active_manifest": "...", "manifests": {"<label>": {"claim": {...},
+ * "assertion_store": {...}, "signature": {...}}}}.
+ */
+public interface ManifestExtractor {
+
+  /**
+   * Reads the manifest store of the given image.
+   *
+   * @param imageFile local image file
+   * @return manifest store report as a JSON string
+   * @throws IOException if the file cannot be read or carries no manifest
+   */
+  String extractManifest(File imageFile) throws IOException;
+
+  /**
+   * Reads the manifest store from a seekable view of the image, such as a
+   * ranged remote object, without materializing it on disk. Extractors that
+   * need a local file keep this default; callers then download the image
+   * and use {@link #extractManifest(File)}.
+   *
+   * @param image image bytes
+   * @return manifest store report as a JSON string
+   * @throws UnsupportedManifestException if this extractor needs a local file
+   * @throws IOException if the image cannot be read or carries no manifest
+   */
+  default String extractManifest(SeekableByteChannel image) throws IOException {
+    throw new UnsupportedManifestException("Extractor requires a local file");
+  }
+
+  /**
+   * Identifies this extractor and its output format. Results cached by
+   * content hash are keyed on it, so it must change whenever the same bytes
+   * could produce a different report.
+   *
+   * @return short version tag, e.g. "jumbf-1"
+   */
+  default String version() {
+    return getClass().getSimpleName();
+  }
+}
@@ -0,0 +1,13 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a supported image was fully scanned and carries no C2PA
+ * manifest store.
+ */
+public class ManifestNotFoundException extends IOException {
+  public ManifestNotFoundException(String message) {
+    super(message);
+  }
+}
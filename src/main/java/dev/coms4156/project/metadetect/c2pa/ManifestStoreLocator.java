@@ -0,0 +1,331 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds the serialized C2PA manifest store (a JUMBF superbox) inside an image
+ * container without reading the image data itself.
+ * Supported containers:
+ * - JPEG: APP11 segments (JPEG XT box packets), reassembled in sequence order;
+ * - PNG: the `caBX` chunk;
+ * - ISO BMFF (MP4, MOV, HEIF/HEIC, AVIF): the top-level `uuid` box with the
+ *   C2PA extended type.
+ * Only box/segment headers are read while walking, so the number of bytes
+ * touched stays close to the size of the manifest store itself.
+ */
+final class ManifestStoreLocator {
+
+  /** Hard cap on a manifest store; real ones are tens of KB. */
+  static final int MAX_STORE_BYTES = 64 * 1024 * 1024;
+
+  /** Box bodies are read in chunks of this size rather than allocated whole. */
+  private static final int READ_CHUNK_BYTES = 64 * 1024;
+
+  private static final byte[] PNG_SIGNATURE = {
+      (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'
+  };
+
+  /** BMFF extended type of the C2PA box: d8fec3d6-1b0e-483c-9297-5828877ec481. */
+  private static final byte[] BMFF_C2PA_UUID = {
+      (byte) 0xd8, (byte) 0xfe, (byte) 0xc3, (byte) 0xd6, 0x1b, 0x0e, 0x48, 0x3c,
+      (byte) 0x92, (byte) 0x97, 0x58, 0x28, (byte) 0x87, 0x7e, (byte) 0xc4, (byte) 0x81
+  };
+
+  /** Marker returned by probe-mode walks; never parsed. */
+  private static final byte[] EMPTY = new byte[0];
+
+  private ManifestStoreLocator() { }
+
+  /**
+   * Locates and returns the manifest store bytes.
+   *
+   * @param ch readable, seekable view of the image
+   * @return the JUMBF superbox, starting at its LBox field
+   * @throws UnsupportedManifestException if the container format is not supported
+   * @throws ManifestNotFoundException if the container carries no manifest store
+   * @throws IOException on read errors
+   */
+  static byte[] locate(SeekableByteChannel ch) throws IOException {
+    return walk(ch, false);
+  }
+
+  /**
+   * Walks only segment/chunk/box headers and reports whether a C2PA marker
+   * (APP11 JUMBF packet, caBX chunk or C2PA uuid box) is present. The store
+   * itself is not read.
+   *
+   * @param ch readable, seekable view of the image
+   * @return true if a marker was found; false if the walk reached the end
+   *         of the metadata without finding one
+   * @throws UnsupportedManifestException if the container format is not supported
+   * @throws IOException on read errors, including running out of readable bytes
+   */
+  static boolean hasStore(SeekableByteChannel ch) throws IOException {
+    try {
+      return walk(ch, true) != null;
+    } catch (ManifestNotFoundException e) {
+      return false;
+    }
+  }
+
+  private static byte[] walk(SeekableByteChannel ch, boolean probe) throws IOException {
+    ch.position(0);
+    ByteBuffer head = ByteBuffer.allocate(12);
+    readUpTo(ch, head);
+    head.flip();
+
+    if (head.remaining() >= 3
+        && (head.get(0) & 0xff) == 0xff && (head.get(1) & 0xff) == 0xd8
+        && (head.get(2) & 0xff) == 0xff) {
+      return fromJpeg(ch, probe);
+    }
+    if (head.remaining() >= 8 && startsWith(head, PNG_SIGNATURE)) {
+      return fromPng(ch, probe);
+    }
+    if (head.remaining() >= 8 && head.get(4) == 'f' && head.get(5) == 't'
+        && head.get(6) == 'y' && head.get(7) == 'p') {
+      return fromBmff(ch, probe);
+    }
+    throw new UnsupportedManifestException("Unsupported container format");
+  }
+
+  private static byte[] fromJpeg(SeekableByteChannel ch, boolean probe) throws IOException {
+    // Box instance (En) -> packet sequence (Z) -> packet bytes after CI/En/Z.
+    Map<Integer, TreeMap<Long, byte[]>> packets = new TreeMap<>();
+    long pos = 2;
+    ByteBuffer marker = ByteBuffer.allocate(4);
+    while (true) {
+      ch.position(pos);
+      marker.clear();
+      readFully(ch, marker);
+      marker.flip();
+      if ((marker.get(0) & 0xff) != 0xff) {
+        throw new UnsupportedManifestException("Malformed JPEG marker");
+      }
+      int code = marker.get(1) & 0xff;
+      if (code == 0xd9 || code == 0xda) {
+        break; // EOI, or SOS: metadata segments all precede the scan
+      }
+      if (code == 0x01 || (code >= 0xd0 && code <= 0xd7) || code == 0xff) {
+        pos += code == 0xff ? 1 : 2; // standalone marker or fill byte
+        continue;
+      }
+      int len = marker.getShort(2) & 0xffff;
+      if (len < 2) {
+        throw new UnsupportedManifestException("Malformed JPEG segment length");
+      }
+      if (code == 0xeb && len >= 2 + 8 + 8) {
+        ByteBuffer seg = ByteBuffer.allocate(probe ? 16 : len - 2);
+        readFully(ch, seg);
+        seg.flip();
+        if (probe && seg.get(0) == 'J' && seg.get(1) == 'P'
+            && seg.get(12) == 'j' && seg.get(13) == 'u' && seg.get(14) == 'm'
+            && seg.get(15) == 'b') {
+          return EMPTY;
+        }
+        if (!probe && seg.get(0) == 'J' && seg.get(1) == 'P') {
+          int instance = seg.getShort(2) & 0xffff;
+          long sequence = seg.getInt(4) & 0xffffffffL;
+          byte[] rest = new byte[seg.remaining() - 8];
+          seg.position(8);
+          seg.get(rest);
+          packets.computeIfAbsent(instance, k -> new TreeMap<>()).put(sequence, rest);
+        }
+      }
+      pos += 2 + len;
+    }
+
+    for (TreeMap<Long, byte[]> parts : packets.values()) {
+      byte[] store = reassemble(parts);
+      if (store != null && isC2paStore(store)) {
+        return store;
+      }
+    }
+    throw new ManifestNotFoundException("No C2PA manifest found in JPEG");
+  }
+
+  /**
+   * Joins JPEG XT packets: each repeats the box header (LBox, TBox and, for
+   * large boxes, XLBox); the first packet's header is kept, later ones are
+   * stripped.
+   */
+  private static byte[] reassemble(TreeMap<Long, byte[]> parts) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    boolean first = true;
+    for (byte[] p : parts.values()) {
+      if (p.length < 8) {
+        return null;
+      }
+      int header = ByteBuffer.wrap(p).getInt() == 1 ? 16 : 8;
+      if (p.length < header) {
+        return null;
+      }
+      if (first) {
+        out.write(p);
+        first = false;
+      } else {
+        out.write(p, header, p.length - header);
+      }
+      if (out.size() > MAX_STORE_BYTES) {
+        throw new UnsupportedManifestException("Manifest store too large");
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] fromPng(SeekableByteChannel ch, boolean probe) throws IOException {
+    long pos = PNG_SIGNATURE.length;
+    ByteBuffer header = ByteBuffer.allocate(8);
+    while (pos + 8 <= ch.size()) {
+      ch.position(pos);
+      header.clear();
+      readFully(ch, header);
+      header.flip();
+      long len = header.getInt() & 0xffffffffL;
+      String type = new String(header.array(), 4, 4, StandardCharsets.ISO_8859_1);
+      if ("caBX".equals(type)) {
+        return probe ? EMPTY : readBody(ch, len);
+      }
+      if ("IEND".equals(type)) {
+        break;
+      }
+      pos += 8 + len + 4; // header + data + CRC
+    }
+    throw new ManifestNotFoundException("No C2PA manifest found in PNG");
+  }
+
+  private static byte[] fromBmff(SeekableByteChannel ch, boolean probe) throws IOException {
+    long pos = 0;
+    long size = ch.size();
+    ByteBuffer header = ByteBuffer.allocate(16);
+    while (pos + 8 <= size) {
+      ch.position(pos);
+      header.clear().limit(8);
+      readFully(ch, header);
+      header.flip();
+      long boxSize = header.getInt() & 0xffffffffL;
+      String type = new String(header.array(), 4, 4, StandardCharsets.ISO_8859_1);
+      int headerLen = 8;
+      if (boxSize == 1) {
+        header.clear().limit(8);
+        readFully(ch, header);
+        header.flip();
+        boxSize = header.getLong();
+        headerLen = 16;
+      } else if (boxSize == 0) {
+        boxSize = size - pos;
+      }
+      if (boxSize < headerLen || pos + boxSize > size) {
+        throw new UnsupportedManifestException("Malformed BMFF box");
+      }
+
+      if ("uuid".equals(type) && boxSize >= headerLen + 16 + 4) {
+        header.clear();
+        readFully(ch, header);
+        if (startsWith(header.flip(), BMFF_C2PA_UUID)) {
+          if (probe) {
+            return EMPTY;
+          }
+          byte[] store = fromC2paUuidBox(readBody(ch, boxSize - headerLen - 16));
+          if (store != null) {
+            return store;
+          }
+        }
+      }
+      pos += boxSize;
+    }
+    throw new ManifestNotFoundException("No C2PA manifest found in BMFF file");
+  }
+
+  /**
+   * Unwraps the C2PA uuid box body: version/flags, a NUL-terminated purpose
+   * and, for purpose "manifest", an 8-byte auxiliary offset before the store.
+   */
+  private static byte[] fromC2paUuidBox(byte[] body) {
+    int p = 4;
+    int nul = p;
+    while (nul < body.length && body[nul] != 0) {
+      nul++;
+    }
+    if (nul >= body.length) {
+      return null;
+    }
+    String purpose = new String(body, p, nul - p, StandardCharsets.US_ASCII);
+    if (!"manifest".equals(purpose)) {
+      return null; // e.g. "merkle" boxes carry hashes, not the store
+    }
+    int from = nul + 1 + 8;
+    if (from >= body.length) {
+      return null;
+    }
+    byte[] store = new byte[body.length - from];
+    System.arraycopy(body, from, store, 0, store.length);
+    return store;
+  }
+
+  private static boolean isC2paStore(byte[] store) {
+    try {
+      JumbfBox root = JumbfBox.parse(store);
+      return "c2pa".equals(root.typeCode());
+    } catch (UnsupportedManifestException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reads a box body of its declared length. A length past the end of the
+   * channel is rejected, and the body is read chunk by chunk instead of
+   * being allocated up front, so memory only grows with bytes actually
+   * delivered; on a ranged channel the byte budget ends the read first.
+   */
+  private static byte[] readBody(SeekableByteChannel ch, long len) throws IOException {
+    if (len > MAX_STORE_BYTES) {
+      throw new UnsupportedManifestException("Manifest store too large");
+    }
+    if (len > ch.size() - ch.position()) {
+      throw new UnsupportedManifestException("Manifest store runs past the end of the image");
+    }
+    int chunkBytes = (int) Math.min(len, READ_CHUNK_BYTES);
+    ByteArrayOutputStream body = new ByteArrayOutputStream(chunkBytes);
+    ByteBuffer chunk = ByteBuffer.allocate(chunkBytes);
+    for (long left = len; left > 0; left -= chunk.limit()) {
+      chunk.clear().limit((int) Math.min(left, chunk.capacity()));
+      readFully(ch, chunk);
+      body.write(chunk.array(), 0, chunk.limit());
+    }
+    return body.toByteArray();
+  }
+
+  private static boolean startsWith(ByteBuffer buf, byte[] prefix) {
+    if (buf.remaining() < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buf.get(buf.position() + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void readUpTo(SeekableByteChannel ch, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining() && ch.read(buf) > 0) {
+      // keep reading until full or EOF
+    }
+  }
+
+  private static void readFully(SeekableByteChannel ch, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) {
+      if (ch.read(buf) < 0) {
+        throw new EOFException("Unexpected end of image data");
+      }
+    }
+  }
+}
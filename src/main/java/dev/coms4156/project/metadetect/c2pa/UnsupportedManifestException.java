@@ -0,0 +1,14 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the in-process reader when a file's container format, or the
+ * JUMBF structure inside it, is something it does not understand. The
+ * engine treats this as "ask c2patool instead".
+ */
+public class UnsupportedManifestException extends IOException {
+  public UnsupportedManifestException(String message) {
+    super(message);
+  }
+}
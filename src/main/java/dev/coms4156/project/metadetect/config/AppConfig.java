@@ -1,8 +1,16 @@
 package dev.coms4156.project.metadetect.config;
 
+import dev.coms4156.project.metadetect.c2pa.C2paManifestEngine;
 import dev.coms4156.project.metadetect.c2pa.C2paToolInvoker;
+import dev.coms4156.project.metadetect.c2pa.C2paToolRuntime;
+import dev.coms4156.project.metadetect.c2pa.JumbfManifestReader;
+import dev.coms4156.project.metadetect.c2pa.ManifestExtractor;
+import java.time.Clock;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 /** Configuation class to provide constants to other processes. */
 @Configuration
@@ -13,12 +21,72 @@ public class AppConfig {
   * This method initializes the C2paToolInvoker with the path to the C2PA tool binary.
   * The tool is used to extract metadata and manifests from image files.
   *
+  * @param c2paToolPath path to the C2PA tool binary
+  * @param timeoutMs deadline for one tool invocation
+  * @param maxOutputBytes most bytes captured from each of the tool's stdout and stderr
   * @return a C2paToolInvoker instance configured with the tool path.
   */
   @Bean
-  public C2paToolInvoker c2paToolInvoker() {
-    // Path to the C2PA tool binary
-    String c2paToolPath = "tools/c2patool/c2patool";
-    return new C2paToolInvoker(c2paToolPath);
+  public C2paToolInvoker c2paToolInvoker(
+      @Value("${metadetect.c2pa.toolPath:tools/c2patool/c2patool}") String c2paToolPath,
+      @Value("${metadetect.c2pa.toolTimeoutMs:30000}") long timeoutMs,
+      @Value("${metadetect.c2pa.toolMaxOutputBytes:16777216}") int maxOutputBytes) {
+    return new C2paToolInvoker(c2paToolPath, Duration.ofMillis(timeoutMs), maxOutputBytes);
   }
-}
\ No newline at end of file
+
+  /**
+   * Managed c2patool: probes the binary and records its version at startup,
+   * bounds concurrent tool processes and quarantines the tool path when it
+   * keeps failing.
+   *
+   * @param invoker runs the configured binary
+   * @param c2paToolPath path to the C2PA tool binary, for diagnostics
+   * @param concurrency tool processes allowed at once
+   * @param window runs considered for the fault rate
+   * @param maxFailureRate fault rate that quarantines the tool path
+   * @param quarantineMs how long a quarantined tool path stays out of service
+   * @param clock time source
+   * @return the runtime; started before first use
+   */
+  @Bean(initMethod = "start")
+  public C2paToolRuntime c2paToolRuntime(
+      C2paToolInvoker invoker,
+      @Value("${metadetect.c2pa.toolPath:tools/c2patool/c2patool}") String c2paToolPath,
+      @Value("${metadetect.c2pa.toolConcurrency:2}") int concurrency,
+      @Value("${metadetect.c2pa.toolHealthWindow:20}") int window,
+      @Value("${metadetect.c2pa.toolMaxFailureRate:0.5}") double maxFailureRate,
+      @Value("${metadetect.c2pa.toolQuarantineMs:60000}") long quarantineMs,
+      Clock clock) {
+    return new C2paToolRuntime(c2paToolPath, invoker, concurrency, window, maxFailureRate,
+        Duration.ofMillis(quarantineMs), clock);
+  }
+
+  /**
+   * In-process C2PA manifest reader (no process fork per analysis).
+   *
+   * @return the JUMBF reader
+   */
+  @Bean
+  public JumbfManifestReader jumbfManifestReader() {
+    return new JumbfManifestReader();
+  }
+
+  /**
+   * Manifest extractor used by analyses: c2patool, the in-process reader,
+   * or the reader with c2patool as a fallback, per
+   * {@code metadetect.c2pa.engine}.
+   *
+   * @param reader in-process reader
+   * @param tool managed c2patool runtime
+   * @param engine "tool" (default), "auto" or "java"
+   * @return the engine
+   */
+  @Bean
+  @Primary
+  public ManifestExtractor manifestExtractor(
+      JumbfManifestReader reader,
+      C2paToolRuntime tool,
+      @Value("${metadetect.c2pa.engine:tool}") String engine) {
+    return new C2paManifestEngine(reader, tool, C2paManifestEngine.parseMode(engine));
+  }
+}
@@ -0,0 +1,45 @@
+package dev.coms4156.project.metadetect.config;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stable identifier for this service instance.
+ * Used as the lease owner on claimed analysis jobs so that finalization can
+ * be fenced to the node that actually holds the lease.
+ * Defaults to {@code hostname-pid-random} unless
+ * {@code metadetect.analysis.nodeId} is set explicitly.
+ */
+@Component
+public class NodeIdentity {
+
+  private final String id;
+
+  /**
+   * Resolves the node id.
+   *
+   * @param configured explicit id from configuration; blank to auto-generate
+   */
+  public NodeIdentity(@Value("${metadetect.analysis.nodeId:}") String configured) {
+    this.id = configured == null || configured.isBlank() ? generate() : configured.trim();
+  }
+
+  public String id() {
+    return id;
+  }
+
+  /** Builds a readable, unique-per-process id. */
+  private static String generate() {
+    String host;
+    try {
+      host = InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      host = "unknown-host";
+    }
+    String suffix = UUID.randomUUID().toString().substring(0, 8);
+    return host + "-" + ProcessHandle.current().pid() + "-" + suffix;
+  }
+}
@@ -78,8 +78,13 @@ public class SecurityConfig {
   CorsConfigurationSource corsConfigurationSource() {
     var cfg = new CorsConfiguration();
     cfg.setAllowedOrigins(List.of("*"));
-    cfg.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS"));
-    cfg.setAllowedHeaders(List.of("Authorization", "Content-Type"));
+    cfg.setAllowedMethods(List.of("GET", "POST", "PUT", "PATCH", "DELETE", "HEAD", "OPTIONS"));
+    // tus resumable uploads (/api/uploads) send and read the Tus/Upload headers;
+    // retried submissions send Idempotency-Key and read Retry-After on 409/429
+    cfg.setAllowedHeaders(List.of("Authorization", "Content-Type", "Idempotency-Key",
+        "Tus-Resumable", "Upload-Length", "Upload-Offset", "Upload-Metadata"));
+    cfg.setExposedHeaders(List.of("Location", "Retry-After", "Tus-Resumable", "Tus-Version",
+        "Tus-Extension", "Upload-Offset", "Upload-Length", "Upload-Image-Id"));
     cfg.setAllowCredentials(false);
 
     var source = new UrlBasedCorsConfigurationSource();
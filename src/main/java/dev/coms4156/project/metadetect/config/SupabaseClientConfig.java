@@ -1,39 +1,78 @@
 package dev.coms4156.project.metadetect.config;
 
+import io.netty.channel.ChannelOption;
+import java.time.Duration;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 /**
- * Preconfigured WebClient for calling Supabase Auth endpoints.
+ * Preconfigured WebClient for calling Supabase Auth and Storage endpoints.
  * Uses the anon public key (never the service role key).
+ * Connections come from a bounded keep-alive pool so consecutive analyses
+ * reuse sockets to Storage instead of reconnecting per object.
  */
 @Configuration
 public class SupabaseClientConfig {
 
   /**
-   * Builds a preconfigured WebClient for Supabase Auth requests
+   * Connection pool shared by all Supabase calls.
+   *
+   * @param maxConnections upper bound on open connections
+   * @param maxIdleTimeMs idle connections are closed after this long
+   * @return pooled connection provider, disposed with the context
+   */
+  @Bean(destroyMethod = "dispose")
+  public ConnectionProvider supabaseConnectionProvider(
+      @Value("${metadetect.http.maxConnections:32}") int maxConnections,
+      @Value("${metadetect.http.maxIdleTimeMs:30000}") long maxIdleTimeMs
+  ) {
+    return ConnectionProvider.builder("supabase")
+      .maxConnections(maxConnections)
+      .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+      .evictInBackground(Duration.ofMillis(maxIdleTimeMs))
+      .build();
+  }
+
+  /**
+   * Builds a preconfigured WebClient for Supabase requests
    * using the anon (public) key and project base URL.
    *
    * @param baseUrl the Supabase project base url
    * @param anonKey the public anon key for calling auth endpoints
+   * @param connectionProvider pool the client draws connections from
+   * @param connectTimeoutMs TCP connect timeout
+   * @param readTimeoutMs longest gap allowed between reads of one response
    * @return configured WebClient
    */
   @Bean
   public WebClient supabaseWebClient(
       @Value("${metadetect.supabase.url}") String baseUrl,
-      @Value("${metadetect.supabase.anonKey}") String anonKey
+      @Value("${metadetect.supabase.anonKey}") String anonKey,
+      ConnectionProvider connectionProvider,
+      @Value("${metadetect.http.connectTimeoutMs:5000}") int connectTimeoutMs,
+      @Value("${metadetect.http.readTimeoutMs:30000}") long readTimeoutMs
   ) {
+    HttpClient http = HttpClient.create(connectionProvider)
+        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+        // Applies between network reads, so long streamed bodies are not cut off
+        .responseTimeout(Duration.ofMillis(readTimeoutMs));
+
     return WebClient.builder()
+      .clientConnector(new ReactorClientHttpConnector(http))
       .baseUrl(baseUrl)
       .defaultHeader("apikey", anonKey)
       .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + anonKey)
       .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-      // allow reasonably sized responses without truncation
+      // allow reasonably sized responses without truncation; streamed
+      // DataBuffer bodies (downloads) are not aggregated and skip this cap
       .exchangeStrategies(ExchangeStrategies.builder()
         .codecs(c -> c.defaultCodecs().maxInMemorySize(2 * 1024 * 1024)) // 2MB
         .build())
@@ -2,15 +2,30 @@ package dev.coms4156.project.metadetect.controller;
 
 import dev.coms4156.project.metadetect.dto.Dtos;
 import dev.coms4156.project.metadetect.service.AnalyzeService;
+import dev.coms4156.project.metadetect.service.IdempotencyService;
+import dev.coms4156.project.metadetect.service.errors.AnalysisFinishedException;
+import dev.coms4156.project.metadetect.service.errors.IdempotencyKeyInFlightException;
+import dev.coms4156.project.metadetect.service.errors.IdempotencyKeyReusedException;
+import dev.coms4156.project.metadetect.service.errors.NotFoundException;
+import dev.coms4156.project.metadetect.service.errors.QueueFullException;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
  * HTTP API for starting and querying image analyses.
@@ -19,9 +34,21 @@ import org.springframework.web.bind.annotation.RestController;
  * - Exposes polling endpoints to retrieve analysis status, confidence scores, and stored manifests.
  * - Delegates ownership/RLS checks and business logic to {@link AnalyzeService}.
  * Contract
- * - POST /api/analyze/{imageId} returns 202 Accepted with an analysis identifier.
- * - GET  /api/analyze/{analysisId} returns current status and (optionally) a confidence score.
+ * - POST /api/analyze/{imageId} returns 202 Accepted with an analysis identifier,
+ *   or 429 Too Many Requests (with Retry-After) when the analysis queue is full.
+ *   With an Idempotency-Key header, a retry returns the original analysis
+ *   identifier instead of queuing another analysis.
+ * - POST /api/analyze/batch queues many images in one request and returns 202
+ *   with a per-image result (or 429 when the whole batch does not fit).
+ * - GET  /api/analyze/{analysisId} returns current status and (optionally) a confidence score;
+ *   with ?waitMs=... it long-polls until the analysis is DONE/FAILED/CANCELLED or the wait
+ *   expires.
+ * - GET/POST /api/analyze/status returns status for many analyses in one request.
+ * - GET  /api/analyze/{analysisId}/events and /api/analyze/events?ids=... stream
+ *   stage transitions as Server-Sent Events instead of polling.
  * - GET  /api/analyze/{analysisId}/manifest returns a captured C2PA manifest (if available).
+ * - DELETE /api/analyze/{analysisId} cancels a queued or running analysis and
+ *   the queued rest of its batch; 409 if it already finished.
  * - GET  /api/analyze/compare?left=...&right=...
  *     returns a lightweight comparison (Iteration 1 stub).
  * Error Handling
@@ -35,54 +62,145 @@ import org.springframework.web.bind.annotation.RestController;
 public class AnalyzeController {
 
   private final AnalyzeService analyzeService;
+  private final IdempotencyService idempotency;
 
   /**
    * Constructs the controller with required collaborators.
    *
    * @param analyzeService domain service coordinating analysis lifecycle and access checks
+   * @param idempotency replays responses of submissions retried with an Idempotency-Key
    */
-  public AnalyzeController(AnalyzeService analyzeService) {
+  public AnalyzeController(AnalyzeService analyzeService, IdempotencyService idempotency) {
     this.analyzeService = analyzeService;
+    this.idempotency = idempotency;
   }
 
   /**
    * Starts analysis for an existing image that is already persisted
    *     and stored (e.g., in Supabase Storage).
-   * The service enqueues or triggers downstream processing and
+   * The service enqueues the work for the worker pool and
    *     returns an identifier used for polling.
    * Response semantics
-   * - Returns HTTP 202 Accepted to indicate asynchronous processing has begun.
+   * - Returns HTTP 202 Accepted to indicate the analysis has been queued.
+   * - Returns HTTP 429 Too Many Requests when the queue is at capacity.
+   * - With an Idempotency-Key, a repeat returns the original analysisId (a
+   *   repeat while the original is running waits for it); the same key for
+   *   another image returns 422.
    *
    * @param imageId unique identifier of the previously uploaded image
+   * @param idempotencyKey optional client key making retries safe
    * @return 202 Accepted with a body containing
    *        {@link Dtos.AnalyzeStartResponse} and a new analysisId
    * @throws org.springframework.web.server.ResponseStatusException if the image does not exist or
    *         the caller is not authorized to analyze it (propagated from the service layer)
    */
   @PostMapping("/{imageId}")
-  public ResponseEntity<Dtos.AnalyzeStartResponse> submit(@PathVariable UUID imageId) {
+  public ResponseEntity<Dtos.AnalyzeStartResponse> submit(
+      @PathVariable UUID imageId,
+      @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey) {
     // Delegate to service: performs ownership checks, persists analysis row, and schedules work.
-    Dtos.AnalyzeStartResponse resp = analyzeService.submitAnalysis(imageId);
+    Dtos.AnalyzeStartResponse resp = idempotency.execute("analyze", idempotencyKey,
+        imageId.toString(), Dtos.AnalyzeStartResponse.class,
+        () -> analyzeService.submitAnalysis(imageId));
 
     // Per API contract, asynchronous start returns 202 Accepted rather than 200 OK.
     return ResponseEntity.status(HttpStatus.ACCEPTED).body(resp);
   }
 
+  /**
+   * Starts analysis for many images in one request. Ownership, URL signing
+   * and the PENDING inserts each take one round trip for the whole batch.
+   * Images that cannot be queued are reported per item rather than failing
+   * the request.
+   *
+   * @param body image ids to analyze
+   * @return 202 Accepted with one {@link Dtos.AnalyzeBatchItem} per distinct image id
+   * @throws IllegalArgumentException (400) when the list is empty or too long
+   */
+  @PostMapping("/batch")
+  public ResponseEntity<Dtos.AnalyzeBatchResponse> submitBatch(
+      @RequestBody Dtos.AnalyzeBatchRequest body) {
+    Dtos.AnalyzeBatchResponse resp = analyzeService.submitBatch(body.imageIds());
+    return ResponseEntity.status(HttpStatus.ACCEPTED).body(resp);
+  }
+
+  /**
+   * Status of many analyses in one request, resolved with a single
+   * owner-scoped query. Unknown or foreign ids are omitted from the result.
+   * Example
+   *   GET /api/analyze/status?ids={analysisId},{analysisId}
+   *
+   * @param ids analysis ids to look up
+   * @return 200 OK with one {@link Dtos.AnalysisStatusItem} per found analysis
+   */
+  @GetMapping("/status")
+  public ResponseEntity<List<Dtos.AnalysisStatusItem>> getStatuses(
+      @RequestParam("ids") List<UUID> ids) {
+    return ResponseEntity.ok(analyzeService.getStatuses(ids));
+  }
+
+  /**
+   * Body variant of {@link #getStatuses(List)} for id lists too long for a URL.
+   *
+   * @param body analysis ids to look up
+   * @return 200 OK with one {@link Dtos.AnalysisStatusItem} per found analysis
+   */
+  @PostMapping("/status")
+  public ResponseEntity<List<Dtos.AnalysisStatusItem>> postStatuses(
+      @RequestBody Dtos.AnalysisStatusRequest body) {
+    return ResponseEntity.ok(analyzeService.getStatuses(body.analysisIds()));
+  }
+
+  /**
+   * Streams the stages of one analysis as Server-Sent Events ("progress"
+   * events carrying {@link Dtos.AnalysisProgress}): its current stage first,
+   * then each transition, closing after DONE, FAILED or CANCELLED.
+   *
+   * @param analysisId analysis to follow
+   * @return the event stream
+   */
+  @GetMapping(path = "/{analysisId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter events(@PathVariable UUID analysisId) {
+    return analyzeService.streamProgress(List.of(analysisId));
+  }
+
+  /**
+   * Streams the stages of many analyses on one connection; closes once all
+   * of them are DONE, FAILED or CANCELLED. Ids the caller does not own are not
+   * followed.
+   * Example
+   *   GET /api/analyze/events?ids={analysisId},{analysisId}
+   *
+   * @param ids analyses to follow
+   * @return the event stream
+   */
+  @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter eventsForMany(@RequestParam("ids") List<UUID> ids) {
+    return analyzeService.streamProgress(ids);
+  }
+
   /**
    * Retrieves the current analysis status and (optionally) a confidence score suitable for polling.
    * Typical states include PENDING, COMPLETED, and FAILED.
+   * Long polling
+   * - With {@code waitMs > 0} the response is held (as an async servlet
+   *   response, without a request thread) until the analysis is DONE or
+   *   FAILED, or until the wait (capped server-side) expires, in which case
+   *   the current non-terminal status is returned.
    *
    * @param analysisId unique identifier returned by {@link #submit(UUID)}
+   * @param waitMs optional long-poll budget in milliseconds; 0 answers immediately
    * @return 200 OK with {@link Dtos.AnalyzeConfidenceResponse}
    * @throws org.springframework.web.server.ResponseStatusException
    *         if the analysis does not exist or the
    *         caller lacks access (propagated from the service layer)
    */
   @GetMapping("/{analysisId}")
-  public ResponseEntity<Dtos.AnalyzeConfidenceResponse> getStatus(@PathVariable UUID analysisId) {
+  public CompletableFuture<ResponseEntity<Dtos.AnalyzeConfidenceResponse>> getStatus(
+      @PathVariable UUID analysisId,
+      @RequestParam(name = "waitMs", defaultValue = "0") long waitMs) {
     // Service encapsulates lookup and authorization; controller simply returns the DTO.
-    Dtos.AnalyzeConfidenceResponse resp = analyzeService.getConfidence(analysisId);
-    return ResponseEntity.ok(resp);
+    return analyzeService.awaitConfidence(analysisId, waitMs).thenApply(ResponseEntity::ok);
   }
 
   /**
@@ -102,6 +220,21 @@ public class AnalyzeController {
     return ResponseEntity.ok(resp);
   }
 
+  /**
+   * Cancels a PENDING or RUNNING analysis. Work in progress is stopped (the
+   * download aborted, the c2patool process destroyed) and jobs of the same
+   * batch that are still queued are cancelled with it. Repeating the call
+   * for a cancelled analysis returns the same status.
+   *
+   * @param analysisId unique identifier of the analysis
+   * @return 200 OK with {@link Dtos.AnalyzeCancelResponse}; 404 if the
+   *     analysis is not accessible, 409 if it already finished
+   */
+  @DeleteMapping("/{analysisId}")
+  public ResponseEntity<Dtos.AnalyzeCancelResponse> cancel(@PathVariable UUID analysisId) {
+    return ResponseEntity.ok(analyzeService.cancelAnalysis(analysisId));
+  }
+
   /**
    * Lightweight comparison endpoint (Iteration 1 stub) that
    *  compares two images owned by the caller.
@@ -124,4 +257,63 @@ public class AnalyzeController {
     Dtos.AnalyzeCompareResponse resp = analyzeService.compare(leftImageId, rightImageId);
     return ResponseEntity.ok(resp);
   }
+
+  // ---------------------------------------------------------------------------
+  // Exception mapping
+  // ---------------------------------------------------------------------------
+
+  /**
+   * Maps a full analysis queue to 429 with a Retry-After hint.
+   */
+  @ExceptionHandler(QueueFullException.class)
+  public ResponseEntity<String> handleQueueFull(QueueFullException ex) {
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+      .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+      .body(ex.getMessage());
+  }
+
+  /**
+   * Maps a duplicate whose original request is still running to 409 with a
+   * Retry-After hint.
+   */
+  @ExceptionHandler(IdempotencyKeyInFlightException.class)
+  public ResponseEntity<String> handleIdempotencyInFlight(IdempotencyKeyInFlightException ex) {
+    return ResponseEntity.status(HttpStatus.CONFLICT)
+      .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+      .body(ex.getMessage());
+  }
+
+  /**
+   * Maps an Idempotency-Key reused for a different image to 422.
+   */
+  @ExceptionHandler(IdempotencyKeyReusedException.class)
+  public ResponseEntity<String> handleIdempotencyReused(IdempotencyKeyReusedException ex) {
+    return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(ex.getMessage());
+  }
+
+  /**
+   * Maps cancelling an analysis that already finished to 409.
+   */
+  @ExceptionHandler(AnalysisFinishedException.class)
+  public ResponseEntity<String> handleFinished(AnalysisFinishedException ex) {
+    return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+  }
+
+  /**
+   * Maps unknown (or not owned) analyses and images to 404.
+   */
+  @ExceptionHandler(NotFoundException.class)
+  public ResponseEntity<String> handleNotFound(NotFoundException ex) {
+    return ResponseEntity.status(HttpStatus.NOT_FOUND)
+      .contentType(MediaType.TEXT_PLAIN)
+      .body(ex.getMessage());
+  }
+
+  /**
+   * Maps invalid batch and status-list arguments to 400.
+   */
+  @ExceptionHandler(IllegalArgumentException.class)
+  public ResponseEntity<String> handleBadRequest(IllegalArgumentException ex) {
+    return ResponseEntity.badRequest().body("Invalid request: " + ex.getMessage());
+  }
 }
@@ -1,19 +1,27 @@
 package dev.coms4156.project.metadetect.controller;
 
 import dev.coms4156.project.metadetect.dto.Dtos;
+import dev.coms4156.project.metadetect.model.AnalysisSummary;
 import dev.coms4156.project.metadetect.model.Image;
+import dev.coms4156.project.metadetect.service.IdempotencyService;
 import dev.coms4156.project.metadetect.service.ImageService;
 import dev.coms4156.project.metadetect.service.UserService;
 import dev.coms4156.project.metadetect.service.errors.ForbiddenException;
+import dev.coms4156.project.metadetect.service.errors.IdempotencyKeyInFlightException;
+import dev.coms4156.project.metadetect.service.errors.IdempotencyKeyReusedException;
 import dev.coms4156.project.metadetect.service.errors.NotFoundException;
+import dev.coms4156.project.metadetect.service.errors.UnsupportedImageException;
+import dev.coms4156.project.metadetect.service.errors.UploadIncompleteException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -21,6 +29,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
@@ -41,42 +50,55 @@ public class ImageController {
 
   private final ImageService imageService;
   private final UserService userService;
+  private final IdempotencyService idempotency;
 
   /**
    * Constructs the controller with its required collaborators.
    *
    * @param imageService service providing DB + storage orchestration
    * @param userService service for retrieving caller identity/bearer
+   * @param idempotency replays responses of uploads retried with an Idempotency-Key
    */
-  public ImageController(ImageService imageService, UserService userService) {
+  public ImageController(ImageService imageService, UserService userService,
+                         IdempotencyService idempotency) {
     this.imageService = imageService;
     this.userService = userService;
+    this.idempotency = idempotency;
   }
 
   /**
-   * Lists the current user's images using simple paging.
-   * Validates page bounds up front to avoid service calls with invalid args.
+   * Lists the current user's images, newest first, one keyset page at a time.
+   * Validates the page size up front to avoid service calls with invalid args;
+   * sizes above {@link ImageService#MAX_PAGE_SIZE} are capped.
    *
-   * @param page zero-based page index
+   * With withAnalysis=true each image carries its latest analysis status and
+   * confidence, read in the same query, so a dashboard needs no per-image polling.
+   *
+   * @param cursor opaque token from the previous page's nextCursor; omit for the first page
    * @param size number of items per page
-   * @return paged list of ImageDto objects
+   * @param withAnalysis include each image's latest analysis
+   * @return the page of ImageDto objects and the cursor for the next page
    */
   @GetMapping
-  public ResponseEntity<List<Dtos.ImageDto>> list(
-      @RequestParam(defaultValue = "0") int page,
-      @RequestParam(defaultValue = "5") int size) {
+  public ResponseEntity<Dtos.ImagePageResponse> list(
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "5") int size,
+      @RequestParam(defaultValue = "false") boolean withAnalysis) {
 
-    if (page < 0 || size <= 0) {
+    if (size <= 0) {
       return ResponseEntity.badRequest().build();
     }
 
     UUID userId = userService.getCurrentUserIdOrThrow();
-    List<Image> results = imageService.listByOwner(userId, page, size);
+    ImageService.ImagePage page = withAnalysis
+        ? imageService.listByOwnerWithLatestAnalysis(userId, cursor, size)
+        : imageService.listByOwner(userId, cursor, size);
 
-    List<Dtos.ImageDto> items =
-        results.stream().map(this::toDto).collect(Collectors.toList());
+    List<Dtos.ImageDto> items = page.items().stream()
+        .map(img -> toDto(img, page.latestAnalyses().get(img.getId())))
+        .collect(Collectors.toList());
 
-    return ResponseEntity.ok(items);
+    return ResponseEntity.ok(new Dtos.ImagePageResponse(items, page.nextCursor()));
   }
 
   /**
@@ -145,18 +167,62 @@ public class ImageController {
 
   /**
    * Uploads a new image binary + metadata, returning the created resource.
+   * With an Idempotency-Key, a retry of the same file (same name, size and
+   * type) returns the image created by the first attempt instead of storing
+   * a second copy.
    *
    * @param file multipart file uploaded from the client
+   * @param idempotencyKey optional client key making retries safe
    * @return DTO describing the created image
    */
   @PostMapping(path = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
   public ResponseEntity<Dtos.ImageDto> upload(
-      @RequestPart("file") MultipartFile file) throws Exception {
+      @RequestPart("file") MultipartFile file,
+      @RequestHeader(name = IdempotencyService.HEADER, required = false)
+      String idempotencyKey) throws Exception {
+
+    UUID userId = userService.getCurrentUserIdOrThrow();
+    String request = file.getOriginalFilename() + "\n" + file.getSize() + "\n"
+        + file.getContentType();
+    Dtos.ImageDto created = idempotency.execute("upload", idempotencyKey, request,
+        Dtos.ImageDto.class, () -> toDto(imageService.upload(userId, file)));
+    return ResponseEntity.status(HttpStatus.CREATED).body(created);
+  }
+
+  /**
+   * Starts a direct-to-storage upload. Creates the image row and returns a
+   * signed URL the client uploads the file to, bypassing this service.
+   *
+   * @param req client-side file name
+   * @return 201 with the image id and signed upload URL
+   */
+  @PostMapping("/uploads")
+  public ResponseEntity<Dtos.UploadIntentResponse> createUploadIntent(
+      @RequestBody Dtos.UploadIntentRequest req) {
 
     UUID userId = userService.getCurrentUserIdOrThrow();
     String bearer = userService.getCurrentBearerOrThrow();
-    Image created = imageService.upload(userId, bearer, file);
-    return ResponseEntity.status(HttpStatus.CREATED).body(toDto(created));
+    ImageService.UploadIntent intent =
+        imageService.createUploadIntent(userId, bearer, req.filename());
+    return ResponseEntity.status(HttpStatus.CREATED).body(new Dtos.UploadIntentResponse(
+        intent.image().getId().toString(), intent.uploadUrl()));
+  }
+
+  /**
+   * Completes a direct upload once the client has PUT the file to its
+   * signed URL. Returns 409 if Storage does not have the object yet.
+   *
+   * @param id image identifier from the upload intent
+   * @return the committed image
+   */
+  @PostMapping("/{id}/commit")
+  public ResponseEntity<Dtos.ImageDto> commitUpload(@PathVariable String id) {
+    UUID userId = userService.getCurrentUserIdOrThrow();
+    String bearer = userService.getCurrentBearerOrThrow();
+    UUID imageId = parseUuidOrThrow(id);
+
+    Image committed = imageService.commitUpload(userId, bearer, imageId);
+    return ResponseEntity.ok(toDto(committed));
   }
 
   /**
@@ -189,6 +255,28 @@ public class ImageController {
     return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ex.getMessage());
   }
 
+  @ExceptionHandler(UploadIncompleteException.class)
+  public ResponseEntity<String> handleUploadIncomplete(UploadIncompleteException ex) {
+    return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+  }
+
+  @ExceptionHandler(IdempotencyKeyInFlightException.class)
+  public ResponseEntity<String> handleIdempotencyInFlight(IdempotencyKeyInFlightException ex) {
+    return ResponseEntity.status(HttpStatus.CONFLICT)
+      .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+      .body(ex.getMessage());
+  }
+
+  @ExceptionHandler(IdempotencyKeyReusedException.class)
+  public ResponseEntity<String> handleIdempotencyReused(IdempotencyKeyReusedException ex) {
+    return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(ex.getMessage());
+  }
+
+  @ExceptionHandler(UnsupportedImageException.class)
+  public ResponseEntity<String> handleUnsupportedImage(UnsupportedImageException ex) {
+    return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).body(ex.getMessage());
+  }
+
   @ExceptionHandler({
     IllegalArgumentException.class,
     MethodArgumentTypeMismatchException.class
@@ -217,13 +305,30 @@ public class ImageController {
    * Maps domain Image to an API-facing DTO.
    */
   private Dtos.ImageDto toDto(Image img) {
+    return toDto(img, null);
+  }
+
+  /**
+   * Maps domain Image to an API-facing DTO with its latest analysis, if any.
+   */
+  private Dtos.ImageDto toDto(Image img, @Nullable AnalysisSummary latest) {
     return new Dtos.ImageDto(
       img.getId().toString(),
       img.getFilename(),
       img.getUserId().toString(),
       img.getUploadedAt(),
       img.getLabels() == null ? List.of() : Arrays.asList(img.getLabels()),
-      img.getNote()
+      img.getNote(),
+      img.getContentType(),
+      img.getWidth(),
+      img.getHeight(),
+      img.getSizeBytes(),
+      latest == null ? null : new Dtos.LatestAnalysisDto(
+        latest.analysisId().toString(),
+        latest.status().name(),
+        latest.confidence(),
+        latest.createdAt(),
+        latest.completedAt())
     );
   }
 }
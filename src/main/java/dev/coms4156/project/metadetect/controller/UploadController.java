@@ -0,0 +1,212 @@
+package dev.coms4156.project.metadetect.controller;
+
+import dev.coms4156.project.metadetect.dto.Dtos;
+import dev.coms4156.project.metadetect.model.UploadSession;
+import dev.coms4156.project.metadetect.service.ResumableUploadService;
+import dev.coms4156.project.metadetect.service.UserService;
+import dev.coms4156.project.metadetect.service.errors.ForbiddenException;
+import dev.coms4156.project.metadetect.service.errors.NotFoundException;
+import dev.coms4156.project.metadetect.service.errors.UploadOffsetConflictException;
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Resumable upload endpoint speaking tus 1.0.0 (core + creation), so stock
+ * tus clients can upload large media in chunks and resume after a drop.
+ * Contract
+ * - OPTIONS /api/uploads advertises the supported version and extensions.
+ * - POST  /api/uploads with Upload-Length (and optional Upload-Metadata
+ *   `filename`, `filetype`) returns 201 with Location /api/uploads/{id}.
+ * - HEAD  /api/uploads/{id} returns Upload-Offset / Upload-Length.
+ * - PATCH /api/uploads/{id} (application/offset+octet-stream) appends a
+ *   chunk at Upload-Offset and returns 204 with the new Upload-Offset, or
+ *   409 with the offset to resume from.
+ * The image's storage path is committed when the last chunk lands; the
+ * image id is returned in the POST body and as Upload-Image-Id.
+ */
+@RestController
+@RequestMapping("/api/uploads")
+public class UploadController {
+
+  static final String TUS_RESUMABLE = "Tus-Resumable";
+  static final String TUS_VERSION = "1.0.0";
+  static final String UPLOAD_OFFSET = "Upload-Offset";
+  static final String UPLOAD_LENGTH = "Upload-Length";
+  static final String UPLOAD_IMAGE_ID = "Upload-Image-Id";
+
+  private final ResumableUploadService uploads;
+  private final UserService userService;
+
+  /**
+   * Constructs the controller.
+   *
+   * @param uploads resumable upload orchestration
+   * @param userService caller identity and bearer
+   */
+  public UploadController(ResumableUploadService uploads, UserService userService) {
+    this.uploads = uploads;
+    this.userService = userService;
+  }
+
+  /**
+   * tus discovery.
+   *
+   * @return 204 with Tus-Version and Tus-Extension
+   */
+  @RequestMapping(method = RequestMethod.OPTIONS)
+  public ResponseEntity<Void> options() {
+    return ResponseEntity.noContent()
+        .header(TUS_RESUMABLE, TUS_VERSION)
+        .header("Tus-Version", TUS_VERSION)
+        .header("Tus-Extension", "creation")
+        .build();
+  }
+
+  /**
+   * Creates a resumable upload and its image row.
+   *
+   * @param length total size in bytes (Upload-Length)
+   * @param metadata tus Upload-Metadata, e.g. `filename <base64>,filetype <base64>`
+   * @return 201 with Location of the upload
+   */
+  @PostMapping
+  public ResponseEntity<Dtos.ResumableUploadResponse> create(
+      @RequestHeader(UPLOAD_LENGTH) long length,
+      @RequestHeader(value = "Upload-Metadata", required = false) String metadata) {
+
+    UUID userId = userService.getCurrentUserIdOrThrow();
+    String bearer = userService.getCurrentBearerOrThrow();
+    Map<String, String> meta = parseMetadata(metadata);
+
+    UploadSession session =
+        uploads.create(userId, bearer, length, meta.get("filename"), meta.get("filetype"));
+    return ResponseEntity.created(URI.create("/api/uploads/" + session.id()))
+        .header(TUS_RESUMABLE, TUS_VERSION)
+        .header(UPLOAD_OFFSET, "0")
+        .header(UPLOAD_IMAGE_ID, session.imageId().toString())
+        .body(toDto(session));
+  }
+
+  /**
+   * Reports how much of an upload has been received.
+   *
+   * @param id upload id
+   * @return 200 with Upload-Offset and Upload-Length, never cached
+   */
+  @RequestMapping(path = "/{id}", method = RequestMethod.HEAD)
+  public ResponseEntity<Void> offset(@PathVariable UUID id) {
+    UploadSession session = uploads.get(userService.getCurrentUserIdOrThrow(), id);
+    return ResponseEntity.ok()
+        .cacheControl(CacheControl.noStore())
+        .header(TUS_RESUMABLE, TUS_VERSION)
+        .header(UPLOAD_OFFSET, Long.toString(session.uploadOffset()))
+        .header(UPLOAD_LENGTH, Long.toString(session.uploadLength()))
+        .header(UPLOAD_IMAGE_ID, session.imageId().toString())
+        .build();
+  }
+
+  /**
+   * Appends the request body at Upload-Offset, streaming it to Storage.
+   *
+   * @param id upload id
+   * @param offset offset the chunk starts at
+   * @param request raw request, whose body is the chunk
+   * @return 204 with the new Upload-Offset
+   * @throws IOException if the chunk cannot be read
+   */
+  @PatchMapping(path = "/{id}", consumes = "application/offset+octet-stream")
+  public ResponseEntity<Void> append(@PathVariable UUID id,
+                                     @RequestHeader(UPLOAD_OFFSET) long offset,
+                                     HttpServletRequest request) throws IOException {
+    UUID userId = userService.getCurrentUserIdOrThrow();
+    String bearer = userService.getCurrentBearerOrThrow();
+
+    UploadSession session = uploads.append(userId, bearer, id, offset,
+        request.getContentLengthLong(), request.getInputStream());
+    return ResponseEntity.noContent()
+        .header(TUS_RESUMABLE, TUS_VERSION)
+        .header(UPLOAD_OFFSET, Long.toString(session.uploadOffset()))
+        .header(UPLOAD_IMAGE_ID, session.imageId().toString())
+        .build();
+  }
+
+  // ---------------------------------------------------------------------------
+  // Exception mapping
+  // ---------------------------------------------------------------------------
+
+  @ExceptionHandler(UploadOffsetConflictException.class)
+  public ResponseEntity<String> handleOffsetConflict(UploadOffsetConflictException ex) {
+    return ResponseEntity.status(HttpStatus.CONFLICT)
+      .header(TUS_RESUMABLE, TUS_VERSION)
+      .header(UPLOAD_OFFSET, Long.toString(ex.getCurrentOffset()))
+      .body(ex.getMessage());
+  }
+
+  @ExceptionHandler(NotFoundException.class)
+  public ResponseEntity<String> handleNotFound(NotFoundException ex) {
+    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
+  }
+
+  @ExceptionHandler(ForbiddenException.class)
+  public ResponseEntity<String> handleForbidden(ForbiddenException ex) {
+    return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ex.getMessage());
+  }
+
+  @ExceptionHandler(IllegalArgumentException.class)
+  public ResponseEntity<String> handleBadRequest(IllegalArgumentException ex) {
+    return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+      .body("Invalid request: " + ex.getMessage());
+  }
+
+  // ---------------------------------------------------------------------------
+  // Helpers
+  // ---------------------------------------------------------------------------
+
+  /**
+   * Parses tus Upload-Metadata: comma-separated `key base64value` pairs,
+   * where the value may be omitted.
+   */
+  static Map<String, String> parseMetadata(String header) {
+    Map<String, String> out = new HashMap<>();
+    if (header == null || header.isBlank()) {
+      return out;
+    }
+    for (String pair : header.split(",")) {
+      String[] kv = pair.trim().split(" ", 2);
+      if (kv[0].isEmpty()) {
+        continue;
+      }
+      try {
+        String value = kv.length < 2 ? "" : new String(
+            Base64.getDecoder().decode(kv[1].trim()), StandardCharsets.UTF_8);
+        out.put(kv[0], value);
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Upload-Metadata value for '" + kv[0]
+            + "' is not base64");
+      }
+    }
+    return out;
+  }
+
+  private Dtos.ResumableUploadResponse toDto(UploadSession s) {
+    return new Dtos.ResumableUploadResponse(
+        s.id().toString(), s.imageId().toString(), s.uploadLength(), s.uploadOffset());
+  }
+}
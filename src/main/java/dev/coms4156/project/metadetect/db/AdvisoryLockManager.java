@@ -0,0 +1,124 @@
+package dev.coms4156.project.metadetect.db;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds session-level Postgres advisory locks for jobs running on this node.
+ * Why a dedicated connection:
+ * - Session locks live as long as the session, so Postgres releases every
+ *   lock automatically if this process dies or loses its connection.
+ * - Holding them on pooled connections would pin one Hikari connection per
+ *   running job; a single dedicated session can hold any number of locks.
+ * Semantics:
+ * - {@link #tryLock} returns false if another session holds the lock, or if
+ *   this node already holds it (session locks are re-entrant in Postgres,
+ *   so the local set is checked first).
+ * - If the dedicated connection breaks, all locks are considered lost and
+ *   the connection is re-opened on next use.
+ */
+@Component
+public class AdvisoryLockManager {
+
+  private static final Logger log = LoggerFactory.getLogger(AdvisoryLockManager.class);
+
+  private final SingleConnectionDataSource lockSession;
+  private final JdbcTemplate jdbc;
+  private final Set<UUID> held = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Prepares (but does not open) the dedicated lock session.
+   *
+   * @param props datasource settings shared with the main pool
+   */
+  public AdvisoryLockManager(DataSourceProperties props) {
+    this(new SingleConnectionDataSource(
+        props.determineUrl(),
+        props.determineUsername(),
+        props.determinePassword(),
+        true));
+  }
+
+  /** Test seam: wraps an existing single-connection datasource. */
+  AdvisoryLockManager(SingleConnectionDataSource lockSession) {
+    this.lockSession = lockSession;
+    this.jdbc = new JdbcTemplate(lockSession);
+  }
+
+  /**
+   * Attempts to take the advisory lock for a job without waiting.
+   *
+   * @param jobId job identifier
+   * @return true if this node now holds the lock
+   */
+  public synchronized boolean tryLock(UUID jobId) {
+    if (held.contains(jobId)) {
+      return false;
+    }
+    try {
+      Boolean ok = jdbc.queryForObject(
+          "select pg_try_advisory_lock(?)", Boolean.class, key(jobId));
+      if (Boolean.TRUE.equals(ok)) {
+        held.add(jobId);
+        return true;
+      }
+      return false;
+    } catch (DataAccessException e) {
+      resetSession(e);
+      return false;
+    }
+  }
+
+  /**
+   * Releases a lock previously taken with {@link #tryLock}. No-op otherwise.
+   *
+   * @param jobId job identifier
+   */
+  public synchronized void unlock(UUID jobId) {
+    if (!held.remove(jobId)) {
+      return;
+    }
+    try {
+      jdbc.queryForObject("select pg_advisory_unlock(?)", Boolean.class, key(jobId));
+    } catch (DataAccessException e) {
+      resetSession(e);
+    }
+  }
+
+  /** True if this node currently holds the job's lock. */
+  public boolean isHeld(UUID jobId) {
+    return held.contains(jobId);
+  }
+
+  /** Closes the dedicated session; Postgres releases all its locks. */
+  @PreDestroy
+  public synchronized void close() {
+    held.clear();
+    lockSession.destroy();
+  }
+
+  /**
+   * Drops the broken session. Server-side locks died with it, so the local
+   * view is cleared to match.
+   */
+  private void resetSession(DataAccessException cause) {
+    log.warn("Advisory lock session failed; {} lock(s) lost: {}",
+        held.size(), cause.getMessage());
+    held.clear();
+    lockSession.resetConnection();
+  }
+
+  /** Maps a UUID onto the bigint advisory-lock key space. */
+  static long key(UUID id) {
+    return id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+  }
+}
@@ -4,6 +4,7 @@ import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * Central DTO (Data Transfer Object) definitions for MetaDetect.
@@ -37,6 +38,39 @@ public final class Dtos {
    */
   public record AnalyzeStartResponse(String analysisId) { }
 
+  /**
+   * Request body for POST /api/analyze/batch.
+   */
+  public record AnalyzeBatchRequest(List<UUID> imageIds) { }
+
+  /**
+   * Per-image outcome of a batch submission. analysisId is set only when
+   * status is QUEUED; other statuses are NOT_FOUND, MISSING_STORAGE_PATH
+   * and SIGN_FAILED.
+   */
+  public record AnalyzeBatchItem(
+      String imageId,
+      String analysisId,
+      String status
+  ) { }
+
+  /**
+   * Returned by POST /api/analyze/batch (202 Accepted), one item per
+   * distinct image id in request order.
+   */
+  public record AnalyzeBatchResponse(List<AnalyzeBatchItem> items) { }
+
+  /**
+   * Returned by DELETE /api/analyze/{analysisId}. status is CANCELLED;
+   * droppedFromBatch counts the queued jobs of the same batch that were
+   * cancelled with it.
+   */
+  public record AnalyzeCancelResponse(
+      String analysisId,
+      String status,
+      int droppedFromBatch
+  ) { }
+
   /**
    * Pollable snapshot of an analysis job status.
    * Matches GET /api/analyze/{analysisId}.
@@ -50,6 +84,28 @@ public final class Dtos {
       String errorMessage     // present when status == FAILED
   ) { }
 
+  /**
+   * Request body for POST /api/analyze/status.
+   */
+  public record AnalysisStatusRequest(List<UUID> analysisIds) { }
+
+  /**
+   * Compact status entry returned by GET/POST /api/analyze/status.
+   */
+  public record AnalysisStatusItem(
+      String analysisId,
+      String imageId,
+      String status,
+      Double confidence,      // nullable until a scorer exists
+      Instant completedAt     // nullable until terminal state
+  ) { }
+
+  /**
+   * Data of a "progress" Server-Sent Event from /api/analyze/{id}/events.
+   * stage is one of QUEUED, DOWNLOADING, EXTRACTING, DONE, FAILED, CANCELLED.
+   */
+  public record AnalysisProgress(String analysisId, String stage) { }
+
   /**
    * Manifest response for a completed analysis.
    * Raw JSON is returned as a String to avoid lossy re-parsing.
@@ -130,6 +186,9 @@ public final class Dtos {
 
   /**
    * Public view of an image. Returned by list/get endpoints.
+   * Content fields are null for images whose bytes did not pass through
+   * the service's ingest stage. latestAnalysis is only filled by the list
+   * endpoint with withAnalysis=true, and stays null for images never analyzed.
    */
   public record ImageDto(
       String id,
@@ -137,7 +196,32 @@ public final class Dtos {
       String userId,
       OffsetDateTime uploadedAt,
       List<String> labels,
-      String note
+      String note,
+      String contentType,
+      Integer width,
+      Integer height,
+      Long sizeBytes,
+      LatestAnalysisDto latestAnalysis
+  ) { }
+
+  /**
+   * Status snapshot of an image's most recent analysis, embedded in ImageDto.
+   */
+  public record LatestAnalysisDto(
+      String analysisId,
+      String status,
+      Double confidence,
+      Instant createdAt,
+      Instant completedAt
+  ) { }
+
+  /**
+   * One page of the caller's images. Pass {@code nextCursor} back as
+   * {@code cursor} to fetch the following page; it is null on the last page.
+   */
+  public record ImagePageResponse(
+      List<ImageDto> items,
+      String nextCursor
   ) { }
 
   /**
@@ -148,6 +232,27 @@ public final class Dtos {
       List<String> labels
   ) { }
 
+  /**
+   * Request body for starting a direct-to-storage upload.
+   */
+  public record UploadIntentRequest(String filename) { }
+
+  /**
+   * Response for an upload intent: the client PUTs the file to `uploadUrl`,
+   * then commits `imageId`.
+   */
+  public record UploadIntentResponse(String imageId, String uploadUrl) { }
+
+  /**
+   * Response for a newly created resumable (tus) upload.
+   */
+  public record ResumableUploadResponse(
+      String uploadId,
+      String imageId,
+      long uploadLength,
+      long uploadOffset
+  ) { }
+
   /* -------------------------------------------------------------------------- */
   /* AUTHENTICATION DTOs                                                        */
   /* -------------------------------------------------------------------------- */
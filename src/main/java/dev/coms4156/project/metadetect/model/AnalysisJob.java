@@ -0,0 +1,38 @@
+package dev.coms4156.project.metadetect.model;
+
+import java.util.UUID;
+import org.springframework.lang.Nullable;
+
+/**
+ * Read-only view of an `analysis_reports` row that a worker has claimed.
+ * Produced by the queue claim query, which moves the row to RUNNING and
+ * joins the owning image to expose its storage path.
+ *
+ * @param analysisId primary key of the claimed report
+ * @param imageId FK to the analyzed image
+ * @param userId owner of the image; extraction is shared fairly between owners
+ * @param storagePath object key of the image (used to infer file extension)
+ * @param sourceUrl signed download URL captured at submit time, or a fresh
+ *     one when that has expired
+ * @param attempts number of times this job has been claimed, including this one
+ * @param leaseOwner node id holding the lease; finalization is fenced on it
+ * @param contentSha256 digest of the image bytes, or null if the upload was not
+ *     ingested by the service; keys the manifest cache
+ */
+public record AnalysisJob(
+    UUID analysisId,
+    UUID imageId,
+    UUID userId,
+    String storagePath,
+    String sourceUrl,
+    int attempts,
+    String leaseOwner,
+    @Nullable String contentSha256
+) {
+
+  /** The same job, downloading through another signed URL. */
+  public AnalysisJob withSourceUrl(String url) {
+    return new AnalysisJob(analysisId, imageId, userId, storagePath, url, attempts, leaseOwner,
+        contentSha256);
+  }
+}
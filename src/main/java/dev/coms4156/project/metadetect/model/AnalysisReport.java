@@ -24,6 +24,14 @@ import java.util.UUID;
  *   confidence   DOUBLE PRECISION NULL
  *   details      JSONB NULL
  *   created_at   TIMESTAMPTZ NOT NULL DEFAULT now()
+ *   source_url   TEXT NULL          (signed download URL, cleared when terminal)
+ *   attempts     INTEGER NOT NULL DEFAULT 0
+ *   started_at   TIMESTAMPTZ NULL   (set when a worker claims the job)
+ *   completed_at TIMESTAMPTZ NULL   (set on DONE/FAILED)
+ *   lease_owner  TEXT NULL          (node id of the worker running the job)
+ *   heartbeat_at TIMESTAMPTZ NULL   (lease renewal, see AnalysisLeaseReaper)
+ *   manifest_sha256  TEXT NULL      (with manifest_version: FK -> manifests;
+ *   manifest_version TEXT NULL       set instead of details for cached results)
  * Notes:
  *  - `details` is stored as a raw JSON string for portability. It can
  *    be upgraded to `JsonNode` or a custom converter later.
@@ -57,6 +65,42 @@ public class AnalysisReport {
   @Column(name = "created_at", nullable = false)
   private Instant createdAt;
 
+  /**
+   * Signed URL captured at submit time so queue workers can download the
+   * object without the caller's bearer token.
+   */
+  @Column(name = "source_url")
+  private String sourceUrl;
+
+  @Column(name = "attempts", nullable = false)
+  private int attempts;
+
+  @Column(name = "started_at")
+  private Instant startedAt;
+
+  @Column(name = "completed_at")
+  private Instant completedAt;
+
+  @Column(name = "lease_owner")
+  private String leaseOwner;
+
+  @Column(name = "heartbeat_at")
+  private Instant heartbeatAt;
+
+  /**
+   * Key of the shared `manifests` entry holding this report's result. When
+   * set, `details` is null and the manifest is read from the cache.
+   */
+  @Column(name = "manifest_sha256")
+  private String manifestSha256;
+
+  @Column(name = "manifest_version")
+  private String manifestVersion;
+
+  /** ManifestExtractor.version() that produced a DONE report. */
+  @Column(name = "engine_version")
+  private String engineVersion;
+
   /* ---------------------------------------------------------------------- */
   /* Lifecycle hook                                                         */
   /* ---------------------------------------------------------------------- */
@@ -147,6 +191,78 @@ public class AnalysisReport {
     this.createdAt = createdAt;
   }
 
+  public String getSourceUrl() {
+    return sourceUrl;
+  }
+
+  public void setSourceUrl(String sourceUrl) {
+    this.sourceUrl = sourceUrl;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  public Instant getStartedAt() {
+    return startedAt;
+  }
+
+  public void setStartedAt(Instant startedAt) {
+    this.startedAt = startedAt;
+  }
+
+  public Instant getCompletedAt() {
+    return completedAt;
+  }
+
+  public void setCompletedAt(Instant completedAt) {
+    this.completedAt = completedAt;
+  }
+
+  public String getLeaseOwner() {
+    return leaseOwner;
+  }
+
+  public void setLeaseOwner(String leaseOwner) {
+    this.leaseOwner = leaseOwner;
+  }
+
+  public Instant getHeartbeatAt() {
+    return heartbeatAt;
+  }
+
+  public void setHeartbeatAt(Instant heartbeatAt) {
+    this.heartbeatAt = heartbeatAt;
+  }
+
+  public String getManifestSha256() {
+    return manifestSha256;
+  }
+
+  public void setManifestSha256(String manifestSha256) {
+    this.manifestSha256 = manifestSha256;
+  }
+
+  public String getManifestVersion() {
+    return manifestVersion;
+  }
+
+  public void setManifestVersion(String manifestVersion) {
+    this.manifestVersion = manifestVersion;
+  }
+
+  public String getEngineVersion() {
+    return engineVersion;
+  }
+
+  public void setEngineVersion(String engineVersion) {
+    this.engineVersion = engineVersion;
+  }
+
   /* ---------------------------------------------------------------------- */
   /* Equality / diagnostic helpers                                          */
   /* ---------------------------------------------------------------------- */
@@ -188,7 +304,9 @@ public class AnalysisReport {
    */
   public enum ReportStatus {
     PENDING,
+    RUNNING,
     DONE,
-    FAILED
+    FAILED,
+    CANCELLED
   }
 }
@@ -0,0 +1,26 @@
+package dev.coms4156.project.metadetect.model;
+
+import dev.coms4156.project.metadetect.model.AnalysisReport.ReportStatus;
+import java.time.Instant;
+import java.util.UUID;
+import org.springframework.lang.Nullable;
+
+/**
+ * Read-only status view of an `analysis_reports` row, without its details
+ * payload. Produced by list and batch queries that join reports to images.
+ *
+ * @param analysisId primary key of the report
+ * @param imageId FK to the analyzed image
+ * @param status lifecycle state
+ * @param confidence score, null until a scorer exists or the job finishes
+ * @param createdAt submission time
+ * @param completedAt time the job reached DONE/FAILED/CANCELLED, null before that
+ */
+public record AnalysisSummary(
+    UUID analysisId,
+    UUID imageId,
+    ReportStatus status,
+    @Nullable Double confidence,
+    Instant createdAt,
+    @Nullable Instant completedAt
+) { }
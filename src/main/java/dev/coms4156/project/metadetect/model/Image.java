@@ -38,6 +38,24 @@ public class Image {
 
   private String note;
 
+  /*
+   * Content facts computed by the upload ingest stage; null when the bytes
+   * did not pass through the ingest stage (legacy rows, direct/resumable uploads).
+   */
+
+  @Column("content_sha256")
+  private String contentSha256;
+
+  @Column("content_type")
+  private String contentType;
+
+  private Integer width;
+
+  private Integer height;
+
+  @Column("size_bytes")
+  private Long sizeBytes;
+
   /**
    * Timestamp when the image record was inserted.
    * Managed entirely by Postgres (`timezone('utc', now())`).
@@ -100,8 +118,55 @@ public class Image {
     this.note = note;
   }
 
+  public String getContentSha256() {
+    return contentSha256;
+  }
+
+  public void setContentSha256(String contentSha256) {
+    this.contentSha256 = contentSha256;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  public void setContentType(String contentType) {
+    this.contentType = contentType;
+  }
+
+  public Integer getWidth() {
+    return width;
+  }
+
+  public void setWidth(Integer width) {
+    this.width = width;
+  }
+
+  public Integer getHeight() {
+    return height;
+  }
+
+  public void setHeight(Integer height) {
+    this.height = height;
+  }
+
+  public Long getSizeBytes() {
+    return sizeBytes;
+  }
+
+  public void setSizeBytes(Long sizeBytes) {
+    this.sizeBytes = sizeBytes;
+  }
+
   public OffsetDateTime getUploadedAt() {
     return uploadedAt;
   }
-  // no setter: populated by DB
+
+  /**
+   * For rows mapped by hand from JDBC queries. The property is read-only,
+   * so the value is never written back; Postgres remains its only source.
+   */
+  public void setUploadedAt(OffsetDateTime uploadedAt) {
+    this.uploadedAt = uploadedAt;
+  }
 }
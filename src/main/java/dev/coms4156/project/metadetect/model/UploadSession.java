@@ -0,0 +1,35 @@
+package dev.coms4156.project.metadetect.model;
+
+import java.time.Instant;
+import java.util.UUID;
+import org.springframework.lang.Nullable;
+
+/**
+ * Read-only view of an `upload_sessions` row: a resumable upload proxied to
+ * the Storage tus endpoint.
+ *
+ * @param id upload id exposed to the client (tus upload URL path)
+ * @param imageId image the upload will be committed to
+ * @param userId owner of the upload
+ * @param storagePath object key the bytes are written to
+ * @param upstreamUrl Storage tus upload URL
+ * @param uploadLength total size declared at creation
+ * @param uploadOffset bytes acknowledged by Storage so far
+ * @param completedAt when the upload finished, or null while in progress
+ */
+public record UploadSession(
+    UUID id,
+    UUID imageId,
+    UUID userId,
+    String storagePath,
+    String upstreamUrl,
+    long uploadLength,
+    long uploadOffset,
+    @Nullable Instant completedAt
+) {
+
+  /** True once every byte has been acknowledged and the image committed. */
+  public boolean isComplete() {
+    return completedAt != null;
+  }
+}
@@ -0,0 +1,443 @@
+package dev.coms4156.project.metadetect.repository;
+
+import dev.coms4156.project.metadetect.model.AnalysisJob;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Repository;
+
+/**
+ * JDBC access to `analysis_reports` as a job queue.
+ * State transitions (PENDING → RUNNING → DONE/FAILED, or CANCELLED from
+ * either of the first two) are issued as single conditional statements so
+ * that concurrent workers never double-claim a row and a finished job cannot
+ * be overwritten by a late writer.
+ * Notes:
+ * - Claiming uses `FOR UPDATE SKIP LOCKED`, letting any number of workers
+ *   poll the same table without blocking each other.
+ * - Claims are fair between users: PENDING jobs are taken round-robin by
+ *   owner (each user's oldest job, then each user's second oldest, ...), so
+ *   a user's bulk batch cannot hold back everyone queued after it.
+ * - Claims record a lease (owner node + heartbeat). Finalization only applies
+ *   while the caller still owns the lease, so a node whose lease was reaped
+ *   cannot overwrite the result of the node that took over.
+ * - Statements run outside a surrounding transaction (autocommit), so a
+ *   worker only holds a pooled connection for the duration of one statement.
+ */
+@Repository
+public class AnalysisJobRepository {
+
+  private static final String CLAIM_SQL = """
+      with claimed as (
+        update analysis_reports r
+           set status = 'RUNNING'::report_status,
+               started_at = ?,
+               heartbeat_at = ?,
+               lease_owner = ?,
+               attempts = r.attempts + 1
+         where r.id in (
+           select p.id
+             from analysis_reports p
+             join (
+               select q.id,
+                      row_number() over (partition by qi.user_id order by q.created_at) as turn
+                 from analysis_reports q
+                 join images qi on qi.id = q.image_id
+                where q.status = 'PENDING'
+             ) ranked on ranked.id = p.id
+            where p.status = 'PENDING'
+            order by ranked.turn, p.created_at
+            limit ?
+            for update of p skip locked
+         )
+        returning r.id, r.image_id, r.source_url, r.attempts, r.lease_owner
+      )
+      select c.id, c.image_id, i.user_id, i.storage_path, c.source_url, c.attempts, c.lease_owner,
+             i.content_sha256
+        from claimed c
+        join images i on i.id = c.image_id
+      """;
+
+  /** Lease is stale when neither heartbeat nor start time is recent. */
+  private static final String LEASE_TIME =
+      "coalesce(heartbeat_at, started_at, created_at)";
+
+  private final JdbcTemplate jdbc;
+
+  /**
+   * Constructs the repository.
+   *
+   * @param jdbc JDBC template bound to the application datasource
+   */
+  public AnalysisJobRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Atomically claims up to {@code limit} PENDING jobs, round-robin across
+   * owners and oldest first within each, moves them to RUNNING and leases
+   * them to {@code owner}. The ranking scans the PENDING backlog, which
+   * admission control keeps to at most maxQueueDepth rows.
+   *
+   * @param limit maximum number of jobs to claim
+   * @param owner node id recorded as `lease_owner`
+   * @param now timestamp recorded as `started_at` and `heartbeat_at`
+   * @return claimed jobs (possibly empty)
+   */
+  public List<AnalysisJob> claimPending(int limit, String owner, Instant now) {
+    if (limit <= 0) {
+      return List.of();
+    }
+    Timestamp ts = Timestamp.from(now);
+    return jdbc.query(CLAIM_SQL, (rs, i) -> new AnalysisJob(
+        rs.getObject("id", UUID.class),
+        rs.getObject("image_id", UUID.class),
+        rs.getObject("user_id", UUID.class),
+        rs.getString("storage_path"),
+        rs.getString("source_url"),
+        rs.getInt("attempts"),
+        rs.getString("lease_owner"),
+        rs.getString("content_sha256")
+    ), ts, ts, owner, limit);
+  }
+
+  /**
+   * Queues one PENDING job per image in a single statement.
+   *
+   * @param sourceUrls signed download URL per image id
+   * @param batchId batch the jobs belong to, see {@link #cancel}; may be null
+   * @param now timestamp recorded as `created_at`
+   * @return new analysis id per image id
+   */
+  public Map<UUID, UUID> insertPending(Map<UUID, String> sourceUrls,
+                                       @Nullable UUID batchId,
+                                       Instant now) {
+    if (sourceUrls.isEmpty()) {
+      return Map.of();
+    }
+    Map<UUID, UUID> ids = new HashMap<>();
+    jdbc.query(con -> {
+      PreparedStatement ps = con.prepareStatement("""
+          insert into analysis_reports (image_id, status, created_at, source_url, batch_id)
+          select t.image_id, 'PENDING'::report_status, ?, t.source_url, ?::uuid
+            from unnest(?::uuid[], ?::text[]) as t(image_id, source_url)
+          returning id, image_id
+          """);
+      ps.setTimestamp(1, Timestamp.from(now));
+      ps.setObject(2, batchId);
+      ps.setArray(3, con.createArrayOf("uuid", sourceUrls.keySet().toArray()));
+      ps.setArray(4, con.createArrayOf("text", sourceUrls.values().toArray()));
+      return ps;
+    }, rs -> {
+      ids.put(rs.getObject("image_id", UUID.class), rs.getObject("id", UUID.class));
+    });
+    return ids;
+  }
+
+  /**
+   * Returns the number of jobs waiting to be claimed. Used for backpressure.
+   *
+   * @return count of PENDING rows
+   */
+  public long countPending() {
+    Long n = jdbc.queryForObject(
+        "select count(*) from analysis_reports where status = 'PENDING'",
+        Long.class
+    );
+    return n == null ? 0L : n;
+  }
+
+  /**
+   * Returns the number of jobs one user has waiting to be claimed. Used for
+   * per-user admission control.
+   *
+   * @param userId owner of the queued images
+   * @return count of that user's PENDING rows
+   */
+  public long countPendingForUser(UUID userId) {
+    Long n = jdbc.queryForObject("""
+        select count(*)
+          from analysis_reports r
+          join images i on i.id = r.image_id
+         where r.status = 'PENDING' and i.user_id = ?
+        """, Long.class, userId);
+    return n == null ? 0L : n;
+  }
+
+  /**
+   * Refreshes the heartbeat of RUNNING jobs leased to {@code owner}.
+   *
+   * @param analysisIds jobs currently executing on this node
+   * @param owner node id
+   * @param now new heartbeat timestamp
+   * @return number of leases renewed
+   */
+  public int heartbeat(Collection<UUID> analysisIds, String owner, Instant now) {
+    if (analysisIds.isEmpty()) {
+      return 0;
+    }
+    return jdbc.update(con -> {
+      PreparedStatement ps = con.prepareStatement("""
+          update analysis_reports
+             set heartbeat_at = ?
+           where id = any(?) and status = 'RUNNING' and lease_owner = ?
+          """);
+      Array ids = con.createArrayOf("uuid", analysisIds.toArray());
+      ps.setTimestamp(1, Timestamp.from(now));
+      ps.setArray(2, ids);
+      ps.setString(3, owner);
+      return ps;
+    });
+  }
+
+  /**
+   * Finishes a RUNNING job as DONE, if {@code owner} still holds its lease.
+   *
+   * @param analysisId job to finish
+   * @param owner lease owner recorded at claim time
+   * @param engineVersion extractor version that produced the manifest
+   * @param detailsJson manifest JSON to persist
+   * @param confidence optional score
+   * @param now completion timestamp
+   * @return true if the row was RUNNING and is now DONE
+   */
+  public boolean markDone(UUID analysisId,
+                          String owner,
+                          String engineVersion,
+                          String detailsJson,
+                          @Nullable Double confidence,
+                          Instant now) {
+    return jdbc.update("""
+        update analysis_reports
+           set status = 'DONE'::report_status,
+               details = cast(? as jsonb),
+               engine_version = ?,
+               confidence = ?,
+               completed_at = ?,
+               source_url = null
+         where id = ? and status = 'RUNNING' and lease_owner = ?
+        """, detailsJson, engineVersion, confidence, Timestamp.from(now), analysisId,
+        owner) == 1;
+  }
+
+  /**
+   * Finishes a RUNNING job as DONE from a cached manifest, in one statement:
+   * the update only applies if the cache holds an entry for the key.
+   *
+   * @param analysisId job to finish
+   * @param owner lease owner recorded at claim time
+   * @param contentSha256 digest of the analyzed bytes
+   * @param engineVersion extractor version the entry must have been produced by
+   * @param now completion timestamp
+   * @return true if the cache had the manifest and the job is now DONE;
+   *     false on a cache miss or a lost lease
+   */
+  public boolean markDoneFromCache(UUID analysisId,
+                                   String owner,
+                                   String contentSha256,
+                                   String engineVersion,
+                                   Instant now) {
+    return jdbc.update("""
+        update analysis_reports
+           set status = 'DONE'::report_status,
+               details = null,
+               manifest_sha256 = ?,
+               manifest_version = ?,
+               engine_version = ?,
+               completed_at = ?,
+               source_url = null
+         where id = ? and status = 'RUNNING' and lease_owner = ?
+           and exists (select 1 from manifests
+                        where content_sha256 = ? and engine_version = ?)
+        """, contentSha256, engineVersion, engineVersion, Timestamp.from(now), analysisId,
+        owner, contentSha256, engineVersion) == 1;
+  }
+
+  /**
+   * Finishes a RUNNING job as DONE and stores its manifest in the cache
+   * (keeping an existing entry for the same key), if {@code owner} still
+   * holds the lease. The report references the entry; details stay null.
+   *
+   * @param analysisId job to finish
+   * @param owner lease owner recorded at claim time
+   * @param contentSha256 digest of the analyzed bytes
+   * @param engineVersion extractor version that produced the manifest
+   * @param detailsJson manifest JSON to cache
+   * @param confidence optional score
+   * @param now completion timestamp
+   * @return true if the row was RUNNING and is now DONE
+   */
+  public boolean markDoneCaching(UUID analysisId,
+                                 String owner,
+                                 String contentSha256,
+                                 String engineVersion,
+                                 String detailsJson,
+                                 @Nullable Double confidence,
+                                 Instant now) {
+    Timestamp ts = Timestamp.from(now);
+    return jdbc.update("""
+        with cached as (
+          insert into manifests (content_sha256, engine_version, details, created_at)
+          values (?, ?, cast(? as jsonb), ?)
+          on conflict (content_sha256, engine_version) do nothing
+        )
+        update analysis_reports
+           set status = 'DONE'::report_status,
+               details = null,
+               manifest_sha256 = ?,
+               manifest_version = ?,
+               engine_version = ?,
+               confidence = ?,
+               completed_at = ?,
+               source_url = null
+         where id = ? and status = 'RUNNING' and lease_owner = ?
+        """, contentSha256, engineVersion, detailsJson, ts,
+        contentSha256, engineVersion, engineVersion, confidence, ts, analysisId, owner) == 1;
+  }
+
+  /**
+   * Finishes a RUNNING job as FAILED, if {@code owner} still holds its lease.
+   *
+   * @param analysisId job to finish
+   * @param owner lease owner recorded at claim time
+   * @param detailsJson error JSON, e.g. {"error":"..."}
+   * @param now completion timestamp
+   * @return true if the row was RUNNING and is now FAILED
+   */
+  public boolean markFailed(UUID analysisId, String owner, String detailsJson, Instant now) {
+    return jdbc.update("""
+        update analysis_reports
+           set status = 'FAILED'::report_status,
+               details = cast(? as jsonb),
+               completed_at = ?,
+               source_url = null
+         where id = ? and status = 'RUNNING' and lease_owner = ?
+        """, detailsJson, Timestamp.from(now), analysisId, owner) == 1;
+  }
+
+  /**
+   * Cancels a PENDING or RUNNING job and, in the same statement, the jobs of
+   * its batch that are still PENDING. A RUNNING job's lease is dropped, so
+   * a late DONE/FAILED from its worker no longer applies.
+   *
+   * @param analysisId job to cancel
+   * @param now timestamp recorded as `completed_at`
+   * @return ids of every job cancelled; empty if the job had already
+   *     finished (or does not exist)
+   */
+  public List<UUID> cancel(UUID analysisId, Instant now) {
+    Timestamp ts = Timestamp.from(now);
+    return jdbc.queryForList("""
+        with target as (
+          update analysis_reports
+             set status = 'CANCELLED'::report_status,
+                 completed_at = ?,
+                 source_url = null,
+                 lease_owner = null
+           where id = ? and status in ('PENDING', 'RUNNING')
+          returning id, batch_id
+        ), siblings as (
+          update analysis_reports r
+             set status = 'CANCELLED'::report_status,
+                 completed_at = ?,
+                 source_url = null
+            from target t
+           where r.batch_id = t.batch_id and r.id <> t.id and r.status = 'PENDING'
+          returning r.id
+        )
+        select id from target
+        union all
+        select id from siblings
+        """, UUID.class, ts, analysisId, ts);
+  }
+
+  /**
+   * Puts a RUNNING job straight back to PENDING, if {@code owner} still holds
+   * its lease. Used for a job this node let go of without running it.
+   *
+   * @param analysisId job to requeue
+   * @param owner lease owner recorded at claim time
+   * @return true if the job was requeued
+   */
+  public boolean requeue(UUID analysisId, String owner) {
+    return jdbc.update("""
+        update analysis_reports
+           set status = 'PENDING'::report_status,
+               lease_owner = null, heartbeat_at = null, started_at = null
+         where id = ? and status = 'RUNNING' and lease_owner = ?
+        """, analysisId, owner) == 1;
+  }
+
+  /**
+   * Lists RUNNING jobs whose heartbeat (or start time, for rows claimed
+   * before leases existed) is older than {@code cutoff}.
+   *
+   * @param cutoff leases last renewed before this instant are expired
+   * @param limit maximum rows to return
+   * @return expired leases, stalest first
+   */
+  public List<ExpiredLease> findExpiredLeases(Instant cutoff, int limit) {
+    return jdbc.query(
+        "select id, attempts, lease_owner from analysis_reports"
+        + " where status = 'RUNNING' and " + LEASE_TIME + " < ?"
+        + " order by " + LEASE_TIME
+        + " limit ?",
+        (rs, i) -> new ExpiredLease(
+            rs.getObject("id", UUID.class),
+            rs.getInt("attempts"),
+            rs.getString("lease_owner")),
+        Timestamp.from(cutoff), limit);
+  }
+
+  /**
+   * Puts an expired job back to PENDING so another worker can claim it.
+   * Re-checks expiry so a lease renewed since the scan is left alone.
+   *
+   * @param analysisId job to requeue
+   * @param cutoff expiry threshold used by the scan
+   * @return true if the job was requeued
+   */
+  public boolean requeueExpired(UUID analysisId, Instant cutoff) {
+    return jdbc.update(
+        "update analysis_reports"
+        + " set status = 'PENDING'::report_status,"
+        + " lease_owner = null, heartbeat_at = null, started_at = null"
+        + " where id = ? and status = 'RUNNING' and " + LEASE_TIME + " < ?",
+        analysisId, Timestamp.from(cutoff)) == 1;
+  }
+
+  /**
+   * Fails an expired job that has exhausted its attempts.
+   *
+   * @param analysisId job to fail
+   * @param detailsJson error JSON to persist
+   * @param cutoff expiry threshold used by the scan
+   * @param now completion timestamp
+   * @return true if the job was failed
+   */
+  public boolean failExpired(UUID analysisId, String detailsJson, Instant cutoff, Instant now) {
+    return jdbc.update(
+        "update analysis_reports"
+        + " set status = 'FAILED'::report_status, details = cast(? as jsonb),"
+        + " completed_at = ?, source_url = null, lease_owner = null"
+        + " where id = ? and status = 'RUNNING' and " + LEASE_TIME + " < ?",
+        detailsJson, Timestamp.from(now), analysisId, Timestamp.from(cutoff)) == 1;
+  }
+
+  /**
+   * RUNNING job whose lease has not been renewed in time.
+   *
+   * @param analysisId job id
+   * @param attempts claims so far
+   * @param leaseOwner node that last held the lease (may be null)
+   */
+  public record ExpiredLease(UUID analysisId, int attempts, String leaseOwner) { }
+}
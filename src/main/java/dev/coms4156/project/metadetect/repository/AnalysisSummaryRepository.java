@@ -0,0 +1,67 @@
+package dev.coms4156.project.metadetect.repository;
+
+import dev.coms4156.project.metadetect.model.AnalysisReport.ReportStatus;
+import dev.coms4156.project.metadetect.model.AnalysisSummary;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * JDBC status lookups for many analyses at once.
+ * Ownership is part of the statement: reports are joined to their image and
+ * filtered on its owner, so one round trip resolves status, confidence and
+ * access for a whole polling batch. The details payload is never read.
+ */
+@Repository
+public class AnalysisSummaryRepository {
+
+  private final JdbcTemplate jdbc;
+
+  /**
+   * Constructs the repository.
+   *
+   * @param jdbc JDBC template bound to the application datasource
+   */
+  public AnalysisSummaryRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Returns the listed analyses whose image belongs to {@code userId}.
+   * Ids that do not exist or belong to another user are absent.
+   *
+   * @param userId owner
+   * @param analysisIds analyses to look up
+   * @return summaries, in no particular order
+   */
+  public List<AnalysisSummary> findOwned(UUID userId, Collection<UUID> analysisIds) {
+    if (analysisIds.isEmpty()) {
+      return List.of();
+    }
+    return jdbc.query(con -> {
+      PreparedStatement ps = con.prepareStatement("""
+          select r.id, r.image_id, r.status::text as status, r.confidence,
+                 r.created_at, r.completed_at
+            from analysis_reports r
+            join images i on i.id = r.image_id
+           where r.id = any(?) and i.user_id = ?
+          """);
+      ps.setArray(1, con.createArrayOf("uuid", analysisIds.toArray()));
+      ps.setObject(2, userId);
+      return ps;
+    }, (rs, i) -> {
+      Timestamp completed = rs.getTimestamp("completed_at");
+      return new AnalysisSummary(
+          rs.getObject("id", UUID.class),
+          rs.getObject("image_id", UUID.class),
+          ReportStatus.valueOf(rs.getString("status")),
+          rs.getObject("confidence", Double.class),
+          rs.getTimestamp("created_at").toInstant(),
+          completed == null ? null : completed.toInstant());
+    });
+  }
+}
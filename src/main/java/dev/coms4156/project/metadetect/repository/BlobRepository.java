@@ -0,0 +1,92 @@
+package dev.coms4156.project.metadetect.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * JDBC access to `blobs`, the reference counts of content-addressed
+ * storage objects.
+ * Callers of {@link #acquire} and {@link #release} must run inside a
+ * transaction and call {@link #lock} first: the transaction-scoped advisory
+ * lock serializes them for one digest across instances, and is released at
+ * commit or rollback. A Storage DELETE after the last release is made while
+ * holding it; uploads are not, see {@link #acquire}.
+ */
+@Repository
+public class BlobRepository {
+
+  private final JdbcTemplate jdbc;
+
+  /**
+   * Constructs the repository.
+   *
+   * @param jdbc JDBC template bound to the application datasource
+   */
+  public BlobRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Takes the transaction-scoped advisory lock for a digest, waiting if
+   * another transaction holds it.
+   *
+   * @param contentSha256 blob digest
+   */
+  public void lock(String contentSha256) {
+    jdbc.queryForObject("select pg_advisory_xact_lock(hashtextextended(?, 0))::text",
+        String.class, "blob:" + contentSha256);
+  }
+
+  /**
+   * Adds a reference to the blob, creating its row if this is the first one.
+   * The object is uploaded after the reference commits, so a blob can be
+   * referenced before it is stored; every referencing upload then writes it
+   * until one of them calls {@link #markStored}.
+   *
+   * @param contentSha256 blob digest
+   * @param storagePath object key for a new blob
+   * @param sizeBytes object size for a new blob
+   * @return true if the object is not known to be stored and must be uploaded
+   */
+  public boolean acquire(String contentSha256, String storagePath, long sizeBytes) {
+    Boolean stored = jdbc.query(
+        "update blobs set ref_count = ref_count + 1 where content_sha256 = ? returning stored",
+        (rs, i) -> rs.getBoolean(1), contentSha256).stream().findFirst().orElse(null);
+    if (stored != null) {
+      return !stored;
+    }
+    jdbc.update(
+        "insert into blobs (content_sha256, storage_path, size_bytes, ref_count, stored)"
+        + " values (?, ?, ?, 1, false)",
+        contentSha256, storagePath, sizeBytes);
+    return true;
+  }
+
+  /**
+   * Records that the blob's object has been written. Needs no lock: the
+   * caller still holds its reference, so the row cannot be deleted.
+   *
+   * @param contentSha256 blob digest
+   */
+  public void markStored(String contentSha256) {
+    jdbc.update("update blobs set stored = true where content_sha256 = ?", contentSha256);
+  }
+
+  /**
+   * Drops a reference to the blob and removes its row with the last one.
+   *
+   * @param contentSha256 blob digest
+   * @return true if that was the last reference and the object should be deleted
+   */
+  public boolean release(String contentSha256) {
+    Integer left = jdbc.query(
+        "update blobs set ref_count = ref_count - 1"
+        + " where content_sha256 = ? and ref_count > 0 returning ref_count",
+        (rs, i) -> rs.getInt(1), contentSha256).stream().findFirst().orElse(null);
+    if (left == null || left > 0) {
+      return false;
+    }
+    jdbc.update("delete from blobs where content_sha256 = ? and ref_count = 0", contentSha256);
+    return true;
+  }
+}
@@ -0,0 +1,172 @@
+package dev.coms4156.project.metadetect.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Repository;
+
+/**
+ * JDBC access to `idempotency_keys`.
+ * A key is claimed by inserting its row; the request that inserted it runs,
+ * and every state change afterwards is a conditional update or delete, so
+ * two requests racing on the same key cannot both run.
+ * Statements run in autocommit; a running request never holds a connection.
+ */
+@Repository
+public class IdempotencyKeyRepository {
+
+  private final JdbcTemplate jdbc;
+
+  /**
+   * Constructs the repository.
+   *
+   * @param jdbc JDBC template bound to the application datasource
+   */
+  public IdempotencyKeyRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Claims a key for a new request.
+   *
+   * @param userId caller
+   * @param scope endpoint family
+   * @param key client-supplied key
+   * @param fingerprint digest of the request
+   * @param now start timestamp
+   * @param expiresAt when the key may be reused
+   * @return true if the key was free and is now held by the caller
+   */
+  public boolean tryBegin(UUID userId, String scope, String key, String fingerprint,
+                          Instant now, Instant expiresAt) {
+    return jdbc.update("""
+        insert into idempotency_keys
+          (user_id, scope, idem_key, fingerprint, started_at, expires_at)
+        values (?, ?, ?, ?, ?, ?)
+        on conflict (user_id, scope, idem_key) do nothing
+        """, userId, scope, key, fingerprint, Timestamp.from(now),
+        Timestamp.from(expiresAt)) == 1;
+  }
+
+  /**
+   * Claims a key whose row has expired, or whose request has been running
+   * since before {@code staleBefore} and is presumed dead.
+   *
+   * @param userId caller
+   * @param scope endpoint family
+   * @param key client-supplied key
+   * @param fingerprint digest of the caller's request
+   * @param staleBefore running rows started before this may be taken over
+   * @param now start timestamp
+   * @param expiresAt when the key may be reused
+   * @return true if the caller now holds the key
+   */
+  public boolean takeOver(UUID userId, String scope, String key, String fingerprint,
+                          Instant staleBefore, Instant now, Instant expiresAt) {
+    Timestamp ts = Timestamp.from(now);
+    return jdbc.update("""
+        update idempotency_keys
+           set fingerprint = ?, response = null, started_at = ?, expires_at = ?
+         where user_id = ? and scope = ? and idem_key = ?
+           and (expires_at < ? or (response is null and started_at < ?))
+        """, fingerprint, ts, Timestamp.from(expiresAt), userId, scope, key, ts,
+        Timestamp.from(staleBefore)) == 1;
+  }
+
+  /**
+   * Looks up a key.
+   *
+   * @param userId caller
+   * @param scope endpoint family
+   * @param key client-supplied key
+   * @return the row, or empty if the key is free
+   */
+  public Optional<IdempotencyRecord> find(UUID userId, String scope, String key) {
+    return jdbc.query("""
+        select fingerprint, response::text as response, started_at, expires_at
+          from idempotency_keys
+         where user_id = ? and scope = ? and idem_key = ?
+        """, IdempotencyKeyRepository::map, userId, scope, key).stream().findFirst();
+  }
+
+  /**
+   * Stores the response of the request holding a key.
+   *
+   * @param userId caller
+   * @param scope endpoint family
+   * @param key client-supplied key
+   * @param startedAt start timestamp the caller claimed the key with
+   * @param responseJson response body
+   * @return true if the caller still held the key
+   */
+  public boolean complete(UUID userId, String scope, String key, Instant startedAt,
+                          String responseJson) {
+    return jdbc.update("""
+        update idempotency_keys
+           set response = ?::jsonb
+         where user_id = ? and scope = ? and idem_key = ?
+           and response is null and started_at = ?
+        """, responseJson, userId, scope, key, Timestamp.from(startedAt)) == 1;
+  }
+
+  /**
+   * Frees a key whose request failed, so a retry runs again.
+   *
+   * @param userId caller
+   * @param scope endpoint family
+   * @param key client-supplied key
+   * @param startedAt start timestamp the caller claimed the key with
+   * @return true if the caller still held the key
+   */
+  public boolean release(UUID userId, String scope, String key, Instant startedAt) {
+    return jdbc.update("""
+        delete from idempotency_keys
+         where user_id = ? and scope = ? and idem_key = ?
+           and response is null and started_at = ?
+        """, userId, scope, key, Timestamp.from(startedAt)) == 1;
+  }
+
+  /**
+   * Deletes expired keys.
+   *
+   * @param now current time
+   * @param limit most rows to delete in one statement
+   * @return rows deleted
+   */
+  public int purgeExpired(Instant now, int limit) {
+    return jdbc.update("""
+        delete from idempotency_keys
+         where ctid in (
+           select ctid from idempotency_keys where expires_at < ? limit ?
+         )
+        """, Timestamp.from(now), limit);
+  }
+
+  private static IdempotencyRecord map(ResultSet rs, int i) throws SQLException {
+    return new IdempotencyRecord(
+        rs.getString("fingerprint"),
+        rs.getString("response"),
+        rs.getTimestamp("started_at").toInstant(),
+        rs.getTimestamp("expires_at").toInstant());
+  }
+
+  /**
+   * One stored key.
+   *
+   * @param fingerprint digest of the request that claimed the key
+   * @param response response body, or null while that request runs
+   * @param startedAt when that request began
+   * @param expiresAt when the key may be reused
+   */
+  public record IdempotencyRecord(
+      String fingerprint,
+      @Nullable String response,
+      Instant startedAt,
+      Instant expiresAt
+  ) { }
+}
@@ -0,0 +1,117 @@
+package dev.coms4156.project.metadetect.repository;
+
+import dev.coms4156.project.metadetect.model.AnalysisReport.ReportStatus;
+import dev.coms4156.project.metadetect.model.AnalysisSummary;
+import dev.coms4156.project.metadetect.model.Image;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Repository;
+
+/**
+ * JDBC listing of a user's images joined with each image's latest analysis.
+ * One statement serves a whole dashboard page: a keyset scan of
+ * `idx_images_user_uploaded` with a lateral lookup per image on
+ * `idx_reports_image_created` (newest report first, limit 1).
+ * Callers run it inside {@code RlsContext.asUser}, so the images and
+ * analysis_reports policies apply as for the Spring Data queries.
+ */
+@Repository
+public class ImageListingRepository {
+
+  private static final String SELECT = """
+      select i.id, i.user_id, i.filename, i.storage_path, i.labels, i.note,
+             i.content_sha256, i.content_type, i.width, i.height, i.size_bytes,
+             i.uploaded_at,
+             a.id as analysis_id, a.status::text as analysis_status,
+             a.confidence as analysis_confidence, a.created_at as analysis_created_at,
+             a.completed_at as analysis_completed_at
+        from images i
+        left join lateral (
+          select r.id, r.status, r.confidence, r.created_at, r.completed_at
+            from analysis_reports r
+           where r.image_id = i.id
+           order by r.created_at desc
+           limit 1
+        ) a on true
+       where i.user_id = ?
+      """;
+
+  private static final String ORDER = " order by i.uploaded_at desc, i.id desc limit ?";
+
+  private final JdbcTemplate jdbc;
+
+  /**
+   * Constructs the repository.
+   *
+   * @param jdbc JDBC template bound to the application datasource
+   */
+  public ImageListingRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Returns a page of the user's images, newest first, each with its latest
+   * analysis (if any).
+   *
+   * @param userId owner
+   * @param afterUploadedAt upload time of the previous page's last row, or null for page one
+   * @param afterId id of the previous page's last row, or null for page one
+   * @param limit maximum rows to return
+   * @return up to {@code limit} rows in (uploaded_at desc, id desc) order
+   */
+  public List<Row> findPage(UUID userId,
+                            @Nullable OffsetDateTime afterUploadedAt,
+                            @Nullable UUID afterId,
+                            int limit) {
+    if (afterUploadedAt == null || afterId == null) {
+      return jdbc.query(SELECT + ORDER, ImageListingRepository::map, userId, limit);
+    }
+    return jdbc.query(SELECT + " and (i.uploaded_at, i.id) < (?, ?)" + ORDER,
+        ImageListingRepository::map, userId, afterUploadedAt, afterId, limit);
+  }
+
+  private static Row map(ResultSet rs, int i) throws SQLException {
+    Image img = new Image();
+    img.setId(rs.getObject("id", UUID.class));
+    img.setUserId(rs.getObject("user_id", UUID.class));
+    img.setFilename(rs.getString("filename"));
+    img.setStoragePath(rs.getString("storage_path"));
+    Array labels = rs.getArray("labels");
+    img.setLabels(labels == null ? null : (String[]) labels.getArray());
+    img.setNote(rs.getString("note"));
+    img.setContentSha256(rs.getString("content_sha256"));
+    img.setContentType(rs.getString("content_type"));
+    img.setWidth(rs.getObject("width", Integer.class));
+    img.setHeight(rs.getObject("height", Integer.class));
+    img.setSizeBytes(rs.getObject("size_bytes", Long.class));
+    img.setUploadedAt(rs.getObject("uploaded_at", OffsetDateTime.class));
+
+    UUID analysisId = rs.getObject("analysis_id", UUID.class);
+    if (analysisId == null) {
+      return new Row(img, null);
+    }
+    Timestamp completed = rs.getTimestamp("analysis_completed_at");
+    return new Row(img, new AnalysisSummary(
+        analysisId,
+        img.getId(),
+        ReportStatus.valueOf(rs.getString("analysis_status")),
+        rs.getObject("analysis_confidence", Double.class),
+        rs.getTimestamp("analysis_created_at").toInstant(),
+        completed == null ? null : completed.toInstant()));
+  }
+
+  /**
+   * An image and its most recent analysis.
+   *
+   * @param image the image row
+   * @param latestAnalysis newest report for the image, or null if never analyzed
+   */
+  public record Row(Image image, @Nullable AnalysisSummary latestAnalysis) { }
+}
@@ -1,10 +1,14 @@
 package dev.coms4156.project.metadetect.repository;
 
 import dev.coms4156.project.metadetect.model.Image;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -29,11 +33,44 @@ public interface ImageRepository extends CrudRepository<Image, UUID> {
   Optional<Image> findByIdAndUserId(UUID id, UUID userId);
 
   /**
-   * Lists all images belonging to a user, ordered newest-first.
-   * Suitable for dashboard/gallery views.
+   * Fetches the subset of {@code ids} owned by the given user, in one query.
    *
    * @param userId authenticated owner's ID
-   * @return ordered list of images for that user
+   * @param ids    image IDs to look up
+   * @return owned images, in no particular order
    */
-  List<Image> findAllByUserIdOrderByUploadedAtDesc(UUID userId);
+  @Query("select * from images where user_id = :userId and id in (:ids)")
+  List<Image> findAllByUserIdAndIdIn(@Param("userId") UUID userId,
+                                     @Param("ids") Collection<UUID> ids);
+
+  /**
+   * First page of a user's images, newest first, with `id` breaking ties.
+   * Served by `idx_images_user_uploaded`.
+   *
+   * @param userId authenticated owner's ID
+   * @param limit  maximum rows to return
+   * @return up to {@code limit} images
+   */
+  @Query("select * from images where user_id = :userId"
+      + " order by uploaded_at desc, id desc limit :limit")
+  List<Image> findFirstPageByUserId(@Param("userId") UUID userId, @Param("limit") int limit);
+
+  /**
+   * Next page of a user's images: those strictly after the cursor row in
+   * (uploaded_at desc, id desc) order. Seeks the index instead of skipping
+   * rows, so every page costs the same however deep it is.
+   *
+   * @param userId     authenticated owner's ID
+   * @param uploadedAt upload time of the last row of the previous page
+   * @param id         id of the last row of the previous page
+   * @param limit      maximum rows to return
+   * @return up to {@code limit} images
+   */
+  @Query("select * from images where user_id = :userId"
+      + " and (uploaded_at, id) < (:uploadedAt, :id)"
+      + " order by uploaded_at desc, id desc limit :limit")
+  List<Image> findPageByUserIdAfter(@Param("userId") UUID userId,
+                                    @Param("uploadedAt") OffsetDateTime uploadedAt,
+                                    @Param("id") UUID id,
+                                    @Param("limit") int limit);
 }
@@ -0,0 +1,40 @@
+package dev.coms4156.project.metadetect.repository;
+
+import java.util.Optional;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * JDBC read access to `manifests`, the content-addressed store of
+ * extraction results shared by all reports on byte-identical images.
+ * Entries are written by {@link AnalysisJobRepository#markDoneCaching} in the
+ * same statement that finishes the job, and are never updated: a new
+ * extractor version gets a new key.
+ */
+@Repository
+public class ManifestRepository {
+
+  private final JdbcTemplate jdbc;
+
+  /**
+   * Constructs the repository.
+   *
+   * @param jdbc JDBC template bound to the application datasource
+   */
+  public ManifestRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Returns the cached manifest JSON for a content digest and extractor version.
+   *
+   * @param contentSha256 digest of the image bytes
+   * @param engineVersion extractor version
+   * @return the manifest JSON, or empty if not cached
+   */
+  public Optional<String> findDetails(String contentSha256, String engineVersion) {
+    return jdbc.queryForList(
+        "select details::text from manifests where content_sha256 = ? and engine_version = ?",
+        String.class, contentSha256, engineVersion).stream().findFirst();
+  }
+}
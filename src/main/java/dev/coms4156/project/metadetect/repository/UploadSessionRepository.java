@@ -0,0 +1,117 @@
+package dev.coms4156.project.metadetect.repository;
+
+import dev.coms4156.project.metadetect.model.UploadSession;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * JDBC access to `upload_sessions`.
+ * Every lookup and update is scoped to the owning user, and offsets only
+ * advance through a conditional update on the previous offset, so racing
+ * requests for the same range cannot both succeed.
+ * Statements run in autocommit; a chunk transfer never holds a connection.
+ */
+@Repository
+public class UploadSessionRepository {
+
+  private static final String COLUMNS = "id, image_id, user_id, storage_path, upstream_url,"
+      + " upload_length, upload_offset, completed_at";
+
+  private final JdbcTemplate jdbc;
+
+  /**
+   * Constructs the repository.
+   *
+   * @param jdbc JDBC template bound to the application datasource
+   */
+  public UploadSessionRepository(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Inserts a new session at offset 0.
+   *
+   * @param imageId image the upload belongs to
+   * @param userId owner
+   * @param storagePath object key being written
+   * @param upstreamUrl Storage tus upload URL
+   * @param uploadLength declared total size
+   * @param now creation timestamp
+   * @return the created session
+   */
+  public UploadSession create(UUID imageId, UUID userId, String storagePath,
+                              String upstreamUrl, long uploadLength, Instant now) {
+    Timestamp ts = Timestamp.from(now);
+    return jdbc.queryForObject(
+        "insert into upload_sessions"
+        + " (image_id, user_id, storage_path, upstream_url, upload_length, created_at, updated_at)"
+        + " values (?, ?, ?, ?, ?, ?, ?) returning " + COLUMNS,
+        UploadSessionRepository::map,
+        imageId, userId, storagePath, upstreamUrl, uploadLength, ts, ts);
+  }
+
+  /**
+   * Looks up a session owned by {@code userId}.
+   *
+   * @param id upload id
+   * @param userId caller
+   * @return the session, or empty if missing or owned by someone else
+   */
+  public Optional<UploadSession> findForUser(UUID id, UUID userId) {
+    return jdbc.query(
+        "select " + COLUMNS + " from upload_sessions where id = ? and user_id = ?",
+        UploadSessionRepository::map, id, userId).stream().findFirst();
+  }
+
+  /**
+   * Moves the offset from {@code expectedOffset} to {@code newOffset}.
+   *
+   * @param id upload id
+   * @param expectedOffset offset the caller's chunk started at
+   * @param newOffset offset acknowledged by Storage
+   * @param now update timestamp
+   * @return true if the row was still at {@code expectedOffset}
+   */
+  public boolean advanceOffset(UUID id, long expectedOffset, long newOffset, Instant now) {
+    return jdbc.update("""
+        update upload_sessions
+           set upload_offset = ?, updated_at = ?
+         where id = ? and upload_offset = ? and completed_at is null
+        """, newOffset, Timestamp.from(now), id, expectedOffset) == 1;
+  }
+
+  /**
+   * Marks a fully transferred session complete.
+   *
+   * @param id upload id
+   * @param now completion timestamp
+   * @return true if this call completed it
+   */
+  public boolean markCompleted(UUID id, Instant now) {
+    Timestamp ts = Timestamp.from(now);
+    return jdbc.update("""
+        update upload_sessions
+           set completed_at = ?, updated_at = ?
+         where id = ? and completed_at is null and upload_offset = upload_length
+        """, ts, ts, id) == 1;
+  }
+
+  private static UploadSession map(ResultSet rs, int i) throws SQLException {
+    Timestamp completed = rs.getTimestamp("completed_at");
+    return new UploadSession(
+        rs.getObject("id", UUID.class),
+        rs.getObject("image_id", UUID.class),
+        rs.getObject("user_id", UUID.class),
+        rs.getString("storage_path"),
+        rs.getString("upstream_url"),
+        rs.getLong("upload_length"),
+        rs.getLong("upload_offset"),
+        completed == null ? null : completed.toInstant());
+  }
+}
@@ -0,0 +1,148 @@
+package dev.coms4156.project.metadetect.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Tracks the jobs executing on this instance so a cancellation can stop
+ * them mid-flight.
+ * Lifecycle of a tracked job:
+ * - {@link #track} once it is claimed; it has no thread yet.
+ * - {@link #resume} when a stage starts on a thread, {@link #park} when that
+ *   stage hands it on (fetch thread to extraction thread).
+ * - {@link #end} once it is finished or let go.
+ * {@link #cancel} marks the job and interrupts the thread currently running
+ * it. The interrupt aborts a blocking download and destroys a running
+ * c2patool process; the stage's own cleanup then removes its temp file. A
+ * job cancelled between stages never resumes.
+ * An interrupt is only delivered while the job holds a thread, and is
+ * cleared again when it lets go, so a pooled thread never carries a
+ * cancellation into its next job.
+ */
+public final class AnalysisCancellations {
+
+  private final Map<UUID, Entry> jobs = new HashMap<>();
+
+  /**
+   * Starts tracking a claimed job.
+   *
+   * @param analysisId job about to run on this instance
+   */
+  public synchronized void track(UUID analysisId) {
+    jobs.putIfAbsent(analysisId, new Entry());
+  }
+
+  /**
+   * Attaches the job to the current thread for its next stage. A job that
+   * is not tracked (run directly, not through the worker pool) starts being
+   * tracked here.
+   *
+   * @param analysisId job starting a stage
+   * @return false if the job was cancelled and the stage must not run
+   */
+  public synchronized boolean resume(UUID analysisId) {
+    Entry e = jobs.computeIfAbsent(analysisId, id -> new Entry());
+    if (e.cancelled) {
+      return false;
+    }
+    e.thread = Thread.currentThread();
+    return true;
+  }
+
+  /**
+   * Detaches the job from the current thread between stages.
+   *
+   * @param analysisId job whose stage ended
+   */
+  public void park(UUID analysisId) {
+    boolean interrupted;
+    synchronized (this) {
+      interrupted = detach(jobs.get(analysisId));
+    }
+    if (interrupted) {
+      Thread.interrupted();
+    }
+  }
+
+  /**
+   * Stops tracking a job. Safe to call more than once.
+   *
+   * @param analysisId job that finished or was let go
+   */
+  public void end(UUID analysisId) {
+    boolean interrupted;
+    synchronized (this) {
+      interrupted = detach(jobs.remove(analysisId));
+    }
+    if (interrupted) {
+      Thread.interrupted();
+    }
+  }
+
+  /**
+   * Cancels a job tracked here, interrupting its thread if it has one.
+   *
+   * @param analysisId job to cancel
+   * @return true if the job was executing on this instance
+   */
+  public synchronized boolean cancel(UUID analysisId) {
+    Entry e = jobs.get(analysisId);
+    if (e == null) {
+      return false;
+    }
+    e.cancelled = true;
+    if (e.thread != null && !e.interrupted) {
+      e.interrupted = true;
+      e.thread.interrupt();
+    }
+    return true;
+  }
+
+  /** Whether the job was cancelled while tracked here. */
+  public synchronized boolean isCancelled(UUID analysisId) {
+    Entry e = jobs.get(analysisId);
+    return e != null && e.cancelled;
+  }
+
+  /**
+   * Cancellation point between steps whose blocking calls may have
+   * swallowed the interrupt.
+   *
+   * @param analysisId tracked job
+   * @throws CancellationException if the job has been cancelled
+   */
+  public void check(UUID analysisId) {
+    if (isCancelled(analysisId)) {
+      throw new CancellationException("Analysis " + analysisId + " was cancelled");
+    }
+  }
+
+  /** Jobs tracked on this instance. */
+  public synchronized int tracked() {
+    return jobs.size();
+  }
+
+  /**
+   * Detaches an entry from the current thread.
+   *
+   * @return true if {@link #cancel} interrupted the current thread, which the
+   *     caller must then clear
+   */
+  private static boolean detach(Entry e) {
+    if (e == null || e.thread != Thread.currentThread()) {
+      return false;
+    }
+    boolean interrupted = e.interrupted;
+    e.thread = null;
+    e.interrupted = false;
+    return interrupted;
+  }
+
+  private static final class Entry {
+    private Thread thread;
+    private boolean cancelled;
+    private boolean interrupted;
+  }
+}
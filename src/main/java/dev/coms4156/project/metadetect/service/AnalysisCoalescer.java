@@ -0,0 +1,124 @@
+package dev.coms4156.project.metadetect.service;
+
+import dev.coms4156.project.metadetect.model.AnalysisJob;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.lang.Nullable;
+
+/**
+ * Single-flight registry for the analysis jobs running on this instance.
+ * Jobs for the same bytes (same content digest) or, when no digest is
+ * known, for the same image share one execution:
+ * - The first job joining a key leads: it runs the normal pipeline.
+ * - Jobs joining the key while the leader runs follow: they fetch and
+ *   extract nothing and wait for the leader's {@link Outcome}, from which
+ *   each then finalizes its own report row.
+ * - The leader settles the flight as soon as it has an outcome. A leader
+ *   that stops without one (shutdown, crash) abandons the flight instead.
+ * The flight is removed before its followers are told, so a job joining
+ * after that starts a fresh flight (and usually hits the manifest cache).
+ * Coalescing is per instance; duplicates claimed by different instances
+ * meet in the manifest cache instead.
+ */
+public final class AnalysisCoalescer {
+
+  private final Map<String, Flight> flights = new HashMap<>();
+  private final LongAdder coalesced = new LongAdder();
+
+  /**
+   * Joins the flight for the job's key, starting one if none is in flight.
+   *
+   * @param job claimed job
+   * @return null when the job leads and must run; otherwise the leader's
+   *     outcome, completed on the leader's thread
+   */
+  @Nullable
+  public synchronized CompletableFuture<Outcome> join(AnalysisJob job) {
+    String key = key(job);
+    Flight flight = flights.get(key);
+    if (flight == null) {
+      flights.put(key, new Flight(job.analysisId(), new CompletableFuture<>()));
+      return null;
+    }
+    if (flight.leader().equals(job.analysisId())) {
+      return null;
+    }
+    coalesced.increment();
+    return flight.outcome();
+  }
+
+  /**
+   * Ends the flight led by the job and hands its outcome to the followers.
+   * A no-op when the job leads no flight (already settled, or it ran
+   * without joining).
+   *
+   * @param job the leading job
+   * @param outcome shared result of the execution
+   */
+  public void settle(AnalysisJob job, Outcome outcome) {
+    Flight flight;
+    synchronized (this) {
+      String key = key(job);
+      flight = flights.get(key);
+      if (flight == null || !flight.leader().equals(job.analysisId())) {
+        return;
+      }
+      flights.remove(key);
+    }
+    flight.outcome().complete(outcome);
+  }
+
+  /** Flights currently in progress. */
+  public synchronized int inFlight() {
+    return flights.size();
+  }
+
+  /** Jobs that have followed another job's execution since startup. */
+  public long coalesced() {
+    return coalesced.sum();
+  }
+
+  /** The digest identifies the bytes across images; otherwise the image. */
+  static String key(AnalysisJob job) {
+    return job.contentSha256() != null
+        ? "sha256:" + job.contentSha256()
+        : "image:" + job.imageId();
+  }
+
+  /**
+   * Result of a shared execution, as handed to followers.
+   *
+   * @param kind how the execution ended
+   * @param details manifest JSON for DONE, error JSON for FAILED, else null
+   * @param confidence score for DONE, if any
+   */
+  public record Outcome(Kind kind, @Nullable String details, @Nullable Double confidence) {
+
+    /** The leader finished from the manifest cache; followers can too. */
+    public static final Outcome CACHED = new Outcome(Kind.CACHED, null, null);
+
+    /**
+     * The leader stopped without a result; the worker pool requeues its
+     * followers at once.
+     */
+    public static final Outcome ABANDONED = new Outcome(Kind.ABANDONED, null, null);
+
+    /** Extraction succeeded with this manifest (or no-manifest) JSON. */
+    public static Outcome done(String details, @Nullable Double confidence) {
+      return new Outcome(Kind.DONE, details, confidence);
+    }
+
+    /** The execution failed; details holds the error JSON. */
+    public static Outcome failed(String errorJson) {
+      return new Outcome(Kind.FAILED, errorJson, null);
+    }
+  }
+
+  /** How a shared execution ended. */
+  public enum Kind { DONE, FAILED, CACHED, ABANDONED }
+
+  private record Flight(UUID leader, CompletableFuture<Outcome> outcome) { }
+}
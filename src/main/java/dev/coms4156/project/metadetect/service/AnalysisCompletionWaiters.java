@@ -0,0 +1,73 @@
+package dev.coms4156.project.metadetect.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Registry of long-poll requests waiting for analyses to finish.
+ * A waiter is a bare {@link CompletableFuture}: parking on it holds no
+ * thread and no DB connection, and it is completed by the first DONE,
+ * FAILED or CANCELLED {@link AnalysisProgressEvent} for its analysis,
+ * whether published by a local worker or relayed from another instance.
+ */
+@Component
+public class AnalysisCompletionWaiters {
+
+  private final Map<UUID, Set<CompletableFuture<Void>>> waiting = new ConcurrentHashMap<>();
+
+  /**
+   * Registers a waiter. Call before reading the current status, so a
+   * completion cannot fall between the read and the registration.
+   *
+   * @param analysisId analysis to wait for
+   * @return future completed when the analysis reaches a terminal stage
+   */
+  public CompletableFuture<Void> register(UUID analysisId) {
+    CompletableFuture<Void> waiter = new CompletableFuture<>();
+    waiting.computeIfAbsent(analysisId, k -> ConcurrentHashMap.newKeySet()).add(waiter);
+    return waiter;
+  }
+
+  /**
+   * Removes a waiter that is no longer needed, e.g. after its wait expired.
+   *
+   * @param analysisId analysis the waiter was registered for
+   * @param waiter future returned by {@link #register}
+   */
+  public void unregister(UUID analysisId, CompletableFuture<Void> waiter) {
+    waiting.computeIfPresent(analysisId, (k, set) -> {
+      set.remove(waiter);
+      return set.isEmpty() ? null : set;
+    });
+  }
+
+  /**
+   * Wakes every waiter of an analysis that reached DONE, FAILED or CANCELLED.
+   *
+   * @param event transition published by the worker or the notify bus
+   */
+  @EventListener
+  public void onProgress(AnalysisProgressEvent event) {
+    if (!event.stage().isTerminal()) {
+      return;
+    }
+    Set<CompletableFuture<Void>> woken = waiting.remove(event.analysisId());
+    if (woken == null) {
+      return;
+    }
+    for (CompletableFuture<Void> waiter : List.copyOf(woken)) {
+      waiter.complete(null);
+    }
+  }
+
+  /** Number of registered waiters. */
+  public int waiting() {
+    return waiting.values().stream().mapToInt(Set::size).sum();
+  }
+}
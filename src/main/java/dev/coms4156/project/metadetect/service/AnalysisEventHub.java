@@ -0,0 +1,347 @@
+package dev.coms4156.project.metadetect.service;
+
+import dev.coms4156.project.metadetect.dto.Dtos;
+import dev.coms4156.project.metadetect.service.AnalysisProgressEvent.Stage;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Fans analysis stage transitions out to Server-Sent Event streams.
+ * Streams replace status polling: a client subscribes once and is pushed
+ * every stage its analyses enter, ending with DONE, FAILED or CANCELLED.
+ * Design:
+ * - Connections are async servlet responses ({@link SseEmitter}); an idle
+ *   stream holds no request thread.
+ * - Wake-ups come from {@link AnalysisProgressEvent}s published as the
+ *   worker finalizes each stage, never from polling the database.
+ * - Publishers (workers) never write to a client; they enqueue. Each
+ *   stream has its own bounded queue, drained by a small sender pool one
+ *   stream at a time, so events for a stream stay in order.
+ * - A write blocks while the client's socket is full, holding one sender
+ *   thread; other streams keep flowing on the rest of the pool. A stream
+ *   whose queue fills up, or whose previous keep-alive is still unsent at
+ *   the next heartbeat, has fallen behind and is completed with an error
+ *   at once. That ends its async request, which fails the blocked write
+ *   and frees the sender, so stalled clients cannot hold the whole pool.
+ *   The client reconnects and receives a fresh snapshot.
+ * - A stream never moves backwards: an event for a stage at or before the
+ *   last one sent is dropped, so a snapshot racing a live event is harmless.
+ * - A stream completes once all of its analyses are terminal, or on timeout.
+ */
+@Component
+public class AnalysisEventHub {
+
+  private static final Logger log = LoggerFactory.getLogger(AnalysisEventHub.class);
+
+  /** SSE event name carrying {@link Dtos.AnalysisProgress}. */
+  static final String EVENT_NAME = "progress";
+
+  private final Supplier<SseEmitter> emitters;
+  private final Map<UUID, Set<Subscription>> subscribers = new ConcurrentHashMap<>();
+  private final Set<Subscription> open = ConcurrentHashMap.newKeySet();
+  private final ExecutorService sender;
+  private final int queueCapacity;
+
+  /**
+   * Constructs the hub and its sender pool.
+   *
+   * @param timeoutMs lifetime of one stream; clients reconnect after it
+   * @param senderThreads streams written to at once
+   * @param queueCapacity writes a stream may have waiting before it is closed
+   */
+  public AnalysisEventHub(
+      @Value("${metadetect.analysis.sseTimeoutMs:300000}") long timeoutMs,
+      @Value("${metadetect.analysis.sseSenderThreads:4}") int senderThreads,
+      @Value("${metadetect.analysis.sseQueueCapacity:16}") int queueCapacity) {
+    this(() -> new SseEmitter(timeoutMs), senderThreads, queueCapacity);
+  }
+
+  /** Test seam: supplies the emitters handed to subscribers. */
+  AnalysisEventHub(Supplier<SseEmitter> emitters, int senderThreads, int queueCapacity) {
+    if (senderThreads < 1 || queueCapacity < 1) {
+      throw new IllegalArgumentException("senderThreads and queueCapacity must be positive");
+    }
+    this.emitters = emitters;
+    this.queueCapacity = queueCapacity;
+    AtomicInteger seq = new AtomicInteger();
+    this.sender = Executors.newFixedThreadPool(senderThreads, r -> {
+      Thread t = new Thread(r, "analysis-sse-" + seq.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Registers a stream for the given analyses. Call before reading their
+   * current status, then {@link #offer} that snapshot, so no transition can
+   * fall between the read and the registration.
+   *
+   * @param analysisIds analyses the stream follows
+   * @return the subscription; its emitter is the HTTP response body
+   */
+  public Subscription subscribe(Collection<UUID> analysisIds) {
+    Subscription sub = new Subscription(emitters.get(), analysisIds, queueCapacity);
+    open.add(sub);
+    for (UUID id : sub.following) {
+      subscribers.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(sub);
+    }
+    Runnable detach = () -> detach(sub);
+    sub.emitter.onCompletion(detach);
+    sub.emitter.onTimeout(detach);
+    sub.emitter.onError(e -> detach(sub));
+    return sub;
+  }
+
+  /**
+   * Queues the current stage of one analysis for the stream, e.g. from the
+   * snapshot read after {@link #subscribe}.
+   *
+   * @param sub target stream
+   * @param analysisId analysis the stage belongs to
+   * @param stage stage to report
+   */
+  public void offer(Subscription sub, UUID analysisId, Stage stage) {
+    enqueue(sub, () -> deliver(sub, analysisId, stage));
+  }
+
+  /**
+   * Stops following an analysis, e.g. one the caller turned out not to own.
+   * Completes the stream if it follows nothing else.
+   *
+   * @param sub target stream
+   * @param analysisId analysis to drop
+   */
+  public void drop(Subscription sub, UUID analysisId) {
+    enqueue(sub, () -> settle(sub, analysisId));
+  }
+
+  /**
+   * Unregisters a stream that will not be returned to the client.
+   *
+   * @param sub stream to discard
+   */
+  public void cancel(Subscription sub) {
+    detach(sub);
+  }
+
+  /**
+   * Pushes a stage transition to every stream following the analysis.
+   *
+   * @param event transition published by the worker
+   */
+  @EventListener
+  public void onProgress(AnalysisProgressEvent event) {
+    Set<Subscription> subs = subscribers.get(event.analysisId());
+    if (subs == null || subs.isEmpty()) {
+      return;
+    }
+    for (Subscription sub : List.copyOf(subs)) {
+      offer(sub, event.analysisId(), event.stage());
+    }
+  }
+
+  /**
+   * Sends an SSE comment on every open stream so proxies do not close
+   * quiet connections, and so dead clients are noticed. A stream still
+   * holding the previous keep-alive has fallen behind and is closed.
+   */
+  @Scheduled(fixedDelayString = "${metadetect.analysis.sseHeartbeatMs:15000}")
+  public void heartbeat() {
+    for (Subscription sub : List.copyOf(open)) {
+      if (!sub.heartbeatPending.compareAndSet(false, true)) {
+        abandon(sub, "missed a heartbeat");
+        continue;
+      }
+      enqueue(sub, () -> {
+        if (!sub.closed) {
+          send(sub, SseEmitter.event().comment("keep-alive"));
+        }
+        sub.heartbeatPending.set(false);
+      });
+    }
+  }
+
+  /** Number of open streams. */
+  public int openStreams() {
+    return open.size();
+  }
+
+  /** Completes every stream and stops the sender pool. */
+  @PreDestroy
+  public void shutdown() {
+    for (Subscription sub : List.copyOf(open)) {
+      sub.emitter.complete();
+      detach(sub);
+    }
+    sender.shutdownNow();
+  }
+
+  // ---------------------------------------------------------------------------
+  // Sender pool
+  // ---------------------------------------------------------------------------
+
+  /**
+   * Runs a stream's queued writes until its queue is empty. At most one
+   * sender thread drains a given stream at a time.
+   */
+  private void drain(Subscription sub) {
+    do {
+      try {
+        Runnable task;
+        while ((task = sub.queue.poll()) != null) {
+          task.run();
+        }
+      } finally {
+        sub.draining.set(false);
+      }
+    } while (!sub.queue.isEmpty() && sub.draining.compareAndSet(false, true));
+  }
+
+  private void deliver(Subscription sub, UUID analysisId, Stage stage) {
+    if (sub.closed || !sub.pending.contains(analysisId)) {
+      return;
+    }
+    Stage previous = sub.sent.get(analysisId);
+    if (previous != null && previous.ordinal() >= stage.ordinal()) {
+      return;
+    }
+    sub.sent.put(analysisId, stage);
+    boolean ok = send(sub, SseEmitter.event()
+        .name(EVENT_NAME)
+        .data(new Dtos.AnalysisProgress(analysisId.toString(), stage.name())));
+    if (ok && stage.isTerminal()) {
+      settle(sub, analysisId);
+    }
+  }
+
+  /** Marks one analysis as finished for the stream; completes it when none remain. */
+  private void settle(Subscription sub, UUID analysisId) {
+    sub.pending.remove(analysisId);
+    unregister(analysisId, sub);
+    if (sub.pending.isEmpty() && !sub.closed) {
+      sub.emitter.complete();
+      detach(sub);
+    }
+  }
+
+  private boolean send(Subscription sub, SseEmitter.SseEventBuilder event) {
+    try {
+      sub.emitter.send(event);
+      return true;
+    } catch (IOException | IllegalStateException e) {
+      // Client went away or the stream already completed
+      log.debug("Dropping SSE stream: {}", e.getMessage());
+      sub.closed = true;
+      sub.emitter.completeWithError(e);
+      detach(sub);
+      return false;
+    }
+  }
+
+  // ---------------------------------------------------------------------------
+  // Registry
+  // ---------------------------------------------------------------------------
+
+  /** Queues a write for the stream; a stream with no room left is closed. */
+  private void enqueue(Subscription sub, Runnable task) {
+    if (sub.closed) {
+      return;
+    }
+    if (!sub.queue.offer(task)) {
+      abandon(sub, "queue full");
+      return;
+    }
+    schedule(sub);
+  }
+
+  /**
+   * Closes a stream that fell behind. Its emitter is completed here rather
+   * than by its sender: that sender may be blocked writing to the client,
+   * and ending the async request is what fails that write.
+   */
+  private void abandon(Subscription sub, String reason) {
+    if (sub.closed) {
+      return;
+    }
+    log.debug("Closing SSE stream that fell behind: {}", reason);
+    detach(sub);
+    sub.queue.clear();
+    sub.emitter.completeWithError(new IOException("SSE client fell behind: " + reason));
+  }
+
+  private void schedule(Subscription sub) {
+    if (sub.draining.compareAndSet(false, true)) {
+      try {
+        sender.execute(() -> drain(sub));
+      } catch (RejectedExecutionException e) {
+        // Shutting down; streams are being completed
+        sub.draining.set(false);
+      }
+    }
+  }
+
+  private void detach(Subscription sub) {
+    sub.closed = true;
+    open.remove(sub);
+    for (UUID id : sub.following) {
+      unregister(id, sub);
+    }
+  }
+
+  private void unregister(UUID analysisId, Subscription sub) {
+    subscribers.computeIfPresent(analysisId, (k, subs) -> {
+      subs.remove(sub);
+      return subs.isEmpty() ? null : subs;
+    });
+  }
+
+  /**
+   * One client stream, the analyses it follows and its write queue. Its
+   * progress state is only touched by the sender currently draining it.
+   */
+  public static final class Subscription {
+    private final SseEmitter emitter;
+    private final Set<UUID> following;
+    private final Set<UUID> pending;
+    private final Map<UUID, Stage> sent = new HashMap<>();
+    private final BlockingQueue<Runnable> queue;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean heartbeatPending = new AtomicBoolean();
+    private volatile boolean closed;
+
+    private Subscription(SseEmitter emitter, Collection<UUID> analysisIds, int queueCapacity) {
+      this.emitter = emitter;
+      this.following = Set.copyOf(new LinkedHashSet<>(analysisIds));
+      this.pending = new LinkedHashSet<>(following);
+      this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /** Response body to return from the controller. */
+    public SseEmitter emitter() {
+      return emitter;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package dev.coms4156.project.metadetect.service;
+
+import dev.coms4156.project.metadetect.db.AdvisoryLockManager;
+import dev.coms4156.project.metadetect.repository.AnalysisJobRepository;
+import dev.coms4156.project.metadetect.repository.AnalysisJobRepository.ExpiredLease;
+import java.time.Clock;
+import java.time.Instant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Recovers analyses orphaned by a crashed or partitioned worker node.
+ * A RUNNING job is considered orphaned when both:
+ * 1) its heartbeat is older than {@code leaseTimeoutMs}, and
+ * 2) its Postgres advisory lock can be taken, meaning the owner's lock
+ *    session is gone (a slow-but-alive owner still holds the lock).
+ * Orphans are requeued as PENDING until {@code maxAttempts} claims have been
+ * used, then FAILED with an explanatory error. The reaper holds the job's
+ * lock while it transitions the row, so two reapers never act on the same
+ * job. Every worker node runs one; they coordinate through the database.
+ */
+@Component
+@ConditionalOnProperty(
+    name = "metadetect.analysis.workerEnabled",
+    havingValue = "true",
+    matchIfMissing = true)
+public class AnalysisLeaseReaper {
+
+  private static final Logger log = LoggerFactory.getLogger(AnalysisLeaseReaper.class);
+
+  /** Upper bound on rows inspected per sweep. */
+  private static final int BATCH = 100;
+
+  private final AnalysisJobRepository jobs;
+  private final AdvisoryLockManager locks;
+  private final Clock clock;
+  private final long leaseTimeoutMs;
+  private final int maxAttempts;
+
+  /**
+   * Constructs the reaper.
+   *
+   * @param jobs queue repository
+   * @param locks advisory locks used to detect live owners
+   * @param clock time source
+   * @param leaseTimeoutMs heartbeat age after which a lease is expired
+   * @param maxAttempts claims allowed before an orphan is failed
+   */
+  public AnalysisLeaseReaper(
+      AnalysisJobRepository jobs,
+      AdvisoryLockManager locks,
+      Clock clock,
+      @Value("${metadetect.analysis.leaseTimeoutMs:60000}") long leaseTimeoutMs,
+      @Value("${metadetect.analysis.maxAttempts:3}") int maxAttempts) {
+    this.jobs = jobs;
+    this.locks = locks;
+    this.clock = clock;
+    this.leaseTimeoutMs = leaseTimeoutMs;
+    this.maxAttempts = maxAttempts;
+  }
+
+  /**
+   * Sweeps expired leases once.
+   *
+   * @return number of jobs requeued or failed
+   */
+  @Scheduled(fixedDelayString = "${metadetect.analysis.reaperIntervalMs:30000}")
+  public int reap() {
+    Instant now = Instant.now(clock);
+    Instant cutoff = now.minusMillis(leaseTimeoutMs);
+
+    int recovered = 0;
+    try {
+      for (ExpiredLease lease : jobs.findExpiredLeases(cutoff, BATCH)) {
+        if (!locks.tryLock(lease.analysisId())) {
+          continue; // owner is alive (or another reaper is on it)
+        }
+        try {
+          if (recover(lease, cutoff, now)) {
+            recovered++;
+          }
+        } finally {
+          locks.unlock(lease.analysisId());
+        }
+      }
+    } catch (DataAccessException e) {
+      log.warn("Lease reaper sweep failed: {}", e.getMessage());
+    }
+    return recovered;
+  }
+
+  /** Requeues or fails one orphaned job. */
+  private boolean recover(ExpiredLease lease, Instant cutoff, Instant now) {
+    if (lease.attempts() < maxAttempts) {
+      boolean requeued = jobs.requeueExpired(lease.analysisId(), cutoff);
+      if (requeued) {
+        log.info("Requeued analysis {} after lease from {} expired (attempt {}/{})",
+            lease.analysisId(), lease.leaseOwner(), lease.attempts(), maxAttempts);
+      }
+      return requeued;
+    }
+    String details = "{\"error\":\"Lease expired after " + lease.attempts()
+        + " attempt(s); worker node lost\"}";
+    boolean failed = jobs.failExpired(lease.analysisId(), details, cutoff, now);
+    if (failed) {
+      log.warn("Failed analysis {} after {} expired lease(s)",
+          lease.analysisId(), lease.attempts());
+    }
+    return failed;
+  }
+}
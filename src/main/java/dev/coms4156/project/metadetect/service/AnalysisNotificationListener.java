@@ -0,0 +1,174 @@
+package dev.coms4156.project.metadetect.service;
+
+import dev.coms4156.project.metadetect.model.AnalysisReport.ReportStatus;
+import dev.coms4156.project.metadetect.service.AnalysisProgressEvent.Stage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listens on the `analysis_events` channel and republishes each
+ * notification as an in-process {@link AnalysisProgressEvent}.
+ * Why:
+ * - A job may finish on a different instance than the one holding the
+ *   client's SSE stream or long poll. The status trigger (V8) announces
+ *   every committed transition, so waiters here learn of it within
+ *   milliseconds without querying `analysis_reports`.
+ * Design:
+ * - One dedicated session per instance (like {@link
+ *   dev.coms4156.project.metadetect.db.AdvisoryLockManager}), never a
+ *   pooled connection, read by a single daemon thread.
+ * - If the session breaks it is re-opened with backoff; notifications sent
+ *   while disconnected are lost, so waiters keep their own timeouts.
+ * - Transitions made on this instance arrive twice (local event, then
+ *   notification); subscribers treat repeated stages as no-ops.
+ * Disable with {@code metadetect.analysis.notifyEnabled=false}.
+ */
+@Component
+@ConditionalOnProperty(
+    name = "metadetect.analysis.notifyEnabled",
+    havingValue = "true",
+    matchIfMissing = true)
+public class AnalysisNotificationListener {
+
+  private static final Logger log = LoggerFactory.getLogger(AnalysisNotificationListener.class);
+
+  /** Channel the V8 trigger notifies on. */
+  static final String CHANNEL = "analysis_events";
+
+  private static final long MAX_BACKOFF_MS = 30_000;
+
+  private final SingleConnectionDataSource session;
+  private final ApplicationEventPublisher events;
+  private final int waitMs;
+
+  private volatile boolean running;
+  private Thread thread;
+
+  /**
+   * Prepares (but does not open) the dedicated listener session.
+   *
+   * @param props datasource settings shared with the main pool
+   * @param events publisher for the in-process events
+   * @param waitMs how long one wait for notifications blocks before
+   *     re-checking for shutdown
+   */
+  public AnalysisNotificationListener(
+      DataSourceProperties props,
+      ApplicationEventPublisher events,
+      @Value("${metadetect.analysis.notifyWaitMs:1000}") int waitMs) {
+    this(new SingleConnectionDataSource(
+        props.determineUrl(),
+        props.determineUsername(),
+        props.determinePassword(),
+        true), events, waitMs);
+  }
+
+  /** Test seam: wraps an existing single-connection datasource. */
+  AnalysisNotificationListener(SingleConnectionDataSource session,
+                               ApplicationEventPublisher events,
+                               int waitMs) {
+    this.session = session;
+    this.events = events;
+    this.waitMs = waitMs;
+  }
+
+  /** Starts the listener thread. */
+  @PostConstruct
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    thread = new Thread(this::listen, "analysis-notify");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Stops the listener thread and closes its session. */
+  @PreDestroy
+  public synchronized void stop() {
+    running = false;
+    if (thread != null) {
+      thread.interrupt();
+      try {
+        thread.join(waitMs * 2L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    session.destroy();
+  }
+
+  /** Listener loop: (re)connects, LISTENs, and dispatches until stopped. */
+  private void listen() {
+    long backoffMs = 500;
+    while (running) {
+      try {
+        Connection con = session.getConnection();
+        try (Statement st = con.createStatement()) {
+          st.execute("listen " + CHANNEL);
+        }
+        PGConnection pg = con.unwrap(PGConnection.class);
+        backoffMs = 500;
+        while (running) {
+          PGNotification[] batch = pg.getNotifications(waitMs);
+          if (batch != null) {
+            for (PGNotification n : batch) {
+              dispatch(n.getParameter());
+            }
+          }
+        }
+      } catch (SQLException | RuntimeException e) {
+        if (!running) {
+          return;
+        }
+        log.warn("Analysis notification session failed; reconnecting in {} ms: {}",
+            backoffMs, e.getMessage());
+        session.resetConnection();
+        try {
+          Thread.sleep(backoffMs);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+      }
+    }
+  }
+
+  /**
+   * Republishes one notification payload ('id:STATUS'). Malformed payloads
+   * are logged and skipped. Package-private for tests.
+   *
+   * @param payload notification payload
+   */
+  void dispatch(@Nullable String payload) {
+    int colon = payload == null ? -1 : payload.indexOf(':');
+    if (colon < 0) {
+      log.debug("Ignoring analysis notification: {}", payload);
+      return;
+    }
+    try {
+      UUID id = UUID.fromString(payload.substring(0, colon));
+      ReportStatus status = ReportStatus.valueOf(payload.substring(colon + 1));
+      events.publishEvent(new AnalysisProgressEvent(id, Stage.of(status)));
+    } catch (IllegalArgumentException e) {
+      log.debug("Ignoring analysis notification: {}", payload);
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package dev.coms4156.project.metadetect.service;
+
+import dev.coms4156.project.metadetect.model.AnalysisReport.ReportStatus;
+import java.util.UUID;
+
+/**
+ * Application event published when an analysis moves to a new stage.
+ * Published by {@link AnalyzeService} as a job is fetched, extracted and
+ * finalized, or when its owner cancels it; {@link AnalysisEventHub} pushes
+ * it to subscribed SSE streams.
+ *
+ * @param analysisId id of the analysis
+ * @param stage stage the analysis just entered
+ */
+public record AnalysisProgressEvent(UUID analysisId, Stage stage) {
+
+  /**
+   * Client-visible stages, in the order a job passes through them.
+   */
+  public enum Stage {
+    QUEUED,
+    DOWNLOADING,
+    EXTRACTING,
+    DONE,
+    FAILED,
+    CANCELLED;
+
+    /** True for stages after which no further events follow. */
+    public boolean isTerminal() {
+      return this == DONE || this == FAILED || this == CANCELLED;
+    }
+
+    /**
+     * Maps a stored status to a stage. A RUNNING row is reported as
+     * DOWNLOADING, the first thing a worker does with a claimed job.
+     */
+    public static Stage of(ReportStatus status) {
+      return switch (status) {
+        case PENDING -> QUEUED;
+        case RUNNING -> DOWNLOADING;
+        case DONE -> DONE;
+        case FAILED -> FAILED;
+        case CANCELLED -> CANCELLED;
+      };
+    }
+  }
+}
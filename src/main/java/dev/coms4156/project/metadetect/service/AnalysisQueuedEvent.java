@@ -0,0 +1,12 @@
+package dev.coms4156.project.metadetect.service;
+
+import java.util.UUID;
+
+/**
+ * Application event published after a PENDING analysis row is inserted.
+ * Lets the local worker pool claim the job immediately instead of waiting
+ * for its next poll tick.
+ *
+ * @param analysisId id of the queued analysis
+ */
+public record AnalysisQueuedEvent(UUID analysisId) { }
@@ -0,0 +1,341 @@
+package dev.coms4156.project.metadetect.service;
+
+import dev.coms4156.project.metadetect.config.NodeIdentity;
+import dev.coms4156.project.metadetect.db.AdvisoryLockManager;
+import dev.coms4156.project.metadetect.model.AnalysisJob;
+import dev.coms4156.project.metadetect.repository.AnalysisJobRepository;
+import jakarta.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Fixed-size pool of workers that drain the `analysis_reports` job queue.
+ * Responsibilities:
+ * - Claim PENDING jobs (oldest first) only when a worker slot is free, so the
+ *   database, not this JVM, remains the queue of record.
+ * - Hold each claimed job's advisory lock and renew its lease heartbeat
+ *   while it runs, so {@link AnalysisLeaseReaper} on any node can tell a
+ *   live job from an orphaned one.
+ * - Run each claimed job as a two-stage pipeline: {@link AnalyzeService#fetchJob}
+ *   on a fetch thread, then, if the object had to be downloaded,
+ *   {@link AnalyzeService#extractJob} on an extraction thread. The fetch
+ *   threads download the next jobs while the current ones are extracted.
+ * - Extraction runs on a {@link FairExtractionExecutor}: bounded (CPU-aware
+ *   by default) and round-robin between image owners, as is claiming.
+ * - A job for an image (or bytes) already running here follows that job
+ *   instead, see {@link AnalyzeService#coalesce}. It takes no pipeline slot
+ *   and no thread; its lock and lease are held until its row is finalized.
+ *   If the job it follows is cancelled, it goes straight back to PENDING.
+ * Triggering:
+ * - A submit on this instance publishes {@link AnalysisQueuedEvent}, which
+ *   wakes the dispatcher immediately.
+ * - A fixed-delay poll picks up jobs submitted on other instances.
+ * Concurrency:
+ * - All claiming happens on a single dispatcher thread; wake-ups that arrive
+ *   while a drain is already queued are coalesced.
+ * - At most workerConcurrency + extractConcurrency jobs are claimed at once,
+ *   so at most workerConcurrency downloaded files wait for an extractor.
+ * Disable with {@code metadetect.analysis.workerEnabled=false} to run an
+ * API-only instance.
+ */
+@Component
+@ConditionalOnProperty(
+    name = "metadetect.analysis.workerEnabled",
+    havingValue = "true",
+    matchIfMissing = true)
+public class AnalysisWorkerPool {
+
+  private static final Logger log = LoggerFactory.getLogger(AnalysisWorkerPool.class);
+
+  private final AnalysisJobRepository jobs;
+  private final AnalyzeService analyzeService;
+  private final AdvisoryLockManager locks;
+  private final String nodeId;
+  private final Clock clock;
+  private final int capacity;
+
+  private final ExecutorService workers;
+  private final FairExtractionExecutor extractors;
+  private final ThreadPoolExecutor dispatcher;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final Set<UUID> running = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Constructs the pool and starts its threads.
+   *
+   * @param jobs queue repository used to claim work
+   * @param analyzeService executes a claimed job end-to-end
+   * @param locks advisory locks proving this node is alive and working a job
+   * @param node identity recorded as the lease owner
+   * @param clock time source for `started_at` and heartbeats
+   * @param concurrency fetch threads: cache lookups, ranged reads and downloads
+   * @param extractConcurrency extraction threads for downloaded jobs; 0 picks
+   *     {@link FairExtractionExecutor#defaultConcurrency()}
+   */
+  public AnalysisWorkerPool(
+      AnalysisJobRepository jobs,
+      AnalyzeService analyzeService,
+      AdvisoryLockManager locks,
+      NodeIdentity node,
+      Clock clock,
+      @Value("${metadetect.analysis.workerConcurrency:2}") int concurrency,
+      @Value("${metadetect.analysis.extractConcurrency:0}") int extractConcurrency) {
+    if (concurrency <= 0) {
+      throw new IllegalArgumentException("workerConcurrency must be positive");
+    }
+    if (extractConcurrency < 0) {
+      throw new IllegalArgumentException("extractConcurrency must not be negative");
+    }
+    this.jobs = jobs;
+    this.analyzeService = analyzeService;
+    this.locks = locks;
+    this.nodeId = node.id();
+    this.clock = clock;
+
+    AtomicInteger seq = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(concurrency, r -> {
+      Thread t = new Thread(r, "analysis-worker-" + seq.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    // Claims are capped at capacity, so at most `concurrency` fetched jobs wait
+    this.extractors = new FairExtractionExecutor(
+        extractConcurrency, concurrency, "analysis-extract-");
+    this.capacity = concurrency + extractors.concurrency();
+
+    // One thread, at most one queued drain: extra wake-ups are redundant.
+    this.dispatcher = new ThreadPoolExecutor(
+        1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(1),
+        r -> {
+          Thread t = new Thread(r, "analysis-dispatcher");
+          t.setDaemon(true);
+          return t;
+        },
+        new ThreadPoolExecutor.DiscardPolicy());
+  }
+
+  /**
+   * Wakes the dispatcher after a local submit commits.
+   * Runs even without a surrounding transaction (fallbackExecution).
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onQueued(AnalysisQueuedEvent event) {
+    wakeUp();
+  }
+
+  /**
+   * Periodic poll that picks up jobs queued by other instances and any
+   * wake-up that was missed.
+   */
+  @Scheduled(fixedDelayString = "${metadetect.analysis.pollIntervalMs:2000}")
+  public void poll() {
+    wakeUp();
+  }
+
+  /**
+   * Renews the lease of every job running on this node. Must run well
+   * within {@code metadetect.analysis.leaseTimeoutMs}.
+   */
+  @Scheduled(fixedDelayString = "${metadetect.analysis.heartbeatIntervalMs:10000}")
+  public void heartbeat() {
+    if (running.isEmpty()) {
+      return;
+    }
+    try {
+      jobs.heartbeat(List.copyOf(running), nodeId, Instant.now(clock));
+    } catch (DataAccessException e) {
+      log.warn("Failed to renew {} analysis lease(s): {}", running.size(), e.getMessage());
+    }
+  }
+
+  /** Schedules a drain on the dispatcher thread (coalesced). */
+  public void wakeUp() {
+    if (!dispatcher.isShutdown()) {
+      dispatcher.execute(this::drain);
+    }
+  }
+
+  /** Number of jobs currently executing on this instance. */
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  /** Downloaded jobs waiting for an extraction thread. */
+  public int extractionQueued() {
+    return extractors.queued();
+  }
+
+  /** Mean time downloaded jobs waited for an extraction thread, in milliseconds. */
+  public long averageExtractionWaitMs() {
+    return extractors.averageQueueWaitMs();
+  }
+
+  /**
+   * Claims as many jobs as there are free pipeline slots and hands them to the
+   * fetch threads. Package-private for tests.
+   */
+  void drain() {
+    int free = capacity - inFlight.get();
+    if (free <= 0) {
+      return;
+    }
+
+    List<AnalysisJob> claimed;
+    try {
+      claimed = jobs.claimPending(free, nodeId, Instant.now(clock));
+    } catch (DataAccessException e) {
+      log.warn("Failed to claim analysis jobs: {}", e.getMessage());
+      return;
+    }
+
+    for (AnalysisJob job : claimed) {
+      UUID id = job.analysisId();
+      if (!locks.tryLock(id)) {
+        // Another live session still holds this job. Put the row back rather
+        // than sit on a lease nobody renews. No wake-up: the next poll, not
+        // this drain, retries it, once that holder has had time to let go.
+        log.warn("Analysis {} claimed but its advisory lock is held elsewhere", id);
+        requeue(id, false);
+        continue;
+      }
+      running.add(id);
+      CompletableFuture<Boolean> shared = analyzeService.coalesce(job);
+      if (shared != null) {
+        shared.whenComplete((finished, e) -> {
+          if (e != null) {
+            log.error("Analysis {} failed to finish from a shared execution", id, e);
+          }
+          releaseFollower(id);
+          if (Boolean.FALSE.equals(finished)) {
+            requeue(id, true);
+          }
+        });
+        continue;
+      }
+      inFlight.incrementAndGet();
+      workers.execute(() -> {
+        AnalyzeService.FetchedJob fetched = null;
+        try {
+          fetched = analyzeService.fetchJob(job);
+        } catch (RuntimeException e) {
+          // fetchJob finalizes its own failures; this is a last resort.
+          log.error("Analysis {} crashed in worker", id, e);
+        }
+        if (fetched == null) {
+          release(job);
+          return;
+        }
+        AnalyzeService.FetchedJob downloaded = fetched;
+        try {
+          extractors.execute(job.userId(), () -> {
+            try {
+              analyzeService.extractJob(downloaded);
+            } catch (RuntimeException e) {
+              log.error("Analysis {} crashed in extractor", id, e);
+            } finally {
+              release(job);
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          // Shutting down, or the extraction queue (maxQueued = concurrency)
+          // is full: drop the download and put the job straight back.
+          discard(downloaded.file());
+          release(job);
+          requeue(id, true);
+        }
+      });
+    }
+  }
+
+  /**
+   * Ends this node's hold on a job it ran and frees its pipeline slot. A
+   * flight the job still leads is abandoned, which releases its followers.
+   */
+  private void release(AnalysisJob job) {
+    UUID id = job.analysisId();
+    analyzeService.releaseJob(job);
+    running.remove(id);
+    locks.unlock(id);
+    inFlight.decrementAndGet();
+    // A slot just freed up; look for more work right away.
+    wakeUp();
+  }
+
+  /** Ends this node's hold on a job that followed another; it held no slot. */
+  private void releaseFollower(UUID id) {
+    running.remove(id);
+    locks.unlock(id);
+  }
+
+  /**
+   * Puts back a job this node let go of without a result (a follower whose
+   * leader was abandoned, a download the extractors rejected, or a claim
+   * whose lock is held elsewhere), instead of leaving it RUNNING until the
+   * reaper notices. Called once this node holds no lock on it, so the next
+   * claim (here or elsewhere) can take it.
+   *
+   * @param id job to put back
+   * @param wake whether to drain again right away
+   */
+  private void requeue(UUID id, boolean wake) {
+    try {
+      if (jobs.requeue(id, nodeId) && wake) {
+        wakeUp();
+      }
+    } catch (DataAccessException e) {
+      log.warn("Failed to requeue analysis {}; the reaper will: {}", id, e.getMessage());
+    }
+  }
+
+  /** Deletes the temp file of a fetched job that will not be extracted here. */
+  private static void discard(File file) {
+    try {
+      Files.deleteIfExists(file.toPath());
+    } catch (IOException e) {
+      log.warn("Failed to delete {}: {}", file, e.getMessage());
+    }
+  }
+
+  /** Stops accepting work and lets running jobs finish briefly. */
+  @PreDestroy
+  public void shutdown() {
+    dispatcher.shutdownNow();
+    workers.shutdown();
+    try {
+      if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+        workers.shutdownNow();
+      }
+      if (!extractors.shutdownAndAwait(10, TimeUnit.SECONDS)) {
+        extractors.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      workers.shutdownNow();
+      extractors.shutdownNow();
+    }
+  }
+}
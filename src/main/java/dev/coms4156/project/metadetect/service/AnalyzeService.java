@@ -3,89 +3,228 @@ package dev.coms4156.project.metadetect.service;
 import static dev.coms4156.project.metadetect.model.AnalysisReport.ReportStatus;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import dev.coms4156.project.metadetect.c2pa.C2paToolInvoker;
+import dev.coms4156.project.metadetect.c2pa.C2paPresenceProbe;
+import dev.coms4156.project.metadetect.c2pa.C2paPresenceProbe.Presence;
+import dev.coms4156.project.metadetect.c2pa.ManifestExtractor;
+import dev.coms4156.project.metadetect.c2pa.ManifestNotFoundException;
 import dev.coms4156.project.metadetect.dto.Dtos;
+import dev.coms4156.project.metadetect.model.AnalysisJob;
 import dev.coms4156.project.metadetect.model.AnalysisReport;
+import dev.coms4156.project.metadetect.model.AnalysisSummary;
 import dev.coms4156.project.metadetect.model.Image;
+import dev.coms4156.project.metadetect.repository.AnalysisJobRepository;
 import dev.coms4156.project.metadetect.repository.AnalysisReportRepository;
+import dev.coms4156.project.metadetect.repository.AnalysisSummaryRepository;
+import dev.coms4156.project.metadetect.repository.ManifestRepository;
+import dev.coms4156.project.metadetect.service.AnalysisProgressEvent.Stage;
+import dev.coms4156.project.metadetect.service.errors.AnalysisFinishedException;
 import dev.coms4156.project.metadetect.service.errors.MissingStoragePathException;
 import dev.coms4156.project.metadetect.service.errors.NotFoundException;
+import dev.coms4156.project.metadetect.service.errors.QueueFullException;
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
  * Orchestrates the analysis pipeline for an uploaded image.
  * Responsibilities:
  * - Enforce ownership via ImageService and current user context.
- * - Persist lifecycle: PENDING → COMPLETED/FAILED in AnalysisReport.
- * - Download object from Supabase Storage via a signed URL.
- * - Invoke C2PA tool to extract manifest JSON.
- * - Return analysisId to support client polling.
+ * - Enqueue work as a PENDING AnalysisReport and return immediately.
+ * - Queue batches of images with a fixed number of database and Storage
+ *   round trips (see {@link #submitBatch}).
+ * - Run claimed jobs (invoked by {@link AnalysisWorkerPool}): run the
+ *   metadata stages (C2PA presence probe, manifest extraction) over ranged
+ *   reads of the signed URL, download the whole object only when a stage
+ *   cannot work from ranges, and finalize DONE/FAILED (or stop when CANCELLED).
  * Notes:
- * - Extraction is synchronous for Iteration 1. Can be moved to async later.
+ * - The signed URL is created at submit time, while the caller's bearer is
+ *   available, and stored on the job row for the worker to use.
+ * - Each stage a worker enters is published as {@link AnalysisProgressEvent},
+ *   which {@link AnalysisEventHub} pushes to SSE subscribers and
+ *   {@link AnalysisCompletionWaiters} uses to release long polls.
  * - Error details are stored as JSON in `details` to aid troubleshooting.
+ * - Images without a C2PA manifest finish DONE with {@link #NO_MANIFEST_DETAILS};
+ *   most are recognized from their headers without a full download.
+ * - Results for images with a content digest are stored once per
+ *   (digest, extractor version) in `manifests`; a job on bytes analyzed
+ *   before finishes from that cache in one statement, without fetching
+ *   anything.
+ * - Jobs for the same image (or the same bytes) that run on this instance
+ *   at the same time share one execution, see {@link #coalesce}; each still
+ *   finalizes its own report row.
+ * - An owner can cancel a PENDING or RUNNING analysis
+ *   ({@link #cancelAnalysis}); the instance running it stops its download
+ *   or c2patool process, see {@link AnalysisCancellations}.
  */
 @Service
 public class AnalyzeService {
 
-  private final C2paToolInvoker c2paToolInvoker;
+  private static final Logger log = LoggerFactory.getLogger(AnalyzeService.class);
+
+  /** Details stored for images that carry no C2PA manifest. */
+  public static final String NO_MANIFEST_DETAILS = "{\"manifest_present\":false,\"manifests\":{}}";
+
+  /** Batch item statuses; see {@link #submitBatch}. */
+  static final String BATCH_QUEUED = "QUEUED";
+  static final String BATCH_NOT_FOUND = "NOT_FOUND";
+  static final String BATCH_MISSING_STORAGE_PATH = "MISSING_STORAGE_PATH";
+  static final String BATCH_SIGN_FAILED = "SIGN_FAILED";
+
+  private final ManifestExtractor manifestExtractor;
   private final ImageService imageService;
   private final AnalysisReportRepository analysisRepo;
+  private final AnalysisJobRepository jobs;
+  private final ManifestRepository manifests;
+  private final AnalysisSummaryRepository summaries;
+  private final AnalysisEventHub progress;
+  private final AnalysisCompletionWaiters waiters;
+  private final Executor waitExecutor;
   private final SupabaseStorageService storage;
   private final UserService userService;
+  private final ApplicationEventPublisher events;
   private final Clock clock;
+  private final int maxQueueDepth;
+  private final int maxPendingPerUser;
+  private final long retryAfterSeconds;
+  private final long metadataMaxBytes;
+  private final long maxObjectBytes;
+  private final Duration downloadTimeout;
+  private final int maxBatchSize;
+  private final int maxStatusIds;
+  private final long maxWaitMs;
 
   // Lightweight mapper for error JSON assembly.
   private final ObjectMapper objectMapper = new ObjectMapper();
 
+  // Shares one execution between concurrent jobs for the same image/bytes.
+  private final AnalysisCoalescer coalescer = new AnalysisCoalescer();
+
+  // Threads running this instance's jobs, for cancellation.
+  private final AnalysisCancellations cancellations = new AnalysisCancellations();
+
   /**
    * Constructs the orchestration service.
    *
-   * @param c2paToolInvoker invokes the C2PA CLI to read embedded manifests
+   * @param manifestExtractor reads embedded C2PA manifests
    * @param imageService resolves image ownership and metadata
    * @param analysisRepo repository for AnalysisReport rows
+   * @param jobs queue-level state transitions on analysis_reports
+   * @param manifests content-addressed manifest cache
+   * @param summaries owner-scoped status lookups for many analyses
+   * @param progress SSE fan-out of stage transitions
+   * @param waiters long-poll requests parked until an analysis finishes
+   * @param waitExecutor runs the re-read of a woken long poll; the bounded
+   *     pool that also serves MVC async requests
    * @param storage signed URL creation and object retrieval
    * @param userService current user identity + bearer token provider
+   * @param events publisher used to wake the worker pool on submit
    * @param clock deterministic time source (eases testing)
+   * @param maxQueueDepth PENDING jobs allowed before submissions get 429
+   * @param maxPendingPerUser PENDING jobs one user may have before their
+   *     submissions get 429; 0 disables the per-user limit
+   * @param retryAfterSeconds Retry-After hint returned with a 429
+   * @param metadataMaxBytes bytes metadata stages may pull with range reads before
+   *     falling back to a full download; 0 always downloads
+   * @param maxObjectBytes largest object a full download will accept
+   * @param downloadTimeoutMs upper bound on one full download
+   * @param maxBatchSize most images one batch submission may name
+   * @param maxStatusIds most analyses one batch status request may name
+   * @param maxWaitMs longest a status long poll may park
    */
-  public AnalyzeService(C2paToolInvoker c2paToolInvoker,
+  public AnalyzeService(ManifestExtractor manifestExtractor,
                         ImageService imageService,
                         AnalysisReportRepository analysisRepo,
+                        AnalysisJobRepository jobs,
+                        ManifestRepository manifests,
+                        AnalysisSummaryRepository summaries,
+                        AnalysisEventHub progress,
+                        AnalysisCompletionWaiters waiters,
+                        @Qualifier("applicationTaskExecutor") Executor waitExecutor,
                         SupabaseStorageService storage,
                         UserService userService,
-                        Clock clock) {
-    this.c2paToolInvoker = c2paToolInvoker;
+                        ApplicationEventPublisher events,
+                        Clock clock,
+                        @Value("${metadetect.analysis.maxQueueDepth:200}") int maxQueueDepth,
+                        @Value("${metadetect.analysis.maxPendingPerUser:100}")
+                        int maxPendingPerUser,
+                        @Value("${metadetect.analysis.retryAfterSeconds:5}")
+                        long retryAfterSeconds,
+                        @Value("${metadetect.analysis.metadataMaxBytes:4194304}")
+                        long metadataMaxBytes,
+                        @Value("${metadetect.analysis.maxObjectBytes:52428800}")
+                        long maxObjectBytes,
+                        @Value("${metadetect.analysis.downloadTimeoutMs:120000}")
+                        long downloadTimeoutMs,
+                        @Value("${metadetect.analysis.maxBatchSize:100}") int maxBatchSize,
+                        @Value("${metadetect.analysis.maxStatusIds:500}") int maxStatusIds,
+                        @Value("${metadetect.analysis.maxWaitMs:25000}") long maxWaitMs) {
+    this.manifestExtractor = manifestExtractor;
     this.imageService = imageService;
     this.analysisRepo = analysisRepo;
+    this.jobs = jobs;
+    this.manifests = manifests;
+    this.summaries = summaries;
+    this.progress = progress;
+    this.waiters = waiters;
+    this.waitExecutor = waitExecutor;
     this.storage = storage;
     this.userService = userService;
+    this.events = events;
     this.clock = clock;
+    this.maxQueueDepth = maxQueueDepth;
+    this.maxPendingPerUser = maxPendingPerUser;
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.metadataMaxBytes = metadataMaxBytes;
+    this.maxObjectBytes = maxObjectBytes;
+    this.downloadTimeout = Duration.ofMillis(downloadTimeoutMs);
+    this.maxBatchSize = maxBatchSize;
+    this.maxStatusIds = maxStatusIds;
+    this.maxWaitMs = maxWaitMs;
   }
 
   /**
-   * Starts analysis for the given image.
+   * Queues analysis for the given image and returns without waiting for it.
    * Flow:
    * 1) Validate ownership and storage path.
-   * 2) Insert PENDING row and flush.
-   * 3) Download object and run C2PA.
-   * 4) Mark COMPLETED or FAILED with details.
+   * 2) Reject with {@link QueueFullException} when the queue, or the
+   *    caller's share of it, is at capacity.
+   * 3) Sign a download URL with the caller's bearer.
+   * 4) Insert PENDING row and notify the worker pool.
+   * Not transactional on purpose: each step commits on its own so no DB
+   * connection is held across the signing round trip.
    *
    * @param imageId image to analyze
    * @return AnalyzeStartResponse containing the analysisId
    * @throws MissingStoragePathException when storage_path is empty
-   * @implNote Synchronous in Iteration 1; consider job queue later.
+   * @throws QueueFullException when too many jobs (or too many of the
+   *     caller's) are already PENDING
    */
-  @Transactional
   public Dtos.AnalyzeStartResponse submitAnalysis(UUID imageId) {
     final UUID currentUser = userService.getCurrentUserIdOrThrow();
 
@@ -100,23 +239,309 @@ public class AnalyzeService {
       );
     }
 
-    // 3) Create PENDING row with deterministic timestamp
-    AnalysisReport pending = new AnalysisReport(imageId);
-    pending.setStatus(ReportStatus.PENDING);
-    pending.setCreatedAt(now());
+    // 3) Backpressure
+    admit(currentUser, 1);
+
+    // 4) Sign now, while the caller's bearer is available
+    String bearer = userService.getCurrentBearerOrThrow();
+    String signed = storage.createSignedUrl(storagePath, bearer);
+
+    // 5) Create PENDING row with deterministic timestamp
+    AnalysisReport pending = AnalysisReportBuilder.pending(imageId, now());
+    pending.setSourceUrl(signed);
     pending = analysisRepo.save(pending);
     final UUID analysisId = pending.getId();
 
-    // 4) Ensure row visible before heavy work
-    analysisRepo.flush();
+    // 6) Wake local workers; other instances pick it up on their next poll
+    events.publishEvent(new AnalysisQueuedEvent(analysisId));
 
-    // 5) Run extraction inline (can be moved to async later)
-    runExtractionAndFinalize(analysisId, storagePath);
-
-    // 6) Return analysisId for polling
+    // 7) Return analysisId for polling
     return new Dtos.AnalyzeStartResponse(analysisId.toString());
   }
 
+  /**
+   * Queues analysis for many images at once with a fixed number of round
+   * trips, however many images are named: one ownership query, one Storage
+   * call signing every URL, one backlog count and one insert for all PENDING
+   * rows. Images that cannot be queued are reported per item instead of
+   * failing the batch.
+   * Item statuses:
+   * - QUEUED: a PENDING job was created; analysisId is set.
+   * - NOT_FOUND: the image does not exist or is not owned by the caller.
+   * - MISSING_STORAGE_PATH: the image has no stored object yet.
+   * - SIGN_FAILED: Storage refused to sign the object's URL.
+   * Duplicate ids are queued once and reported once, in first-seen order.
+   *
+   * @param imageIds images to analyze
+   * @return one result per distinct image id, in request order
+   * @throws IllegalArgumentException when the list is empty or longer than maxBatchSize
+   * @throws QueueFullException when the queueable images would push the backlog
+   *     past maxQueueDepth, or the caller's share past maxPendingPerUser;
+   *     nothing is queued
+   */
+  public Dtos.AnalyzeBatchResponse submitBatch(List<UUID> imageIds) {
+    Set<UUID> distinct = distinctIds(imageIds, maxBatchSize, "images");
+    final UUID currentUser = userService.getCurrentUserIdOrThrow();
+
+    // 1) Ownership for the whole set in one query
+    Map<UUID, Image> owned = imageService.getOwnedByIds(currentUser, distinct);
+
+    Map<UUID, String> items = new LinkedHashMap<>();
+    Map<UUID, String> pathByImage = new LinkedHashMap<>();
+    for (UUID id : distinct) {
+      Image img = owned.get(id);
+      if (img == null) {
+        items.put(id, BATCH_NOT_FOUND);
+      } else if (!StringUtils.hasText(img.getStoragePath())) {
+        items.put(id, BATCH_MISSING_STORAGE_PATH);
+      } else {
+        items.put(id, null);
+        pathByImage.put(id, img.getStoragePath());
+      }
+    }
+
+    Map<UUID, UUID> queued = Map.of();
+    if (!pathByImage.isEmpty()) {
+      // 2) Backpressure for the batch as a whole
+      admit(currentUser, pathByImage.size());
+
+      // 3) One Storage call signs every URL
+      Map<String, String> signed = storage.createSignedUrls(
+          new LinkedHashSet<>(pathByImage.values()), userService.getCurrentBearerOrThrow());
+      Map<UUID, String> sourceUrls = new LinkedHashMap<>();
+      pathByImage.forEach((id, path) -> {
+        String url = signed.get(path);
+        if (url == null) {
+          items.put(id, BATCH_SIGN_FAILED);
+        } else {
+          sourceUrls.put(id, url);
+        }
+      });
+
+      // 4) All PENDING rows in one statement, then one wake-up per job;
+      //    the rows share a batch id so cancelling one drops the rest
+      queued = jobs.insertPending(sourceUrls, UUID.randomUUID(), now());
+      queued.values().forEach(analysisId ->
+          events.publishEvent(new AnalysisQueuedEvent(analysisId)));
+    }
+
+    List<Dtos.AnalyzeBatchItem> out = new ArrayList<>(items.size());
+    for (Map.Entry<UUID, String> item : items.entrySet()) {
+      UUID analysisId = queued.get(item.getKey());
+      String status = analysisId != null ? BATCH_QUEUED : item.getValue();
+      out.add(new Dtos.AnalyzeBatchItem(item.getKey().toString(),
+          analysisId == null ? null : analysisId.toString(), status));
+    }
+    return new Dtos.AnalyzeBatchResponse(out);
+  }
+
+  /**
+   * Runs a job claimed by a worker: finishes it from the manifest cache when
+   * the same bytes were analyzed before, otherwise tries the metadata stages
+   * over ranged reads, downloads the asset only if they need the full file,
+   * runs C2PA, and finalizes the report. Converts any thrown errors
+   * into a FAILED report with error JSON. Never throws.
+   *
+   * @param job RUNNING job returned by the queue claim
+   */
+  public void processJob(AnalysisJob job) {
+    FetchedJob fetched = fetchJob(job);
+    if (fetched != null) {
+      extractJob(fetched);
+    }
+  }
+
+  /**
+   * First, I/O-bound half of {@link #processJob}: cache lookup, ranged
+   * metadata stages and, if those need the whole file, the download. The
+   * worker pool runs it on its fetch threads so the next jobs' downloads
+   * overlap the extraction of the current ones. Never throws.
+   *
+   * @param job RUNNING job returned by the queue claim
+   * @return the downloaded job for {@link #extractJob}, or null when the job
+   *     was already finalized (cache hit, ranged result, failure) or cancelled
+   */
+  @Nullable
+  public FetchedJob fetchJob(AnalysisJob job) {
+    final UUID analysisId = job.analysisId();
+    if (!cancellations.resume(analysisId)) {
+      return null; // cancelled while waiting for a fetch thread
+    }
+    try {
+      // 0) Identical bytes analyzed before: one conditional update, no fetch
+      if (job.contentSha256() != null && jobs.markDoneFromCache(job.analysisId(),
+          job.leaseOwner(), job.contentSha256(), manifestExtractor.version(), now())) {
+        publishStage(job.analysisId(), Stage.DONE);
+        coalescer.settle(job, AnalysisCoalescer.Outcome.CACHED);
+        return null;
+      }
+      publishStage(job.analysisId(), Stage.DOWNLOADING);
+      AnalysisJob source = withUsableSourceUrl(job);
+
+      // 1) Metadata stages over ranged reads; most jobs finish here
+      String fromRanges = metadataStages(source);
+      if (fromRanges != null) {
+        markCompleted(job, fromRanges, null);
+        return null;
+      }
+
+      // 2) Download the signed URL to a temp file. Ranged reads give up on
+      //    an interrupt like on any other error, so re-check first.
+      cancellations.check(analysisId);
+      File file = downloadToTemp(source.sourceUrl(),
+          job.storagePath() == null ? "" : job.storagePath());
+      if (cancellations.isCancelled(analysisId)) {
+        Files.deleteIfExists(file.toPath());
+        return null;
+      }
+      return new FetchedJob(source, file);
+    } catch (Exception e) {
+      failUnlessCancelled(job, e);
+      return null;
+    } finally {
+      cancellations.park(analysisId);
+    }
+  }
+
+  /**
+   * Second, CPU/tool-bound half of {@link #processJob}: runs C2PA extraction
+   * on the downloaded file and finalizes the report. Always deletes the
+   * file. Never throws.
+   *
+   * @param fetched job and file produced by {@link #fetchJob}
+   */
+  public void extractJob(FetchedJob fetched) {
+    AnalysisJob job = fetched.job();
+    try {
+      if (!cancellations.resume(job.analysisId())) {
+        return; // cancelled while waiting for an extraction thread
+      }
+      publishStage(job.analysisId(), Stage.EXTRACTING);
+
+      // 3) Run C2PA extraction
+      String manifestJson = manifestExtractor.extractManifest(fetched.file());
+
+      // 4) Mark COMPLETED
+      markCompleted(job, manifestJson, /*confidence*/ null);
+
+    } catch (ManifestNotFoundException e) {
+      // Readable image, no manifest: a result, not a failure
+      markCompleted(job, NO_MANIFEST_DETAILS, null);
+    } catch (Exception e) {
+      failUnlessCancelled(job, e);
+    } finally {
+      cancellations.park(job.analysisId());
+      // Best-effort cleanup of temp file
+      try {
+        Files.deleteIfExists(fetched.file().toPath());
+      } catch (IOException ignored) {
+        // Non-fatal during cleanup
+      }
+    }
+  }
+
+  /**
+   * Single-flight entry point, called by the worker pool before it runs a
+   * claimed job. Double-clicks, client retries and batch fan-out submit the
+   * same image several times within seconds; when another job for the same
+   * image, or for the same bytes if the digest is known, is already running
+   * on this instance, this job follows it instead of downloading and
+   * extracting again.
+   * - Returns null when the job leads: the caller runs {@link #fetchJob} and
+   *   {@link #extractJob} as usual and must call {@link #releaseJob} when
+   *   it lets go of the job. From here on the job can be cancelled.
+   * - Otherwise returns a future that completes once the leader settles:
+   *   with true once this job's own report has been finalized from the
+   *   leader's outcome (DONE with the same details, FAILED with the same
+   *   error, or from the manifest cache), with false if the leader let go
+   *   without a result (cancelled or crashed) and this job is still RUNNING
+   *   for the caller to requeue.
+   *
+   * @param job RUNNING job returned by the queue claim
+   * @return null if the caller must run the job, else its completion
+   */
+  @Nullable
+  public CompletableFuture<Boolean> coalesce(AnalysisJob job) {
+    CompletableFuture<AnalysisCoalescer.Outcome> shared = coalescer.join(job);
+    if (shared == null) {
+      cancellations.track(job.analysisId());
+      return null;
+    }
+    log.debug("Analysis {} follows the running analysis of image {}",
+        job.analysisId(), job.imageId());
+    return shared.thenApply(outcome -> finishFollower(job, outcome));
+  }
+
+  /**
+   * Forgets a job the caller ran: abandons the flight it leads, if that has
+   * not been settled, and stops tracking it for cancellation. Safe to call
+   * for any job; see {@link #coalesce}.
+   *
+   * @param job a job the caller ran after {@link #coalesce} returned null
+   */
+  public void releaseJob(AnalysisJob job) {
+    coalescer.settle(job, AnalysisCoalescer.Outcome.ABANDONED);
+    cancellations.end(job.analysisId());
+  }
+
+  /** Jobs that followed another job's execution instead of running. */
+  public long coalescedJobs() {
+    return coalescer.coalesced();
+  }
+
+  /**
+   * Cancels a PENDING or RUNNING analysis owned by the caller, together with
+   * the jobs of its batch that are still PENDING, in one statement. The
+   * backlog shrinks at once, so the freed queue and worker capacity goes to
+   * live requests. The instance running the analysis, this one or another
+   * (via the CANCELLED notification), aborts its download or destroys its
+   * c2patool process and deletes its temp file. Cancelling an analysis that
+   * is already CANCELLED succeeds again.
+   *
+   * @param analysisId analysis to cancel
+   * @return the CANCELLED status and how many batch siblings were dropped
+   * @throws NotFoundException when the analysis is missing or not owned
+   * @throws AnalysisFinishedException when it already finished DONE or FAILED
+   */
+  public Dtos.AnalyzeCancelResponse cancelAnalysis(UUID analysisId) {
+    var report = analysisRepo.findById(analysisId)
+        .orElseThrow(() -> new NotFoundException("Analysis not found: " + analysisId));
+    var currentUser = userService.getCurrentUserIdOrThrow();
+    imageService.getById(currentUser, report.getImageId());
+
+    List<UUID> cancelled = jobs.cancel(analysisId, now());
+    cancelled.forEach(id -> publishStage(id, Stage.CANCELLED));
+    if (cancelled.contains(analysisId)) {
+      log.info("Analysis {} cancelled with {} queued batch job(s)",
+          analysisId, cancelled.size() - 1);
+      return new Dtos.AnalyzeCancelResponse(analysisId.toString(),
+          ReportStatus.CANCELLED.name(), cancelled.size() - 1);
+    }
+
+    // Not PENDING/RUNNING any more; re-read, it may have finished since
+    ReportStatus status = analysisRepo.findById(analysisId)
+        .map(AnalysisReport::getStatus)
+        .orElseThrow(() -> new NotFoundException("Analysis not found: " + analysisId));
+    if (status != ReportStatus.CANCELLED) {
+      throw new AnalysisFinishedException(
+          "Analysis " + analysisId + " already finished " + status);
+    }
+    return new Dtos.AnalyzeCancelResponse(analysisId.toString(), status.name(), 0);
+  }
+
+  /**
+   * Stops a cancelled job if it is executing on this instance. Receives both
+   * local cancellations and ones relayed from other instances.
+   *
+   * @param event stage transition
+   */
+  @EventListener
+  public void onProgress(AnalysisProgressEvent event) {
+    if (event.stage() == Stage.CANCELLED && cancellations.cancel(event.analysisId())) {
+      log.info("Stopping cancelled analysis {}", event.analysisId());
+    }
+  }
+
   /**
    * Returns the stored manifest JSON for an analysis.
    * Re-validates ownership via the linked image.
@@ -136,6 +561,11 @@ public class AnalyzeService {
     imageService.getById(currentUser, report.getImageId());
 
     String detailsJson = report.getDetails();
+    if (!StringUtils.hasText(detailsJson) && report.getManifestSha256() != null) {
+      detailsJson = manifests
+          .findDetails(report.getManifestSha256(), report.getManifestVersion())
+          .orElse(null);
+    }
     if (!StringUtils.hasText(detailsJson)) {
       throw new NotFoundException(
         "Manifest not available for analysis: " + analysisId
@@ -170,6 +600,161 @@ public class AnalyzeService {
     );
   }
 
+  /**
+   * Admission control for new jobs. Soft limits: concurrent submits may
+   * overshoot slightly.
+   * - The shared backlog is capped at maxQueueDepth.
+   * - Each user's share of it is capped at maxPendingPerUser, so one user's
+   *   bulk submissions cannot fill the queue and lock everyone else out.
+   *
+   * @param userId submitting user
+   * @param adding jobs about to be queued
+   * @throws QueueFullException with a Retry-After hint when either cap is reached
+   */
+  private void admit(UUID userId, int adding) {
+    if (jobs.countPending() + adding > maxQueueDepth) {
+      throw new QueueFullException(
+          "Analysis queue is full; retry later.", retryAfterSeconds);
+    }
+    if (maxPendingPerUser > 0
+        && jobs.countPendingForUser(userId) + adding > maxPendingPerUser) {
+      throw new QueueFullException(
+          "Too many of your analyses are queued; retry later.", retryAfterSeconds);
+    }
+  }
+
+  /**
+   * Long-poll variant of {@link #getConfidence}: resolves once the analysis
+   * is DONE, FAILED or CANCELLED, or with its current status once {@code waitMs}
+   * elapses. Ownership is checked up front, on the request thread. While
+   * parked, the request holds neither a thread nor a DB connection; it is
+   * woken by the completion event for the analysis (local or relayed over
+   * LISTEN/NOTIFY), and only then reads the report once more, on the
+   * application task executor rather than the common fork-join pool, whose
+   * few threads must not block on JDBC.
+   *
+   * @param analysisId analysis to wait for
+   * @param waitMs how long to wait; clamped to [0, maxWaitMs]
+   * @return future of the status at wake-up or expiry
+   * @throws NotFoundException when analysis is missing
+   */
+  public CompletableFuture<Dtos.AnalyzeConfidenceResponse> awaitConfidence(UUID analysisId,
+                                                                          long waitMs) {
+    long wait = Math.min(Math.max(waitMs, 0), maxWaitMs);
+    if (wait == 0) {
+      return CompletableFuture.completedFuture(getConfidence(analysisId));
+    }
+
+    // Register before the read so a completion in between is not missed
+    CompletableFuture<Void> signal = waiters.register(analysisId);
+    Dtos.AnalyzeConfidenceResponse current;
+    try {
+      current = getConfidence(analysisId);
+    } catch (RuntimeException e) {
+      waiters.unregister(analysisId, signal);
+      throw e;
+    }
+    if (isTerminal(current.status())) {
+      waiters.unregister(analysisId, signal);
+      return CompletableFuture.completedFuture(current);
+    }
+
+    // Re-read off the completing thread, which may be a worker or the notify listener
+    return signal
+        .completeOnTimeout(null, wait, TimeUnit.MILLISECONDS)
+        .thenApplyAsync(ignored -> {
+          waiters.unregister(analysisId, signal);
+          return analysisRepo.findById(analysisId)
+              .map(report -> new Dtos.AnalyzeConfidenceResponse(
+                  report.getId().toString(),
+                  report.getStatus().name(),
+                  report.getConfidence()))
+              .orElseThrow(() -> new NotFoundException("Analysis not found: " + analysisId));
+        }, waitExecutor);
+  }
+
+  private static boolean isTerminal(String status) {
+    return ReportStatus.DONE.name().equals(status) || ReportStatus.FAILED.name().equals(status)
+        || ReportStatus.CANCELLED.name().equals(status);
+  }
+
+  /**
+   * Returns status snapshots for many analyses in one owner-scoped query,
+   * replacing one {@link #getConfidence} call (and its two lookups) per id.
+   * Ids that do not exist or are not owned by the caller are left out, so
+   * the response cannot be used to probe other users' analyses.
+   *
+   * @param analysisIds analyses to look up; duplicates are ignored
+   * @return one status item per found analysis, in request order
+   * @throws IllegalArgumentException when the list is empty or longer than maxStatusIds
+   */
+  public List<Dtos.AnalysisStatusItem> getStatuses(List<UUID> analysisIds) {
+    Set<UUID> distinct = distinctIds(analysisIds, maxStatusIds, "analyses");
+    final UUID currentUser = userService.getCurrentUserIdOrThrow();
+
+    Map<UUID, AnalysisSummary> found = new HashMap<>();
+    for (AnalysisSummary summary : summaries.findOwned(currentUser, distinct)) {
+      found.put(summary.analysisId(), summary);
+    }
+
+    List<Dtos.AnalysisStatusItem> out = new ArrayList<>(found.size());
+    for (UUID id : distinct) {
+      AnalysisSummary summary = found.get(id);
+      if (summary != null) {
+        out.add(new Dtos.AnalysisStatusItem(
+            id.toString(),
+            summary.imageId().toString(),
+            summary.status().name(),
+            summary.confidence(),
+            summary.completedAt()));
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Opens a Server-Sent Events stream of stage transitions for the given
+   * analyses: first each one's current stage, then every later stage as the
+   * worker reaches it, until all are DONE, FAILED or CANCELLED. Ownership is checked
+   * with the same single query as {@link #getStatuses}; analyses the caller
+   * does not own are silently not followed.
+   *
+   * @param analysisIds analyses to follow; duplicates are ignored
+   * @return emitter to return as the response body
+   * @throws IllegalArgumentException when the list is empty or longer than maxStatusIds
+   * @throws NotFoundException when none of the analyses exist for the caller
+   */
+  public SseEmitter streamProgress(List<UUID> analysisIds) {
+    Set<UUID> distinct = distinctIds(analysisIds, maxStatusIds, "analyses");
+    final UUID currentUser = userService.getCurrentUserIdOrThrow();
+
+    // Register before the snapshot so no transition falls in between
+    AnalysisEventHub.Subscription sub = progress.subscribe(distinct);
+    Map<UUID, AnalysisSummary> found = new HashMap<>();
+    try {
+      for (AnalysisSummary summary : summaries.findOwned(currentUser, distinct)) {
+        found.put(summary.analysisId(), summary);
+      }
+    } catch (RuntimeException e) {
+      progress.cancel(sub);
+      throw e;
+    }
+    if (found.isEmpty()) {
+      progress.cancel(sub);
+      throw new NotFoundException("Analysis not found: " + distinct);
+    }
+
+    for (UUID id : distinct) {
+      AnalysisSummary summary = found.get(id);
+      if (summary == null) {
+        progress.drop(sub, id);
+      } else {
+        progress.offer(sub, id, Stage.of(summary.status()));
+      }
+    }
+    return sub.emitter();
+  }
+
   /**
    * Validates ownership of both images and returns a placeholder comparison.
    *
@@ -194,87 +779,177 @@ public class AnalyzeService {
   // ---------------------------------------------------------------------------
 
   /**
-   * Downloads the asset, runs C2PA, and finalizes the report.
-   * Converts any thrown errors into a FAILED report with error JSON.
+   * Returns the job with a source URL that stays valid through the fetch.
+   * The URL is signed at submit time with the caller's token, and a job can
+   * wait in a backlog, behind other users' jobs or through a requeue for
+   * longer than its TTL. One that expires within the download timeout is
+   * re-signed with the service credential; the submit-time signing has
+   * already checked the caller's access. A URL whose expiry cannot be read
+   * is used as is.
+   *
+   * @throws IllegalStateException if the job has no source URL at all
    */
-  private void runExtractionAndFinalize(UUID analysisId, String storagePath) {
-    File tempFile = null;
-    try {
-      // 1) Create a signed URL and download to a temp file
-      String bearer = userService.getCurrentBearerOrThrow();
-      String signed = storage.createSignedUrl(storagePath, bearer);
-      tempFile = downloadToTemp(signed, storagePath);
-
-      // 2) Run C2PA extraction
-      String manifestJson = c2paToolInvoker.extractManifest(tempFile);
-
-      // 3) Mark COMPLETED
-      markCompleted(analysisId, manifestJson, /*confidence*/ null);
-
-    } catch (Exception e) {
-      // Capture a compact error message for the persisted details JSON
-      String errMsg = truncate(e.toString(), 2000);
+  private AnalysisJob withUsableSourceUrl(AnalysisJob job) {
+    if (!StringUtils.hasText(job.sourceUrl())) {
+      throw new IllegalStateException("Job has no source URL");
+    }
+    Optional<Instant> expiry = storage.signedUrlExpiry(job.sourceUrl());
+    if (expiry.isEmpty() || expiry.get().isAfter(now().plus(downloadTimeout))) {
+      return job;
+    }
+    log.debug("Analysis {} source URL expires at {}; re-signing", job.analysisId(),
+        expiry.get());
+    return job.withSourceUrl(storage.createServiceSignedUrl(job.storagePath()));
+  }
 
+  /**
+   * Runs the header-only stages against a ranged view of the object:
+   * the C2PA presence probe, then in-process manifest extraction, sharing one
+   * block cache. Returns the details JSON, or null when a stage needs the
+   * whole file (unsupported format, tool-only engine, budget exhausted,
+   * range errors); the caller then downloads it.
+   */
+  @Nullable
+  private String metadataStages(AnalysisJob job) {
+    if (metadataMaxBytes <= 0) {
+      return null;
+    }
+    try (RangedObjectChannel remote = storage.openRanged(job.sourceUrl(), metadataMaxBytes)) {
       try {
-        var errorObj = new java.util.LinkedHashMap<String, Object>();
-        errorObj.put("error", errMsg);
-        String errorJson = objectMapper.writeValueAsString(errorObj);
-        markFailed(analysisId, errorJson);
-      } catch (Exception jsonEx) {
-        // Absolute fallback if JSON serialization fails
-        markFailed(analysisId, "{\"error\":\"" + escapeForJson(errMsg) + "\"}");
-      }
-    } finally {
-      // Best-effort cleanup of temp file
-      if (tempFile != null) {
-        try {
-          Files.deleteIfExists(tempFile.toPath());
-        } catch (IOException ignored) {
-          // Non-fatal during cleanup
+        if (C2paPresenceProbe.probe(remote) == Presence.ABSENT) {
+          return NO_MANIFEST_DETAILS;
         }
+        return manifestExtractor.extractManifest(remote);
+      } catch (ManifestNotFoundException e) {
+        return NO_MANIFEST_DETAILS;
+      } catch (IOException | RuntimeException e) {
+        log.debug("Analysis {} needs a full download after {} ranged bytes: {}",
+            job.analysisId(), remote.fetchedBytes(), e.getMessage());
+        return null;
       }
     }
   }
 
   /**
-   * Marks the report as DONE and stores manifest + optional confidence.
+   * Marks the report as DONE and stores manifest + optional confidence:
+   * in the manifest cache when the image has a content digest, inline in
+   * `details` otherwise. A no-op (logged) if this node no longer holds the
+   * job's lease.
    */
-  @Transactional
-  protected void markCompleted(UUID analysisId,
-                               String manifestJson,
-                               @Nullable Double confidence) {
-    var report = analysisRepo.findById(analysisId)
-        .orElseThrow(() ->
-        new NotFoundException("Analysis not found: " + analysisId));
-    report.setStatus(ReportStatus.DONE);
-    report.setDetails(manifestJson);
-    report.setConfidence(confidence);
-    analysisRepo.save(report);
+  private void markCompleted(AnalysisJob job,
+                             String manifestJson,
+                             @Nullable Double confidence) {
+    try {
+      storeDone(job, manifestJson, confidence);
+    } finally {
+      // Followers share the result even if this job's own update failed
+      coalescer.settle(job, AnalysisCoalescer.Outcome.done(manifestJson, confidence));
+    }
+  }
+
+  /** Writes a DONE result to the job's own row; see {@link #markCompleted}. */
+  private void storeDone(AnalysisJob job, String manifestJson, @Nullable Double confidence) {
+    boolean done = job.contentSha256() != null
+        ? jobs.markDoneCaching(job.analysisId(), job.leaseOwner(), job.contentSha256(),
+            manifestExtractor.version(), manifestJson, confidence, now())
+        : jobs.markDone(job.analysisId(), job.leaseOwner(), manifestExtractor.version(),
+            manifestJson, confidence, now());
+    if (done) {
+      publishStage(job.analysisId(), Stage.DONE);
+    } else {
+      log.warn("Lease on analysis {} lost; DONE result discarded", job.analysisId());
+    }
+  }
+
+  /**
+   * Converts an error into a FAILED report, unless it is the job being
+   * stopped by a cancellation: its row is already CANCELLED.
+   */
+  private void failUnlessCancelled(AnalysisJob job, Exception e) {
+    if (cancellations.isCancelled(job.analysisId())) {
+      log.info("Analysis {} stopped after cancellation: {}", job.analysisId(), e.toString());
+    } else {
+      fail(job, e);
+    }
+  }
+
+  /**
+   * Converts an error into a FAILED report with a compact error JSON.
+   */
+  private void fail(AnalysisJob job, Exception e) {
+    // Capture a compact error message for the persisted details JSON
+    String errMsg = truncate(e.toString(), 2000);
+
+    try {
+      var errorObj = new java.util.LinkedHashMap<String, Object>();
+      errorObj.put("error", errMsg);
+      String errorJson = objectMapper.writeValueAsString(errorObj);
+      markFailed(job, errorJson);
+    } catch (Exception jsonEx) {
+      // Absolute fallback if JSON serialization fails
+      markFailed(job, "{\"error\":\"" + escapeForJson(errMsg) + "\"}");
+    }
   }
 
   /**
    * Marks the report as FAILED and persists error details as JSON.
+   * Stores {"error":"..."} to meet acceptance signal and aid debugging.
    */
-  @Transactional
-  protected void markFailed(UUID analysisId, String detailsJson) {
-    var report = analysisRepo.findById(analysisId)
-        .orElseThrow(() ->
-        new NotFoundException("Analysis not found: " + analysisId));
-    report.setStatus(ReportStatus.FAILED);
-    // Store {"error":"..."} to meet acceptance signal and aid debugging.
-    report.setDetails(detailsJson);
-    analysisRepo.save(report);
+  private void markFailed(AnalysisJob job, String detailsJson) {
+    try {
+      storeFailed(job, detailsJson);
+    } finally {
+      coalescer.settle(job, AnalysisCoalescer.Outcome.failed(detailsJson));
+    }
+  }
+
+  /** Writes a FAILED result to the job's own row; see {@link #markFailed}. */
+  private void storeFailed(AnalysisJob job, String detailsJson) {
+    if (jobs.markFailed(job.analysisId(), job.leaseOwner(), detailsJson, now())) {
+      publishStage(job.analysisId(), Stage.FAILED);
+    } else {
+      log.warn("Lease on analysis {} lost; FAILED result discarded", job.analysisId());
+    }
+  }
+
+  /**
+   * Finalizes a follower's own row from the outcome of the execution it
+   * followed. Runs on the leader's thread, after the leader's own update.
+   *
+   * @return false if the leader let go without an outcome to share
+   */
+  private boolean finishFollower(AnalysisJob job, AnalysisCoalescer.Outcome outcome) {
+    switch (outcome.kind()) {
+      case DONE -> storeDone(job, outcome.details(), outcome.confidence());
+      case FAILED -> storeFailed(job, outcome.details());
+      case CACHED -> {
+        if (jobs.markDoneFromCache(job.analysisId(), job.leaseOwner(), job.contentSha256(),
+            manifestExtractor.version(), now())) {
+          publishStage(job.analysisId(), Stage.DONE);
+        } else {
+          log.warn("Analysis {} could not finish from the manifest cache", job.analysisId());
+        }
+      }
+      case ABANDONED -> {
+        log.debug("Analysis {} released unfinished; its leader stopped", job.analysisId());
+        return false;
+      }
+      default -> throw new IllegalStateException("Unexpected outcome " + outcome.kind());
+    }
+    return true;
   }
 
   /**
-   * Downloads a signed URL to a temp file with a reasonable extension.
+   * Streams a signed URL into a temp file with a reasonable extension.
    * The extension is derived from storagePath to help downstream tools
-   * that branch on file type (e.g., .jpg vs .png).
+   * that branch on file type (e.g., .jpg vs .png). The transfer goes through
+   * the pooled storage client, bounded by maxObjectBytes and downloadTimeout;
+   * a partial file is removed on failure.
    *
    * @param signedUrl pre-signed download URL
    * @param storagePath object path used to infer extension
    * @return on-disk temp file containing the asset
-   * @throws IOException if download fails or produces an empty file
+   * @throws IOException if download fails, exceeds its limits or produces an empty file
    */
   private File downloadToTemp(String signedUrl, String storagePath) throws IOException {
     String ext = ".bin";
@@ -288,17 +963,41 @@ public class AnalyzeService {
     }
 
     File tmp = File.createTempFile("analysis-", ext);
-    try (var in = new URL(signedUrl).openStream()) {
-      Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    try {
+      storage.downloadToFile(signedUrl, tmp.toPath(), maxObjectBytes, downloadTimeout);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(tmp.toPath());
+      throw e;
     }
 
     // Sanity check: ensure we did not fetch an empty object
     if (Files.size(tmp.toPath()) <= 0) {
+      Files.deleteIfExists(tmp.toPath());
       throw new IOException("Downloaded empty file from signed URL");
     }
     return tmp;
   }
 
+  /**
+   * De-duplicates a client id list, keeping first-seen order.
+   *
+   * @throws IllegalArgumentException when no ids remain or more than {@code max} do
+   */
+  private static Set<UUID> distinctIds(@Nullable List<UUID> ids, int max, String what) {
+    Set<UUID> distinct = ids == null ? new LinkedHashSet<>() : new LinkedHashSet<>(ids);
+    distinct.remove(null);
+    if (distinct.isEmpty() || distinct.size() > max) {
+      throw new IllegalArgumentException(
+          "A request must name between 1 and " + max + " " + what);
+    }
+    return distinct;
+  }
+
+  /** Tells SSE subscribers that an analysis entered a new stage. */
+  private void publishStage(UUID analysisId, Stage stage) {
+    events.publishEvent(new AnalysisProgressEvent(analysisId, stage));
+  }
+
   /** Returns a clock-based Instant for deterministic tests. */
   private Instant now() {
     return Instant.now(clock);
@@ -326,10 +1025,16 @@ public class AnalyzeService {
   }
 
   /**
-   * Minimal builder for future centralization of AnalysisReport creation.
-   * Currently unused; kept to show intended construction pattern.
+   * A claimed job whose object has been downloaded and awaits extraction.
+   *
+   * @param job the claimed job
+   * @param file temp file holding the object; deleted by {@link #extractJob}
+   */
+  public record FetchedJob(AnalysisJob job, File file) { }
+
+  /**
+   * Minimal builder centralizing AnalysisReport creation.
    */
-  @SuppressWarnings("unused")
   private static final class AnalysisReportBuilder {
     static AnalysisReport pending(UUID imageId, Instant createdAt) {
       var ar = new AnalysisReport(imageId);
@@ -0,0 +1,225 @@
+package dev.coms4156.project.metadetect.service;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+
+/**
+ * Bounded executor for manifest extraction that shares its threads fairly
+ * between users.
+ * Design:
+ * - At most {@code concurrency} extractions run at once, so a burst of jobs
+ *   cannot fork an unbounded number of c2patool processes.
+ * - Waiting tasks are queued per user and started round-robin across
+ *   users: a user with many queued tasks delays each other user by at most
+ *   one task per turn.
+ * - At most {@code maxQueued} tasks wait; {@link #execute} rejects beyond that.
+ * - The time each task spent queued is measured and exposed for diagnostics.
+ * A finishing thread takes the next task itself, so dispatch needs no
+ * separate scheduler thread.
+ */
+public final class FairExtractionExecutor {
+
+  private static final Logger log = LoggerFactory.getLogger(FairExtractionExecutor.class);
+
+  private final int concurrency;
+  private final int maxQueued;
+  private final ExecutorService threads;
+
+  /** Per-user queues in turn order; a user whose turn came moves to the back. */
+  private final Map<UUID, ArrayDeque<Queued>> queues = new LinkedHashMap<>();
+  private int queued;
+  private int active;
+  private boolean shutdown;
+
+  private final LongAdder started = new LongAdder();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  /**
+   * Constructs the executor and its threads.
+   *
+   * @param concurrency extractions allowed at once; 0 or less picks a
+   *     CPU-aware default, see {@link #defaultConcurrency()}
+   * @param maxQueued tasks allowed to wait for a thread
+   * @param threadPrefix name prefix of the extraction threads
+   */
+  public FairExtractionExecutor(int concurrency, int maxQueued, String threadPrefix) {
+    this.concurrency = concurrency > 0 ? concurrency : defaultConcurrency();
+    this.maxQueued = maxQueued;
+    AtomicInteger seq = new AtomicInteger();
+    this.threads = Executors.newFixedThreadPool(this.concurrency, r -> {
+      Thread t = new Thread(r, threadPrefix + seq.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Half the available processors, at least one: extraction is CPU-bound,
+   * and the other half is left to request handling and downloads.
+   *
+   * @return default number of concurrent extractions
+   */
+  public static int defaultConcurrency() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  }
+
+  /**
+   * Runs the task now if a thread is free, otherwise queues it behind the
+   * user's earlier tasks.
+   *
+   * @param userId user the work is done for; null shares one anonymous queue
+   * @param task work to run
+   * @throws RejectedExecutionException when maxQueued tasks are already waiting
+   *     or the executor is shut down
+   */
+  public void execute(@Nullable UUID userId, Runnable task) {
+    Queued entry = new Queued(userId, task, System.nanoTime());
+    synchronized (this) {
+      if (shutdown) {
+        throw new RejectedExecutionException("Extraction executor is shut down");
+      }
+      if (active >= concurrency) {
+        if (queued >= maxQueued) {
+          throw new RejectedExecutionException(
+              "Extraction queue is full (" + queued + " waiting)");
+        }
+        queues.computeIfAbsent(userId, k -> new ArrayDeque<>()).add(entry);
+        queued++;
+        return;
+      }
+      active++;
+    }
+    try {
+      threads.execute(() -> runFrom(entry));
+    } catch (RejectedExecutionException e) {
+      synchronized (this) {
+        active--;
+      }
+      throw e;
+    }
+  }
+
+  /** Runs the task, then keeps taking queued tasks until none are left. */
+  private void runFrom(Queued first) {
+    Queued current = first;
+    while (current != null) {
+      recordWait(current);
+      try {
+        current.task.run();
+      } catch (RuntimeException e) {
+        log.error("Extraction task failed", e);
+      }
+      current = next();
+    }
+  }
+
+  /**
+   * Takes the head task of the user whose turn it is, or gives the thread
+   * back when nothing is queued.
+   */
+  @Nullable
+  private synchronized Queued next() {
+    Iterator<Map.Entry<UUID, ArrayDeque<Queued>>> turns = queues.entrySet().iterator();
+    if (!turns.hasNext()) {
+      active--;
+      notifyAll();
+      return null;
+    }
+    Map.Entry<UUID, ArrayDeque<Queued>> turn = turns.next();
+    ArrayDeque<Queued> userQueue = turn.getValue();
+    Queued head = userQueue.poll();
+    turns.remove();
+    if (!userQueue.isEmpty()) {
+      queues.put(turn.getKey(), userQueue);
+    }
+    queued--;
+    return head;
+  }
+
+  private void recordWait(Queued entry) {
+    long waited = System.nanoTime() - entry.enqueuedAt;
+    started.increment();
+    totalWaitNanos.add(waited);
+    maxWaitNanos.accumulateAndGet(waited, Math::max);
+    if (log.isDebugEnabled()) {
+      log.debug("Extraction for user {} waited {} ms", entry.userId,
+          TimeUnit.NANOSECONDS.toMillis(waited));
+    }
+  }
+
+  /** Extractions allowed at once. */
+  public int concurrency() {
+    return concurrency;
+  }
+
+  /** Tasks waiting for a thread. */
+  public synchronized int queued() {
+    return queued;
+  }
+
+  /** Tasks running now. */
+  public synchronized int active() {
+    return active;
+  }
+
+  /** Mean time tasks spent queued before starting, in milliseconds. */
+  public long averageQueueWaitMs() {
+    long n = started.sum();
+    return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum() / n);
+  }
+
+  /** Longest time a task spent queued before starting, in milliseconds. */
+  public long maxQueueWaitMs() {
+    return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+  }
+
+  /**
+   * Stops accepting tasks and waits for running and queued ones to finish.
+   *
+   * @param timeout longest time to wait
+   * @param unit unit of {@code timeout}
+   * @return true if everything finished in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean shutdownAndAwait(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (this) {
+      shutdown = true;
+      while (active > 0) {
+        long left = deadline - System.nanoTime();
+        if (left <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, left);
+      }
+    }
+    threads.shutdown();
+    return true;
+  }
+
+  /** Drops queued tasks and interrupts running ones. */
+  public void shutdownNow() {
+    synchronized (this) {
+      shutdown = true;
+      queues.clear();
+      queued = 0;
+    }
+    threads.shutdownNow();
+  }
+
+  private record Queued(@Nullable UUID userId, Runnable task, long enqueuedAt) { }
+}
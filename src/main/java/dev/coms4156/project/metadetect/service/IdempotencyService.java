@@ -0,0 +1,308 @@
+package dev.coms4156.project.metadetect.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.coms4156.project.metadetect.repository.IdempotencyKeyRepository;
+import dev.coms4156.project.metadetect.repository.IdempotencyKeyRepository.IdempotencyRecord;
+import dev.coms4156.project.metadetect.service.errors.IdempotencyKeyInFlightException;
+import dev.coms4156.project.metadetect.service.errors.IdempotencyKeyReusedException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Makes POST endpoints safe to retry with an `Idempotency-Key` header.
+ * Semantics, per (user, scope, key):
+ * - The first request claims the key and runs; its response body is stored
+ *   as JSON for {@code metadetect.idempotency.ttlSeconds}.
+ * - A repeat with the same key and the same request returns the stored
+ *   response without running again.
+ * - A repeat while the first request is still running waits for it (up to
+ *   {@code metadetect.idempotency.waitMs}) and then returns its response;
+ *   after that it gets {@link IdempotencyKeyInFlightException} (409).
+ * - The same key with a different request gets
+ *   {@link IdempotencyKeyReusedException} (422).
+ * - A failed request frees its key, so a retry runs again.
+ * Waiting:
+ * - A duplicate of a request running on this instance is woken as soon as
+ *   it finishes; a duplicate of one running elsewhere polls the table.
+ * - A running request that has not finished within
+ *   {@code metadetect.idempotency.staleAfterMs} is presumed dead (instance
+ *   crash) and the next duplicate takes over its key.
+ * Requests without the header run as before.
+ */
+@Service
+public class IdempotencyService {
+
+  private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+  /** Request header carrying the client's key. */
+  public static final String HEADER = "Idempotency-Key";
+
+  /** Longest key accepted. */
+  static final int MAX_KEY_LENGTH = 255;
+
+  /** Retry-After hint when the original request is still running. */
+  static final long RETRY_AFTER_SECONDS = 1;
+
+  private static final int PURGE_BATCH = 1000;
+
+  private final IdempotencyKeyRepository keys;
+  private final UserService userService;
+  private final ObjectMapper objectMapper;
+  private final Clock clock;
+  private final Duration ttl;
+  private final Duration maxWait;
+  private final Duration staleAfter;
+  private final Duration pollInterval;
+
+  /** Requests holding a key on this instance; completed when they finish. */
+  private final Map<String, CompletableFuture<Void>> running = new ConcurrentHashMap<>();
+
+  /**
+   * Constructs the service.
+   *
+   * @param keys stored keys and responses
+   * @param userService current user identity; keys are per user
+   * @param objectMapper serializes stored responses
+   * @param clock time source for key timestamps
+   * @param ttlSeconds how long a key and its response are kept
+   * @param waitMs how long a duplicate waits for the original request
+   * @param staleAfterMs how long a request may run before its key can be taken over
+   * @param pollIntervalMs how often a duplicate re-reads the key while waiting
+   */
+  public IdempotencyService(
+      IdempotencyKeyRepository keys,
+      UserService userService,
+      ObjectMapper objectMapper,
+      Clock clock,
+      @Value("${metadetect.idempotency.ttlSeconds:86400}") long ttlSeconds,
+      @Value("${metadetect.idempotency.waitMs:30000}") long waitMs,
+      @Value("${metadetect.idempotency.staleAfterMs:300000}") long staleAfterMs,
+      @Value("${metadetect.idempotency.pollIntervalMs:200}") long pollIntervalMs) {
+    if (ttlSeconds <= 0 || staleAfterMs <= 0 || pollIntervalMs <= 0) {
+      throw new IllegalArgumentException(
+          "idempotency ttlSeconds, staleAfterMs and pollIntervalMs must be positive");
+    }
+    this.keys = keys;
+    this.userService = userService;
+    this.objectMapper = objectMapper;
+    this.clock = clock;
+    this.ttl = Duration.ofSeconds(ttlSeconds);
+    this.maxWait = Duration.ofMillis(Math.max(0, waitMs));
+    this.staleAfter = Duration.ofMillis(staleAfterMs);
+    this.pollInterval = Duration.ofMillis(pollIntervalMs);
+  }
+
+  /**
+   * Runs a request at most once per key, or returns the response of the
+   * request that already ran with it.
+   *
+   * @param scope endpoint family the key belongs to, e.g. "analyze"
+   * @param key client-supplied key, or null to just run the request
+   * @param request what the request asks for (e.g. the image id); the same
+   *     key with a different value is rejected
+   * @param type response type, used to read a stored response back
+   * @param action the request itself
+   * @param <T> response type
+   * @param <E> checked exception the request may throw
+   * @return the response of this run, or of the original one
+   * @throws E whatever the request throws; its key is freed
+   * @throws IllegalArgumentException if the key is empty, too long or not
+   *     printable ASCII
+   * @throws IdempotencyKeyReusedException if the key was used for a
+   *     different request
+   * @throws IdempotencyKeyInFlightException if the original request is
+   *     still running after the wait
+   */
+  public <T, E extends Exception> T execute(String scope,
+                                            @Nullable String key,
+                                            String request,
+                                            Class<T> type,
+                                            Action<T, E> action) throws E {
+    if (key == null) {
+      return action.run();
+    }
+    validateKey(key);
+    UUID userId = userService.getCurrentUserIdOrThrow();
+    String fingerprint = fingerprint(request);
+    long deadline = System.nanoTime() + maxWait.toNanos();
+
+    while (true) {
+      // Postgres keeps microseconds; the claim is matched on this value later
+      Instant now = clock.instant().truncatedTo(ChronoUnit.MICROS);
+      Instant expiresAt = now.plus(ttl);
+      if (keys.tryBegin(userId, scope, key, fingerprint, now, expiresAt)
+          || keys.takeOver(userId, scope, key, fingerprint, now.minus(staleAfter), now,
+              expiresAt)) {
+        return runHolding(userId, scope, key, now, action);
+      }
+
+      Optional<IdempotencyRecord> held = keys.find(userId, scope, key);
+      if (held.isEmpty()) {
+        continue; // freed since; claim it
+      }
+      IdempotencyRecord record = held.get();
+      if (!record.fingerprint().equals(fingerprint)) {
+        throw new IdempotencyKeyReusedException(
+            "Idempotency-Key was already used for a different request");
+      }
+      if (record.response() != null) {
+        return read(record.response(), type);
+      }
+      awaitOriginal(runningId(userId, scope, key), deadline);
+    }
+  }
+
+  /**
+   * Deletes expired keys in batches.
+   *
+   * @return number of keys deleted
+   */
+  @Scheduled(fixedDelayString = "${metadetect.idempotency.purgeIntervalMs:600000}")
+  public int purgeExpired() {
+    int purged = 0;
+    try {
+      int n;
+      do {
+        n = keys.purgeExpired(clock.instant(), PURGE_BATCH);
+        purged += n;
+      } while (n == PURGE_BATCH);
+    } catch (DataAccessException e) {
+      log.warn("Failed to purge expired idempotency keys: {}", e.getMessage());
+    }
+    return purged;
+  }
+
+  /** Runs the request while holding its key, then stores or frees the key. */
+  private <T, E extends Exception> T runHolding(UUID userId, String scope, String key,
+                                                Instant startedAt, Action<T, E> action)
+      throws E {
+    String id = runningId(userId, scope, key);
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    running.put(id, done);
+    T response = null;
+    try {
+      response = action.run();
+      return response;
+    } finally {
+      finish(userId, scope, key, startedAt, response);
+      running.remove(id, done);
+      done.complete(null);
+    }
+  }
+
+  /**
+   * Stores the response, or frees the key when there is none (the request
+   * threw) or it cannot be stored. Never throws: the request's own outcome
+   * is what the caller sees.
+   */
+  private void finish(UUID userId, String scope, String key, Instant startedAt,
+                      @Nullable Object response) {
+    try {
+      if (response != null
+          && keys.complete(userId, scope, key, startedAt,
+              objectMapper.writeValueAsString(response))) {
+        return;
+      }
+      keys.release(userId, scope, key, startedAt);
+    } catch (JsonProcessingException | DataAccessException e) {
+      log.warn("Failed to record idempotent {} response: {}", scope, e.getMessage());
+      try {
+        keys.release(userId, scope, key, startedAt);
+      } catch (DataAccessException ignored) {
+        // The key goes stale and is taken over by the next retry
+      }
+    }
+  }
+
+  /**
+   * Waits for the original request: on its local completion if it runs on
+   * this instance, otherwise one poll interval.
+   */
+  private void awaitOriginal(String id, long deadline) {
+    long left = deadline - System.nanoTime();
+    if (left <= 0) {
+      throw new IdempotencyKeyInFlightException(
+          "A request with this Idempotency-Key is still in progress; retry later.",
+          RETRY_AFTER_SECONDS);
+    }
+    CompletableFuture<Void> local = running.get(id);
+    try {
+      if (local != null) {
+        local.get(left, TimeUnit.NANOSECONDS);
+      } else {
+        TimeUnit.NANOSECONDS.sleep(Math.min(left, pollInterval.toNanos()));
+      }
+    } catch (TimeoutException | ExecutionException e) {
+      // Re-read the key; the deadline check above ends the wait
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IdempotencyKeyInFlightException(
+          "Interrupted waiting for the original request", RETRY_AFTER_SECONDS);
+    }
+  }
+
+  private <T> T read(String json, Class<T> type) {
+    try {
+      return objectMapper.readValue(json, type);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Stored idempotent response is unreadable", e);
+    }
+  }
+
+  /** Keys are 1-255 printable ASCII characters, as commonly generated (UUIDs, ULIDs). */
+  private static void validateKey(String key) {
+    if (key.isEmpty() || key.length() > MAX_KEY_LENGTH
+        || !key.chars().allMatch(c -> c > 0x20 && c < 0x7f)) {
+      throw new IllegalArgumentException(
+          HEADER + " must be 1-" + MAX_KEY_LENGTH + " printable ASCII characters");
+    }
+  }
+
+  private static String runningId(UUID userId, String scope, String key) {
+    return userId + "/" + scope + "/" + key;
+  }
+
+  /** Digest stored for a request, so keys stay compact whatever it contains. */
+  static String fingerprint(String value) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256")
+          .digest(value.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  /**
+   * A request run under an idempotency key.
+   *
+   * @param <T> response type
+   * @param <E> checked exception it may throw
+   */
+  @FunctionalInterface
+  public interface Action<T, E extends Exception> {
+    T run() throws E;
+  }
+}
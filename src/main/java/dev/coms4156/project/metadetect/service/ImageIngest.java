@@ -0,0 +1,309 @@
+package dev.coms4156.project.metadetect.service;
+
+import dev.coms4156.project.metadetect.service.errors.UnsupportedImageException;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import org.springframework.lang.Nullable;
+
+/**
+ * Ingest stage for uploaded image bytes. Wraps the upload stream so that
+ * one read of it yields:
+ * - the SHA-256 digest and byte count;
+ * - the real format is sniffed from magic bytes (the client's declared
+ *   content type is not trusted);
+ * - width/height are read from the format's header, without decoding pixels.
+ * The digest names the object in Storage, so it must be known before
+ * anything is written there: callers read this stream to the end first,
+ * then read the payload again to upload it.
+ * Sniffing looks only at the first {@link #HEAD_BYTES} bytes, which are
+ * buffered before anything is forwarded, so non-image payloads are rejected
+ * with {@link UnsupportedImageException} after reading only that window.
+ * Dimensions stay null when they are not within that window (e.g. a JPEG
+ * with a very large EXIF block) or the format is not parsed (TIFF, HEIF).
+ */
+public final class ImageIngest extends FilterInputStream {
+
+  /** Bytes buffered up front for format and dimension sniffing. */
+  static final int HEAD_BYTES = 64 * 1024;
+
+  private final Sniffed sniffed;
+  private final MessageDigest digest;
+  private long count;
+  private boolean eof;
+
+  private ImageIngest(InputStream in, Sniffed sniffed) {
+    super(in);
+    this.sniffed = sniffed;
+    try {
+      this.digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  /**
+   * Reads the head of the stream, sniffs it and returns a stream that
+   * replays the head followed by the rest. The source is closed if the
+   * payload is rejected.
+   *
+   * @param source upload bytes
+   * @return digesting stream positioned at the start of the payload
+   * @throws UnsupportedImageException if the bytes are not a supported image
+   * @throws IOException if the head cannot be read
+   */
+  public static ImageIngest open(InputStream source) throws IOException {
+    byte[] head;
+    Sniffed sniffed;
+    try {
+      head = source.readNBytes(HEAD_BYTES);
+      sniffed = sniff(head);
+    } catch (IOException | RuntimeException e) {
+      source.close();
+      throw e;
+    }
+    if (sniffed == null) {
+      source.close();
+      throw new UnsupportedImageException(
+          "Not a supported image (JPEG, PNG, GIF, WebP, TIFF, HEIC/AVIF)");
+    }
+    return new ImageIngest(
+        new SequenceInputStream(new ByteArrayInputStream(head), source), sniffed);
+  }
+
+  /** Detected MIME type, e.g. image/png. */
+  public String contentType() {
+    return sniffed.contentType();
+  }
+
+  /** Format, dimensions and the header-only facts known before streaming. */
+  public Sniffed sniffed() {
+    return sniffed;
+  }
+
+  /**
+   * Everything learned about the payload. Only valid once the stream has
+   * been read to the end.
+   *
+   * @return digest, format, dimensions and size
+   * @throws IllegalStateException if the stream has not been fully read
+   */
+  public Content content() {
+    if (!eof) {
+      throw new IllegalStateException("Upload stream was not read to the end");
+    }
+    return new Content(HexFormat.of().formatHex(digest.digest()),
+        sniffed.contentType(), sniffed.width(), sniffed.height(), count);
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = in.read();
+    if (b < 0) {
+      eof = true;
+    } else {
+      digest.update((byte) b);
+      count++;
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n = in.read(b, off, len);
+    if (n < 0) {
+      eof = true;
+    } else if (n > 0) {
+      digest.update(b, off, n);
+      count += n;
+    }
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    // Skipped bytes still have to be digested.
+    byte[] scratch = new byte[(int) Math.min(n, 8192)];
+    long skipped = 0;
+    while (skipped < n) {
+      int r = read(scratch, 0, (int) Math.min(scratch.length, n - skipped));
+      if (r < 0) {
+        break;
+      }
+      skipped += r;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Sniffing
+  // ---------------------------------------------------------------------------
+
+  /**
+   * Identifies the format from magic bytes and reads dimensions from the
+   * header when the format allows it.
+   *
+   * @param head leading bytes of the payload
+   * @return what was detected, or null if this is not a supported image
+   */
+  @Nullable
+  static Sniffed sniff(byte[] head) {
+    int n = head.length;
+    if (n >= 3 && u8(head, 0) == 0xFF && u8(head, 1) == 0xD8 && u8(head, 2) == 0xFF) {
+      return jpeg(head);
+    }
+    if (n >= 8 && startsWith(head, 0, new byte[] {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A,
+        0x1A, 0x0A})) {
+      // IHDR is always the first chunk: width and height at 16 and 20.
+      return n >= 24 && ascii(head, 12, 4).equals("IHDR")
+          ? new Sniffed("image/png", be32(head, 16), be32(head, 20))
+          : new Sniffed("image/png", null, null);
+    }
+    if (n >= 6 && (ascii(head, 0, 6).equals("GIF87a") || ascii(head, 0, 6).equals("GIF89a"))) {
+      return n >= 10
+          ? new Sniffed("image/gif", le16(head, 6), le16(head, 8))
+          : new Sniffed("image/gif", null, null);
+    }
+    if (n >= 12 && ascii(head, 0, 4).equals("RIFF") && ascii(head, 8, 4).equals("WEBP")) {
+      return webp(head);
+    }
+    if (n >= 4 && (startsWith(head, 0, new byte[] {'I', 'I', 0x2A, 0x00})
+        || startsWith(head, 0, new byte[] {'M', 'M', 0x00, 0x2A}))) {
+      return new Sniffed("image/tiff", null, null);
+    }
+    if (n >= 12 && ascii(head, 4, 4).equals("ftyp")) {
+      String brand = ascii(head, 8, 4);
+      switch (brand) {
+        case "avif", "avis":
+          return new Sniffed("image/avif", null, null);
+        case "heic", "heix", "hevc", "heim", "heis":
+          return new Sniffed("image/heic", null, null);
+        case "mif1", "msf1":
+          return new Sniffed("image/heif", null, null);
+        default:
+          return null;
+      }
+    }
+    return null;
+  }
+
+  /** Walks JPEG marker segments up to the first start-of-frame. */
+  private static Sniffed jpeg(byte[] b) {
+    int p = 2;
+    while (p + 4 <= b.length) {
+      if (u8(b, p) != 0xFF) {
+        break;
+      }
+      int marker = u8(b, p + 1);
+      if (marker == 0xFF) { // fill byte
+        p++;
+        continue;
+      }
+      if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) { // no length
+        p += 2;
+        continue;
+      }
+      int segLen = be16(b, p + 2);
+      boolean sof = marker >= 0xC0 && marker <= 0xCF
+          && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+      if (sof) {
+        if (p + 9 > b.length) {
+          break;
+        }
+        return new Sniffed("image/jpeg", be16(b, p + 7), be16(b, p + 5));
+      }
+      if (marker == 0xDA || segLen < 2) { // start of scan: no frame header found
+        break;
+      }
+      p += 2 + segLen;
+    }
+    return new Sniffed("image/jpeg", null, null);
+  }
+
+  /** Reads dimensions from the first WebP chunk (lossy, lossless or extended). */
+  private static Sniffed webp(byte[] b) {
+    int n = b.length;
+    String chunk = n >= 16 ? ascii(b, 12, 4) : "";
+    if (chunk.equals("VP8 ") && n >= 30) {
+      return new Sniffed("image/webp", le16(b, 26) & 0x3FFF, le16(b, 28) & 0x3FFF);
+    }
+    if (chunk.equals("VP8L") && n >= 25) {
+      int bits = u8(b, 21) | (u8(b, 22) << 8) | (u8(b, 23) << 16) | (u8(b, 24) << 24);
+      return new Sniffed("image/webp", (bits & 0x3FFF) + 1, ((bits >>> 14) & 0x3FFF) + 1);
+    }
+    if (chunk.equals("VP8X") && n >= 30) {
+      return new Sniffed("image/webp", le24(b, 24) + 1, le24(b, 27) + 1);
+    }
+    return new Sniffed("image/webp", null, null);
+  }
+
+  private static boolean startsWith(byte[] b, int off, byte[] magic) {
+    for (int i = 0; i < magic.length; i++) {
+      if (b[off + i] != magic[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String ascii(byte[] b, int off, int len) {
+    return new String(b, off, len, StandardCharsets.ISO_8859_1);
+  }
+
+  private static int u8(byte[] b, int i) {
+    return b[i] & 0xFF;
+  }
+
+  private static int be16(byte[] b, int i) {
+    return (u8(b, i) << 8) | u8(b, i + 1);
+  }
+
+  private static int be32(byte[] b, int i) {
+    return (be16(b, i) << 16) | be16(b, i + 2);
+  }
+
+  private static int le16(byte[] b, int i) {
+    return u8(b, i) | (u8(b, i + 1) << 8);
+  }
+
+  private static int le24(byte[] b, int i) {
+    return le16(b, i) | (u8(b, i + 2) << 16);
+  }
+
+  /**
+   * Facts read from the payload's header.
+   *
+   * @param contentType detected MIME type
+   * @param width pixel width, or null if not found in the header window
+   * @param height pixel height, or null if not found in the header window
+   */
+  public record Sniffed(String contentType, @Nullable Integer width, @Nullable Integer height) { }
+
+  /**
+   * Everything the ingest stage learned about a fully read payload.
+   *
+   * @param sha256 lowercase hex SHA-256 of the bytes, or null if not computed
+   * @param contentType detected MIME type
+   * @param width pixel width, if known
+   * @param height pixel height, if known
+   * @param sizeBytes payload size
+   */
+  public record Content(
+      @Nullable String sha256,
+      String contentType,
+      @Nullable Integer width,
+      @Nullable Integer height,
+      long sizeBytes
+  ) { }
+}
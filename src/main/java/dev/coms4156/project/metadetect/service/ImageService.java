@@ -1,18 +1,33 @@
 package dev.coms4156.project.metadetect.service;
 
 import dev.coms4156.project.metadetect.db.RlsContext;
+import dev.coms4156.project.metadetect.model.AnalysisSummary;
 import dev.coms4156.project.metadetect.model.Image;
+import dev.coms4156.project.metadetect.repository.BlobRepository;
+import dev.coms4156.project.metadetect.repository.ImageListingRepository;
 import dev.coms4156.project.metadetect.repository.ImageRepository;
 import dev.coms4156.project.metadetect.service.errors.ForbiddenException;
 import dev.coms4156.project.metadetect.service.errors.NotFoundException;
+import dev.coms4156.project.metadetect.service.errors.UnsupportedImageException;
+import dev.coms4156.project.metadetect.service.errors.UploadIncompleteException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import org.springframework.http.MediaType;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.web.multipart.MultipartFile;
 
 /**
@@ -26,65 +41,184 @@ import org.springframework.web.multipart.MultipartFile;
 @Service
 public class ImageService {
 
+  /** Largest page {@link #listByOwner} returns. */
+  public static final int MAX_PAGE_SIZE = 100;
+
+  /** Key prefix of content-addressed, reference-counted objects. */
+  static final String BLOB_PREFIX = "blobs/";
+
   private final ImageRepository repo;
+  private final ImageListingRepository listing;
+  private final BlobRepository blobs;
   private final RlsContext rls;
   private final SupabaseStorageService storage;
+  private final TransactionOperations tx;
 
   /**
    * Constructs the service that coordinates repository access under RLS and
    * integrates with Supabase Storage for binary uploads/deletes.
    *
    * @param repo Spring Data repository for Image entities
+   * @param listing image pages joined with their latest analysis
+   * @param blobs reference counts of content-addressed objects
    * @param rls RLS context wrapper to force `request.jwt.claims` during queries
    * @param storage Supabase Storage integration for uploads/deletes
+   * @param tx short transactions around blob references taken by uploads
    */
-  public ImageService(ImageRepository repo, RlsContext rls, SupabaseStorageService storage) {
+  public ImageService(ImageRepository repo, ImageListingRepository listing,
+                      BlobRepository blobs, RlsContext rls, SupabaseStorageService storage,
+                      TransactionOperations tx) {
     this.repo = repo;
+    this.listing = listing;
+    this.blobs = blobs;
     this.rls = rls;
     this.storage = storage;
+    this.tx = tx;
   }
 
   /**
    * Uploads a file for the given user and persists its metadata.
+   * Objects are content-addressed: identical bytes are stored once under
+   * blobs/sha256.ext and shared by reference, so a repeat upload is a
+   * metadata-only insert.
    * Steps:
-   * 1) Create DB row (under RLS) to establish ownership.
-   * 2) Compute a stable storage key: userId/imageId--filename.
-   * 3) Upload binary to Supabase using the caller's bearer token.
-   * 4) Update DB row with the storage path.
+   * 1) Sniff and digest the part ({@link ImageIngest}); non-images are
+   *    rejected before any write. This is the first of two reads of the
+   *    part, which is spooled to local disk, so it does not touch the
+   *    network. The digest is the object key, so it cannot be computed
+   *    while the upload streams.
+   * 2) Reference the blob for the digest in a short transaction that
+   *    commits before any network I/O, so no pooled connection is held
+   *    while the file streams.
+   * 3) If the object is not stored yet, read the part a second time and
+   *    stream it to Supabase outside any transaction. A repeat upload
+   *    skips this read. The write uses the service's own credentials and
+   *    never overwrites. Clients cannot write under blobs/, so no user can
+   *    replace content that another user's images reference.
+   * 4) Create the DB row (under RLS) pointing at the blob, with the content facts.
+   * If step 3 or 4 fails, the reference is released again and, if it was
+   * the last one, the object is deleted.
+   *
+   * @throws UnsupportedImageException if the bytes are not a supported image
    */
-  @Transactional
-  public Image upload(UUID userId, String bearer, MultipartFile file) throws IOException {
-    String original = Optional.ofNullable(file.getOriginalFilename())
-        .orElse("upload.bin")
-        .replaceAll("[/\\\\]", "_");
+  public Image upload(UUID userId, MultipartFile file) throws IOException {
+    String original = sanitizeFilename(file.getOriginalFilename());
 
-    // 1) Create DB row under the user identity
-    Image created = rls.asUser(userId, () -> {
-      Image img = new Image();
-      img.setUserId(userId);
-      img.setFilename(original);
-      return repo.save(img);
-    });
+    // 1) Sniff format and dimensions, digest the bytes (first read of the part)
+    ImageIngest.Content content;
+    try (ImageIngest ingest = ImageIngest.open(file.getInputStream())) {
+      ingest.transferTo(OutputStream.nullOutputStream());
+      content = ingest.content();
+    }
 
-    // 2) Compute canonical storage key
-    String storageKey = userId + "/" + created.getId() + "--" + original;
+    // 2) Reference the blob and commit
+    String sha = content.sha256();
+    String blobKey = blobKey(content);
+    boolean mustUpload = Boolean.TRUE.equals(tx.execute(status -> {
+      blobs.lock(sha);
+      return blobs.acquire(sha, blobKey, content.sizeBytes());
+    }));
 
-    // 3) Upload binary to Supabase
-    storage.uploadObject(
-        file.getBytes(),
-        Optional.ofNullable(file.getContentType())
-        .orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE),
-        storageKey,
-        bearer
-    );
+    try {
+      // 3) Upload the bytes only if nobody has stored them yet (second read).
+      //    The sniffed type is stored, not the client's claim.
+      if (mustUpload) {
+        storage.putBlob(file, content.sizeBytes(), content.contentType(), blobKey);
+        blobs.markStored(sha);
+      }
+
+      // 4) Create DB row under the user identity
+      return rls.asUser(userId, () -> {
+        Image img = new Image();
+        img.setUserId(userId);
+        img.setFilename(original);
+        img.setStoragePath(blobKey);
+        img.setContentSha256(sha);
+        img.setContentType(content.contentType());
+        img.setWidth(content.width());
+        img.setHeight(content.height());
+        img.setSizeBytes(content.sizeBytes());
+        return repo.save(img);
+      });
+    } catch (IOException | RuntimeException e) {
+      releaseBlob(sha, blobKey, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Drops the reference a failed upload took, deleting the object with the
+   * last one. The lock is held through the delete so a concurrent upload
+   * cannot reference the blob between the release and the DELETE. A cleanup
+   * failure is attached to the upload's own error; the blob then keeps one
+   * reference too many, which only delays its deletion.
+   */
+  private void releaseBlob(String sha, String blobKey, Exception failure) {
+    try {
+      tx.executeWithoutResult(status -> {
+        blobs.lock(sha);
+        if (blobs.release(sha)) {
+          storage.deleteBlob(blobKey);
+        }
+      });
+    } catch (RuntimeException cleanup) {
+      failure.addSuppressed(cleanup);
+    }
+  }
+
+  /**
+   * Starts a direct-to-storage upload: the image bytes go from the client to
+   * Supabase Storage and never pass through this service.
+   * Steps:
+   * 1) Create DB row (under RLS) with no storage path yet.
+   * 2) Sign an upload URL for the canonical key userId/imageId--filename.
+   * The client PUTs the file to the returned URL, then calls
+   * {@link #commitUpload}. Not transactional: the row commits before the
+   * signing round trip, and an uncommitted row simply has no storage path.
+   *
+   * @param userId owner of the new image
+   * @param bearer caller's JWT, used to sign the upload under Storage policy
+   * @param filename client-side file name
+   * @return the created row and the signed upload URL
+   */
+  public UploadIntent createUploadIntent(UUID userId, String bearer, String filename) {
+    if (filename == null || filename.isBlank()) {
+      throw new IllegalArgumentException("filename is required");
+    }
+    Image created = create(userId, sanitizeFilename(filename), null, null, null);
+    String uploadUrl = storage.createSignedUploadUrl(
+        storageKey(userId, created.getId(), created.getFilename()), bearer);
+    return new UploadIntent(created, uploadUrl);
+  }
 
-    // 4) Persist storage path
-    return update(userId, created.getId(), null, storageKey, null, null);
+  /**
+   * Finishes a direct upload started by {@link #createUploadIntent}: checks
+   * that Storage holds the object at the image's canonical key and records
+   * it as the storage path. Committing an already committed image is a no-op.
+   *
+   * @param userId caller, who must own the image
+   * @param bearer caller's JWT for the Storage lookup
+   * @param imageId image returned by the intent
+   * @return the image with its storage path set
+   * @throws UploadIncompleteException if the object is not in Storage yet
+   */
+  public Image commitUpload(UUID userId, String bearer, UUID imageId) {
+    Image img = getById(userId, imageId);
+    if (img.getStoragePath() != null && !img.getStoragePath().isBlank()) {
+      return img;
+    }
+    String storageKey = storageKey(userId, imageId, img.getFilename());
+    if (storage.objectSize(storageKey, bearer).isEmpty()) {
+      throw new UploadIncompleteException("No object uploaded for image " + imageId);
+    }
+    return update(userId, imageId, null, storageKey, null, null);
   }
 
   /**
-   * Deletes the image (binary + metadata). If deletion from storage fails,
-   * the DB row is retained to avoid orphaned state.
+   * Deletes the image (binary + metadata). A shared blob loses one
+   * reference and its object is deleted only with the last one. If deletion
+   * from storage fails, the DB row (and the reference) is retained to avoid
+   * orphaned state.
    */
   @Transactional
   public void deleteAndPurge(UUID userId, String bearer, UUID imageId) {
@@ -92,7 +226,14 @@ public class ImageService {
     String path = img.getStoragePath();
 
     if (path != null && !path.isBlank()) {
-      storage.deleteObject(path, bearer);
+      if (path.startsWith(BLOB_PREFIX) && img.getContentSha256() != null) {
+        blobs.lock(img.getContentSha256());
+        if (blobs.release(img.getContentSha256())) {
+          storage.deleteBlob(path);
+        }
+      } else {
+        storage.deleteObject(path, bearer);
+      }
     }
     delete(userId, imageId);
   }
@@ -176,22 +317,85 @@ public class ImageService {
   }
 
   /**
-   * Returns images owned by the user, newest first.
-   * Uses in-memory paging for simplicity at Iteration 1 size.
+   * Fetches every listed image the user owns, in one query. Ids that do not
+   * exist and ids owned by someone else are both simply absent, so batch
+   * callers cannot probe other users' images.
+   *
+   * @param currentUserId owner
+   * @param imageIds images to look up
+   * @return owned images keyed by id
    */
-  public List<Image> listByOwner(UUID currentUserId, int page, int size) {
-    if (page < 0 || size <= 0) {
-      throw new IllegalArgumentException("Invalid paging arguments");
+  public Map<UUID, Image> getOwnedByIds(UUID currentUserId, Collection<UUID> imageIds) {
+    if (imageIds.isEmpty()) {
+      return Map.of();
+    }
+    List<Image> found = rls.asUser(currentUserId,
+        () -> repo.findAllByUserIdAndIdIn(currentUserId, imageIds));
+    Map<UUID, Image> byId = new HashMap<>();
+    for (Image img : found) {
+      byId.put(img.getId(), img);
     }
+    return byId;
+  }
+
+  /**
+   * Returns one page of the user's images, newest first, using keyset
+   * pagination: the cursor names the last row already returned and the
+   * query seeks past it on the (user_id, uploaded_at) index. Page cost does
+   * not depend on how deep the page is or how many images the user has.
+   *
+   * @param currentUserId owner
+   * @param cursor opaque token from a previous page's {@code nextCursor},
+   *     or null for the first page
+   * @param size requested page size; capped at {@link #MAX_PAGE_SIZE}
+   * @return the page and the cursor for the next one (null on the last page)
+   * @throws IllegalArgumentException for a non-positive size or a malformed cursor
+   */
+  public ImagePage listByOwner(UUID currentUserId, @Nullable String cursor, int size) {
+    int limit = pageLimit(size);
+    PageCursor after = PageCursor.parse(cursor);
+
+    // One extra row tells us whether another page exists
+    List<Image> rows = rls.asUser(currentUserId, () -> after == null
+        ? repo.findFirstPageByUserId(currentUserId, limit + 1)
+        : repo.findPageByUserIdAfter(currentUserId, after.uploadedAt(), after.id(), limit + 1));
 
-    List<Image> all = rls.asUser(
+    List<Image> page = rows.size() > limit ? rows.subList(0, limit) : rows;
+    return new ImagePage(page, Map.of(), nextCursor(page, rows.size() > limit));
+  }
+
+  /**
+   * Same page as {@link #listByOwner}, with each image's latest analysis
+   * status and confidence, fetched in the same query. Serves a dashboard
+   * page in one round trip instead of one status call per image.
+   *
+   * @param currentUserId owner
+   * @param cursor opaque token from a previous page, or null for the first page
+   * @param size requested page size; capped at {@link #MAX_PAGE_SIZE}
+   * @return the page, latest analyses keyed by image id, and the next cursor
+   * @throws IllegalArgumentException for a non-positive size or a malformed cursor
+   */
+  public ImagePage listByOwnerWithLatestAnalysis(UUID currentUserId,
+                                                 @Nullable String cursor,
+                                                 int size) {
+    int limit = pageLimit(size);
+    PageCursor after = PageCursor.parse(cursor);
+
+    List<ImageListingRepository.Row> rows = rls.asUser(currentUserId, () -> listing.findPage(
         currentUserId,
-        () -> repo.findAllByUserIdOrderByUploadedAtDesc(currentUserId)
-    );
+        after == null ? null : after.uploadedAt(),
+        after == null ? null : after.id(),
+        limit + 1));
 
-    int from = Math.min(page * size, all.size());
-    int to = Math.min(from + size, all.size());
-    return all.subList(from, to);
+    List<Image> page = new ArrayList<>(Math.min(rows.size(), limit));
+    Map<UUID, AnalysisSummary> latest = new HashMap<>();
+    for (ImageListingRepository.Row row : rows.subList(0, Math.min(rows.size(), limit))) {
+      page.add(row.image());
+      if (row.latestAnalysis() != null) {
+        latest.put(row.image().getId(), row.latestAnalysis());
+      }
+    }
+    return new ImagePage(page, latest, nextCursor(page, rows.size() > limit));
   }
 
   /**
@@ -207,6 +411,52 @@ public class ImageService {
     });
   }
 
+  /** Replaces path separators so a client file name cannot escape its key. */
+  static String sanitizeFilename(@Nullable String filename) {
+    return Optional.ofNullable(filename)
+        .orElse("upload.bin")
+        .replaceAll("[/\\\\]", "_");
+  }
+
+  /** Validates a requested page size and applies the cap. */
+  private static int pageLimit(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Invalid paging arguments");
+    }
+    return Math.min(size, MAX_PAGE_SIZE);
+  }
+
+  /** Cursor past the last row of a page, or null if no page follows. */
+  @Nullable
+  private static String nextCursor(List<Image> page, boolean more) {
+    if (!more || page.isEmpty()) {
+      return null;
+    }
+    Image last = page.get(page.size() - 1);
+    return new PageCursor(last.getUploadedAt(), last.getId()).encode();
+  }
+
+  /** Content-addressed key: blobs/sha256 plus an extension for the sniffed format. */
+  static String blobKey(ImageIngest.Content content) {
+    String ext = switch (content.contentType()) {
+      case "image/jpeg" -> ".jpg";
+      case "image/png" -> ".png";
+      case "image/gif" -> ".gif";
+      case "image/webp" -> ".webp";
+      case "image/tiff" -> ".tif";
+      case "image/heic" -> ".heic";
+      case "image/heif" -> ".heif";
+      case "image/avif" -> ".avif";
+      default -> "";
+    };
+    return BLOB_PREFIX + content.sha256() + ext;
+  }
+
+  /** Canonical storage key for an image: userId/imageId--filename. */
+  static String storageKey(UUID userId, UUID imageId, String filename) {
+    return userId + "/" + imageId + "--" + filename;
+  }
+
   /**
    * Required ownership check used after an RLS-scoped lookup.
    * Throws ForbiddenException if mismatched.
@@ -216,4 +466,62 @@ public class ImageService {
       throw new ForbiddenException("You do not own this image.");
     }
   }
+
+  /**
+   * Result of {@link #createUploadIntent}.
+   *
+   * @param image the created row (no storage path until committed)
+   * @param uploadUrl signed URL the client uploads the bytes to
+   */
+  public record UploadIntent(Image image, String uploadUrl) { }
+
+  /**
+   * One page of {@link #listByOwner} or {@link #listByOwnerWithLatestAnalysis}.
+   *
+   * @param items images on this page, newest first
+   * @param latestAnalyses newest analysis per image id; empty unless requested,
+   *     and without entries for images never analyzed
+   * @param nextCursor token for the next page, or null if this is the last
+   */
+  public record ImagePage(
+      List<Image> items,
+      Map<UUID, AnalysisSummary> latestAnalyses,
+      @Nullable String nextCursor
+  ) {
+    /** Page without analysis data. */
+    public ImagePage(List<Image> items, @Nullable String nextCursor) {
+      this(items, Map.of(), nextCursor);
+    }
+  }
+
+  /**
+   * Keyset position (uploaded_at, id) of the last row of a page. Encoded as
+   * URL-safe Base64 so clients treat it as opaque.
+   */
+  record PageCursor(OffsetDateTime uploadedAt, UUID id) {
+
+    String encode() {
+      String raw = uploadedAt.toInstant() + "|" + id;
+      return Base64.getUrlEncoder().withoutPadding()
+          .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Decodes a client token; null or blank means the first page. */
+    @Nullable
+    static PageCursor parse(@Nullable String token) {
+      return token == null || token.isBlank() ? null : decode(token);
+    }
+
+    static PageCursor decode(String token) {
+      try {
+        String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        int bar = raw.indexOf('|');
+        return new PageCursor(
+            Instant.parse(raw.substring(0, bar)).atOffset(ZoneOffset.UTC),
+            UUID.fromString(raw.substring(bar + 1)));
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+    }
+  }
 }
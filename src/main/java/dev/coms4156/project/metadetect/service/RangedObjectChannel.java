@@ -0,0 +1,178 @@
+package dev.coms4156.project.metadetect.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only, seekable view of a remote object backed by HTTP range reads.
+ * Behavior:
+ * - Reads are served from fixed-size, block-aligned windows fetched on
+ *   demand; each fetch doubles as read-ahead for the bytes that follow.
+ * - Fetched blocks are kept in a small LRU cache, so header walks that seek
+ *   back and forth (probe, then extraction) do not re-fetch.
+ * - A byte budget caps how much a metadata stage may pull; past it, reads
+ *   fail with {@link RangeBudgetExceededException} and the caller should
+ *   fall back to a full download.
+ * The object size comes from the first response's Content-Range; until it
+ * is known, {@link #size()} reports {@code Long.MAX_VALUE}.
+ * Not thread-safe; use one channel per job.
+ */
+public class RangedObjectChannel implements SeekableByteChannel {
+
+  /** Source of byte windows, e.g. {@link SupabaseStorageService#readRange}. */
+  @FunctionalInterface
+  public interface RangeFetcher {
+    SupabaseStorageService.RangedBytes fetch(long offset, int length);
+  }
+
+  private final RangeFetcher fetcher;
+  private final int blockSize;
+  private final long maxFetchBytes;
+  private final Map<Long, byte[]> blocks;
+
+  private long size = -1;
+  private long position;
+  private long fetchedBytes;
+  private int fetches;
+  private boolean open = true;
+
+  /**
+   * Constructs the channel. Nothing is fetched until the first read.
+   *
+   * @param fetcher range reader for the object
+   * @param blockSize bytes per fetch (read-ahead unit)
+   * @param cacheBlocks number of blocks kept in memory
+   * @param maxFetchBytes total bytes this channel may fetch
+   */
+  public RangedObjectChannel(RangeFetcher fetcher, int blockSize, int cacheBlocks,
+                             long maxFetchBytes) {
+    if (blockSize <= 0 || cacheBlocks <= 0) {
+      throw new IllegalArgumentException("blockSize and cacheBlocks must be positive");
+    }
+    this.fetcher = fetcher;
+    this.blockSize = blockSize;
+    this.maxFetchBytes = maxFetchBytes;
+    this.blocks = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+        return size() > cacheBlocks;
+      }
+    };
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    ensureOpen();
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+    if (position >= size()) {
+      return -1;
+    }
+    long index = position / blockSize;
+    int within = (int) (position % blockSize);
+    byte[] block = block(index);
+    if (within >= block.length) {
+      return -1; // short block: end of object
+    }
+    int n = Math.min(dst.remaining(), block.length - within);
+    dst.put(block, within, n);
+    position += n;
+    return n;
+  }
+
+  private byte[] block(long index) throws IOException {
+    byte[] cached = blocks.get(index);
+    if (cached != null) {
+      return cached;
+    }
+    if (fetchedBytes + blockSize > maxFetchBytes) {
+      throw new RangeBudgetExceededException(maxFetchBytes);
+    }
+    long offset = index * blockSize;
+    SupabaseStorageService.RangedBytes got = fetcher.fetch(offset, blockSize);
+    fetches++;
+    fetchedBytes += got.data().length;
+    if (got.totalSize() >= 0) {
+      size = got.totalSize();
+    } else if (got.data().length < blockSize) {
+      size = offset + got.data().length;
+    }
+    blocks.put(index, got.data());
+    return got.data();
+  }
+
+  @Override
+  public long size() throws IOException {
+    ensureOpen();
+    if (size < 0 && fetches == 0) {
+      block(0); // learn the size from the first window
+    }
+    return size < 0 ? Long.MAX_VALUE : size;
+  }
+
+  @Override
+  public long position() throws IOException {
+    ensureOpen();
+    return position;
+  }
+
+  @Override
+  public SeekableByteChannel position(long newPosition) throws IOException {
+    ensureOpen();
+    if (newPosition < 0) {
+      throw new IllegalArgumentException("Negative position");
+    }
+    this.position = newPosition;
+    return this;
+  }
+
+  @Override
+  public int write(ByteBuffer src) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long newSize) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() {
+    open = false;
+    blocks.clear();
+  }
+
+  /** Bytes fetched so far (for logging and tests). */
+  public long fetchedBytes() {
+    return fetchedBytes;
+  }
+
+  /** Range requests issued so far. */
+  public int fetches() {
+    return fetches;
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  /** Signals that a stage needs more of the object than ranged reads may pull. */
+  public static class RangeBudgetExceededException extends IOException {
+    public RangeBudgetExceededException(long budget) {
+      super("Ranged read budget of " + budget + " bytes exceeded");
+    }
+  }
+}
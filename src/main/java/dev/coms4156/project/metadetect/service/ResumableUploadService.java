@@ -0,0 +1,161 @@
+package dev.coms4156.project.metadetect.service;
+
+import dev.coms4156.project.metadetect.model.Image;
+import dev.coms4156.project.metadetect.model.UploadSession;
+import dev.coms4156.project.metadetect.repository.UploadSessionRepository;
+import dev.coms4156.project.metadetect.service.errors.NotFoundException;
+import dev.coms4156.project.metadetect.service.errors.UploadOffsetConflictException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+/**
+ * Resumable uploads (tus 1.0.0 core + creation) proxied to the Storage tus
+ * endpoint. Lifecycle:
+ * 1) {@link #create}: creates the image row, opens an upstream tus upload
+ *    for the image's canonical key and records an upload_sessions row.
+ * 2) {@link #append}: streams one chunk to Storage at the persisted offset
+ *    and advances the offset to what Storage acknowledged.
+ * 3) When the last byte is acknowledged, the image's storage_path is
+ *    committed and the session is marked complete.
+ * Notes:
+ * - Chunks are raw request bodies, not multipart, so the multipart size cap
+ *   does not apply and the service imposes no object size limit.
+ * - A chunk that does not start at the persisted offset gets
+ *   {@link UploadOffsetConflictException} with the offset to resume from.
+ *   If Storage rejects an offset (e.g. after a crash between its ack and our
+ *   update), the persisted offset is re-synced from Storage first.
+ */
+@Service
+public class ResumableUploadService {
+
+  private static final Logger log = LoggerFactory.getLogger(ResumableUploadService.class);
+
+  private final UploadSessionRepository sessions;
+  private final ImageService images;
+  private final SupabaseStorageService storage;
+  private final Clock clock;
+
+  /**
+   * Constructs the service.
+   *
+   * @param sessions persistence for upload offsets
+   * @param images image row creation and storage_path commit
+   * @param storage Storage tus client
+   * @param clock time source for session timestamps
+   */
+  public ResumableUploadService(UploadSessionRepository sessions,
+                                ImageService images,
+                                SupabaseStorageService storage,
+                                Clock clock) {
+    this.sessions = sessions;
+    this.images = images;
+    this.storage = storage;
+    this.clock = clock;
+  }
+
+  /**
+   * Starts a resumable upload.
+   *
+   * @param userId owner of the new image
+   * @param bearer caller's JWT for Storage policy
+   * @param length declared total size in bytes
+   * @param filename client-side file name, if supplied
+   * @param contentType MIME type, if supplied
+   * @return the new session at offset 0
+   */
+  public UploadSession create(UUID userId, String bearer, long length,
+                              @Nullable String filename, @Nullable String contentType) {
+    if (length <= 0) {
+      throw new IllegalArgumentException("Upload-Length must be positive");
+    }
+    Image image = images.create(userId, ImageService.sanitizeFilename(filename), null, null, null);
+    String storageKey = ImageService.storageKey(userId, image.getId(), image.getFilename());
+    String upstreamUrl = storage.createResumableUpload(storageKey, length, contentType, bearer);
+    return sessions.create(image.getId(), userId, storageKey, upstreamUrl, length, now());
+  }
+
+  /**
+   * Returns a session owned by the caller.
+   *
+   * @param userId caller
+   * @param uploadId session id
+   * @return the session
+   * @throws NotFoundException if missing or owned by someone else
+   */
+  public UploadSession get(UUID userId, UUID uploadId) {
+    return sessions.findForUser(uploadId, userId)
+        .orElseThrow(() -> new NotFoundException("Upload not found: " + uploadId));
+  }
+
+  /**
+   * Appends one chunk and, if it was the last, commits the image.
+   *
+   * @param userId caller, who must own the upload
+   * @param bearer caller's JWT for Storage policy
+   * @param uploadId session id
+   * @param offset Upload-Offset sent by the client
+   * @param length chunk size (request Content-Length)
+   * @param chunk chunk bytes
+   * @return the session after the chunk
+   * @throws UploadOffsetConflictException if the chunk does not start at the current offset
+   * @throws IOException if the chunk cannot be read from the client
+   */
+  public UploadSession append(UUID userId, String bearer, UUID uploadId, long offset,
+                              long length, InputStream chunk) throws IOException {
+    UploadSession session = get(userId, uploadId);
+    if (session.isComplete() || offset != session.uploadOffset()) {
+      throw new UploadOffsetConflictException(
+          "Upload is at offset " + session.uploadOffset(), session.uploadOffset());
+    }
+    if (offset == session.uploadLength()) {
+      // All bytes acknowledged earlier but the commit did not happen; finish it.
+      return complete(userId, session);
+    }
+    if (length < 0) {
+      throw new IllegalArgumentException("Content-Length is required");
+    }
+    if (offset + length > session.uploadLength()) {
+      throw new IllegalArgumentException("Chunk extends past Upload-Length");
+    }
+
+    long acked;
+    try {
+      acked = storage.appendResumable(session.upstreamUrl(), offset, chunk, length, bearer);
+    } catch (WebClientResponseException e) {
+      if (e.getStatusCode().value() != 409) {
+        throw e;
+      }
+      long upstream = storage.resumableOffset(session.upstreamUrl(), bearer);
+      sessions.advanceOffset(uploadId, session.uploadOffset(), upstream, now());
+      throw new UploadOffsetConflictException("Storage is at offset " + upstream, upstream);
+    }
+
+    if (!sessions.advanceOffset(uploadId, offset, acked, now())) {
+      long current = get(userId, uploadId).uploadOffset();
+      throw new UploadOffsetConflictException("Upload offset moved concurrently", current);
+    }
+    UploadSession advanced = get(userId, uploadId);
+    return acked == session.uploadLength() ? complete(userId, advanced) : advanced;
+  }
+
+  /** Records the storage path on the image and closes the session. */
+  private UploadSession complete(UUID userId, UploadSession session) {
+    images.update(userId, session.imageId(), null, session.storagePath(), null, null);
+    if (!sessions.markCompleted(session.id(), now())) {
+      log.debug("Upload {} was completed by a concurrent request", session.id());
+    }
+    return get(userId, session.id());
+  }
+
+  private Instant now() {
+    return Instant.now(clock);
+  }
+}
@@ -1,42 +1,99 @@
 package dev.coms4156.project.metadetect.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * Minimal client for Supabase Storage (private bucket).
  * Endpoints used:
  * - Upload: PUT  /storage/v1/object/{bucket}/{path}
+ * - Sign upload: POST /storage/v1/object/upload/sign/{bucket}/{path}
+ * - Stat:   HEAD /storage/v1/object/authenticated/{bucket}/{path}
+ * - Resumable (tus 1.0.0): POST /storage/v1/upload/resumable, then
+ *   PATCH/HEAD on the returned upload URL
  * - Sign:   POST /storage/v1/object/sign/{bucket}/{path}  body: {"expiresIn": seconds}
  * - Delete: DELETE /storage/v1/object/{bucket}/{path}
+ * - Ranged read: GET {signedUrl} with a `Range` header
+ * - Download: GET {signedUrl}, streamed to a file
  * Notes:
  * - This service expects a WebClient already pointed at the project base URL and
  *   with sane timeouts. It supplies auth headers per request.
  * - For deletes, some gateways reject a DELETE with Content-Type, so we strip it.
+ * - Content-addressed blobs (blobs/...) are written and deleted with the
+ *   service-role key only; clients have no Storage policy for that prefix.
+ *   The same key re-signs download URLs for queued work.
  */
 @Service
 public class SupabaseStorageService {
 
   private static final Logger log = LoggerFactory.getLogger(SupabaseStorageService.class);
 
+  /** Read size for streamed uploads; small so in-flight buffers stay small. */
+  static final int UPLOAD_CHUNK_BYTES = 4096;
+
+  private static final ObjectMapper JSON = new ObjectMapper();
+  private static final String TUS_RESUMABLE = "Tus-Resumable";
+  private static final String TUS_VERSION = "1.0.0";
+  private static final MediaType TUS_CHUNK =
+      MediaType.parseMediaType("application/offset+octet-stream");
+
+  /** Pooled (direct) buffers for upload bodies; released by the client after writing. */
+  private static final DataBufferFactory UPLOAD_BUFFERS =
+      new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
   private final WebClient supabase;
   private final String projectBase;       // e.g., https://xyz.supabase.co
   private final String bucket;            // e.g., metadetect-images
   private final int signedUrlTtlSeconds;  // e.g., 600
   private final String supabaseAnonKey;   // required by Storage API
+  private final String serviceRoleKey;    // service credential for blob writes
+  private final int rangeBlockBytes;      // read-ahead unit for ranged channels
+  private final int rangeCacheBlocks;     // blocks kept per ranged channel
 
   // Variant of WebClient that removes Content-Type on DELETE requests.
   private final WebClient supabaseNoCtOnDelete;
@@ -49,19 +106,28 @@ public class SupabaseStorageService {
    * @param bucket storage bucket name
    * @param signedUrlTtlSeconds TTL, in seconds, for signed download URLs
    * @param supabaseAnonKey anon/service key sent as `apikey` to Storage API
+   * @param serviceRoleKey service-role key for writes under the blob prefix
+   * @param rangeBlockBytes bytes fetched per range request by {@link #openRanged}
+   * @param rangeCacheBlocks blocks cached per channel opened by {@link #openRanged}
    */
   public SupabaseStorageService(
       WebClient supabaseWebClient,
       @Value("${metadetect.supabase.url}") String projectBase,
       @Value("${metadetect.supabase.storageBucket}") String bucket,
       @Value("${metadetect.supabase.signedUrlTtlSeconds}") int signedUrlTtlSeconds,
-      @Value("${metadetect.supabase.anonKey}") String supabaseAnonKey
+      @Value("${metadetect.supabase.anonKey}") String supabaseAnonKey,
+      @Value("${metadetect.supabase.serviceRoleKey}") String serviceRoleKey,
+      @Value("${metadetect.storage.rangeBlockBytes:65536}") int rangeBlockBytes,
+      @Value("${metadetect.storage.rangeCacheBlocks:16}") int rangeCacheBlocks
   ) {
     this.supabase = supabaseWebClient;
     this.projectBase = projectBase;
     this.bucket = bucket;
     this.signedUrlTtlSeconds = signedUrlTtlSeconds;
     this.supabaseAnonKey = supabaseAnonKey;
+    this.serviceRoleKey = serviceRoleKey;
+    this.rangeBlockBytes = rangeBlockBytes;
+    this.rangeCacheBlocks = rangeCacheBlocks;
 
     // Filter that removes Content-Type header for DELETE requests.
     ExchangeFilterFunction stripCtOnDelete = (req, next) -> {
@@ -80,60 +146,118 @@ public class SupabaseStorageService {
   }
 
   /**
-   * Uploads bytes to: PUT /storage/v1/object/{bucket}/{path}.
+   * Streams an object to: PUT /storage/v1/object/{bucket}/{path}.
    * Path handling:
    * - Each segment is URL-encoded (defensive against spaces or special chars).
    * - Caller provides the logical `objectPath`, e.g. "userId/imageId--filename".
+   * Memory:
+   * - The source is read in {@link #UPLOAD_CHUNK_BYTES} chunks into pooled
+   *   buffers, only as fast as the socket drains, and each buffer is released
+   *   once written. Per-upload memory is bounded by the chunk size times the
+   *   client's outbound prefetch, independent of object size.
+   * - Reads run on the bounded-elastic scheduler, never on an event loop.
    *
-   * @param bytes file contents
+   * @param source file contents, e.g. a spooled multipart part
+   * @param contentLength size in bytes, or -1 to send chunked
    * @param contentType MIME type (defaults to application/octet-stream)
    * @param objectPath storage key within the bucket
    * @param bearerJwt caller's user JWT for RLS/policy checks
    * @return the objectPath that was written
+   * @throws IOException if the source cannot be read
    */
-  public String uploadObject(byte[] bytes,
+  public String uploadObject(InputStreamSource source,
+                             long contentLength,
                              String contentType,
                              String objectPath,
-                             String bearerJwt) {
+                             String bearerJwt) throws IOException {
+    put(source, contentLength, contentType, objectPath, bearerJwt, supabaseAnonKey, true);
+    return objectPath;
+  }
 
-    // URL-encode segments to avoid 400s on special characters.
-    String encoded = UriComponentsBuilder.newInstance()
-        .pathSegment(objectPath.split("/"))
-        .build()
-        .encode()
-        .toUriString()
-        .substring(1); // drop leading '/'
+  /**
+   * Streams a content-addressed blob with the service-role key, never
+   * overwriting: an object already at the key is left untouched. Only the
+   * service writes blobs, and only under the digest of bytes it has
+   * verified, so an existing object already holds the same content.
+   *
+   * @param source file contents
+   * @param contentLength size in bytes, or -1 to send chunked
+   * @param contentType MIME type
+   * @param objectPath blob key within the bucket
+   * @return true if this call wrote the object, false if it already existed
+   * @throws IOException if the source cannot be read
+   */
+  public boolean putBlob(InputStreamSource source,
+                         long contentLength,
+                         String contentType,
+                         String objectPath) throws IOException {
+    return put(source, contentLength, contentType, objectPath,
+        serviceRoleKey, serviceRoleKey, false);
+  }
 
-    String url = projectBase + "/storage/v1/object/" + bucket + "/" + encoded;
+  private boolean put(InputStreamSource source, long contentLength, String contentType,
+                      String objectPath, String bearer, String apikey, boolean upsert)
+      throws IOException {
 
-    try {
+    InputStream in = source.getInputStream();
+    Flux<DataBuffer> body = streamed(in);
+
+    String url = projectBase + "/storage/v1/object/" + bucket + "/" + encodePath(objectPath);
+
+    try (in) { // closed even if the body is never subscribed
       supabase
         .put()
         .uri(url)
-        .header(HttpHeaders.AUTHORIZATION, "Bearer " + bearerJwt)
-        .header("apikey", supabaseAnonKey)
-        .header("x-upsert", "true") // allow overwrite if the same key is reused
+        .header(HttpHeaders.AUTHORIZATION, "Bearer " + bearer)
+        .header("apikey", apikey)
+        .header("x-upsert", String.valueOf(upsert))
         .contentType(MediaType.parseMediaType(
           contentType == null || contentType.isBlank()
             ? MediaType.APPLICATION_OCTET_STREAM_VALUE
             : contentType))
-        .bodyValue(bytes)
+        .headers(h -> {
+          if (contentLength >= 0) {
+            h.setContentLength(contentLength);
+          }
+        })
+        .body(BodyInserters.fromDataBuffers(body))
         .retrieve()
         .bodyToMono(String.class)
         .onErrorResume(WebClientResponseException.class, ex -> {
-          log.error("Supabase upload failed: status={}, body={}",
-              ex.getStatusCode(), ex.getResponseBodyAsString());
+          if (upsert || !isDuplicate(ex)) {
+            log.error("Supabase upload failed: status={}, body={}",
+                ex.getStatusCode(), ex.getResponseBodyAsString());
+          }
           return Mono.error(ex);
         })
           .block();
 
-      return objectPath;
+      return true;
     } catch (WebClientResponseException e) {
+      if (!upsert && isDuplicate(e)) {
+        return false;
+      }
       // Upstream logs include status/body; rethrow concise summary.
       throw new RuntimeException("Supabase upload failed: " + e.getStatusCode(), e);
+    } catch (WebClientRequestException e) {
+      // Source read failures and connection errors surface here
+      if (e.getCause() instanceof IOException io) {
+        throw io;
+      }
+      throw e;
     }
   }
 
+  /**
+   * Whether a failed PUT was rejected because the key is taken. Storage
+   * answers 409, or 400 with a "Duplicate" error on older versions.
+   */
+  private static boolean isDuplicate(WebClientResponseException e) {
+    int status = e.getStatusCode().value();
+    return status == 409
+        || (status == 400 && e.getResponseBodyAsString().contains("Duplicate"));
+  }
+
   /**
    * Creates a signed URL via.
    * POST /storage/v1/object/sign/{bucket}/{path} body: {"expiresIn": seconds}
@@ -143,13 +267,55 @@ public class SupabaseStorageService {
    * @return absolute https URL suitable for direct client download
    */
   public String createSignedUrl(String storagePath, String userBearerJwt) {
+    return sign(storagePath, userBearerJwt, supabaseAnonKey);
+  }
+
+  /**
+   * Signs a download URL with the service-role key, for work that runs
+   * after the caller's request (and token) is gone, such as a queued
+   * analysis whose submit-time URL has expired. Callers must have checked
+   * the user's access to the object already.
+   *
+   * @param storagePath object key inside the bucket
+   * @return absolute https URL valid for the configured TTL
+   */
+  public String createServiceSignedUrl(String storagePath) {
+    return sign(storagePath, serviceRoleKey, serviceRoleKey);
+  }
+
+  /**
+   * Expiry of a signed URL, read from the `exp` claim of its token. The
+   * token is not verified; this only tells whether the URL is still worth
+   * using.
+   *
+   * @param signedUrl URL from {@link #createSignedUrl} or similar
+   * @return the expiry, or empty if the URL carries no readable token
+   */
+  public Optional<Instant> signedUrlExpiry(String signedUrl) {
+    try {
+      String token = UriComponentsBuilder.fromUriString(signedUrl).build()
+          .getQueryParams().getFirst("token");
+      String[] parts = token == null ? new String[0] : token.split("\\.");
+      if (parts.length < 2) {
+        return Optional.empty();
+      }
+      JsonNode exp = JSON.readTree(Base64.getUrlDecoder().decode(parts[1])).get("exp");
+      return exp != null && exp.canConvertToLong()
+          ? Optional.of(Instant.ofEpochSecond(exp.asLong()))
+          : Optional.empty();
+    } catch (IOException | IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  private String sign(String storagePath, String bearer, String apikey) {
     String url = projectBase + "/storage/v1/object/sign/" + bucket + "/" + storagePath;
     String bodyJson = "{\"expiresIn\":" + signedUrlTtlSeconds + "}";
 
     String signedFromApi = supabase.post()
         .uri(url)
-        .header(HttpHeaders.AUTHORIZATION, "Bearer " + userBearerJwt)
-        .header("apikey", supabaseAnonKey)
+        .header(HttpHeaders.AUTHORIZATION, "Bearer " + bearer)
+        .header("apikey", apikey)
         .contentType(MediaType.APPLICATION_JSON)
         .bodyValue(bodyJson.getBytes(StandardCharsets.UTF_8))
         .retrieve()
@@ -162,16 +328,412 @@ public class SupabaseStorageService {
     return projectBase + "/storage/v1" + signedFromApi;
   }
 
+  /**
+   * Creates signed URLs for many objects in one request via.
+   * POST /storage/v1/object/sign/{bucket} body: {"expiresIn": seconds, "paths": [...]}
+   * Storage answers per path; paths it could not sign (missing object,
+   * policy denial) are left out of the result.
+   *
+   * @param storagePaths object keys inside the bucket
+   * @param userBearerJwt caller's user JWT for Storage policy
+   * @return absolute URL per signed path
+   */
+  public Map<String, String> createSignedUrls(Collection<String> storagePaths,
+                                              String userBearerJwt) {
+    if (storagePaths.isEmpty()) {
+      return Map.of();
+    }
+    ObjectNode body = JSON.createObjectNode();
+    body.put("expiresIn", signedUrlTtlSeconds);
+    ArrayNode paths = body.putArray("paths");
+    storagePaths.forEach(paths::add);
+
+    String json = supabase.post()
+        .uri(projectBase + "/storage/v1/object/sign/" + bucket)
+        .header(HttpHeaders.AUTHORIZATION, "Bearer " + userBearerJwt)
+        .header("apikey", supabaseAnonKey)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(body.toString().getBytes(StandardCharsets.UTF_8))
+        .retrieve()
+        .bodyToMono(String.class)
+        .timeout(Duration.ofSeconds(10))
+        .block();
+
+    Map<String, String> signed = new HashMap<>();
+    try {
+      for (JsonNode entry : JSON.readTree(json == null ? "[]" : json)) {
+        String path = entry.path("path").asText(null);
+        String relative = entry.path("signedURL").asText(null);
+        if (path != null && relative != null && entry.path("error").isNull()) {
+          signed.put(path, projectBase + "/storage/v1" + relative);
+        }
+      }
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Malformed batch sign response from Storage", e);
+    }
+    return signed;
+  }
+
+  /**
+   * Creates a signed upload URL via.
+   * POST /storage/v1/object/upload/sign/{bucket}/{path}
+   * The client PUTs the object bytes to the returned URL itself, so they never
+   * pass through this service. The URL is good for one object and expires on
+   * the Storage side.
+   *
+   * @param objectPath storage key the client will upload to
+   * @param userBearerJwt caller's user JWT for Storage policy
+   * @return absolute URL (including its token) that accepts the upload
+   */
+  public String createSignedUploadUrl(String objectPath, String userBearerJwt) {
+    String url = projectBase + "/storage/v1/object/upload/sign/" + bucket + "/"
+        + encodePath(objectPath);
+
+    String signedFromApi = supabase.post()
+        .uri(URI.create(url))
+        .header(HttpHeaders.AUTHORIZATION, "Bearer " + userBearerJwt)
+        .header("apikey", supabaseAnonKey)
+        .retrieve()
+        .bodyToMono(String.class)
+        .timeout(Duration.ofSeconds(10))
+        .map(json -> extractJsonString(json, "url"))
+        .block();
+
+    if (signedFromApi == null) {
+      throw new IllegalStateException("Supabase returned no upload URL for " + objectPath);
+    }
+    // Returned relative to the Storage API root, e.g. "/object/upload/sign/...".
+    return projectBase + "/storage/v1" + signedFromApi;
+  }
+
+  /**
+   * Looks up an object's size without downloading it, via.
+   * HEAD /storage/v1/object/authenticated/{bucket}/{path}
+   * Storage answers 400 or 404 for missing objects; both map to empty.
+   *
+   * @param objectPath object key inside the bucket
+   * @param userBearerJwt caller's user JWT for Storage policy
+   * @return the object size in bytes, or empty if there is no such object
+   */
+  public OptionalLong objectSize(String objectPath, String userBearerJwt) {
+    String url = projectBase + "/storage/v1/object/authenticated/" + bucket + "/"
+        + encodePath(objectPath);
+
+    return supabase.head()
+        .uri(URI.create(url))
+        .header(HttpHeaders.AUTHORIZATION, "Bearer " + userBearerJwt)
+        .header("apikey", supabaseAnonKey)
+        .exchangeToMono(resp -> {
+          int status = resp.statusCode().value();
+          if (status == 400 || status == 404) {
+            return resp.releaseBody().thenReturn(OptionalLong.empty());
+          }
+          if (resp.statusCode().isError()) {
+            return resp.createException().flatMap(Mono::error);
+          }
+          long size = resp.headers().contentLength().orElse(0L);
+          return resp.releaseBody().thenReturn(OptionalLong.of(size));
+        })
+        .timeout(Duration.ofSeconds(10))
+        .block();
+  }
+
+  /**
+   * Creates a tus upload via POST /storage/v1/upload/resumable.
+   * The bucket, object key and content type travel in `Upload-Metadata`.
+   *
+   * @param objectPath storage key the upload will create
+   * @param length total object size in bytes
+   * @param contentType MIME type (defaults to application/octet-stream)
+   * @param bearerJwt caller's user JWT for Storage policy
+   * @return absolute tus upload URL for subsequent PATCH/HEAD requests
+   */
+  public String createResumableUpload(String objectPath, long length, String contentType,
+                                      String bearerJwt) {
+    String endpoint = projectBase + "/storage/v1/upload/resumable";
+    String metadata = "bucketName " + b64(bucket)
+        + ",objectName " + b64(objectPath)
+        + ",contentType " + b64(contentType == null || contentType.isBlank()
+            ? MediaType.APPLICATION_OCTET_STREAM_VALUE : contentType);
+
+    String location = supabase.post()
+        .uri(URI.create(endpoint))
+        .header(HttpHeaders.AUTHORIZATION, "Bearer " + bearerJwt)
+        .header("apikey", supabaseAnonKey)
+        .header(TUS_RESUMABLE, TUS_VERSION)
+        .header("Upload-Length", Long.toString(length))
+        .header("Upload-Metadata", metadata)
+        .header("x-upsert", "true")
+        .retrieve()
+        .toBodilessEntity()
+        .timeout(Duration.ofSeconds(10))
+        .map(resp -> resp.getHeaders().getFirst(HttpHeaders.LOCATION))
+        .block();
+
+    if (location == null) {
+      throw new IllegalStateException("Storage created no resumable upload for " + objectPath);
+    }
+    return URI.create(endpoint).resolve(location).toString();
+  }
+
+  /**
+   * Appends one chunk to a tus upload with PATCH, streaming the body the same
+   * way as {@link #uploadObject}.
+   *
+   * @param uploadUrl tus upload URL from {@link #createResumableUpload}
+   * @param offset offset the chunk starts at; must match Storage's offset
+   * @param chunk chunk bytes, read to end
+   * @param length chunk size in bytes
+   * @param bearerJwt caller's user JWT for Storage policy
+   * @return the new offset acknowledged by Storage
+   * @throws WebClientResponseException with 409 if Storage is at a different offset
+   * @throws IOException if the chunk cannot be read
+   */
+  public long appendResumable(String uploadUrl, long offset, InputStream chunk, long length,
+                              String bearerJwt) throws IOException {
+    try {
+      String acked = supabase.patch()
+          .uri(URI.create(uploadUrl))
+          .header(HttpHeaders.AUTHORIZATION, "Bearer " + bearerJwt)
+          .header("apikey", supabaseAnonKey)
+          .header(TUS_RESUMABLE, TUS_VERSION)
+          .header("Upload-Offset", Long.toString(offset))
+          .contentType(TUS_CHUNK)
+          .contentLength(length)
+          .body(BodyInserters.fromDataBuffers(streamed(chunk)))
+          .retrieve()
+          .toBodilessEntity()
+          .map(resp -> resp.getHeaders().getFirst("Upload-Offset"))
+          .block();
+      return Long.parseLong(acked);
+    } catch (WebClientRequestException e) {
+      if (e.getCause() instanceof IOException io) {
+        throw io;
+      }
+      throw e;
+    } catch (NumberFormatException e) {
+      throw new IllegalStateException("Storage acknowledged chunk without Upload-Offset", e);
+    }
+  }
+
+  /**
+   * Reads the offset Storage holds for a tus upload, via HEAD.
+   *
+   * @param uploadUrl tus upload URL
+   * @param bearerJwt caller's user JWT for Storage policy
+   * @return bytes Storage has received
+   */
+  public long resumableOffset(String uploadUrl, String bearerJwt) {
+    String offset = supabase.head()
+        .uri(URI.create(uploadUrl))
+        .header(HttpHeaders.AUTHORIZATION, "Bearer " + bearerJwt)
+        .header("apikey", supabaseAnonKey)
+        .header(TUS_RESUMABLE, TUS_VERSION)
+        .retrieve()
+        .toBodilessEntity()
+        .timeout(Duration.ofSeconds(10))
+        .map(resp -> resp.getHeaders().getFirst("Upload-Offset"))
+        .block();
+    return Long.parseLong(offset);
+  }
+
+  /**
+   * Reads a byte window of an object through its signed URL using an HTTP
+   * `Range` request. If the server ignores the range and answers 200, only
+   * the requested window is kept and the rest of the body is cancelled.
+   *
+   * @param signedUrl absolute signed download URL
+   * @param offset first byte to read
+   * @param length maximum number of bytes to read
+   * @return the bytes read (possibly fewer near end of object) and the
+   *         object's total size, or -1 if the server did not report it
+   */
+  public RangedBytes readRange(String signedUrl, long offset, int length) {
+    String range = "bytes=" + offset + "-" + (offset + length - 1);
+    return supabase.get()
+        .uri(URI.create(signedUrl)) // already encoded; don't re-encode the token
+        .header(HttpHeaders.RANGE, range)
+        .exchangeToMono(resp -> {
+          int status = resp.statusCode().value();
+          if (status == 416) {
+            // Window starts at or past the end: nothing to read.
+            long total = totalFromContentRange(resp);
+            return resp.releaseBody().thenReturn(new RangedBytes(new byte[0], total));
+          }
+          if (resp.statusCode().isError()) {
+            return resp.createException().flatMap(Mono::error);
+          }
+          boolean partial = status == 206;
+          long total = partial
+              ? totalFromContentRange(resp)
+              : resp.headers().contentLength().orElse(-1L);
+          return window(resp, partial ? 0 : offset, length)
+              .map(bytes -> new RangedBytes(bytes, total));
+        })
+        .timeout(Duration.ofSeconds(30))
+        .block();
+  }
+
+  /**
+   * Opens a seekable view of an object that fetches block-sized windows on
+   * demand through {@link #readRange}, with a small LRU read-ahead cache.
+   * Intended for metadata stages that only need headers.
+   *
+   * @param signedUrl absolute signed download URL
+   * @param maxFetchBytes total bytes the channel may fetch before failing
+   * @return a new channel; not thread-safe
+   */
+  public RangedObjectChannel openRanged(String signedUrl, long maxFetchBytes) {
+    return new RangedObjectChannel(
+        (offset, length) -> readRange(signedUrl, offset, length),
+        rangeBlockBytes, rangeCacheBlocks, maxFetchBytes);
+  }
+
+  /**
+   * Streams an object through its signed URL into a local file.
+   * Response buffers come from the client's pooled allocator and are written
+   * to the file as they arrive, then released; the body is never aggregated,
+   * so heap use stays flat regardless of object size. Writes are demand-driven,
+   * so a slow disk backpressures the socket instead of queueing buffers.
+   *
+   * @param signedUrl absolute signed download URL
+   * @param target file to create or overwrite
+   * @param maxBytes objects larger than this are rejected (announced
+   *                 Content-Length or bytes actually received)
+   * @param timeout upper bound on the whole transfer
+   * @return number of bytes written
+   * @throws IOException if the transfer fails, times out or exceeds {@code maxBytes}
+   */
+  public long downloadToFile(String signedUrl, Path target, long maxBytes, Duration timeout)
+      throws IOException {
+    AtomicLong written = new AtomicLong();
+    try {
+      supabase.get()
+          .uri(URI.create(signedUrl)) // already encoded; don't re-encode the token
+          .exchangeToMono(resp -> {
+            if (resp.statusCode().isError()) {
+              return resp.createException().flatMap(Mono::error);
+            }
+            long announced = resp.headers().contentLength().orElse(-1L);
+            if (announced > maxBytes) {
+              return resp.releaseBody().then(Mono.error(tooLarge(maxBytes)));
+            }
+            Flux<DataBuffer> body = resp.bodyToFlux(DataBuffer.class)
+                .handle((buf, sink) -> {
+                  if (written.addAndGet(buf.readableByteCount()) > maxBytes) {
+                    DataBufferUtils.release(buf);
+                    sink.error(tooLarge(maxBytes));
+                  } else {
+                    sink.next(buf);
+                  }
+                });
+            return DataBufferUtils.write(body, target,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+          })
+          .timeout(timeout)
+          .block();
+    } catch (RuntimeException e) {
+      Throwable cause = Exceptions.unwrap(e);
+      if (cause instanceof TimeoutException) {
+        throw new IOException("Download did not finish within " + timeout.toMillis() + " ms");
+      }
+      if (cause instanceof IOException io) {
+        throw io;
+      }
+      throw e;
+    }
+    return written.get();
+  }
+
+  private static IOException tooLarge(long maxBytes) {
+    return new IOException("Object exceeds download limit of " + maxBytes + " bytes");
+  }
+
+  /** Collects {@code length} bytes after skipping {@code skip}, then cancels. */
+  private static Mono<byte[]> window(ClientResponse resp, long skip, int length) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(length, 64 * 1024));
+    long[] seen = {0};
+    return resp.bodyToFlux(DataBuffer.class)
+        .takeUntil(buf -> {
+          try {
+            int n = buf.readableByteCount();
+            long start = Math.max(0, skip - seen[0]);
+            seen[0] += n;
+            if (start < n) {
+              int take = (int) Math.min(n - start, length - out.size());
+              byte[] chunk = new byte[take];
+              buf.readPosition(buf.readPosition() + (int) start);
+              buf.read(chunk);
+              out.write(chunk, 0, take);
+            }
+            return out.size() >= length;
+          } finally {
+            DataBufferUtils.release(buf);
+          }
+        })
+        .then(Mono.fromSupplier(out::toByteArray));
+  }
+
+  /** Parses the total from `Content-Range: bytes a-b/total`; -1 when absent or `*`. */
+  private static long totalFromContentRange(ClientResponse resp) {
+    String cr = resp.headers().asHttpHeaders().getFirst(HttpHeaders.CONTENT_RANGE);
+    if (cr == null) {
+      return -1L;
+    }
+    int slash = cr.lastIndexOf('/');
+    if (slash < 0 || slash == cr.length() - 1 || cr.charAt(slash + 1) == '*') {
+      return -1L;
+    }
+    try {
+      return Long.parseLong(cr.substring(slash + 1).trim());
+    } catch (NumberFormatException e) {
+      return -1L;
+    }
+  }
+
+  /**
+   * Body publisher that reads {@code in} in {@link #UPLOAD_CHUNK_BYTES} chunks
+   * into pooled buffers on demand, off the event loop.
+   */
+  private static Flux<DataBuffer> streamed(InputStream in) {
+    return DataBufferUtils
+        .readInputStream(() -> in, UPLOAD_BUFFERS, UPLOAD_CHUNK_BYTES)
+        .subscribeOn(Schedulers.boundedElastic());
+  }
+
+  private static String b64(String value) {
+    return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * URL-encodes each path segment (defensive against spaces or special chars)
+   * and joins them without a leading slash.
+   */
+  private static String encodePath(String objectPath) {
+    return UriComponentsBuilder.newInstance()
+        .pathSegment(objectPath.split("/"))
+        .build()
+        .encode()
+        .toUriString()
+        .substring(1); // drop leading '/'
+  }
+
   /**
    * Extracts "signedURL" from a minimal Supabase JSON response.
    * Expected shape: {"signedURL":"/storage/v1/object/sign/..."}
    * This avoids pulling a JSON library into this tiny class.
    */
   private static String extractSignedUrlFromJson(String json) {
+    return extractJsonString(json, "signedURL");
+  }
+
+  /** Extracts a top-level string field from a small, flat JSON object. */
+  private static String extractJsonString(String json, String field) {
     if (json == null) {
       return null;
     }
-    int i = json.indexOf("\"signedURL\"");
+    int i = json.indexOf("\"" + field + "\"");
     if (i < 0) {
       return null;
     }
@@ -193,6 +755,20 @@ public class SupabaseStorageService {
    * @param bearer caller's user JWT for Storage policy
    */
   public void deleteObject(String objectPath, String bearer) {
+    delete(objectPath, bearer, supabaseAnonKey);
+  }
+
+  /**
+   * Deletes a content-addressed blob with the service-role key, with the
+   * same 404 handling as {@link #deleteObject}.
+   *
+   * @param objectPath blob key to delete
+   */
+  public void deleteBlob(String objectPath) {
+    delete(objectPath, serviceRoleKey, serviceRoleKey);
+  }
+
+  private void delete(String objectPath, String bearer, String apikey) {
     if (objectPath == null || objectPath.isBlank()) {
       return;
     }
@@ -205,7 +781,7 @@ public class SupabaseStorageService {
         .uri(url)
         .headers(h -> {
           h.set(HttpHeaders.AUTHORIZATION, "Bearer " + bearer);
-          h.set("apikey", supabaseAnonKey);
+          h.set("apikey", apikey);
         })
         .retrieve()
         .bodyToMono(Void.class)
@@ -219,4 +795,12 @@ public class SupabaseStorageService {
       // else: 404 treated as successful idempotent delete
     }
   }
+
+  /**
+   * Result of {@link #readRange}.
+   *
+   * @param data bytes read
+   * @param totalSize full object size, or -1 if unknown
+   */
+  public record RangedBytes(byte[] data, long totalSize) { }
 }
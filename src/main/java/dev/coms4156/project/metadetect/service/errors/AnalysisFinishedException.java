@@ -0,0 +1,11 @@
+package dev.coms4156.project.metadetect.service.errors;
+
+/**
+ * Thrown when cancelling an analysis that already finished DONE or FAILED.
+ */
+public class AnalysisFinishedException extends RuntimeException {
+
+  public AnalysisFinishedException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,20 @@
+package dev.coms4156.project.metadetect.service.errors;
+
+/**
+ * Thrown when the request that first used an Idempotency-Key is still
+ * running after a duplicate has waited as long as it may. Carries a hint
+ * for the Retry-After response header.
+ */
+public class IdempotencyKeyInFlightException extends RuntimeException {
+
+  private final long retryAfterSeconds;
+
+  public IdempotencyKeyInFlightException(String message, long retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
@@ -0,0 +1,12 @@
+package dev.coms4156.project.metadetect.service.errors;
+
+/**
+ * Thrown when an Idempotency-Key is sent again with a different request
+ * than the one it was first used for.
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+  public IdempotencyKeyReusedException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,19 @@
+package dev.coms4156.project.metadetect.service.errors;
+
+/**
+ * Thrown when the analysis queue is at capacity and new work is rejected.
+ * Carries a hint for the Retry-After response header.
+ */
+public class QueueFullException extends RuntimeException {
+
+  private final long retryAfterSeconds;
+
+  public QueueFullException(String message, long retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
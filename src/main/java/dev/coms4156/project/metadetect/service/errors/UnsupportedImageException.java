@@ -0,0 +1,10 @@
+package dev.coms4156.project.metadetect.service.errors;
+
+/**
+ * Thrown when uploaded bytes are not an image format the service accepts.
+ */
+public class UnsupportedImageException extends RuntimeException {
+  public UnsupportedImageException(String message) {
+    super(message);
+  }
+}
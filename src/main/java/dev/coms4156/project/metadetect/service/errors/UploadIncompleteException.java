@@ -0,0 +1,11 @@
+package dev.coms4156.project.metadetect.service.errors;
+
+/**
+ * Thrown when a client commits a direct upload but Storage has no object at
+ * the image's storage key yet.
+ */
+public class UploadIncompleteException extends RuntimeException {
+  public UploadIncompleteException(String message) {
+    super(message);
+  }
+}
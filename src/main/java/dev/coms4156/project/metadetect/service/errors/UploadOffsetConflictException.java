@@ -0,0 +1,19 @@
+package dev.coms4156.project.metadetect.service.errors;
+
+/**
+ * Thrown when a resumable upload chunk does not start at the offset the
+ * server holds. Carries that offset so the client can resume from it.
+ */
+public class UploadOffsetConflictException extends RuntimeException {
+
+  private final long currentOffset;
+
+  public UploadOffsetConflictException(String message, long currentOffset) {
+    super(message);
+    this.currentOffset = currentOffset;
+  }
+
+  public long getCurrentOffset() {
+    return currentOffset;
+  }
+}
@@ -0,0 +1,29 @@
+-- V10__idempotency_keys.sql
+-- Responses of requests sent with an Idempotency-Key header, so a client
+-- retrying after a timeout gets the original response instead of a second
+-- run. One row per (user, scope, key):
+--   scope:       the endpoint family, e.g. 'analyze' or 'upload'
+--   fingerprint: sha-256 of what the request asked for; the same key with a
+--                different request is rejected instead of replayed
+--   response:    response body; null while the first request is running
+--   started_at:  when the running request began; a running row older than
+--                metadetect.idempotency.staleAfterMs is presumed dead and may
+--                be taken over
+--   expires_at:  after this the key may be reused; purged periodically
+
+create table if not exists idempotency_keys (
+  user_id      uuid        not null references auth.users(id) on delete cascade,
+  scope        text        not null,
+  idem_key     text        not null,
+  fingerprint  text        not null,
+  response     jsonb,
+  started_at   timestamptz not null,
+  expires_at   timestamptz not null,
+  primary key (user_id, scope, idem_key)
+);
+
+create index if not exists idx_idempotency_keys_expires
+  on idempotency_keys(expires_at);
+
+-- Written only by the service's own role.
+alter table idempotency_keys enable row level security;
@@ -0,0 +1,7 @@
+-- V11__report_status_cancelled.sql
+-- Terminal status for analyses stopped by their owner
+-- (DELETE /api/analyze/{analysisId}). Kept in its own migration: a value
+-- added to an enum cannot be used in the transaction that adds it, and
+-- V12 refers to it.
+
+alter type report_status add value if not exists 'CANCELLED';
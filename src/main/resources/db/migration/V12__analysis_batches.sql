@@ -0,0 +1,20 @@
+-- V12__analysis_batches.sql
+-- 1) Jobs queued by one batch submission share a batch_id, so cancelling
+--    one of them can drop the rest of the batch that is still PENDING.
+--    Single submissions and rows queued before this migration have none.
+alter table analysis_reports add column if not exists batch_id uuid;
+
+create index if not exists idx_analysis_reports_pending_batch
+  on analysis_reports (batch_id)
+  where status = 'PENDING' and batch_id is not null;
+
+-- 2) Announce cancellations on `analysis_events` like the other transitions
+--    (see V8), so the instance running a cancelled job stops it and every
+--    instance closes its SSE streams and long polls.
+drop trigger if exists trg_analysis_status_notify on analysis_reports;
+create trigger trg_analysis_status_notify
+  after update of status on analysis_reports
+  for each row
+  when (old.status is distinct from new.status
+        and new.status in ('RUNNING', 'DONE', 'FAILED', 'CANCELLED'))
+  execute function notify_analysis_status();
@@ -0,0 +1,8 @@
+-- V13__blob_stored_flag.sql
+-- A blob reference is now taken in a short transaction of its own, and the
+-- object is uploaded after it commits. `stored` records whether the object
+-- has been written, so a concurrent upload of the same bytes uploads it too
+-- instead of pointing a new image at an object that may never appear.
+-- Rows from before this migration were created together with their object.
+alter table blobs add column if not exists stored boolean not null default true;
+alter table blobs alter column stored set default false;
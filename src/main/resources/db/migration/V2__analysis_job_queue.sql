@@ -0,0 +1,19 @@
+-- V2__analysis_job_queue.sql
+-- Turns analysis_reports into a durable job queue.
+-- Submit inserts a PENDING row and returns; workers claim rows with
+-- FOR UPDATE SKIP LOCKED, move them to RUNNING and finish them as DONE/FAILED.
+
+-- 1) Job bookkeeping columns
+--    source_url: short-lived signed download URL captured at submit time, so
+--                workers never need the caller's bearer token. Cleared once
+--                the job reaches a terminal state.
+alter table analysis_reports add column if not exists source_url   text;
+alter table analysis_reports add column if not exists attempts     integer not null default 0;
+alter table analysis_reports add column if not exists started_at   timestamptz;
+alter table analysis_reports add column if not exists completed_at timestamptz;
+
+-- 2) Partial index so claiming the oldest PENDING rows stays cheap no matter
+--    how many finished reports accumulate.
+create index if not exists idx_reports_pending
+  on analysis_reports(created_at)
+  where status = 'PENDING';
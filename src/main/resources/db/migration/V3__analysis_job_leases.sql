@@ -0,0 +1,16 @@
+-- V3__analysis_job_leases.sql
+-- Leases for in-flight analyses so work survives node crashes and is never
+-- processed by two instances at once.
+--   lease_owner:  node id of the worker that claimed the job
+--   heartbeat_at: refreshed periodically by the owner while the job runs
+-- A background reaper requeues (or fails, after too many attempts) RUNNING
+-- jobs whose heartbeat is older than the lease timeout and whose owner no
+-- longer holds the job's Postgres advisory lock.
+
+alter table analysis_reports add column if not exists lease_owner  text;
+alter table analysis_reports add column if not exists heartbeat_at timestamptz;
+
+-- Reaper scans only RUNNING rows, ordered by staleness.
+create index if not exists idx_reports_running_heartbeat
+  on analysis_reports(heartbeat_at)
+  where status = 'RUNNING';
@@ -0,0 +1,35 @@
+-- V4__upload_sessions.sql
+-- Resumable (tus) uploads proxied to Supabase Storage's tus endpoint.
+-- One row per in-progress upload:
+--   upstream_url:  tus upload URL returned by Storage on creation
+--   upload_offset: bytes Storage has acknowledged; clients resume from here
+--   completed_at:  set once the last byte is acknowledged and the image's
+--                  storage_path has been committed
+-- The offset only moves through a conditional update on its previous value,
+-- so two requests racing on the same offset cannot both advance it.
+
+create table if not exists upload_sessions (
+  id             uuid primary key default gen_random_uuid(),
+  image_id       uuid not null references images(id) on delete cascade,
+  user_id        uuid not null references auth.users(id) on delete cascade,
+  storage_path   text not null,
+  upstream_url   text not null,
+  upload_length  bigint not null check (upload_length > 0),
+  upload_offset  bigint not null default 0
+                 check (upload_offset >= 0 and upload_offset <= upload_length),
+  created_at     timestamptz not null default now(),
+  updated_at     timestamptz not null default now(),
+  completed_at   timestamptz
+);
+
+create index if not exists idx_upload_sessions_user_created
+  on upload_sessions(user_id, created_at desc);
+
+alter table upload_sessions enable row level security;
+
+drop policy if exists upload_sessions_owner_crud on upload_sessions;
+create policy upload_sessions_owner_crud
+  on upload_sessions
+  for all
+  using (user_id = auth.uid())
+  with check (user_id = auth.uid());
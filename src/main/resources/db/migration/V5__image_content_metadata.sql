@@ -0,0 +1,20 @@
+-- V5__image_content_metadata.sql
+-- Facts about the stored bytes, computed once while the upload streams so
+-- later consumers do not have to download the object to learn them:
+--   content_sha256: lowercase hex SHA-256 of the object
+--   content_type:   MIME type sniffed from magic bytes (not the client's claim)
+--   width, height:  pixel dimensions read from the format header, if found
+--   size_bytes:     object size
+-- Rows uploaded before this migration, or through signed direct or resumable
+-- uploads (whose bytes are not ingested in one pass), keep nulls here.
+
+alter table images add column if not exists content_sha256 text;
+alter table images add column if not exists content_type   text;
+alter table images add column if not exists width          integer;
+alter table images add column if not exists height         integer;
+alter table images add column if not exists size_bytes     bigint;
+
+-- Content lookups by digest (dedup, manifest cache).
+create index if not exists idx_images_content_sha256
+  on images(content_sha256)
+  where content_sha256 is not null;
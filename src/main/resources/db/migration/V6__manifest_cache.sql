@@ -0,0 +1,37 @@
+-- V6__manifest_cache.sql
+-- Content-addressed store of extraction results. A manifest report depends
+-- only on the image bytes and the extractor, so it is stored once per
+-- (content_sha256, engine_version) and DONE reports point at it instead of
+-- carrying their own copy in analysis_reports.details.
+--   content_sha256: images.content_sha256 of the analyzed bytes
+--   engine_version: ManifestExtractor.version() that produced the report;
+--                   a new version misses the cache and re-extracts
+-- Failures are never cached; they stay inline in analysis_reports.details.
+
+create table if not exists manifests (
+  content_sha256 text        not null,
+  engine_version text        not null,
+  details        jsonb       not null,
+  created_at     timestamptz not null default now(),
+  primary key (content_sha256, engine_version)
+);
+
+-- Shared across users: clients must not be able to probe which content
+-- others have analyzed. RLS with no policies denies everyone but the
+-- service's own role.
+alter table manifests enable row level security;
+
+-- Reports finished from (or into) the cache reference it and leave
+-- details null. Reports on images without a digest keep inline details.
+alter table analysis_reports add column if not exists manifest_sha256  text;
+alter table analysis_reports add column if not exists manifest_version text;
+
+do $$
+begin
+  if not exists (select 1 from pg_constraint where conname = 'fk_reports_manifest') then
+    alter table analysis_reports
+      add constraint fk_reports_manifest
+      foreign key (manifest_sha256, manifest_version)
+      references manifests(content_sha256, engine_version);
+  end if;
+end$$;
@@ -0,0 +1,53 @@
+-- V7__content_addressed_blobs.sql
+-- Content-addressed storage for service-ingested uploads. Identical bytes
+-- are stored once, at blobs/<sha256>.<ext>, and shared by every images row
+-- whose storage_path points there.
+--   content_sha256: digest of the object (images.content_sha256)
+--   storage_path:   object key in the bucket
+--   ref_count:      images rows referencing the blob; the object is deleted
+--                   when the last one goes
+-- Acquire/release for one digest are serialized with a transaction-scoped
+-- advisory lock, so the count and the object never disagree.
+
+create table if not exists blobs (
+  content_sha256 text        primary key,
+  storage_path   text        not null unique,
+  size_bytes     bigint      not null,
+  ref_count      integer     not null check (ref_count >= 0),
+  created_at     timestamptz not null default now()
+);
+
+-- Service-only bookkeeping: which content exists must not be visible to
+-- clients. RLS with no policies denies everyone but the service's own role.
+alter table blobs enable row level security;
+
+-- Storage policies for the shared prefix. Blobs are created, replaced and
+-- deleted only by the service with the service-role key; no client JWT may
+-- write under blobs/, since any object there may back other users' images.
+-- Reading one requires owning an images row that references it (signed
+-- download URLs rely on this). Per-user prefixes (userId/...) keep whatever
+-- policies the bucket already has.
+do $$
+begin
+  if exists (select 1 from pg_namespace where nspname = 'storage') then
+    drop policy if exists blobs_service_write on storage.objects;
+    create policy blobs_service_write
+      on storage.objects
+      for all to service_role
+      using (bucket_id = 'metadetect-images' and name like 'blobs/%')
+      with check (bucket_id = 'metadetect-images' and name like 'blobs/%');
+
+    drop policy if exists blobs_owner_read on storage.objects;
+    create policy blobs_owner_read
+      on storage.objects
+      for select to authenticated
+      using (bucket_id = 'metadetect-images' and name like 'blobs/%' and exists (
+        select 1 from public.images i
+         where i.storage_path = storage.objects.name
+           and i.user_id = auth.uid()));
+  end if;
+end$$;
+
+-- Reference lookups when releasing a blob.
+create index if not exists idx_images_storage_path
+  on images(storage_path);
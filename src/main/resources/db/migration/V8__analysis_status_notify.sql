@@ -0,0 +1,23 @@
+-- V8__analysis_status_notify.sql
+-- Cross-instance wake-ups for analysis status changes. Every transition a
+-- worker or the reaper makes (claim, DONE, FAILED) is announced on the
+-- `analysis_events` channel; each instance keeps one LISTEN connection and
+-- fans notifications out to its local waiters (SSE streams, long polls).
+--   payload: '<analysis id>:<new status>', e.g. '6f1c…:DONE'
+-- pg_notify is transactional: listeners hear about a row only once the
+-- change is committed and visible to them. No extra queries are issued.
+
+create or replace function notify_analysis_status() returns trigger
+language plpgsql as $$
+begin
+  perform pg_notify('analysis_events', new.id::text || ':' || new.status::text);
+  return null;
+end$$;
+
+drop trigger if exists trg_analysis_status_notify on analysis_reports;
+create trigger trg_analysis_status_notify
+  after update of status on analysis_reports
+  for each row
+  when (old.status is distinct from new.status
+        and new.status in ('RUNNING', 'DONE', 'FAILED'))
+  execute function notify_analysis_status();
@@ -0,0 +1,9 @@
+-- V9__report_engine_version.sql
+-- Records which extractor produced each DONE report, including the c2patool
+-- version probed at startup (e.g. "auto:jumbf-1+c2patool-0.9.12"). Reports
+-- from instances running different tool versions side by side stay
+-- distinguishable. manifest_version only covered reports served through the
+-- manifest cache; engine_version is set on every DONE report.
+-- Rows finished before this migration keep null.
+
+alter table analysis_reports add column if not exists engine_version text;
@@ -0,0 +1,85 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link C2paManifestEngine} mode selection and fallback.
+ */
+class C2paManifestEngineTest {
+
+  private final ManifestExtractor reader = mock(ManifestExtractor.class);
+  private final ManifestExtractor tool = mock(ManifestExtractor.class);
+  private final File image = new File("image.webp");
+
+  @Test
+  void auto_usesReaderWhenItSucceeds() throws Exception {
+    when(reader.extractManifest(image)).thenReturn("{\"java\":true}");
+    C2paManifestEngine engine = new C2paManifestEngine(reader, tool, C2paManifestEngine.Mode.AUTO);
+
+    assertThat(engine.extractManifest(image)).isEqualTo("{\"java\":true}");
+    verify(tool, never()).extractManifest(image);
+  }
+
+  @Test
+  void auto_fallsBackToToolOnUnsupported() throws Exception {
+    when(reader.extractManifest(image)).thenThrow(new UnsupportedManifestException("webp"));
+    when(tool.extractManifest(image)).thenReturn("{\"tool\":true}");
+    C2paManifestEngine engine = new C2paManifestEngine(reader, tool, C2paManifestEngine.Mode.AUTO);
+
+    assertThat(engine.extractManifest(image)).isEqualTo("{\"tool\":true}");
+  }
+
+  @Test
+  void auto_doesNotRetryWhenManifestIsAbsent() throws Exception {
+    when(reader.extractManifest(image)).thenThrow(new ManifestNotFoundException("none"));
+    C2paManifestEngine engine = new C2paManifestEngine(reader, tool, C2paManifestEngine.Mode.AUTO);
+
+    assertThatThrownBy(() -> engine.extractManifest(image))
+        .isInstanceOf(ManifestNotFoundException.class);
+    verify(tool, never()).extractManifest(image);
+  }
+
+  @Test
+  void javaAndToolModes_useOnlyTheirEngine() throws Exception {
+    when(reader.extractManifest(image)).thenThrow(new UnsupportedManifestException("webp"));
+    when(tool.extractManifest(image)).thenReturn("{\"tool\":true}");
+
+    C2paManifestEngine javaOnly =
+        new C2paManifestEngine(reader, tool, C2paManifestEngine.Mode.JAVA);
+    assertThatThrownBy(() -> javaOnly.extractManifest(image))
+        .isInstanceOf(UnsupportedManifestException.class);
+
+    C2paManifestEngine toolOnly =
+        new C2paManifestEngine(reader, tool, C2paManifestEngine.Mode.TOOL);
+    assertThat(toolOnly.extractManifest(image)).isEqualTo("{\"tool\":true}");
+  }
+
+  @Test
+  void version_namesModeAndTheExtractorsItMayUse() {
+    when(reader.version()).thenReturn("jumbf-1");
+    when(tool.version()).thenReturn("c2patool");
+
+    assertThat(new C2paManifestEngine(reader, tool, C2paManifestEngine.Mode.AUTO).version())
+        .isEqualTo("auto:jumbf-1+c2patool");
+    assertThat(new C2paManifestEngine(reader, tool, C2paManifestEngine.Mode.JAVA).version())
+        .isEqualTo("java:jumbf-1");
+    assertThat(new C2paManifestEngine(reader, tool, C2paManifestEngine.Mode.TOOL).version())
+        .isEqualTo("tool:c2patool");
+  }
+
+  @Test
+  void parseMode_acceptsConfigNamesAndRejectsOthers() {
+    assertThat(C2paManifestEngine.parseMode(" Auto ")).isEqualTo(C2paManifestEngine.Mode.AUTO);
+    assertThat(C2paManifestEngine.parseMode("tool")).isEqualTo(C2paManifestEngine.Mode.TOOL);
+    assertThatThrownBy(() -> C2paManifestEngine.parseMode("rust"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
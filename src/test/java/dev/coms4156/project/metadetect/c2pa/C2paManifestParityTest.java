@@ -0,0 +1,103 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Parity between {@link JumbfManifestReader} and `c2patool -d`.
+ * The fixtures under src/test/resources/c2pa carry the same signed manifest
+ * store (two manifests, es256) in each container the reader handles: JPEG
+ * APP11 segments, a PNG caBX chunk and a BMFF C2PA uuid box. The expected
+ * report, manifest.report.json, is checked in in the `-d` layout, so the
+ * reader is held to it without the binary.
+ * That report was not produced by c2patool, so on its own this only shows
+ * the reader agrees with it. {@link #expectedReportMatchesTool} holds it to
+ * a live c2patool run. The c2pa-parity CI job installs the pinned c2patool
+ * and runs it with -Dc2pa.parity.requireTool=true, which turns a missing
+ * binary into a failure instead of a skip.
+ * Compared: active manifest, manifest labels, claim fields, assertion labels
+ * and contents, and the signature's alg/issuer/time. `validation_status` is
+ * ignored because the in-process reader does not validate.
+ */
+class C2paManifestParityTest {
+
+  private static final String TOOL_PATH = "./tools/c2patool/c2patool";
+  private static final boolean REQUIRE_TOOL = Boolean.getBoolean("c2pa.parity.requireTool");
+  private static final Path FIXTURES = Path.of("src/test/resources/c2pa");
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @ParameterizedTest
+  @ValueSource(strings = {"manifest.jpg", "manifest.png", "manifest.mp4"})
+  void readerMatchesExpectedReport(String fixture) throws Exception {
+    File image = FIXTURES.resolve(fixture).toFile();
+
+    assertParity(MAPPER.readTree(new JumbfManifestReader().extractManifest(image)),
+        expectedReport());
+  }
+
+  @Test
+  void expectedReportMatchesTool() throws Exception {
+    boolean installed = Files.exists(Path.of(TOOL_PATH));
+    if (REQUIRE_TOOL) {
+      assertThat(installed).as("c2patool at %s", TOOL_PATH).isTrue();
+    }
+    assumeTrue(installed, "Skipping: c2patool not installed");
+    File image = FIXTURES.resolve("manifest.jpg").toFile();
+
+    assertParity(expectedReport(),
+        MAPPER.readTree(new C2paToolInvoker(TOOL_PATH).extractManifest(image)));
+  }
+
+  private static JsonNode expectedReport() throws Exception {
+    return MAPPER.readTree(FIXTURES.resolve("manifest.report.json").toFile());
+  }
+
+  private static void assertParity(JsonNode actualReport, JsonNode expectedReport) {
+    assertThat(actualReport.path("active_manifest"))
+        .isEqualTo(expectedReport.path("active_manifest"));
+    assertThat(names(actualReport.path("manifests")))
+        .isEqualTo(names(expectedReport.path("manifests")));
+
+    expectedReport.path("manifests").fields().forEachRemaining(e -> {
+      JsonNode expected = e.getValue();
+      JsonNode actual = actualReport.path("manifests").path(e.getKey());
+
+      assertThat(actual.path("claim")).as("claim of %s", e.getKey())
+          .isEqualTo(expected.path("claim"));
+      assertThat(names(actual.path("assertion_store")))
+          .as("assertion labels of %s", e.getKey())
+          .isEqualTo(names(expected.path("assertion_store")));
+      expected.path("assertion_store").fields().forEachRemaining(a -> {
+        if (a.getValue().isObject() && a.getValue().has("format")) {
+          return; // embedded files are summarized differently
+        }
+        assertThat(actual.path("assertion_store").path(a.getKey()))
+            .as("assertion %s of %s", a.getKey(), e.getKey())
+            .isEqualTo(a.getValue());
+      });
+      for (String field : List.of("alg", "issuer", "time")) {
+        assertThat(actual.path("signature").path(field))
+            .as("signature.%s of %s", field, e.getKey())
+            .isEqualTo(expected.path("signature").path(field));
+      }
+    });
+  }
+
+  private static List<String> names(JsonNode obj) {
+    List<String> out = new ArrayList<>();
+    obj.fieldNames().forEachRemaining(out::add);
+    out.sort(null);
+    return out;
+  }
+}
@@ -0,0 +1,93 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import dev.coms4156.project.metadetect.c2pa.C2paPresenceProbe.Presence;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link C2paPresenceProbe}.
+ * The probe must only answer ABSENT when the header walk is conclusive.
+ */
+class C2paPresenceProbeTest {
+
+  private static final Path SPAGHETTI = Path.of("src/test/resources/mock-images/Spaghetti.png");
+
+  @Test
+  void png_caBxWithinPrefix_isPresent() throws Exception {
+    byte[] all = Files.readAllBytes(SPAGHETTI);
+    byte[] prefix = Arrays.copyOf(all, 4096); // caBX header sits right after IHDR
+
+    assertThat(C2paPresenceProbe.probe(prefix, all.length)).isEqualTo(Presence.PRESENT);
+  }
+
+  @Test
+  void png_headersBeyondPrefix_isUnknown() {
+    byte[] png = png(chunk("IHDR", new byte[13]), chunk("IDAT", new byte[5000]),
+        chunk("IEND", new byte[0]));
+
+    assertThat(C2paPresenceProbe.probe(Arrays.copyOf(png, 1024), png.length))
+        .isEqualTo(Presence.UNKNOWN);
+    assertThat(C2paPresenceProbe.probe(png, png.length)).isEqualTo(Presence.ABSENT);
+  }
+
+  @Test
+  void jpeg_scanReachedWithoutApp11_isAbsent() {
+    byte[] jpeg = {
+        (byte) 0xff, (byte) 0xd8,
+        (byte) 0xff, (byte) 0xe1, 0, 4, 'E', 'x',
+        (byte) 0xff, (byte) 0xda, 0, 2, 1, 2, 3
+    };
+    // Total size far beyond the prefix: the scan marker is what makes it conclusive.
+    assertThat(C2paPresenceProbe.probe(jpeg, 5_000_000)).isEqualTo(Presence.ABSENT);
+  }
+
+  @Test
+  void jpeg_app11JumbfPacket_isPresent() {
+    ByteBuffer app11 = ByteBuffer.allocate(2 + 2 + 16 + 4);
+    app11.put((byte) 0xff).put((byte) 0xeb).putShort((short) 22)
+        .put("JP".getBytes(StandardCharsets.US_ASCII)).putShort((short) 1).putInt(1)
+        .putInt(1000).put("jumb".getBytes(StandardCharsets.US_ASCII)).putInt(0);
+    ByteBuffer jpeg = ByteBuffer.allocate(2 + app11.capacity());
+    jpeg.put((byte) 0xff).put((byte) 0xd8).put(app11.array());
+
+    assertThat(C2paPresenceProbe.probe(jpeg.array(), 5_000_000)).isEqualTo(Presence.PRESENT);
+  }
+
+  @Test
+  void jpeg_metadataExtendsPastPrefix_isUnknown() {
+    byte[] jpeg = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe1, 0x40, 0x00, 'E', 'x'};
+
+    assertThat(C2paPresenceProbe.probe(jpeg, 5_000_000)).isEqualTo(Presence.UNKNOWN);
+    assertThat(C2paPresenceProbe.probe(jpeg, -1)).isEqualTo(Presence.UNKNOWN);
+  }
+
+  @Test
+  void unknownContainer_isUnknown() {
+    byte[] gif = "GIF89a....".getBytes(StandardCharsets.US_ASCII);
+
+    assertThat(C2paPresenceProbe.probe(gif, gif.length)).isEqualTo(Presence.UNKNOWN);
+  }
+
+  // ---- helpers ----
+
+  private static byte[] png(byte[]... chunks) {
+    ByteBuffer b = ByteBuffer.allocate(8 + Arrays.stream(chunks).mapToInt(c -> c.length).sum());
+    b.put(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+    for (byte[] c : chunks) {
+      b.put(c);
+    }
+    return b.array();
+  }
+
+  private static byte[] chunk(String type, byte[] data) {
+    ByteBuffer b = ByteBuffer.allocate(12 + data.length);
+    b.putInt(data.length).put(type.getBytes(StandardCharsets.US_ASCII)).put(data).putInt(0);
+    return b.array();
+  }
+}
@@ -1,5 +1,6 @@
 package dev.coms4156.project.metadetect.c2pa;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -11,6 +12,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -19,6 +21,8 @@ import org.junit.jupiter.api.Test;
  * The tests that depend on the native C2PA CLI are guarded with `assumeTrue`,
  * so they are silently skipped when running in CI or in environments where the
  * binary is not available. This avoids false negatives without disabling them.
+ * Execution mechanics (draining, deadlines, output caps) are tested against
+ * small shell scripts standing in for the tool; those need a POSIX `sh`.
  */
 class C2paToolInvokerUnitTest {
 
@@ -115,8 +119,76 @@ class C2paToolInvokerUnitTest {
         "IOException should carry a diagnostic message");
   }
 
+  /**
+   * Output larger than the pipe buffers on both streams must not stall the
+   * tool; the run reports exit code and byte counts.
+   */
+  @Test
+  void run_largeStdoutAndStderr_drainedConcurrently() throws IOException {
+    String tool = fakeTool("head -c 300000 /dev/zero | tr '\\0' x\n"
+        + "head -c 200000 /dev/zero >&2\n"
+        + "exit 3");
+    C2paToolInvoker invoker = new C2paToolInvoker(tool, Duration.ofSeconds(10), 1 << 20);
+
+    C2paToolInvoker.ToolRun run = invoker.run();
+
+    assertThat(run.exitCode()).isEqualTo(3);
+    assertThat(run.stdoutBytes()).isEqualTo(300_000);
+    assertThat(run.stderrBytes()).isEqualTo(200_000);
+    assertThat(run.stdout()).hasSize(300_000);
+    assertThat(run.wallTimeMs()).isNotNegative();
+  }
+
+  /** A tool that misses its deadline is killed, and so is anything it started. */
+  @Test
+  void run_pastDeadline_killsToolAndThrows() throws IOException {
+    String tool = fakeTool("sleep 30 &\nsleep 30");
+    C2paToolInvoker invoker = new C2paToolInvoker(tool, Duration.ofMillis(300), 1024);
+
+    long start = System.nanoTime();
+    IOException ex = assertThrows(IOException.class, invoker::run);
+
+    assertThat(ex.getMessage()).contains("timed out");
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(10));
+  }
+
+  /** stdout past the cap aborts the run instead of buffering without bound. */
+  @Test
+  void run_stdoutOverCap_throws() throws IOException {
+    C2paToolInvoker invoker =
+        new C2paToolInvoker(fakeTool("yes"), Duration.ofSeconds(10), 1000);
+
+    IOException ex = assertThrows(IOException.class, invoker::run);
+
+    assertThat(ex.getMessage()).contains("exceeded 1000 bytes");
+  }
+
+  /** stderr past the cap is truncated; the run still completes. */
+  @Test
+  void run_stderrOverCap_isTruncated() throws IOException {
+    String tool = fakeTool("head -c 5000 /dev/zero >&2\necho ok");
+    C2paToolInvoker invoker = new C2paToolInvoker(tool, Duration.ofSeconds(10), 100);
+
+    C2paToolInvoker.ToolRun run = invoker.run();
+
+    assertThat(run.exitCode()).isZero();
+    assertThat(run.stdout().trim()).isEqualTo("ok");
+    assertThat(run.stderrBytes()).isEqualTo(5000);
+    assertThat(run.stderr()).hasSize(100);
+  }
+
   // ---- helpers ----
 
+  /** Writes an executable shell script standing in for c2patool. */
+  private static String fakeTool(String body) throws IOException {
+    assumeTrue(Files.isExecutable(Path.of("/bin/sh")), "Skipping: no POSIX shell");
+    Path script = Files.createTempFile("fake-c2patool-", ".sh");
+    Files.writeString(script, "#!/bin/sh\n" + body + "\n");
+    assumeTrue(script.toFile().setExecutable(true), "Skipping: cannot mark script executable");
+    script.toFile().deleteOnExit();
+    return script.toString();
+  }
+
   /**
    * Creates a temporary invalid "image" for negative-path testing.
    */
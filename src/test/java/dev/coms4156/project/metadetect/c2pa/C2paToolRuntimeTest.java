@@ -0,0 +1,179 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link C2paToolRuntime}.
+ * A small shell script stands in for c2patool: it answers `--version` and
+ * otherwise behaves as each test needs. These tests need a POSIX `sh`.
+ */
+class C2paToolRuntimeTest {
+
+  private static final String VERSION_OK =
+      "if [ \"$1\" = \"--version\" ]; then echo 'c2patool 0.9.12'; exit 0; fi\n";
+
+  private final File image = new File("image.png");
+
+  /** The startup probe records the version, which then names the extractor. */
+  @Test
+  void start_probesVersion_andExtracts() throws IOException {
+    C2paToolRuntime runtime = runtime(VERSION_OK + "echo '{\"m\":1}'", 2, Duration.ofMinutes(1));
+
+    runtime.start();
+
+    assertThat(runtime.toolVersion()).isEqualTo("0.9.12");
+    assertThat(runtime.version()).isEqualTo("c2patool-0.9.12");
+    assertThat(runtime.isQuarantined()).isFalse();
+    assertThat(runtime.extractManifest(image).trim()).isEqualTo("{\"m\":1}");
+    assertThat(runtime.health()).hasSize(2);
+    assertThat(runtime.health()).allSatisfy(h -> assertThat(h.faults()).isZero());
+  }
+
+  /** A binary that fails its probe is quarantined; extraction fails fast. */
+  @Test
+  void start_failedProbe_quarantines() throws IOException {
+    C2paToolRuntime runtime = runtime("exit 2", 1, Duration.ofMinutes(1));
+
+    runtime.start();
+
+    assertThat(runtime.isQuarantined()).isTrue();
+    assertThat(runtime.version()).isEqualTo("c2patool");
+    IOException ex = assertThrows(IOException.class, () -> runtime.extractManifest(image));
+    assertThat(ex.getMessage()).contains("quarantined");
+  }
+
+  /** A non-zero exit for a bad input is a result, not a tool fault. */
+  @Test
+  void inputFailure_isNotAFault() throws IOException {
+    C2paToolRuntime runtime =
+        runtime(VERSION_OK + "echo 'no manifest' >&2\nexit 1", 1, Duration.ofMinutes(1));
+    runtime.start();
+
+    for (int i = 0; i < 3; i++) {
+      assertThrows(IOException.class, () -> runtime.extractManifest(image));
+    }
+
+    assertThat(runtime.isQuarantined()).isFalse();
+    assertThat(runtime.health().get(0).faults()).isZero();
+  }
+
+  /**
+   * A crash is a fault; with the probe filling the other half of the
+   * two-run window, one crash reaches the 50% threshold.
+   */
+  @Test
+  void crashes_quarantineToolPath() throws IOException {
+    C2paToolRuntime runtime = runtime(VERSION_OK + "kill -9 $$", 1, Duration.ofMinutes(1));
+    runtime.start();
+
+    IOException crash = assertThrows(IOException.class, () -> runtime.extractManifest(image));
+
+    assertThat(crash.getMessage()).contains("exit code 137");
+    assertThat(runtime.isQuarantined()).isTrue();
+    assertThat(runtime.health().get(0).faults()).isEqualTo(1);
+    assertThat(runtime.health().get(0).failureRate()).isEqualTo(0.5);
+    IOException ex = assertThrows(IOException.class, () -> runtime.extractManifest(image));
+    assertThat(ex.getMessage()).contains("quarantined");
+  }
+
+  /**
+   * A run stopped by a cancellation interrupt is neither a fault nor a run,
+   * however often it happens.
+   */
+  @Test
+  void interruptedRun_isNotAFault() throws Exception {
+    C2paToolRuntime runtime = runtime(VERSION_OK + "sleep 30", 1, Duration.ofMinutes(1));
+    runtime.start();
+
+    for (int i = 0; i < 2; i++) {
+      IOException[] thrown = new IOException[1];
+      Thread job = new Thread(() -> {
+        try {
+          runtime.extractManifest(image);
+        } catch (IOException e) {
+          thrown[0] = e;
+        }
+      });
+      job.start();
+      Thread.sleep(200);
+      job.interrupt();
+      job.join(10_000);
+      assertThat(thrown[0]).isInstanceOf(InterruptedIOException.class);
+    }
+
+    assertThat(runtime.isQuarantined()).isFalse();
+    assertThat(runtime.health().get(0).faults()).isZero();
+    assertThat(runtime.health().get(0).runs()).isEqualTo(1); // the probe
+  }
+
+  /** One input's report overflowing the output cap says nothing about the binary. */
+  @Test
+  void outputOverflow_isNotAFault() throws IOException {
+    C2paToolRuntime runtime = runtime(
+        VERSION_OK + "head -c 20000 /dev/zero | tr '\\0' 'x'", 1, Duration.ofMinutes(1));
+    runtime.start();
+
+    for (int i = 0; i < 3; i++) {
+      assertThrows(C2paToolInvoker.OutputLimitException.class,
+          () -> runtime.extractManifest(image));
+    }
+
+    assertThat(runtime.isQuarantined()).isFalse();
+    assertThat(runtime.health().get(0).faults()).isZero();
+  }
+
+  /** Once the quarantine elapses, a passing probe returns the tool to service. */
+  @Test
+  void elapsedQuarantine_reprobesAndRecovers() throws IOException {
+    Path marker = Files.createTempFile("c2patool-fixed-", ".flag");
+    Files.delete(marker);
+    // Broken until the marker exists, then works.
+    String body = "if [ ! -f '" + marker + "' ]; then exit 2; fi\n"
+        + VERSION_OK
+        + "echo '{\"m\":2}'";
+    C2paToolRuntime runtime = runtime(body, 1, Duration.ZERO);
+    runtime.start();
+    assertThat(runtime.isQuarantined()).isTrue();
+
+    Files.createFile(marker);
+    try {
+      assertThat(runtime.extractManifest(image).trim()).isEqualTo("{\"m\":2}");
+      assertThat(runtime.isQuarantined()).isFalse();
+    } finally {
+      Files.deleteIfExists(marker);
+    }
+  }
+
+  /** The version is the last token of the first output line. */
+  @Test
+  void parseVersion_takesLastTokenOfFirstLine() {
+    assertThat(C2paToolRuntime.parseVersion("c2patool 0.9.12\nmore\n")).isEqualTo("0.9.12");
+    assertThat(C2paToolRuntime.parseVersion("  \n")).isNull();
+  }
+
+  // ---- helpers ----
+
+  /** Runtime over a fake tool, with a two-run health window tripping at 50%. */
+  private static C2paToolRuntime runtime(String body, int concurrency, Duration quarantine)
+      throws IOException {
+    assumeTrue(Files.isExecutable(Path.of("/bin/sh")), "Skipping: no POSIX shell");
+    Path script = Files.createTempFile("fake-c2patool-", ".sh");
+    Files.writeString(script, "#!/bin/sh\n" + body + "\n");
+    assumeTrue(script.toFile().setExecutable(true), "Skipping: cannot mark script executable");
+    script.toFile().deleteOnExit();
+    C2paToolInvoker invoker = new C2paToolInvoker(script.toString(), Duration.ofSeconds(10), 4096);
+    return new C2paToolRuntime(script.toString(), invoker, concurrency, 2, 0.5, quarantine,
+        Clock.systemUTC());
+  }
+}
@@ -0,0 +1,74 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.HexFormat;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CborDecoder}, using vectors from RFC 8949 appendix A.
+ */
+class CborDecoderTest {
+
+  private static JsonNode decode(String hex) throws Exception {
+    return CborDecoder.decode(HexFormat.of().parseHex(hex));
+  }
+
+  @Test
+  void integers() throws Exception {
+    assertThat(decode("00").asLong()).isZero();
+    assertThat(decode("1864").asLong()).isEqualTo(100);
+    assertThat(decode("1a000f4240").asLong()).isEqualTo(1_000_000);
+    assertThat(decode("3863").asLong()).isEqualTo(-100);
+    assertThat(decode("1bffffffffffffffff").bigIntegerValue().toString())
+        .isEqualTo("18446744073709551615");
+  }
+
+  @Test
+  void floats() throws Exception {
+    assertThat(decode("f93c00").asDouble()).isEqualTo(1.0);
+    assertThat(decode("f9c400").asDouble()).isEqualTo(-4.0);
+    assertThat(decode("fa47c35000").asDouble()).isEqualTo(100000.0);
+    assertThat(decode("fb3ff199999999999a").asDouble()).isEqualTo(1.1);
+  }
+
+  @Test
+  void simpleValues() throws Exception {
+    assertThat(decode("f4").booleanValue()).isFalse();
+    assertThat(decode("f5").booleanValue()).isTrue();
+    assertThat(decode("f6").isNull()).isTrue();
+    assertThat(decode("f7").isNull()).isTrue();
+  }
+
+  @Test
+  void stringsAndBytes() throws Exception {
+    assertThat(decode("6449455446").textValue()).isEqualTo("IETF");
+    assertThat(decode("7f657374726561646d696e67ff").textValue()).isEqualTo("streaming");
+    JsonNode bytes = decode("4401020304");
+    assertThat(bytes.isBinary()).isTrue();
+    assertThat(bytes.binaryValue()).containsExactly(1, 2, 3, 4);
+  }
+
+  @Test
+  void arraysMapsAndTags() throws Exception {
+    assertThat(decode("83010203").toString()).isEqualTo("[1,2,3]");
+    assertThat(decode("9f018202039f0405ffff").toString()).isEqualTo("[1,[2,3],[4,5]]");
+    assertThat(decode("a201020304").toString()).isEqualTo("{\"1\":2,\"3\":4}");
+    assertThat(decode("bf61610161629f0203ffff").toString())
+        .isEqualTo("{\"a\":1,\"b\":[2,3]}");
+    // tag 1 (epoch time) keeps its content
+    assertThat(decode("c11a514b67b0").asLong()).isEqualTo(1363896240L);
+  }
+
+  @Test
+  void rejectsTruncatedAndOversizedInput() {
+    assertThatThrownBy(() -> decode("830102"))
+        .isInstanceOf(UnsupportedManifestException.class);
+    assertThatThrownBy(() -> decode("5affffffff00"))
+        .isInstanceOf(UnsupportedManifestException.class);
+    assertThatThrownBy(() -> decode("9bffffffffffffffff"))
+        .isInstanceOf(UnsupportedManifestException.class);
+  }
+}
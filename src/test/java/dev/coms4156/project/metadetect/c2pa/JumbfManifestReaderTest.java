@@ -0,0 +1,239 @@
+package dev.coms4156.project.metadetect.c2pa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link JumbfManifestReader}.
+ * The PNG fixture carries a real two-manifest C2PA store; JPEG and BMFF
+ * inputs are synthesized around the same store to exercise each locator.
+ */
+class JumbfManifestReaderTest {
+
+  private static final File SPAGHETTI = new File("src/test/resources/mock-images/Spaghetti.png");
+  private static final String ACTIVE = "urn:c2pa:033a7d0b-16f5-42f9-b7f1-927f73cde415";
+  private static final String PARENT = "urn:c2pa:40a7c042-7e23-4fcf-a379-7db2885fdfa9";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static byte[] store;
+
+  private final JumbfManifestReader reader = new JumbfManifestReader();
+
+  @TempDir
+  Path tmp;
+
+  @BeforeAll
+  static void loadStore() throws Exception {
+    try (FileChannel ch = FileChannel.open(SPAGHETTI.toPath(), StandardOpenOption.READ)) {
+      store = ManifestStoreLocator.locate(ch);
+    }
+  }
+
+  @Test
+  void png_reportsActiveManifestClaimAssertionsAndSignature() throws Exception {
+    JsonNode report = MAPPER.readTree(reader.extractManifest(SPAGHETTI));
+
+    assertThat(report.path("active_manifest").asText()).isEqualTo(ACTIVE);
+    assertThat(report.path("manifests").has(PARENT)).isTrue();
+
+    JsonNode active = report.path("manifests").path(ACTIVE);
+    assertThat(active.path("claim").path("instanceID").asText()).startsWith("xmp:iid:");
+    assertThat(active.path("assertion_store").has("c2pa.actions.v2")).isTrue();
+    assertThat(active.path("assertion_store").has("c2pa.ingredient.v3")).isTrue();
+    assertThat(active.path("assertion_store").path("c2pa.thumbnail.ingredient")
+        .path("format").asText()).isEqualTo("image/jpeg");
+    // hashes render as unsigned byte arrays, not base64
+    JsonNode hash = active.path("assertion_store").path("c2pa.hash.data").path("hash");
+    assertThat(hash.isArray()).isTrue();
+    assertThat(hash.size()).isEqualTo(32);
+
+    assertThat(active.path("signature").path("alg").asText()).isNotBlank();
+    assertThat(active.path("signature").has("issuer")).isTrue();
+  }
+
+  @Test
+  void jpeg_reassemblesApp11PacketsInSequenceOrder() throws Exception {
+    Path jpeg = tmp.resolve("synthetic.jpg");
+    Files.write(jpeg, jpegWith(store, 30_000));
+
+    assertThat(MAPPER.readTree(reader.extractManifest(jpeg.toFile())))
+        .isEqualTo(MAPPER.readTree(reader.extractManifest(SPAGHETTI)));
+  }
+
+  @Test
+  void bmff_readsC2paUuidBox() throws Exception {
+    Path mp4 = tmp.resolve("synthetic.mp4");
+    Files.write(mp4, bmffWith(store));
+
+    JsonNode report = MAPPER.readTree(reader.extractManifest(mp4.toFile()));
+    assertThat(report.path("active_manifest").asText()).isEqualTo(ACTIVE);
+  }
+
+  @Test
+  void pngWithoutCaBx_isManifestNotFound() throws Exception {
+    Path png = tmp.resolve("plain.png");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+    out.write(chunk("IHDR", new byte[13]));
+    out.write(chunk("IEND", new byte[0]));
+    Files.write(png, out.toByteArray());
+
+    assertThatThrownBy(() -> reader.extractManifest(png.toFile()))
+        .isInstanceOf(ManifestNotFoundException.class);
+  }
+
+  @Test
+  void caBxLengthPastEndOfImage_isUnsupported() throws Exception {
+    Path png = tmp.resolve("truncated.png");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+    out.write(chunk("IHDR", new byte[13]));
+    out.write(ByteBuffer.allocate(8).putInt(60 * 1024 * 1024).put("caBX".getBytes(
+        StandardCharsets.US_ASCII)).array());
+    out.write(store, 0, 1024);
+    Files.write(png, out.toByteArray());
+
+    assertThatThrownBy(() -> reader.extractManifest(png.toFile()))
+        .isInstanceOf(UnsupportedManifestException.class)
+        .hasMessageContaining("past the end");
+  }
+
+  @Test
+  void unknownContainer_isUnsupported() throws Exception {
+    Path gif = tmp.resolve("image.gif");
+    Files.write(gif, "GIF89a-not-supported".getBytes(StandardCharsets.US_ASCII));
+
+    assertThatThrownBy(() -> reader.extractManifest(gif.toFile()))
+        .isInstanceOf(UnsupportedManifestException.class);
+  }
+
+  @Test
+  void corruptStore_isUnsupported() {
+    byte[] broken = store.clone();
+    ByteBuffer.wrap(broken).putInt(0, broken.length + 100); // LBox past end of data
+
+    assertThatThrownBy(() -> JumbfBox.parse(broken))
+        .isInstanceOf(UnsupportedManifestException.class);
+  }
+
+  @Test
+  void timestampGenTime_formatsAsRfc3339() {
+    // ContentInfo{oid, [0]{SignedData{int, set, encap{oid, [0]{octets TSTInfo}}}}}
+    byte[] tstInfo = der(0x30, concat(
+        der(0x02, new byte[] {1}),
+        der(0x06, new byte[] {1}),
+        der(0x30, new byte[0]),
+        der(0x02, new byte[] {7}),
+        der(0x18, "20240115192057Z".getBytes(StandardCharsets.US_ASCII))));
+    byte[] encap = der(0x30, concat(der(0x06, new byte[] {1}),
+        der(0xa0, der(0x04, tstInfo))));
+    byte[] signedData = der(0x30, concat(der(0x02, new byte[] {3}),
+        der(0x31, new byte[0]), encap));
+    byte[] token = der(0x30, concat(der(0x06, new byte[] {1}), der(0xa0, signedData)));
+
+    assertThat(JumbfManifestReader.timestampGenTime(token))
+        .isEqualTo("2024-01-15T19:20:57+00:00");
+    assertThat(JumbfManifestReader.timestampGenTime(new byte[] {0x30, 0x00})).isNull();
+  }
+
+  // ---- helpers ----
+
+  /** SOI, APP0, the store split across APP11 packets (written out of order), SOS, EOI. */
+  private static byte[] jpegWith(byte[] jumbf, int packetPayload) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(new byte[] {(byte) 0xff, (byte) 0xd8});
+    out.write(segment(0xe0, "JFIF\0".getBytes(StandardCharsets.US_ASCII)));
+
+    byte[] boxHeader = new byte[8];
+    System.arraycopy(jumbf, 0, boxHeader, 0, 8);
+    ByteArrayOutputStream[] packets = new ByteArrayOutputStream[
+        (jumbf.length - 8 + packetPayload - 1) / packetPayload];
+    for (int i = 0, off = 8; off < jumbf.length; i++, off += packetPayload) {
+      int n = Math.min(packetPayload, jumbf.length - off);
+      ByteArrayOutputStream p = new ByteArrayOutputStream();
+      p.write(new byte[] {'J', 'P', 0, 1});
+      p.write(ByteBuffer.allocate(4).putInt(i + 1).array());
+      p.write(boxHeader);
+      p.write(jumbf, off, n);
+      packets[i] = p;
+    }
+    for (int i = packets.length - 1; i >= 0; i--) {
+      out.write(segment(0xeb, packets[i].toByteArray()));
+    }
+
+    out.write(segment(0xda, new byte[] {1, 2, 3}));
+    out.write(new byte[] {0x55, 0x55, (byte) 0xff, (byte) 0xd9});
+    return out.toByteArray();
+  }
+
+  private static byte[] bmffWith(byte[] jumbf) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(box("ftyp", "isom\0\0\0\0".getBytes(StandardCharsets.US_ASCII)));
+
+    ByteArrayOutputStream c2pa = new ByteArrayOutputStream();
+    c2pa.write(new byte[] {
+        (byte) 0xd8, (byte) 0xfe, (byte) 0xc3, (byte) 0xd6, 0x1b, 0x0e, 0x48, 0x3c,
+        (byte) 0x92, (byte) 0x97, 0x58, 0x28, (byte) 0x87, 0x7e, (byte) 0xc4, (byte) 0x81});
+    c2pa.write(new byte[4]); // version + flags
+    c2pa.write("manifest\0".getBytes(StandardCharsets.US_ASCII));
+    c2pa.write(new byte[8]); // merkle offset
+    c2pa.write(jumbf);
+    out.write(box("uuid", c2pa.toByteArray()));
+    out.write(box("mdat", new byte[64]));
+    return out.toByteArray();
+  }
+
+  private static byte[] segment(int marker, byte[] data) {
+    ByteBuffer b = ByteBuffer.allocate(4 + data.length);
+    b.put((byte) 0xff).put((byte) marker).putShort((short) (data.length + 2)).put(data);
+    return b.array();
+  }
+
+  private static byte[] box(String type, byte[] body) {
+    ByteBuffer b = ByteBuffer.allocate(8 + body.length);
+    b.putInt(8 + body.length).put(type.getBytes(StandardCharsets.US_ASCII)).put(body);
+    return b.array();
+  }
+
+  private static byte[] chunk(String type, byte[] data) {
+    ByteBuffer b = ByteBuffer.allocate(12 + data.length);
+    b.putInt(data.length).put(type.getBytes(StandardCharsets.US_ASCII)).put(data).putInt(0);
+    return b.array();
+  }
+
+  private static byte[] der(int tag, byte[] content) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(tag);
+    if (content.length < 0x80) {
+      out.write(content.length);
+    } else {
+      out.write(0x82);
+      out.write(content.length >> 8);
+      out.write(content.length & 0xff);
+    }
+    out.writeBytes(content);
+    return out.toByteArray();
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] p : parts) {
+      out.writeBytes(p);
+    }
+    return out.toByteArray();
+  }
+}
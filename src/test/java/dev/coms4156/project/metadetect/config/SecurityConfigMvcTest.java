@@ -87,7 +87,9 @@ class SecurityConfigMvcTest {
     var cfg = source.getCorsConfiguration(req);
     assertThat(cfg.getAllowedOrigins()).contains("*");
     assertThat(cfg.getAllowedMethods()).contains("GET", "POST", "PUT", "DELETE", "OPTIONS");
-    assertThat(cfg.getAllowedHeaders()).contains("Authorization", "Content-Type");
+    assertThat(cfg.getAllowedHeaders()).contains("Authorization", "Content-Type",
+        "Idempotency-Key");
+    assertThat(cfg.getExposedHeaders()).contains("Retry-After");
     assertThat(cfg.getAllowCredentials()).isFalse();
   }
 
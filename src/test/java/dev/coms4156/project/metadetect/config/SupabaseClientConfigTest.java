@@ -4,6 +4,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -12,6 +14,7 @@ import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.ExchangeFunction;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import reactor.netty.resources.ConnectionProvider;
 
 /**
  * Ensures the Supabase WebClient is constructed with the expected default
@@ -26,7 +29,10 @@ class SupabaseClientConfigTest {
     String anonKey = "anon";
 
     SupabaseClientConfig cfg = new SupabaseClientConfig();
-    WebClient client = cfg.supabaseWebClient(baseUrl, anonKey);
+    ConnectionProvider pool = cfg.supabaseConnectionProvider(4, 30_000);
+    WebClient client = cfg.supabaseWebClient(baseUrl, anonKey, pool, 5_000, 30_000);
+    assertNotNull(client);
+    pool.dispose();
 
     // Capture the outgoing request to verify headers.
     AtomicReference<ClientRequest> captured = new AtomicReference<>();
@@ -68,4 +74,26 @@ class SupabaseClientConfigTest {
         h.getFirst(HttpHeaders.CONTENT_TYPE)
     );
   }
+
+  /** Consecutive requests reuse one pooled keep-alive connection. */
+  @Test
+  void pooledClient_reusesConnectionAcrossRequests() throws Exception {
+    SupabaseClientConfig cfg = new SupabaseClientConfig();
+    ConnectionProvider pool = cfg.supabaseConnectionProvider(4, 30_000);
+    try (MockWebServer server = new MockWebServer()) {
+      server.enqueue(new MockResponse().setBody("one"));
+      server.enqueue(new MockResponse().setBody("two"));
+      WebClient client = cfg.supabaseWebClient(
+          server.url("/").toString(), "anon", pool, 5_000, 30_000);
+
+      client.get().uri("/a").retrieve().bodyToMono(String.class).block();
+      Thread.sleep(200); // the connection returns to the pool just after block()
+      client.get().uri("/b").retrieve().bodyToMono(String.class).block();
+
+      assertEquals(0, server.takeRequest().getSequenceNumber());
+      assertEquals(1, server.takeRequest().getSequenceNumber()); // same socket
+    } finally {
+      pool.dispose();
+    }
+  }
 }
@@ -1,28 +1,36 @@
 package dev.coms4156.project.metadetect.controller;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import dev.coms4156.project.metadetect.dto.Dtos;
+import dev.coms4156.project.metadetect.model.AnalysisReport;
+import dev.coms4156.project.metadetect.model.AnalysisSummary;
 import dev.coms4156.project.metadetect.model.Image;
 import dev.coms4156.project.metadetect.service.AuthProxyService;
+import dev.coms4156.project.metadetect.service.IdempotencyService;
 import dev.coms4156.project.metadetect.service.ImageService;
 import dev.coms4156.project.metadetect.service.SupabaseStorageService;
 import dev.coms4156.project.metadetect.service.UserService;
 import dev.coms4156.project.metadetect.service.errors.ForbiddenException;
+import dev.coms4156.project.metadetect.service.errors.IdempotencyKeyReusedException;
 import dev.coms4156.project.metadetect.service.errors.NotFoundException;
+import dev.coms4156.project.metadetect.service.errors.UnsupportedImageException;
+import dev.coms4156.project.metadetect.service.errors.UploadIncompleteException;
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -50,6 +58,7 @@ class ImageControllerTest {
 
   @MockBean private ImageService imageService;
   @MockBean private UserService userService;
+  @MockBean private IdempotencyService idempotency;
   // @MockBean private SupabaseStorageService storage; // not needed in this slice
 
   private UUID userId;
@@ -60,6 +69,9 @@ class ImageControllerTest {
     userId = UUID.randomUUID();
     imgId = UUID.randomUUID();
     when(userService.getCurrentUserIdOrThrow()).thenReturn(userId);
+    // Without a stored response, requests run as they would without a key
+    when(idempotency.execute(anyString(), any(), anyString(), any(), any()))
+        .thenAnswer(inv -> inv.<IdempotencyService.Action<?, ?>>getArgument(4).run());
   }
 
   /** Creates a minimal Image domain object for responses. */
@@ -78,28 +90,59 @@ class ImageControllerTest {
 
   @Test
   void listImages_success() throws Exception {
-    when(imageService.listByOwner(userId, 0, 5)).thenReturn(List.of(makeImage()));
+    when(imageService.listByOwner(userId, null, 5))
+        .thenReturn(new ImageService.ImagePage(List.of(makeImage()), "next-token"));
 
     mvc.perform(MockMvcRequestBuilders.get("/api/images"))
       .andExpect(status().isOk())
-      .andExpect(jsonPath("$[0].id").value(imgId.toString()))
-      .andExpect(jsonPath("$[0].filename").value("test.jpg"))
-      .andExpect(jsonPath("$[0].userId").value(userId.toString()))
-      .andExpect(jsonPath("$[0].labels[0]").value("tag1"))
-        .andExpect(jsonPath("$[0].note").value("hello"));
+      .andExpect(jsonPath("$.items[0].id").value(imgId.toString()))
+      .andExpect(jsonPath("$.items[0].filename").value("test.jpg"))
+      .andExpect(jsonPath("$.items[0].userId").value(userId.toString()))
+      .andExpect(jsonPath("$.items[0].labels[0]").value("tag1"))
+      .andExpect(jsonPath("$.items[0].note").value("hello"))
+        .andExpect(jsonPath("$.nextCursor").value("next-token"));
   }
 
-  /**
-   * When the requested page is beyond the available results, the controller
-   * returns an empty array (based on service paging behavior).
-   */
+  /** The cursor from the previous page is passed through to the service. */
   @Test
-  void listImages_outOfRangePagination_returnsEmptyList() throws Exception {
-    when(imageService.listByOwner(userId, 0, 5)).thenReturn(List.of(makeImage()));
+  void listImages_withCursor_returnsFollowingPage() throws Exception {
+    when(imageService.listByOwner(userId, "next-token", 10))
+        .thenReturn(new ImageService.ImagePage(List.of(), null));
 
-    mvc.perform(MockMvcRequestBuilders.get("/api/images?page=5&size=10"))
+    mvc.perform(MockMvcRequestBuilders.get("/api/images?cursor=next-token&size=10"))
       .andExpect(status().isOk())
-        .andExpect(content().json("[]"));
+      .andExpect(jsonPath("$.items").isEmpty())
+        .andExpect(jsonPath("$.nextCursor").doesNotExist());
+  }
+
+  /** withAnalysis=true embeds the latest analysis; unanalyzed images get null. */
+  @Test
+  void listImages_withAnalysis_embedsLatestAnalysis() throws Exception {
+    Image analyzed = makeImage();
+    Image fresh = makeImage();
+    fresh.setId(UUID.randomUUID());
+    UUID analysisId = UUID.randomUUID();
+    AnalysisSummary summary = new AnalysisSummary(analysisId, imgId,
+        AnalysisReport.ReportStatus.DONE, 0.75, Instant.parse("2025-03-02T00:00:00Z"),
+        Instant.parse("2025-03-02T00:00:05Z"));
+    when(imageService.listByOwnerWithLatestAnalysis(userId, null, 5))
+        .thenReturn(new ImageService.ImagePage(
+            List.of(analyzed, fresh), Map.of(imgId, summary), null));
+
+    mvc.perform(MockMvcRequestBuilders.get("/api/images?withAnalysis=true"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.items[0].latestAnalysis.analysisId").value(analysisId.toString()))
+      .andExpect(jsonPath("$.items[0].latestAnalysis.status").value("DONE"))
+      .andExpect(jsonPath("$.items[0].latestAnalysis.confidence").value(0.75))
+        .andExpect(jsonPath("$.items[1].latestAnalysis").doesNotExist());
+
+    verify(imageService, never()).listByOwner(any(), any(), anyInt());
+  }
+
+  @Test
+  void listImages_invalidSize_returns400() throws Exception {
+    mvc.perform(MockMvcRequestBuilders.get("/api/images?size=0"))
+        .andExpect(status().isBadRequest());
   }
 
   // ---- GET /api/images/{id} ----
@@ -188,7 +231,6 @@ class ImageControllerTest {
     UUID imgId = UUID.randomUUID();
 
     when(userService.getCurrentUserIdOrThrow()).thenReturn(user);
-    when(userService.getCurrentBearerOrThrow()).thenReturn("jwt");
 
     Image returned = new Image();
     returned.setId(imgId);
@@ -197,7 +239,7 @@ class ImageControllerTest {
     returned.setStoragePath(user + "/" + imgId + "--pic.png");
 
     // Controller delegates to service.upload(...)
-    when(imageService.upload(eq(user), eq("jwt"), any())).thenReturn(returned);
+    when(imageService.upload(eq(user), any())).thenReturn(returned);
 
     MockMultipartFile file =
         new MockMultipartFile("file", "pic.png", "image/png", "PNGDATA".getBytes());
@@ -211,6 +253,56 @@ class ImageControllerTest {
         .andExpect(jsonPath("$.userId").value(user.toString()));
   }
 
+  @Test
+  void upload_notAnImage_returns415() throws Exception {
+    UUID user = UUID.randomUUID();
+    when(userService.getCurrentUserIdOrThrow()).thenReturn(user);
+    when(imageService.upload(eq(user), any()))
+        .thenThrow(new UnsupportedImageException("Not a supported image"));
+
+    MockMultipartFile file =
+        new MockMultipartFile("file", "notes.txt", "image/png", "hello".getBytes());
+
+    mvc.perform(MockMvcRequestBuilders
+        .multipart("/api/images/upload")
+        .file(file))
+      .andExpect(status().isUnsupportedMediaType());
+  }
+
+  @Test
+  void upload_withIdempotencyKey_returnsStoredResponse() throws Exception {
+    Dtos.ImageDto original = new Dtos.ImageDto(imgId.toString(), "pic.png", userId.toString(),
+        null, List.of(), null, "image/png", 1, 1, 7L, null);
+    when(idempotency.execute(eq("upload"), eq("key-1"), eq("pic.png\n7\nimage/png"),
+        eq(Dtos.ImageDto.class), any())).thenReturn(original);
+
+    MockMultipartFile file =
+        new MockMultipartFile("file", "pic.png", "image/png", "PNGDATA".getBytes());
+
+    mvc.perform(MockMvcRequestBuilders
+        .multipart("/api/images/upload")
+        .file(file)
+        .header("Idempotency-Key", "key-1"))
+      .andExpect(status().isCreated())
+      .andExpect(jsonPath("$.id").value(imgId.toString()));
+    verify(imageService, never()).upload(any(), any());
+  }
+
+  @Test
+  void upload_idempotencyKeyReused_returns422() throws Exception {
+    when(idempotency.execute(eq("upload"), eq("key-1"), anyString(), any(), any()))
+        .thenThrow(new IdempotencyKeyReusedException("different request"));
+
+    MockMultipartFile file =
+        new MockMultipartFile("file", "other.png", "image/png", "PNG".getBytes());
+
+    mvc.perform(MockMvcRequestBuilders
+        .multipart("/api/images/upload")
+        .file(file)
+        .header("Idempotency-Key", "key-1"))
+      .andExpect(status().isUnprocessableEntity());
+  }
+
   // ---- GET /api/images/{id}/url ----
 
   @Test
@@ -219,7 +311,6 @@ class ImageControllerTest {
     UUID imgId = UUID.randomUUID();
 
     when(userService.getCurrentUserIdOrThrow()).thenReturn(user);
-    when(userService.getCurrentBearerOrThrow()).thenReturn("jwt");
 
     when(imageService.getSignedUrl(user, "jwt", imgId))
         .thenReturn("https://example.supabase.co/storage/v1/object/sign/..token..");
@@ -228,4 +319,30 @@ class ImageControllerTest {
       .andExpect(status().isOk())
         .andExpect(jsonPath("$.url").exists());
   }
+
+  // ---- POST /api/images/uploads + /{id}/commit ----
+
+  @Test
+  void uploadIntent_returns201WithIdAndUploadUrl() throws Exception {
+    when(userService.getCurrentBearerOrThrow()).thenReturn("jwt");
+    when(imageService.createUploadIntent(userId, "jwt", "pic.png"))
+        .thenReturn(new ImageService.UploadIntent(makeImage(), "https://signed/upload"));
+
+    mvc.perform(MockMvcRequestBuilders.post("/api/images/uploads")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"filename\":\"pic.png\"}"))
+      .andExpect(status().isCreated())
+      .andExpect(jsonPath("$.imageId").value(imgId.toString()))
+      .andExpect(jsonPath("$.uploadUrl").value("https://signed/upload"));
+  }
+
+  @Test
+  void commitUpload_objectMissing_returns409() throws Exception {
+    when(userService.getCurrentBearerOrThrow()).thenReturn("jwt");
+    when(imageService.commitUpload(userId, "jwt", imgId))
+        .thenThrow(new UploadIncompleteException("No object uploaded"));
+
+    mvc.perform(MockMvcRequestBuilders.post("/api/images/" + imgId + "/commit"))
+      .andExpect(status().isConflict());
+  }
 }
@@ -0,0 +1,120 @@
+package dev.coms4156.project.metadetect.controller;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import dev.coms4156.project.metadetect.model.UploadSession;
+import dev.coms4156.project.metadetect.service.ResumableUploadService;
+import dev.coms4156.project.metadetect.service.UserService;
+import dev.coms4156.project.metadetect.service.errors.UploadOffsetConflictException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+/**
+ * Controller-slice tests for {@link UploadController}: tus headers on
+ * creation, offset queries and chunk appends.
+ */
+@WebMvcTest(UploadController.class)
+@AutoConfigureMockMvc(addFilters = false)
+class UploadControllerTest {
+
+  @Autowired
+  private MockMvc mvc;
+
+  @MockBean private ResumableUploadService uploads;
+  @MockBean private UserService userService;
+
+  private UUID userId;
+  private UUID uploadId;
+  private UUID imageId;
+
+  @BeforeEach
+  void setup() {
+    userId = UUID.randomUUID();
+    uploadId = UUID.randomUUID();
+    imageId = UUID.randomUUID();
+    when(userService.getCurrentUserIdOrThrow()).thenReturn(userId);
+    when(userService.getCurrentBearerOrThrow()).thenReturn("jwt");
+  }
+
+  private UploadSession session(long offset) {
+    return new UploadSession(uploadId, imageId, userId, "k", "https://up", 10, offset, null);
+  }
+
+  private static String b64(String s) {
+    return Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void create_returns201WithLocationAndDecodedMetadata() throws Exception {
+    when(uploads.create(userId, "jwt", 10, "a.png", "image/png")).thenReturn(session(0));
+
+    mvc.perform(MockMvcRequestBuilders.post("/api/uploads")
+            .header("Tus-Resumable", "1.0.0")
+            .header("Upload-Length", "10")
+            .header("Upload-Metadata",
+                "filename " + b64("a.png") + ",filetype " + b64("image/png")))
+        .andExpect(status().isCreated())
+        .andExpect(header().string("Location", "/api/uploads/" + uploadId))
+        .andExpect(header().string("Tus-Resumable", "1.0.0"))
+        .andExpect(jsonPath("$.imageId").value(imageId.toString()))
+        .andExpect(jsonPath("$.uploadLength").value(10));
+  }
+
+  @Test
+  void create_missingLength_returns400() throws Exception {
+    mvc.perform(MockMvcRequestBuilders.post("/api/uploads").header("Tus-Resumable", "1.0.0"))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void head_reportsOffsetAndLength() throws Exception {
+    when(uploads.get(userId, uploadId)).thenReturn(session(4));
+
+    mvc.perform(MockMvcRequestBuilders.head("/api/uploads/{id}", uploadId))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Upload-Offset", "4"))
+        .andExpect(header().string("Upload-Length", "10"))
+        .andExpect(header().string("Cache-Control", "no-store"));
+  }
+
+  @Test
+  void patch_appendsChunk_returnsNewOffset() throws Exception {
+    when(uploads.append(eq(userId), eq("jwt"), eq(uploadId), eq(0L), eq(4L), any()))
+        .thenReturn(session(4));
+
+    mvc.perform(MockMvcRequestBuilders.patch("/api/uploads/{id}", uploadId)
+            .header("Tus-Resumable", "1.0.0")
+            .header("Upload-Offset", "0")
+            .contentType("application/offset+octet-stream")
+            .content(new byte[] {1, 2, 3, 4}))
+        .andExpect(status().isNoContent())
+        .andExpect(header().string("Upload-Offset", "4"));
+  }
+
+  @Test
+  void patch_offsetConflict_returns409WithCurrentOffset() throws Exception {
+    when(uploads.append(eq(userId), eq("jwt"), eq(uploadId), eq(2L), eq(4L), any()))
+        .thenThrow(new UploadOffsetConflictException("Upload is at offset 6", 6));
+
+    mvc.perform(MockMvcRequestBuilders.patch("/api/uploads/{id}", uploadId)
+            .header("Upload-Offset", "2")
+            .contentType("application/offset+octet-stream")
+            .content(new byte[] {1, 2, 3, 4}))
+        .andExpect(status().isConflict())
+        .andExpect(header().string("Upload-Offset", "6"));
+  }
+}
@@ -0,0 +1,84 @@
+package dev.coms4156.project.metadetect.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link AnalysisCancellations}.
+ */
+class AnalysisCancellationsTest {
+
+  private final AnalysisCancellations cancellations = new AnalysisCancellations();
+  private final UUID id = UUID.randomUUID();
+
+  /** Only jobs tracked on this instance can be cancelled here. */
+  @Test
+  void cancel_untracked_isIgnored() {
+    assertThat(cancellations.cancel(id)).isFalse();
+    assertThat(cancellations.isCancelled(id)).isFalse();
+  }
+
+  /** A job cancelled between stages does not resume. */
+  @Test
+  void cancel_whileParked_preventsResume() {
+    cancellations.track(id);
+
+    assertThat(cancellations.cancel(id)).isTrue();
+
+    assertThat(cancellations.resume(id)).isFalse();
+    assertThrows(CancellationException.class, () -> cancellations.check(id));
+    assertThat(Thread.currentThread().isInterrupted()).isFalse();
+  }
+
+  /** A running stage is interrupted, and the interrupt does not outlive the job. */
+  @Test
+  void cancel_whileRunning_interruptsStageThread() throws Exception {
+    CountDownLatch running = new CountDownLatch(1);
+    AtomicBoolean interrupted = new AtomicBoolean();
+    AtomicBoolean clearedAfterEnd = new AtomicBoolean();
+    cancellations.track(id);
+    Thread stage = new Thread(() -> {
+      cancellations.resume(id);
+      running.countDown();
+      try {
+        Thread.sleep(10_000);
+      } catch (InterruptedException e) {
+        interrupted.set(true);
+        Thread.currentThread().interrupt(); // as a swallowed-then-restored interrupt would
+      }
+      cancellations.end(id);
+      clearedAfterEnd.set(!Thread.currentThread().isInterrupted());
+    });
+    stage.start();
+    assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+    cancellations.cancel(id);
+    stage.join(5_000);
+
+    assertThat(interrupted).isTrue();
+    assertThat(clearedAfterEnd).isTrue();
+    assertThat(cancellations.tracked()).isZero();
+  }
+
+  /** Once a stage has parked, a cancellation no longer reaches its former thread. */
+  @Test
+  void park_detachesThread() {
+    cancellations.track(id);
+    cancellations.resume(id);
+    cancellations.park(id);
+
+    cancellations.cancel(id);
+
+    assertThat(Thread.currentThread().isInterrupted()).isFalse();
+    assertThat(cancellations.isCancelled(id)).isTrue();
+    cancellations.end(id);
+    assertThat(cancellations.tracked()).isZero();
+  }
+}
@@ -0,0 +1,80 @@
+package dev.coms4156.project.metadetect.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import dev.coms4156.project.metadetect.model.AnalysisJob;
+import dev.coms4156.project.metadetect.service.AnalysisCoalescer.Kind;
+import dev.coms4156.project.metadetect.service.AnalysisCoalescer.Outcome;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link AnalysisCoalescer}.
+ */
+class AnalysisCoalescerTest {
+
+  private final AnalysisCoalescer coalescer = new AnalysisCoalescer();
+  private final UUID imageId = UUID.randomUUID();
+
+  /** The first job leads; later jobs for the same image follow until it settles. */
+  @Test
+  void sameImage_followsLeader_untilSettled() {
+    AnalysisJob leader = job(imageId, null);
+    AnalysisJob follower = job(imageId, null);
+
+    assertThat(coalescer.join(leader)).isNull();
+    CompletableFuture<Outcome> shared = coalescer.join(follower);
+    assertThat(shared).isNotNull().isNotDone();
+
+    coalescer.settle(leader, Outcome.done("{\"m\":1}", null));
+
+    assertThat(shared.join().kind()).isEqualTo(Kind.DONE);
+    assertThat(shared.join().details()).isEqualTo("{\"m\":1}");
+    assertThat(coalescer.inFlight()).isZero();
+    assertThat(coalescer.coalesced()).isEqualTo(1);
+    // Settled: the next job starts a new flight
+    assertThat(coalescer.join(job(imageId, null))).isNull();
+  }
+
+  /** With a digest, different images of the same bytes share a flight. */
+  @Test
+  void sameDigest_acrossImages_shareFlight() {
+    assertThat(coalescer.join(job(UUID.randomUUID(), "abc"))).isNull();
+
+    assertThat(coalescer.join(job(UUID.randomUUID(), "abc"))).isNotNull();
+    assertThat(coalescer.join(job(UUID.randomUUID(), "def"))).isNull();
+    assertThat(coalescer.join(job(imageId, null))).isNull();
+  }
+
+  /** Only the leader can settle; a follower's settle changes nothing. */
+  @Test
+  void settle_byNonLeader_isIgnored() {
+    AnalysisJob leader = job(imageId, null);
+    AnalysisJob follower = job(imageId, null);
+    coalescer.join(leader);
+    CompletableFuture<Outcome> shared = coalescer.join(follower);
+
+    coalescer.settle(follower, Outcome.ABANDONED);
+    assertThat(shared).isNotDone();
+
+    coalescer.settle(leader, Outcome.failed("{\"error\":\"x\"}"));
+    coalescer.settle(leader, Outcome.ABANDONED);
+    assertThat(shared.join().kind()).isEqualTo(Kind.FAILED);
+  }
+
+  /** A requeued job claimed again while still leading does not follow itself. */
+  @Test
+  void rejoinByLeader_stillLeads() {
+    AnalysisJob leader = job(imageId, null);
+    coalescer.join(leader);
+
+    assertThat(coalescer.join(leader)).isNull();
+    assertThat(coalescer.coalesced()).isZero();
+  }
+
+  private static AnalysisJob job(UUID imageId, String sha256) {
+    return new AnalysisJob(UUID.randomUUID(), imageId, UUID.randomUUID(), "u/i/f.png",
+        "https://s", 1, "node-a", sha256);
+  }
+}
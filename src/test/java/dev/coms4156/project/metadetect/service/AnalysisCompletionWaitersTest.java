@@ -0,0 +1,48 @@
+package dev.coms4156.project.metadetect.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import dev.coms4156.project.metadetect.service.AnalysisProgressEvent.Stage;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link AnalysisCompletionWaiters}.
+ */
+class AnalysisCompletionWaitersTest {
+
+  private final AnalysisCompletionWaiters waiters = new AnalysisCompletionWaiters();
+
+  /** Only a terminal stage of the waited-for analysis releases its waiters. */
+  @Test
+  void terminalEvent_wakesAllWaitersOfThatAnalysisOnly() {
+    UUID id = UUID.randomUUID();
+    UUID other = UUID.randomUUID();
+    CompletableFuture<Void> first = waiters.register(id);
+    CompletableFuture<Void> second = waiters.register(id);
+    CompletableFuture<Void> unrelated = waiters.register(other);
+
+    waiters.onProgress(new AnalysisProgressEvent(id, Stage.EXTRACTING));
+    assertThat(first).isNotDone();
+
+    waiters.onProgress(new AnalysisProgressEvent(id, Stage.FAILED));
+    assertThat(first).isDone();
+    assertThat(second).isDone();
+    assertThat(unrelated).isNotDone();
+    assertThat(waiters.waiting()).isEqualTo(1);
+  }
+
+  /** Unregistered waiters are forgotten and never completed. */
+  @Test
+  void unregister_removesWaiter() {
+    UUID id = UUID.randomUUID();
+    CompletableFuture<Void> waiter = waiters.register(id);
+
+    waiters.unregister(id, waiter);
+    waiters.onProgress(new AnalysisProgressEvent(id, Stage.DONE));
+
+    assertThat(waiter).isNotDone();
+    assertThat(waiters.waiting()).isZero();
+  }
+}
@@ -0,0 +1,279 @@
+package dev.coms4156.project.metadetect.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import dev.coms4156.project.metadetect.dto.Dtos;
+import dev.coms4156.project.metadetect.service.AnalysisProgressEvent.Stage;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Unit tests for {@link AnalysisEventHub}.
+ * Strategy:
+ * - Hand the hub recording emitters instead of live HTTP responses.
+ * - Publish progress events as the worker would and await what was sent.
+ */
+class AnalysisEventHubTest {
+
+  private final List<RecordingEmitter> created = new CopyOnWriteArrayList<>();
+  private AnalysisEventHub hub;
+
+  @BeforeEach
+  void setUp() {
+    hub = hub(16);
+  }
+
+  private AnalysisEventHub hub(int queueCapacity) {
+    return new AnalysisEventHub(() -> {
+      RecordingEmitter e = new RecordingEmitter();
+      created.add(e);
+      return e;
+    }, 2, queueCapacity);
+  }
+
+  @AfterEach
+  void tearDown() {
+    hub.shutdown();
+  }
+
+  /** Snapshot first, then live transitions; the stream closes after DONE. */
+  @Test
+  void stream_sendsSnapshotThenTransitions_andCompletesOnTerminal() throws Exception {
+    UUID id = UUID.randomUUID();
+    AnalysisEventHub.Subscription sub = hub.subscribe(List.of(id));
+    hub.offer(sub, id, Stage.QUEUED);
+
+    hub.onProgress(new AnalysisProgressEvent(id, Stage.DOWNLOADING));
+    hub.onProgress(new AnalysisProgressEvent(id, Stage.EXTRACTING));
+    hub.onProgress(new AnalysisProgressEvent(id, Stage.DONE));
+
+    RecordingEmitter emitter = created.get(0);
+    awaitTrue(() -> emitter.completed);
+    assertThat(emitter.stages()).containsExactly("QUEUED", "DOWNLOADING", "EXTRACTING", "DONE");
+    assertThat(hub.openStreams()).isZero();
+  }
+
+  /** A stale snapshot arriving after a live event is not sent. */
+  @Test
+  void stream_neverMovesBackwards() throws Exception {
+    UUID id = UUID.randomUUID();
+    AnalysisEventHub.Subscription sub = hub.subscribe(List.of(id));
+
+    hub.onProgress(new AnalysisProgressEvent(id, Stage.EXTRACTING));
+    hub.offer(sub, id, Stage.DOWNLOADING);
+    hub.onProgress(new AnalysisProgressEvent(id, Stage.FAILED));
+
+    RecordingEmitter emitter = created.get(0);
+    awaitTrue(() -> emitter.completed);
+    assertThat(emitter.stages()).containsExactly("EXTRACTING", "FAILED");
+  }
+
+  /** A multi-analysis stream stays open until every followed analysis is terminal. */
+  @Test
+  void multiStream_completesAfterLastTerminal_andSkipsDropped() throws Exception {
+    UUID a = UUID.randomUUID();
+    UUID b = UUID.randomUUID();
+    UUID foreign = UUID.randomUUID();
+    AnalysisEventHub.Subscription sub = hub.subscribe(List.of(a, b, foreign));
+    hub.drop(sub, foreign);
+
+    hub.onProgress(new AnalysisProgressEvent(a, Stage.DONE));
+    hub.onProgress(new AnalysisProgressEvent(foreign, Stage.DONE));
+
+    RecordingEmitter emitter = created.get(0);
+    awaitTrue(() -> emitter.stages().size() == 1);
+    assertThat(emitter.completed).isFalse();
+
+    hub.onProgress(new AnalysisProgressEvent(b, Stage.FAILED));
+
+    awaitTrue(() -> emitter.completed);
+    assertThat(emitter.analyses()).containsExactly(a.toString(), b.toString());
+  }
+
+  /** A failed write closes and unregisters the stream. */
+  @Test
+  void sendFailure_detachesStream() throws Exception {
+    UUID id = UUID.randomUUID();
+    hub.subscribe(List.of(id));
+    RecordingEmitter emitter = created.get(0);
+    emitter.broken = true;
+
+    hub.onProgress(new AnalysisProgressEvent(id, Stage.DOWNLOADING));
+
+    awaitTrue(() -> hub.openStreams() == 0);
+  }
+
+  /** A client that stops reading holds one sender; other streams keep flowing. */
+  @Test
+  void stalledClient_doesNotDelayOtherStreams() throws Exception {
+    UUID slowId = UUID.randomUUID();
+    UUID fastId = UUID.randomUUID();
+    hub.subscribe(List.of(slowId));
+    hub.subscribe(List.of(fastId));
+    RecordingEmitter slow = created.get(0);
+    RecordingEmitter fast = created.get(1);
+    slow.gate = new CountDownLatch(1);
+
+    hub.onProgress(new AnalysisProgressEvent(slowId, Stage.DOWNLOADING));
+    awaitTrue(() -> slow.writing);
+    hub.onProgress(new AnalysisProgressEvent(fastId, Stage.DOWNLOADING));
+    hub.onProgress(new AnalysisProgressEvent(fastId, Stage.DONE));
+
+    awaitTrue(() -> fast.completed);
+    assertThat(fast.stages()).containsExactly("DOWNLOADING", "DONE");
+    slow.gate.countDown();
+  }
+
+  /** A stream whose queue fills up is closed instead of buffering without bound. */
+  @Test
+  void laggingStream_isClosedWhenItsQueueFills() throws Exception {
+    hub.shutdown();
+    hub = hub(2);
+    List<UUID> ids = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+        UUID.randomUUID());
+    hub.subscribe(ids);
+    RecordingEmitter emitter = created.get(0);
+    emitter.gate = new CountDownLatch(1);
+
+    hub.onProgress(new AnalysisProgressEvent(ids.get(0), Stage.DOWNLOADING));
+    awaitTrue(() -> emitter.writing);
+    for (UUID id : ids.subList(1, 4)) {
+      hub.onProgress(new AnalysisProgressEvent(id, Stage.DOWNLOADING));
+    }
+
+    assertThat(hub.openStreams()).isZero();
+    assertThat(emitter.failed).isTrue();
+    awaitTrue(() -> !emitter.writing);
+    assertThat(emitter.stages()).isEmpty();
+  }
+
+  /** A stream still holding the previous keep-alive is closed at the next heartbeat. */
+  @Test
+  void missedHeartbeat_closesStream() throws Exception {
+    hub.subscribe(List.of(UUID.randomUUID()));
+    RecordingEmitter emitter = created.get(0);
+    emitter.gate = new CountDownLatch(1);
+
+    hub.heartbeat();
+    awaitTrue(() -> emitter.writing);
+    assertThat(hub.openStreams()).isOne();
+    hub.heartbeat();
+
+    assertThat(hub.openStreams()).isZero();
+    assertThat(emitter.failed).isTrue();
+    awaitTrue(() -> !emitter.writing);
+  }
+
+  /** More stalled clients than sender threads: closing them frees the pool. */
+  @Test
+  void stalledClientsBeyondPoolSize_areClosedAndFreeTheSenders() throws Exception {
+    List<UUID> stalledIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+    for (UUID id : stalledIds) {
+      hub.subscribe(List.of(id));
+    }
+    List<RecordingEmitter> stalled = List.copyOf(created);
+    for (RecordingEmitter e : stalled) {
+      e.gate = new CountDownLatch(1);
+    }
+    for (UUID id : stalledIds) {
+      hub.onProgress(new AnalysisProgressEvent(id, Stage.DOWNLOADING));
+    }
+    awaitTrue(() -> stalled.stream().filter(e -> e.writing).count() == 2);
+
+    hub.heartbeat();
+    hub.heartbeat();
+
+    assertThat(hub.openStreams()).isZero();
+    assertThat(stalled).allMatch(e -> e.failed);
+    awaitTrue(() -> stalled.stream().noneMatch(e -> e.writing));
+
+    UUID id = UUID.randomUUID();
+    hub.subscribe(List.of(id));
+    RecordingEmitter fresh = created.get(3);
+    hub.onProgress(new AnalysisProgressEvent(id, Stage.DONE));
+
+    awaitTrue(() -> fresh.completed);
+    assertThat(fresh.stages()).containsExactly("DONE");
+  }
+
+  /** Waits up to two seconds for the sender pool to reach a condition. */
+  private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + 2_000_000_000L;
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  /**
+   * Emitter that records sent progress payloads instead of writing a
+   * response. With a gate set, writes block until it opens, like a client
+   * that stopped reading. Completing with an error ends the response, so a
+   * blocked write fails as it would on a real connection.
+   */
+  private static final class RecordingEmitter extends SseEmitter {
+    private final List<Dtos.AnalysisProgress> sent = new CopyOnWriteArrayList<>();
+    private volatile boolean completed;
+    private volatile boolean failed;
+    private volatile boolean broken;
+    private volatile boolean writing;
+    private volatile CountDownLatch gate;
+
+    @Override
+    public void send(SseEventBuilder builder) throws IOException {
+      if (broken) {
+        throw new IOException("client gone");
+      }
+      CountDownLatch g = gate;
+      if (g != null) {
+        writing = true;
+        try {
+          g.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("interrupted", e);
+        } finally {
+          writing = false;
+        }
+      }
+      if (failed) {
+        throw new IOException("response already ended");
+      }
+      builder.build().forEach(part -> {
+        if (part.getData() instanceof Dtos.AnalysisProgress p) {
+          sent.add(p);
+        }
+      });
+    }
+
+    @Override
+    public void complete() {
+      completed = true;
+    }
+
+    @Override
+    public void completeWithError(Throwable ex) {
+      failed = true;
+      CountDownLatch g = gate;
+      if (g != null) {
+        g.countDown();
+      }
+    }
+
+    List<String> stages() {
+      return sent.stream().map(Dtos.AnalysisProgress::stage).toList();
+    }
+
+    List<String> analyses() {
+      return sent.stream().map(Dtos.AnalysisProgress::analysisId).toList();
+    }
+  }
+}
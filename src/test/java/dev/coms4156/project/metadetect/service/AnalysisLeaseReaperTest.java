@@ -0,0 +1,96 @@
+package dev.coms4156.project.metadetect.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import dev.coms4156.project.metadetect.db.AdvisoryLockManager;
+import dev.coms4156.project.metadetect.repository.AnalysisJobRepository;
+import dev.coms4156.project.metadetect.repository.AnalysisJobRepository.ExpiredLease;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+/**
+ * Unit tests for {@link AnalysisLeaseReaper}.
+ * Covers requeue vs. fail decisions, skipping live owners (lock held), and
+ * releasing the advisory lock after each transition.
+ */
+class AnalysisLeaseReaperTest {
+
+  private final Instant fixedNow = Instant.parse("2025-01-01T00:10:00Z");
+  private final Instant cutoff = fixedNow.minusMillis(60_000);
+
+  private AnalysisJobRepository jobs;
+  private AdvisoryLockManager locks;
+  private AnalysisLeaseReaper reaper;
+
+  @BeforeEach
+  void setUp() {
+    jobs = mock(AnalysisJobRepository.class);
+    locks = mock(AdvisoryLockManager.class);
+    reaper = new AnalysisLeaseReaper(jobs, locks,
+        Clock.fixed(fixedNow, ZoneOffset.UTC), 60_000, 3);
+  }
+
+  /** Orphans with attempts left go back to PENDING. */
+  @Test
+  void reap_orphanWithAttemptsLeft_isRequeued() {
+    UUID id = UUID.randomUUID();
+    when(jobs.findExpiredLeases(cutoff, 100)).thenReturn(List.of(new ExpiredLease(id, 1, "dead")));
+    when(locks.tryLock(id)).thenReturn(true);
+    when(jobs.requeueExpired(id, cutoff)).thenReturn(true);
+
+    assertThat(reaper.reap()).isEqualTo(1);
+
+    verify(jobs).requeueExpired(id, cutoff);
+    verify(jobs, never()).failExpired(any(), any(), any(), any());
+    verify(locks).unlock(id);
+  }
+
+  /** Orphans that used up their attempts are FAILED with an error. */
+  @Test
+  void reap_orphanOutOfAttempts_isFailed() {
+    UUID id = UUID.randomUUID();
+    when(jobs.findExpiredLeases(cutoff, 100)).thenReturn(List.of(new ExpiredLease(id, 3, "dead")));
+    when(locks.tryLock(id)).thenReturn(true);
+    when(jobs.failExpired(eq(id), contains("Lease expired"), eq(cutoff), eq(fixedNow)))
+        .thenReturn(true);
+
+    assertThat(reaper.reap()).isEqualTo(1);
+
+    verify(jobs, never()).requeueExpired(any(), any());
+    verify(locks).unlock(id);
+  }
+
+  /** A stale heartbeat whose owner still holds the lock is left alone. */
+  @Test
+  void reap_ownerStillHoldsLock_isSkipped() {
+    UUID id = UUID.randomUUID();
+    when(jobs.findExpiredLeases(cutoff, 100)).thenReturn(List.of(new ExpiredLease(id, 1, "slow")));
+    when(locks.tryLock(id)).thenReturn(false);
+
+    assertThat(reaper.reap()).isZero();
+
+    verify(jobs, never()).requeueExpired(any(), any());
+    verify(locks, never()).unlock(id);
+  }
+
+  /** Database errors end the sweep quietly; the next tick retries. */
+  @Test
+  void reap_databaseError_isSwallowed() {
+    when(jobs.findExpiredLeases(any(), eq(100))).thenThrow(new QueryTimeoutException("down"));
+
+    assertThat(reaper.reap()).isZero();
+  }
+}
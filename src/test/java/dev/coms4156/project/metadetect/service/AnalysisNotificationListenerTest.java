@@ -0,0 +1,56 @@
+package dev.coms4156.project.metadetect.service;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import dev.coms4156.project.metadetect.service.AnalysisProgressEvent.Stage;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Unit tests for {@link AnalysisNotificationListener}.
+ * The LISTEN loop needs a live Postgres session; these tests cover how
+ * notification payloads become in-process events.
+ */
+class AnalysisNotificationListenerTest {
+
+  private ApplicationEventPublisher events;
+  private AnalysisNotificationListener listener;
+
+  @BeforeEach
+  void setUp() {
+    events = mock(ApplicationEventPublisher.class);
+    listener = new AnalysisNotificationListener(
+        mock(SingleConnectionDataSource.class), events, 10);
+  }
+
+  /** Terminal and claim notifications map to the matching stages. */
+  @Test
+  void dispatch_publishesProgressEvent() {
+    UUID id = UUID.randomUUID();
+
+    listener.dispatch(id + ":DONE");
+    listener.dispatch(id + ":FAILED");
+    listener.dispatch(id + ":RUNNING");
+
+    verify(events).publishEvent(new AnalysisProgressEvent(id, Stage.DONE));
+    verify(events).publishEvent(new AnalysisProgressEvent(id, Stage.FAILED));
+    verify(events).publishEvent(new AnalysisProgressEvent(id, Stage.DOWNLOADING));
+  }
+
+  /** Malformed payloads are skipped without publishing. */
+  @Test
+  void dispatch_malformedPayload_isIgnored() {
+    listener.dispatch(null);
+    listener.dispatch("no-separator");
+    listener.dispatch("not-a-uuid:DONE");
+    listener.dispatch(UUID.randomUUID() + ":EXPLODED");
+
+    verify(events, never()).publishEvent(any(Object.class));
+  }
+}
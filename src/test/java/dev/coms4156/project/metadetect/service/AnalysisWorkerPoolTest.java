@@ -0,0 +1,295 @@
+package dev.coms4156.project.metadetect.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import dev.coms4156.project.metadetect.config.NodeIdentity;
+import dev.coms4156.project.metadetect.db.AdvisoryLockManager;
+import dev.coms4156.project.metadetect.model.AnalysisJob;
+import dev.coms4156.project.metadetect.repository.AnalysisJobRepository;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.QueryTimeoutException;
+
+/**
+ * Unit tests for {@link AnalysisWorkerPool}.
+ * Strategy:
+ * - Mock the queue repository and AnalyzeService's fetch/extract stages.
+ * - Call drain() directly to avoid depending on scheduler timing.
+ * - Block jobs on a latch to observe slot accounting and heartbeats.
+ */
+class AnalysisWorkerPoolTest {
+
+  private final Instant fixedNow = Instant.parse("2025-01-01T00:00:00Z");
+
+  private AnalysisJobRepository jobs;
+  private AnalyzeService analyzeService;
+  private AdvisoryLockManager locks;
+  private AnalysisWorkerPool pool;
+
+  @BeforeEach
+  void setUp() {
+    jobs = mock(AnalysisJobRepository.class);
+    analyzeService = mock(AnalyzeService.class);
+    locks = mock(AdvisoryLockManager.class);
+    when(locks.tryLock(any())).thenReturn(true);
+    pool = new AnalysisWorkerPool(jobs, analyzeService, locks, new NodeIdentity("node-a"),
+        Clock.fixed(fixedNow, ZoneOffset.UTC), 2, 1);
+  }
+
+  @AfterEach
+  void tearDown() {
+    pool.shutdown();
+  }
+
+  private static AnalysisJob job() {
+    return new AnalysisJob(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), "u/i/f.png",
+        "https://s", 1, "node-a", null);
+  }
+
+  /** Claimed jobs are fetched on worker threads; finished ones release their lock. */
+  @Test
+  void drain_claimsUpToCapacity_andFetchesJobs() {
+    AnalysisJob a = job();
+    AnalysisJob b = job();
+    when(jobs.claimPending(3, "node-a", fixedNow)).thenReturn(List.of(a, b), List.of());
+
+    pool.drain();
+
+    verify(analyzeService, timeout(2000)).fetchJob(a);
+    verify(analyzeService, timeout(2000)).fetchJob(b);
+    verify(analyzeService, never()).extractJob(any());
+    verify(locks, timeout(2000)).unlock(a.analysisId());
+    verify(locks, timeout(2000)).unlock(b.analysisId());
+  }
+
+  /**
+   * A job whose advisory lock is held elsewhere is not executed here; it
+   * goes straight back to PENDING instead of waiting out its lease.
+   */
+  @Test
+  void drain_lockHeldElsewhere_requeuesJob() {
+    AnalysisJob a = job();
+    when(locks.tryLock(a.analysisId())).thenReturn(false);
+    when(jobs.claimPending(3, "node-a", fixedNow)).thenReturn(List.of(a), List.of());
+
+    pool.drain();
+
+    verify(analyzeService, never()).fetchJob(any());
+    verify(jobs).requeue(a.analysisId(), "node-a");
+    verify(locks, never()).unlock(a.analysisId());
+    assertThat(pool.inFlight()).isZero();
+  }
+
+  /**
+   * A downloaded job moves to an extraction thread, and the fetch threads
+   * keep fetching while it is extracted; the lock is held until extraction ends.
+   */
+  @Test
+  void drain_downloadedJob_isExtracted_whileNextJobIsFetched() throws Exception {
+    AnalysisJob a = job();
+    AnalysisJob b = job();
+    AnalyzeService.FetchedJob fetchedA = new AnalyzeService.FetchedJob(a, new File("a.png"));
+    when(analyzeService.fetchJob(a)).thenReturn(fetchedA);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch extracting = new CountDownLatch(1);
+    doAnswer(inv -> {
+      extracting.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return null;
+    }).when(analyzeService).extractJob(fetchedA);
+    when(jobs.claimPending(3, "node-a", fixedNow)).thenReturn(List.of(a), List.of());
+
+    pool.drain();
+    assertTrue(extracting.await(2, TimeUnit.SECONDS));
+    verify(locks, never()).unlock(a.analysisId());
+
+    when(jobs.claimPending(2, "node-a", fixedNow)).thenReturn(List.of(b), List.of());
+    pool.drain();
+    verify(analyzeService, timeout(2000)).fetchJob(b);
+
+    release.countDown();
+    verify(locks, timeout(2000)).unlock(a.analysisId());
+  }
+
+  /**
+   * A job that follows a running execution takes no slot and no thread; its
+   * lock is held until its row has been finalized from the shared outcome.
+   */
+  @Test
+  void drain_coalescedJob_holdsLockUntilSharedOutcome() {
+    AnalysisJob follower = job();
+    CompletableFuture<Boolean> shared = new CompletableFuture<>();
+    when(analyzeService.coalesce(follower)).thenReturn(shared);
+    when(jobs.claimPending(3, "node-a", fixedNow)).thenReturn(List.of(follower), List.of());
+
+    pool.drain();
+
+    assertThat(pool.inFlight()).isZero();
+    verify(analyzeService, never()).fetchJob(any());
+    verify(locks, never()).unlock(follower.analysisId());
+
+    shared.complete(true);
+    verify(locks).unlock(follower.analysisId());
+    verify(jobs, never()).requeue(any(), any());
+  }
+
+  /** A follower whose leader let go without a result (e.g. cancelled) is requeued at once. */
+  @Test
+  void drain_abandonedFollower_isRequeued() {
+    AnalysisJob follower = job();
+    CompletableFuture<Boolean> shared = new CompletableFuture<>();
+    when(analyzeService.coalesce(follower)).thenReturn(shared);
+    when(jobs.claimPending(3, "node-a", fixedNow)).thenReturn(List.of(follower), List.of());
+
+    pool.drain();
+    shared.complete(false);
+
+    verify(locks).unlock(follower.analysisId());
+    verify(jobs).requeue(follower.analysisId(), "node-a");
+  }
+
+  /**
+   * A download the extractors reject (here: shut down while it was being
+   * fetched) is deleted and the job goes straight back to PENDING.
+   */
+  @Test
+  void drain_rejectedExtraction_deletesDownloadAndRequeues(@TempDir Path tmp) throws Exception {
+    AnalysisJob a = job();
+    File file = Files.createFile(tmp.resolve("a.png")).toFile();
+    CountDownLatch fetching = new CountDownLatch(1);
+    Thread stopper = new Thread(pool::shutdown);
+    doAnswer(inv -> {
+      fetching.countDown();
+      try {
+        Thread.sleep(10_000);
+      } catch (InterruptedException e) {
+        stopper.join(5_000); // let shutdown reach the extractors first
+      }
+      return new AnalyzeService.FetchedJob(a, file);
+    }).when(analyzeService).fetchJob(a);
+    when(jobs.claimPending(3, "node-a", fixedNow)).thenReturn(List.of(a), List.of());
+
+    pool.drain();
+    assertTrue(fetching.await(2, TimeUnit.SECONDS));
+    stopper.start();
+    stopper.interrupt(); // skips the graceful wait, so the fetch thread is interrupted
+
+    verify(jobs, timeout(2000)).requeue(a.analysisId(), "node-a");
+    verify(analyzeService, never()).extractJob(any());
+    verify(locks).unlock(a.analysisId());
+    assertThat(file).doesNotExist();
+  }
+
+  /** A job that ran is released from its flight and its cancellation tracking. */
+  @Test
+  void drain_finishedJob_isReleased() {
+    AnalysisJob a = job();
+    when(jobs.claimPending(3, "node-a", fixedNow)).thenReturn(List.of(a), List.of());
+
+    pool.drain();
+
+    verify(analyzeService, timeout(2000)).releaseJob(a);
+    verify(locks, timeout(2000)).unlock(a.analysisId());
+  }
+
+  /** Heartbeats renew leases for exactly the jobs running on this node. */
+  @Test
+  void heartbeat_renewsRunningLeases() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(1);
+    doAnswer(inv -> {
+      started.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return null;
+    }).when(analyzeService).fetchJob(any());
+    AnalysisJob a = job();
+    when(jobs.claimPending(3, "node-a", fixedNow)).thenReturn(List.of(a), List.of());
+
+    pool.heartbeat();
+    verify(jobs, never()).heartbeat(any(), any(), any());
+
+    pool.drain();
+    assertTrue(started.await(2, TimeUnit.SECONDS));
+    pool.heartbeat();
+    verify(jobs).heartbeat(List.of(a.analysisId()), "node-a", fixedNow);
+
+    release.countDown();
+  }
+
+  /** While all pipeline slots are busy, drain must not claim more work. */
+  @Test
+  void drain_whenAllSlotsBusy_doesNotClaim() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(2);
+    doAnswer(inv -> {
+      started.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return null;
+    }).when(analyzeService).fetchJob(any());
+    when(jobs.claimPending(3, "node-a", fixedNow))
+        .thenReturn(List.of(job(), job(), job()), List.of());
+
+    pool.drain();
+    assertTrue(started.await(2, TimeUnit.SECONDS));
+    assertThat(pool.inFlight()).isEqualTo(3);
+
+    pool.drain();
+    verify(jobs, never()).claimPending(eq(0), any(), any());
+    verify(jobs).claimPending(anyInt(), any(), any());
+
+    release.countDown();
+  }
+
+  /** Database errors while claiming are swallowed; the next poll retries. */
+  @Test
+  void drain_claimFailure_isSwallowed() {
+    when(jobs.claimPending(anyInt(), any(), any()))
+        .thenThrow(new QueryTimeoutException("down"));
+
+    pool.drain();
+
+    verify(analyzeService, never()).fetchJob(any());
+    assertThat(pool.inFlight()).isZero();
+  }
+
+  /**
+   * Non-positive fetch concurrency and negative extract concurrency are
+   * configuration errors; extract concurrency 0 selects the CPU-aware default.
+   */
+  @Test
+  void constructor_rejectsInvalidConcurrency() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new AnalysisWorkerPool(jobs, analyzeService, locks, new NodeIdentity("n"),
+            Clock.systemUTC(), 0, 1));
+    assertThrows(IllegalArgumentException.class,
+        () -> new AnalysisWorkerPool(jobs, analyzeService, locks, new NodeIdentity("n"),
+            Clock.systemUTC(), 1, -1));
+    AnalysisWorkerPool auto = new AnalysisWorkerPool(jobs, analyzeService, locks,
+        new NodeIdentity("n"), Clock.systemUTC(), 1, 0);
+    auto.shutdown();
+  }
+}
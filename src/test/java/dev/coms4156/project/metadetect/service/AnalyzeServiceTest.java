@@ -6,36 +6,64 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import dev.coms4156.project.metadetect.c2pa.C2paToolInvoker;
+import dev.coms4156.project.metadetect.c2pa.ManifestExtractor;
+import dev.coms4156.project.metadetect.c2pa.ManifestNotFoundException;
+import dev.coms4156.project.metadetect.c2pa.UnsupportedManifestException;
 import dev.coms4156.project.metadetect.dto.Dtos;
+import dev.coms4156.project.metadetect.model.AnalysisJob;
 import dev.coms4156.project.metadetect.model.AnalysisReport;
+import dev.coms4156.project.metadetect.model.AnalysisSummary;
 import dev.coms4156.project.metadetect.model.Image;
+import dev.coms4156.project.metadetect.repository.AnalysisJobRepository;
 import dev.coms4156.project.metadetect.repository.AnalysisReportRepository;
+import dev.coms4156.project.metadetect.repository.AnalysisSummaryRepository;
+import dev.coms4156.project.metadetect.repository.ManifestRepository;
 import dev.coms4156.project.metadetect.service.SupabaseStorageService;
+import dev.coms4156.project.metadetect.service.errors.AnalysisFinishedException;
 import dev.coms4156.project.metadetect.service.errors.ForbiddenException;
 import dev.coms4156.project.metadetect.service.errors.MissingStoragePathException;
 import dev.coms4156.project.metadetect.service.errors.NotFoundException;
+import dev.coms4156.project.metadetect.service.errors.QueueFullException;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
  * Unit tests for {@link AnalyzeService}.
@@ -47,11 +75,17 @@ import org.mockito.ArgumentCaptor;
  */
 class AnalyzeServiceTest {
 
-  private C2paToolInvoker c2pa;
+  private ManifestExtractor c2pa;
   private ImageService imageService;
   private AnalysisReportRepository repo;
+  private AnalysisJobRepository jobs;
+  private ManifestRepository manifests;
+  private AnalysisSummaryRepository summaries;
+  private AnalysisEventHub progress;
+  private AnalysisCompletionWaiters waiters;
   private SupabaseStorageService storage;
   private UserService userService;
+  private ApplicationEventPublisher events;
   private Clock clock;
 
   private AnalyzeService service;
@@ -59,17 +93,40 @@ class AnalyzeServiceTest {
   private final UUID userId = UUID.randomUUID();
   private final UUID imageId = UUID.randomUUID();
   private final Instant fixedNow = Instant.parse("2025-01-01T00:00:00Z");
+  private final AtomicInteger waitTasks = new AtomicInteger();
+  private final Executor waitExecutor = task -> {
+    waitTasks.incrementAndGet();
+    task.run();
+  };
 
   @BeforeEach
-  void setUp() {
-    c2pa = mock(C2paToolInvoker.class);
+  void setUp() throws Exception {
+    c2pa = mock(ManifestExtractor.class);
     imageService = mock(ImageService.class);
     repo = mock(AnalysisReportRepository.class);
+    jobs = mock(AnalysisJobRepository.class);
+    manifests = mock(ManifestRepository.class);
+    summaries = mock(AnalysisSummaryRepository.class);
+    progress = mock(AnalysisEventHub.class);
+    waiters = new AnalysisCompletionWaiters();
     storage = mock(SupabaseStorageService.class);
     userService = mock(UserService.class);
+    events = mock(ApplicationEventPublisher.class);
     clock = Clock.fixed(fixedNow, ZoneOffset.UTC);
+    when(c2pa.version()).thenReturn("test-1");
 
-    service = new AnalyzeService(c2pa, imageService, repo, storage, userService, clock);
+    service = new AnalyzeService(c2pa, imageService, repo, jobs, manifests, summaries, progress,
+        waiters, waitExecutor, storage, userService, events, clock, 10, 10, 7, 0, 1 << 20, 5000,
+        3, 3, 2000);
+
+    // Stand-in for the streaming download: copy file: URLs into the target.
+    when(storage.downloadToFile(anyString(), any(Path.class), anyLong(), any(Duration.class)))
+        .thenAnswer(inv -> {
+          Path target = inv.getArgument(1);
+          Files.copy(Path.of(URI.create(inv.getArgument(0))), target,
+              StandardCopyOption.REPLACE_EXISTING);
+          return Files.size(target);
+        });
 
     when(userService.getCurrentUserIdOrThrow()).thenReturn(userId);
     // Bearer required by storage for signed URL generation.
@@ -85,49 +142,48 @@ class AnalyzeServiceTest {
     return img;
   }
 
+  /** Creates a claimed job for the given signed URL. */
+  private AnalysisJob job(UUID analysisId, String sourceUrl, String storagePath) {
+    return new AnalysisJob(analysisId, imageId, userId, storagePath, sourceUrl, 1, "node-a", null);
+  }
+
+  /** Creates a claimed job for an image whose upload recorded a digest. */
+  private AnalysisJob digestedJob(UUID analysisId, String sourceUrl, String sha256) {
+    return new AnalysisJob(analysisId, imageId, userId, "u/i/file.png", sourceUrl, 1, "node-a",
+        sha256);
+  }
+
   /**
    * submitAnalysis happy-path:
-   * - Creates PENDING report.
-   * - Downloads via signed URL.
-   * - Extracts manifest.
-   * - Marks DONE with manifest details.
+   * - Signs a download URL with the caller's bearer.
+   * - Creates PENDING report carrying the signed URL.
+   * - Wakes the worker pool and returns without running extraction.
    */
   @Test
-  void submitAnalysis_happyPath_marksCompleted_andReturnsId() throws Exception {
+  void submitAnalysis_happyPath_queuesPending_andReturnsId() throws Exception {
     when(imageService.getById(userId, imageId)).thenReturn(ownedImage("u/i/file.png"));
-
-    File downloadable = File.createTempFile("source-", ".bin");
-    Files.writeString(downloadable.toPath(), "bytes", StandardCharsets.UTF_8);
-
-    when(storage.createSignedUrl(eq("u/i/file.png"), anyString()))
-        .thenReturn(downloadable.toURI().toURL().toString());
-
-    String manifest = "{\"c2pa\":\"ok\"}";
-    when(c2pa.extractManifest(any(File.class))).thenReturn(manifest);
+    when(storage.createSignedUrl("u/i/file.png", "bearer-token"))
+        .thenReturn("https://signed/u/i/file.png");
+    when(jobs.countPending()).thenReturn(3L);
 
     UUID analysisId = UUID.randomUUID();
-    AnalysisReport pending = new AnalysisReport(imageId);
-    pending.setCreatedAt(fixedNow);
-
-    // Save returns entity with generated id; later findById reads same row.
     when(repo.save(any(AnalysisReport.class))).thenAnswer(inv -> {
       AnalysisReport ar = inv.getArgument(0);
       ar.setId(analysisId);
       return ar;
     });
-    when(repo.findById(analysisId)).thenReturn(Optional.of(pending));
 
     Dtos.AnalyzeStartResponse resp = service.submitAnalysis(imageId);
     assertThat(resp.analysisId()).isEqualTo(analysisId.toString());
 
-    // Capture final save and assert DONE + manifest persisted.
     ArgumentCaptor<AnalysisReport> saved = ArgumentCaptor.forClass(AnalysisReport.class);
-    verify(repo, atLeast(1)).save(saved.capture());
-    AnalysisReport last = saved.getAllValues().get(saved.getAllValues().size() - 1);
-    assertThat(last.getStatus().name()).isEqualTo("DONE");
-    assertThat(last.getDetails()).isEqualTo(manifest);
+    verify(repo).save(saved.capture());
+    assertThat(saved.getValue().getStatus()).isEqualTo(AnalysisReport.ReportStatus.PENDING);
+    assertThat(saved.getValue().getSourceUrl()).isEqualTo("https://signed/u/i/file.png");
+    assertThat(saved.getValue().getCreatedAt()).isEqualTo(fixedNow);
 
-    downloadable.delete();
+    verify(events).publishEvent(new AnalysisQueuedEvent(analysisId));
+    verify(c2pa, never()).extractManifest(any(File.class));
   }
 
   /** If image has no storage path, service should fail fast with 400-like error. */
@@ -139,35 +195,240 @@ class AnalyzeServiceTest {
     verify(repo, never()).save(any());
   }
 
+  /** A full queue rejects the submission before signing or inserting anything. */
+  @Test
+  void submitAnalysis_queueFull_throwsWithRetryAfter() {
+    when(imageService.getById(userId, imageId)).thenReturn(ownedImage("u/i/file.png"));
+    when(jobs.countPending()).thenReturn(10L);
+
+    QueueFullException ex =
+        assertThrows(QueueFullException.class, () -> service.submitAnalysis(imageId));
+    assertThat(ex.getRetryAfterSeconds()).isEqualTo(7);
+    verify(storage, never()).createSignedUrl(anyString(), anyString());
+    verify(repo, never()).save(any());
+  }
+
+  /** A user at their share of the queue is rejected even while the queue has room. */
+  @Test
+  void submitAnalysis_userShareFull_throwsWithRetryAfter() {
+    when(imageService.getById(userId, imageId)).thenReturn(ownedImage("u/i/file.png"));
+    when(jobs.countPending()).thenReturn(3L);
+    when(jobs.countPendingForUser(userId)).thenReturn(10L);
+
+    QueueFullException ex =
+        assertThrows(QueueFullException.class, () -> service.submitAnalysis(imageId));
+    assertThat(ex.getRetryAfterSeconds()).isEqualTo(7);
+    assertThat(ex.getMessage()).contains("your analyses");
+    verify(repo, never()).save(any());
+  }
+
   /**
-   * If the signed URL download fails, the report should be marked FAILED and
-   * error JSON should be stored in details.
+   * submitBatch: one ownership lookup, one signing call and one insert for
+   * the whole set; unqueueable images are reported per item, duplicates once.
+   */
+  @Test
+  void submitBatch_queuesOwnedImages_andReportsTheRest() {
+    UUID missing = UUID.randomUUID();
+    UUID noPath = UUID.randomUUID();
+    UUID unsigned = UUID.randomUUID();
+    Image pathless = ownedImage(null);
+    pathless.setId(noPath);
+    Image refused = ownedImage("u/i/gone.png");
+    refused.setId(unsigned);
+    when(imageService.getOwnedByIds(eq(userId), any())).thenReturn(Map.of(
+        imageId, ownedImage("u/i/file.png"), noPath, pathless, unsigned, refused));
+    when(jobs.countPending()).thenReturn(0L);
+    when(storage.createSignedUrls(Set.of("u/i/file.png", "u/i/gone.png"), "bearer-token"))
+        .thenReturn(Map.of("u/i/file.png", "https://signed/u/i/file.png"));
+    UUID analysisId = UUID.randomUUID();
+    when(jobs.insertPending(eq(Map.of(imageId, "https://signed/u/i/file.png")), any(UUID.class),
+        eq(fixedNow)))
+        .thenReturn(Map.of(imageId, analysisId));
+
+    Dtos.AnalyzeBatchResponse resp =
+        service.submitBatch(List.of(imageId, missing, imageId, noPath, unsigned));
+
+    assertThat(resp.items()).containsExactly(
+        new Dtos.AnalyzeBatchItem(imageId.toString(), analysisId.toString(), "QUEUED"),
+        new Dtos.AnalyzeBatchItem(missing.toString(), null, "NOT_FOUND"),
+        new Dtos.AnalyzeBatchItem(noPath.toString(), null, "MISSING_STORAGE_PATH"),
+        new Dtos.AnalyzeBatchItem(unsigned.toString(), null, "SIGN_FAILED"));
+    verify(imageService).getOwnedByIds(userId, Set.of(imageId, missing, noPath, unsigned));
+    verify(imageService, never()).getById(any(), any());
+    verify(storage, never()).createSignedUrl(anyString(), anyString());
+    verify(repo, never()).save(any());
+    verify(events).publishEvent(new AnalysisQueuedEvent(analysisId));
+  }
+
+  /** submitBatch: a batch that would overflow the queue queues nothing. */
+  @Test
+  void submitBatch_queueFull_queuesNothing() {
+    UUID other = UUID.randomUUID();
+    Image second = ownedImage("u/i/b.png");
+    second.setId(other);
+    when(imageService.getOwnedByIds(eq(userId), any())).thenReturn(Map.of(
+        imageId, ownedImage("u/i/a.png"), other, second));
+    when(jobs.countPending()).thenReturn(9L);
+
+    QueueFullException ex = assertThrows(QueueFullException.class,
+        () -> service.submitBatch(List.of(imageId, other)));
+    assertThat(ex.getRetryAfterSeconds()).isEqualTo(7);
+    verify(storage, never()).createSignedUrls(any(), anyString());
+    verify(jobs, never()).insertPending(any(), any(), any());
+  }
+
+  /** submitBatch: empty and oversized batches are rejected before any lookup. */
+  @Test
+  void submitBatch_invalidSize_throwsIllegalArgument() {
+    assertThrows(IllegalArgumentException.class, () -> service.submitBatch(List.of()));
+    assertThrows(IllegalArgumentException.class, () -> service.submitBatch(List.of(
+        UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID())));
+    verify(imageService, never()).getOwnedByIds(any(), any());
+  }
+
+  /**
+   * getStatuses: one owner-scoped lookup for the whole list; results keep
+   * request order and unknown or foreign ids are omitted.
+   */
+  @Test
+  void getStatuses_singleLookup_inRequestOrder() {
+    UUID done = UUID.randomUUID();
+    UUID pending = UUID.randomUUID();
+    UUID foreign = UUID.randomUUID();
+    Instant completed = fixedNow.plusSeconds(5);
+    when(summaries.findOwned(eq(userId), any())).thenReturn(List.of(
+        new AnalysisSummary(pending, imageId, AnalysisReport.ReportStatus.PENDING, null,
+            fixedNow, null),
+        new AnalysisSummary(done, imageId, AnalysisReport.ReportStatus.DONE, 0.5,
+            fixedNow, completed)));
+
+    List<Dtos.AnalysisStatusItem> out =
+        service.getStatuses(List.of(done, foreign, pending, done));
+
+    assertThat(out).containsExactly(
+        new Dtos.AnalysisStatusItem(done.toString(), imageId.toString(), "DONE", 0.5, completed),
+        new Dtos.AnalysisStatusItem(pending.toString(), imageId.toString(), "PENDING", null,
+            null));
+    verify(summaries).findOwned(userId, Set.of(done, foreign, pending));
+    verify(repo, never()).findById(any());
+    verify(imageService, never()).getById(any(), any());
+  }
+
+  /** getStatuses: empty and oversized lists are rejected before any lookup. */
+  @Test
+  void getStatuses_invalidSize_throwsIllegalArgument() {
+    assertThrows(IllegalArgumentException.class, () -> service.getStatuses(List.of()));
+    assertThrows(IllegalArgumentException.class, () -> service.getStatuses(List.of(
+        UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID())));
+    verify(summaries, never()).findOwned(any(), any());
+  }
+
+  /**
+   * streamProgress: registers before the ownership/snapshot query, offers
+   * each owned analysis its current stage and drops the rest.
    */
   @Test
-  void submitAnalysis_downloadFailure_marksFailed() throws Exception {
-    when(imageService.getById(userId, imageId)).thenReturn(ownedImage("x/y/z.png"));
-    when(storage.createSignedUrl(eq("x/y/z.png"), anyString()))
-        .thenReturn("file:/does/not/exist");
+  void streamProgress_subscribesThenOffersSnapshot() {
+    UUID running = UUID.randomUUID();
+    UUID foreign = UUID.randomUUID();
+    AnalysisEventHub.Subscription sub = mock(AnalysisEventHub.Subscription.class);
+    SseEmitter emitter = new SseEmitter();
+    when(sub.emitter()).thenReturn(emitter);
+    when(progress.subscribe(any())).thenReturn(sub);
+    when(summaries.findOwned(eq(userId), any())).thenReturn(List.of(
+        new AnalysisSummary(running, imageId, AnalysisReport.ReportStatus.RUNNING, null,
+            fixedNow, null)));
+
+    assertThat(service.streamProgress(List.of(running, foreign))).isSameAs(emitter);
 
+    var order = inOrder(progress, summaries);
+    order.verify(progress).subscribe(Set.of(running, foreign));
+    order.verify(summaries).findOwned(userId, Set.of(running, foreign));
+    verify(progress).offer(sub, running, AnalysisProgressEvent.Stage.DOWNLOADING);
+    verify(progress).drop(sub, foreign);
+  }
+
+  /** streamProgress: nothing owned -> 404 and the subscription is discarded. */
+  @Test
+  void streamProgress_noneOwned_throwsNotFound() {
+    AnalysisEventHub.Subscription sub = mock(AnalysisEventHub.Subscription.class);
+    when(progress.subscribe(any())).thenReturn(sub);
+    when(summaries.findOwned(eq(userId), any())).thenReturn(List.of());
+
+    assertThrows(NotFoundException.class,
+        () -> service.streamProgress(List.of(UUID.randomUUID())));
+    verify(progress).cancel(sub);
+  }
+
+  /**
+   * fetchJob/extractJob: a job that needs a download is handed over with
+   * its temp file, which extractJob deletes after finalizing.
+   */
+  @Test
+  void fetchThenExtract_downloadsThenExtracts_andDeletesTempFile() throws Exception {
+    File downloadable = File.createTempFile("source-", ".bin");
+    Files.writeString(downloadable.toPath(), "bytes", StandardCharsets.UTF_8);
+    String manifest = "{\"c2pa\":\"ok\"}";
+    when(c2pa.extractManifest(any(File.class))).thenReturn(manifest);
     UUID analysisId = UUID.randomUUID();
-    AnalysisReport pending = new AnalysisReport(imageId);
-    pending.setCreatedAt(fixedNow);
+    when(jobs.markDone(analysisId, "node-a", "test-1", manifest, null, fixedNow)).thenReturn(true);
 
-    when(repo.save(any(AnalysisReport.class))).thenAnswer(inv -> {
-      AnalysisReport ar = inv.getArgument(0);
-      ar.setId(analysisId);
-      return ar;
-    });
-    when(repo.findById(analysisId)).thenReturn(Optional.of(pending));
+    AnalyzeService.FetchedJob fetched = service.fetchJob(
+        job(analysisId, downloadable.toURI().toURL().toString(), "u/i/file.png"));
 
-    Dtos.AnalyzeStartResponse resp = service.submitAnalysis(imageId);
-    assertThat(resp.analysisId()).isEqualTo(analysisId.toString());
+    assertNotNull(fetched);
+    assertTrue(fetched.file().exists());
+    verify(c2pa, never()).extractManifest(any(File.class));
 
-    ArgumentCaptor<AnalysisReport> saved = ArgumentCaptor.forClass(AnalysisReport.class);
-    verify(repo, atLeast(1)).save(saved.capture());
-    AnalysisReport last = saved.getAllValues().get(saved.getAllValues().size() - 1);
-    assertThat(last.getStatus().name()).isEqualTo("FAILED");
-    assertThat(last.getDetails()).contains("\"error\":");
+    service.extractJob(fetched);
+
+    verify(jobs).markDone(analysisId, "node-a", "test-1", manifest, null, fixedNow);
+    assertFalse(fetched.file().exists());
+    var order = inOrder(events);
+    order.verify(events).publishEvent(
+        new AnalysisProgressEvent(analysisId, AnalysisProgressEvent.Stage.DOWNLOADING));
+    order.verify(events).publishEvent(
+        new AnalysisProgressEvent(analysisId, AnalysisProgressEvent.Stage.EXTRACTING));
+    order.verify(events).publishEvent(
+        new AnalysisProgressEvent(analysisId, AnalysisProgressEvent.Stage.DONE));
+  }
+
+  /**
+   * processJob happy-path: downloads the signed URL, extracts the manifest
+   * and marks the job DONE with the manifest as details.
+   */
+  @Test
+  void processJob_happyPath_marksCompleted() throws Exception {
+    File downloadable = File.createTempFile("source-", ".bin");
+    Files.writeString(downloadable.toPath(), "bytes", StandardCharsets.UTF_8);
+
+    String manifest = "{\"c2pa\":\"ok\"}";
+    when(c2pa.extractManifest(any(File.class))).thenReturn(manifest);
+    UUID analysisId = UUID.randomUUID();
+    when(jobs.markDone(analysisId, "node-a", "test-1", manifest, null, fixedNow)).thenReturn(true);
+
+    service.processJob(job(analysisId, downloadable.toURI().toURL().toString(), "u/i/file.png"));
+
+    verify(jobs).markDone(analysisId, "node-a", "test-1", manifest, null, fixedNow);
+    verify(jobs, never()).markFailed(any(), anyString(), anyString(), any());
+
+    downloadable.delete();
+  }
+
+  /**
+   * If the signed URL download fails, the report should be marked FAILED and
+   * error JSON should be stored in details.
+   */
+  @Test
+  void processJob_downloadFailure_marksFailed() throws Exception {
+    UUID analysisId = UUID.randomUUID();
+
+    service.processJob(job(analysisId, "file:/does/not/exist", "x/y/z.png"));
+
+    ArgumentCaptor<String> details = ArgumentCaptor.forClass(String.class);
+    verify(jobs).markFailed(eq(analysisId), eq("node-a"), details.capture(), eq(fixedNow));
+    assertThat(details.getValue()).contains("\"error\":");
+    verify(c2pa, never()).extractManifest(any(File.class));
   }
 
   /**
@@ -175,41 +436,310 @@ class AnalyzeServiceTest {
    * message should be captured into details JSON.
    */
   @Test
-  void submitAnalysis_c2paFailure_marksFailed() throws Exception {
-    when(imageService.getById(userId, imageId)).thenReturn(ownedImage("a/b/c.png"));
-
+  void processJob_c2paFailure_marksFailed() throws Exception {
     File downloadable = File.createTempFile("dl-", ".img");
     try (FileWriter fw = new FileWriter(downloadable)) {
       fw.write("imgdata");
     }
-    when(storage.createSignedUrl(eq("a/b/c.png"), anyString()))
-        .thenReturn(downloadable.toURI().toURL().toString());
-
     when(c2pa.extractManifest(any(File.class))).thenThrow(new RuntimeException("boom"));
 
     UUID analysisId = UUID.randomUUID();
-    AnalysisReport pending = new AnalysisReport(imageId);
-    pending.setCreatedAt(fixedNow);
+    service.processJob(job(analysisId, downloadable.toURI().toURL().toString(), "a/b/c.png"));
 
-    when(repo.save(any(AnalysisReport.class))).thenAnswer(inv -> {
-      AnalysisReport ar = inv.getArgument(0);
-      ar.setId(analysisId);
-      return ar;
-    });
-    when(repo.findById(analysisId)).thenReturn(Optional.of(pending));
+    ArgumentCaptor<String> details = ArgumentCaptor.forClass(String.class);
+    verify(jobs).markFailed(eq(analysisId), eq("node-a"), details.capture(), eq(fixedNow));
+    assertThat(details.getValue()).contains("\"error\":\"").contains("boom");
+    verify(jobs, never()).markDone(any(), anyString(), anyString(), anyString(), any(), any());
 
-    Dtos.AnalyzeStartResponse resp = service.submitAnalysis(imageId);
-    assertThat(resp.analysisId()).isEqualTo(analysisId.toString());
+    downloadable.delete();
+  }
 
-    ArgumentCaptor<AnalysisReport> saved = ArgumentCaptor.forClass(AnalysisReport.class);
-    verify(repo, atLeast(1)).save(saved.capture());
-    AnalysisReport last = saved.getAllValues().get(saved.getAllValues().size() - 1);
-    assertThat(last.getStatus().name()).isEqualTo("FAILED");
-    assertThat(last.getDetails()).contains("\"error\":\"");
+  /** Bytes analyzed before finish from the manifest cache without any fetch. */
+  @Test
+  void processJob_cacheHit_finishesWithoutFetching() throws Exception {
+    UUID analysisId = UUID.randomUUID();
+    when(jobs.markDoneFromCache(analysisId, "node-a", "abc", "test-1", fixedNow))
+        .thenReturn(true);
+
+    service.processJob(digestedJob(analysisId, "file:/never/downloaded", "abc"));
+
+    verify(storage, never()).downloadToFile(anyString(), any(Path.class), anyLong(),
+        any(Duration.class));
+    verify(c2pa, never()).extractManifest(any(File.class));
+    verify(jobs, never()).markDoneCaching(any(), anyString(), anyString(), anyString(),
+        anyString(), any(), any());
+  }
+
+  /** On a miss the result is extracted and written to the cache with the report. */
+  @Test
+  void processJob_cacheMiss_extractsAndCachesResult() throws Exception {
+    File downloadable = File.createTempFile("source-", ".bin");
+    Files.writeString(downloadable.toPath(), "bytes", StandardCharsets.UTF_8);
+    when(c2pa.extractManifest(any(File.class))).thenReturn("{\"m\":4}");
+    UUID analysisId = UUID.randomUUID();
 
+    service.processJob(digestedJob(analysisId, downloadable.toURI().toURL().toString(), "abc"));
+
+    verify(jobs).markDoneFromCache(analysisId, "node-a", "abc", "test-1", fixedNow);
+    verify(jobs).markDoneCaching(analysisId, "node-a", "abc", "test-1", "{\"m\":4}", null,
+        fixedNow);
+    verify(jobs, never()).markDone(any(), anyString(), anyString(), anyString(), any(), any());
     downloadable.delete();
   }
 
+  /** Failures are never cached; they stay inline on the report. */
+  @Test
+  void processJob_cacheMissFailure_isNotCached() throws Exception {
+    UUID analysisId = UUID.randomUUID();
+
+    service.processJob(digestedJob(analysisId, "file:/does/not/exist", "abc"));
+
+    verify(jobs).markFailed(eq(analysisId), eq("node-a"), anyString(), eq(fixedNow));
+    verify(jobs, never()).markDoneCaching(any(), anyString(), anyString(), anyString(),
+        anyString(), any(), any());
+  }
+
+  /** Service with ranged metadata stages enabled (setUp disables them). */
+  private AnalyzeService rangedService() {
+    return new AnalyzeService(c2pa, imageService, repo, jobs, manifests, summaries, progress,
+        waiters, waitExecutor, storage, userService, events, clock, 10, 10, 7, 1 << 20, 1 << 20,
+        5000, 3, 3, 2000);
+  }
+
+  /** Ranged channel over an in-memory object, fetched in 4-byte blocks. */
+  private static RangedObjectChannel channelOver(byte[] object) {
+    return new RangedObjectChannel((offset, length) -> {
+      int from = (int) Math.min(offset, object.length);
+      int to = (int) Math.min(offset + length, object.length);
+      return new SupabaseStorageService.RangedBytes(
+          Arrays.copyOfRange(object, from, to), object.length);
+    }, 4, 4, 1 << 20);
+  }
+
+  /**
+   * When the headers show no C2PA marker, the job finishes DONE as
+   * "no manifest" without downloading or extracting.
+   */
+  @Test
+  void processJob_rangedProbeAbsent_finishesWithoutDownload() throws Exception {
+    byte[] jpeg = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xda, 0, 2, (byte) 0xff,
+        (byte) 0xd9};
+    when(storage.openRanged("file:/never/downloaded", 1 << 20)).thenReturn(channelOver(jpeg));
+    UUID analysisId = UUID.randomUUID();
+    when(jobs.markDone(analysisId, "node-a", "test-1", AnalyzeService.NO_MANIFEST_DETAILS, null,
+        fixedNow)).thenReturn(true);
+
+    rangedService().processJob(job(analysisId, "file:/never/downloaded", "u/i/file.jpg"));
+
+    verify(jobs).markDone(analysisId, "node-a", "test-1", AnalyzeService.NO_MANIFEST_DETAILS, null,
+        fixedNow);
+    verify(c2pa, never()).extractManifest(any(File.class));
+    verify(c2pa, never()).extractManifest(any(SeekableByteChannel.class));
+  }
+
+  /** A manifest readable from ranges is extracted without a full download. */
+  @Test
+  void processJob_rangedExtraction_skipsDownload() throws Exception {
+    byte[] png = Files.readAllBytes(Path.of("src/test/resources/mock-images/Spaghetti.png"));
+    when(storage.openRanged("file:/never/downloaded", 1 << 20)).thenReturn(channelOver(png));
+    when(c2pa.extractManifest(any(SeekableByteChannel.class))).thenReturn("{\"m\":1}");
+
+    UUID analysisId = UUID.randomUUID();
+    rangedService().processJob(job(analysisId, "file:/never/downloaded", "u/i/file.png"));
+
+    verify(jobs).markDone(analysisId, "node-a", "test-1", "{\"m\":1}", null, fixedNow);
+    verify(c2pa, never()).extractManifest(any(File.class));
+  }
+
+  /** Stages that cannot work from ranges fall back to the full download path. */
+  @Test
+  void processJob_rangedUnsupported_fallsBackToDownload() throws Exception {
+    File downloadable = File.createTempFile("ranged-", ".png");
+    Files.writeString(downloadable.toPath(), "bytes", StandardCharsets.UTF_8);
+    String url = downloadable.toURI().toURL().toString();
+    byte[] png = Files.readAllBytes(Path.of("src/test/resources/mock-images/Spaghetti.png"));
+    when(storage.openRanged(url, 1 << 20)).thenReturn(channelOver(png));
+    when(c2pa.extractManifest(any(SeekableByteChannel.class)))
+        .thenThrow(new UnsupportedManifestException("tool only"));
+    when(c2pa.extractManifest(any(File.class))).thenReturn("{\"m\":2}");
+
+    UUID analysisId = UUID.randomUUID();
+    rangedService().processJob(job(analysisId, url, "u/i/file.png"));
+
+    verify(jobs).markDone(analysisId, "node-a", "test-1", "{\"m\":2}", null, fixedNow);
+    downloadable.delete();
+  }
+
+  /** Range request failures also fall back to the full download path. */
+  @Test
+  void processJob_rangeErrors_fallBackToDownload() throws Exception {
+    File downloadable = File.createTempFile("ranged-", ".png");
+    Files.writeString(downloadable.toPath(), "bytes", StandardCharsets.UTF_8);
+    String url = downloadable.toURI().toURL().toString();
+    when(storage.openRanged(url, 1 << 20)).thenReturn(new RangedObjectChannel(
+        (offset, length) -> {
+          throw new RuntimeException("416 from gateway");
+        }, 4, 4, 1 << 20));
+    when(c2pa.extractManifest(any(File.class))).thenReturn("{\"m\":3}");
+
+    UUID analysisId = UUID.randomUUID();
+    rangedService().processJob(job(analysisId, url, "u/i/file.png"));
+
+    verify(jobs).markDone(analysisId, "node-a", "test-1", "{\"m\":3}", null, fixedNow);
+    downloadable.delete();
+  }
+
+  /** An extractor that finds no manifest yields DONE, not FAILED. */
+  @Test
+  void processJob_noManifest_marksDoneWithNoManifestDetails() throws Exception {
+    File downloadable = File.createTempFile("plain-", ".png");
+    Files.writeString(downloadable.toPath(), "bytes", StandardCharsets.UTF_8);
+    when(c2pa.extractManifest(any(File.class)))
+        .thenThrow(new ManifestNotFoundException("none"));
+
+    UUID analysisId = UUID.randomUUID();
+    service.processJob(job(analysisId, downloadable.toURI().toURL().toString(), "a/b/c.png"));
+
+    verify(jobs).markDone(analysisId, "node-a", "test-1", AnalyzeService.NO_MANIFEST_DETAILS, null,
+        fixedNow);
+    verify(jobs, never()).markFailed(any(), anyString(), anyString(), any());
+    downloadable.delete();
+  }
+
+  /**
+   * Two jobs for the same image running together share one download and
+   * extraction; each row is finalized DONE with the shared manifest.
+   */
+  @Test
+  void coalesce_duplicateJob_sharesLeadersExtraction() throws Exception {
+    File downloadable = File.createTempFile("source-", ".bin");
+    Files.writeString(downloadable.toPath(), "bytes", StandardCharsets.UTF_8);
+    String url = downloadable.toURI().toURL().toString();
+    String manifest = "{\"c2pa\":\"ok\"}";
+    when(c2pa.extractManifest(any(File.class))).thenReturn(manifest);
+    UUID leaderId = UUID.randomUUID();
+    UUID followerId = UUID.randomUUID();
+    when(jobs.markDone(any(), eq("node-a"), eq("test-1"), eq(manifest), any(), eq(fixedNow)))
+        .thenReturn(true);
+    AnalysisJob leader = job(leaderId, url, "u/i/file.png");
+
+    assertThat(service.coalesce(leader)).isNull();
+    CompletableFuture<Boolean> follower = service.coalesce(job(followerId, url, "u/i/file.png"));
+    assertNotNull(follower);
+    assertFalse(follower.isDone());
+
+    service.processJob(leader);
+
+    assertTrue(follower.isDone());
+    verify(c2pa).extractManifest(any(File.class));
+    verify(storage).downloadToFile(anyString(), any(Path.class), anyLong(),
+        any(Duration.class));
+    verify(jobs).markDone(leaderId, "node-a", "test-1", manifest, null, fixedNow);
+    verify(jobs).markDone(followerId, "node-a", "test-1", manifest, null, fixedNow);
+    verify(events).publishEvent(
+        new AnalysisProgressEvent(followerId, AnalysisProgressEvent.Stage.DONE));
+    assertThat(service.coalescedJobs()).isEqualTo(1);
+    downloadable.delete();
+  }
+
+  /** A shared failure fails every coalesced row with the same error. */
+  @Test
+  void coalesce_leaderFailure_failsFollowers() {
+    UUID leaderId = UUID.randomUUID();
+    UUID followerId = UUID.randomUUID();
+    AnalysisJob leader = job(leaderId, "file:/does/not/exist", "x/y/z.png");
+    service.coalesce(leader);
+    CompletableFuture<Boolean> follower =
+        service.coalesce(job(followerId, "file:/does/not/exist", "x/y/z.png"));
+
+    service.processJob(leader);
+
+    assertTrue(follower.isDone());
+    ArgumentCaptor<String> leaderError = ArgumentCaptor.forClass(String.class);
+    verify(jobs).markFailed(eq(leaderId), eq("node-a"), leaderError.capture(), eq(fixedNow));
+    verify(jobs).markFailed(followerId, "node-a", leaderError.getValue(), fixedNow);
+  }
+
+  /** When the leader finishes from the cache, followers do too. */
+  @Test
+  void coalesce_leaderCacheHit_followersFinishFromCache() {
+    UUID leaderId = UUID.randomUUID();
+    UUID followerId = UUID.randomUUID();
+    when(jobs.markDoneFromCache(any(), eq("node-a"), eq("abc"), eq("test-1"), eq(fixedNow)))
+        .thenReturn(true);
+    AnalysisJob leader = digestedJob(leaderId, "file:/never/downloaded", "abc");
+    service.coalesce(leader);
+    CompletableFuture<Boolean> follower =
+        service.coalesce(digestedJob(followerId, "file:/never/downloaded", "abc"));
+
+    service.processJob(leader);
+
+    assertTrue(follower.isDone());
+    verify(jobs).markDoneFromCache(followerId, "node-a", "abc", "test-1", fixedNow);
+  }
+
+  /** A leader that lets go without a result leaves its followers unfinished. */
+  @Test
+  void releaseJob_withoutResult_releasesFollowersUnfinished() {
+    AnalysisJob leader = job(UUID.randomUUID(), "file:/x", "x/y/z.png");
+    service.coalesce(leader);
+    CompletableFuture<Boolean> follower =
+        service.coalesce(job(UUID.randomUUID(), "file:/x", "x/y/z.png"));
+
+    service.releaseJob(leader);
+
+    assertThat(follower).isCompletedWithValue(false);
+    verify(jobs, never()).markDone(any(), anyString(), anyString(), anyString(), any(), any());
+    verify(jobs, never()).markFailed(any(), anyString(), anyString(), any());
+  }
+
+  /** A job without a source URL fails instead of throwing out of the worker. */
+  @Test
+  void processJob_missingSourceUrl_marksFailed() {
+    UUID analysisId = UUID.randomUUID();
+
+    service.processJob(job(analysisId, null, "a/b/c.png"));
+
+    verify(jobs).markFailed(eq(analysisId), eq("node-a"), anyString(), eq(fixedNow));
+  }
+
+  /** A source URL that expires before the download could finish is re-signed. */
+  @Test
+  void processJob_expiringSourceUrl_isReSigned() throws Exception {
+    File src = File.createTempFile("expiring-", ".png");
+    src.deleteOnExit();
+    String stale = "https://signed/stale";
+    when(storage.signedUrlExpiry(stale)).thenReturn(Optional.of(fixedNow.plusSeconds(1)));
+    when(storage.createServiceSignedUrl("u/i/file.png")).thenReturn(src.toURI().toString());
+    when(c2pa.extractManifest(any(File.class))).thenReturn("{\"m\":1}");
+    when(jobs.markDone(any(), anyString(), anyString(), anyString(), any(), any()))
+        .thenReturn(true);
+
+    UUID analysisId = UUID.randomUUID();
+    service.processJob(job(analysisId, stale, "u/i/file.png"));
+
+    verify(storage).downloadToFile(eq(src.toURI().toString()), any(Path.class), anyLong(),
+        any(Duration.class));
+    verify(storage, never()).downloadToFile(eq(stale), any(Path.class), anyLong(),
+        any(Duration.class));
+    verify(jobs, never()).markFailed(any(), anyString(), anyString(), any());
+  }
+
+  /** A source URL valid well past the download timeout is used as captured. */
+  @Test
+  void processJob_freshSourceUrl_isNotReSigned() throws Exception {
+    File src = File.createTempFile("fresh-", ".png");
+    src.deleteOnExit();
+    String url = src.toURI().toString();
+    when(storage.signedUrlExpiry(url)).thenReturn(Optional.of(fixedNow.plusSeconds(900)));
+    when(c2pa.extractManifest(any(File.class))).thenReturn("{\"m\":1}");
+
+    service.processJob(job(UUID.randomUUID(), url, "u/i/file.png"));
+
+    verify(storage, never()).createServiceSignedUrl(anyString());
+    verify(storage).downloadToFile(eq(url), any(Path.class), anyLong(), any(Duration.class));
+  }
+
   /**
    * getMetadata returns stored manifest JSON and re-validates ownership by
    * resolving the associated image.
@@ -230,6 +760,24 @@ class AnalyzeServiceTest {
     assertThat(out.manifestJson()).isEqualTo("{\"m\":\"v\"}");
   }
 
+  /** getMetadata resolves reports that reference the manifest cache. */
+  @Test
+  void getMetadata_cachedReport_readsFromManifestCache() {
+    UUID analysisId = UUID.randomUUID();
+    AnalysisReport report = new AnalysisReport(imageId);
+    report.setId(analysisId);
+    report.setManifestSha256("abc");
+    report.setManifestVersion("test-1");
+    report.setStatus(AnalysisReport.ReportStatus.DONE);
+
+    when(repo.findById(analysisId)).thenReturn(Optional.of(report));
+    when(imageService.getById(userId, imageId)).thenReturn(ownedImage("s/p.png"));
+    when(manifests.findDetails("abc", "test-1")).thenReturn(Optional.of("{\"m\":\"c\"}"));
+
+    Dtos.AnalysisManifestResponse out = service.getMetadata(analysisId);
+    assertThat(out.manifestJson()).isEqualTo("{\"m\":\"c\"}");
+  }
+
   /** getMetadata should 404 when the analysis row has no manifest details. */
   @Test
   void getMetadata_missing_throws404() {
@@ -274,6 +822,197 @@ class AnalyzeServiceTest {
     assertThat(out.score()).isNull();
   }
 
+  /** Report in the given state, owned by the test user. */
+  private AnalysisReport ownedReport(UUID analysisId, AnalysisReport.ReportStatus status) {
+    AnalysisReport report = new AnalysisReport(imageId);
+    report.setId(analysisId);
+    report.setStatus(status);
+    when(imageService.getById(userId, imageId)).thenReturn(ownedImage("x"));
+    return report;
+  }
+
+  /** A long poll on a finished analysis answers at once without registering a waiter. */
+  @Test
+  void awaitConfidence_terminal_completesImmediately() {
+    UUID analysisId = UUID.randomUUID();
+    AnalysisReport done = ownedReport(analysisId, AnalysisReport.ReportStatus.DONE);
+    when(repo.findById(analysisId)).thenReturn(Optional.of(done));
+
+    CompletableFuture<Dtos.AnalyzeConfidenceResponse> out =
+        service.awaitConfidence(analysisId, 10_000);
+
+    assertThat(out).isCompletedWithValueMatching(r -> r.status().equals("DONE"));
+    assertThat(waiters.waiting()).isZero();
+  }
+
+  /**
+   * A pending analysis parks the poll until its completion event, then
+   * re-reads it on the wait executor.
+   */
+  @Test
+  void awaitConfidence_pending_wakesOnCompletionEvent() throws Exception {
+    UUID analysisId = UUID.randomUUID();
+    AnalysisReport pending = ownedReport(analysisId, AnalysisReport.ReportStatus.RUNNING);
+    AnalysisReport done = ownedReport(analysisId, AnalysisReport.ReportStatus.DONE);
+    when(repo.findById(analysisId)).thenReturn(Optional.of(pending), Optional.of(done));
+
+    CompletableFuture<Dtos.AnalyzeConfidenceResponse> out =
+        service.awaitConfidence(analysisId, 10_000);
+    assertThat(out).isNotDone();
+
+    waiters.onProgress(new AnalysisProgressEvent(analysisId,
+        AnalysisProgressEvent.Stage.EXTRACTING));
+    assertThat(out).isNotDone();
+
+    waiters.onProgress(new AnalysisProgressEvent(analysisId, AnalysisProgressEvent.Stage.DONE));
+    assertThat(out.get(2, TimeUnit.SECONDS).status()).isEqualTo("DONE");
+    assertThat(waiters.waiting()).isZero();
+    assertThat(waitTasks).hasValue(1);
+  }
+
+  /** An expired wait returns the current non-terminal status; waitMs is capped. */
+  @Test
+  void awaitConfidence_expires_returnsCurrentStatus() throws Exception {
+    UUID analysisId = UUID.randomUUID();
+    AnalysisReport pending = ownedReport(analysisId, AnalysisReport.ReportStatus.PENDING);
+    when(repo.findById(analysisId)).thenReturn(Optional.of(pending));
+    AnalyzeService shortWait = new AnalyzeService(c2pa, imageService, repo, jobs, manifests,
+        summaries, progress, waiters, waitExecutor, storage, userService, events, clock,
+        10, 10, 7, 0, 1 << 20, 5000, 3, 3, 50);
+
+    CompletableFuture<Dtos.AnalyzeConfidenceResponse> out =
+        shortWait.awaitConfidence(analysisId, 60_000);
+
+    assertThat(out.get(2, TimeUnit.SECONDS).status()).isEqualTo("PENDING");
+    assertThat(waiters.waiting()).isZero();
+  }
+
+  /** A poll on a missing analysis fails up front and leaves no waiter behind. */
+  @Test
+  void awaitConfidence_notFound_throwsAndUnregisters() {
+    UUID analysisId = UUID.randomUUID();
+    when(repo.findById(analysisId)).thenReturn(Optional.empty());
+
+    assertThrows(NotFoundException.class, () -> service.awaitConfidence(analysisId, 1_000));
+    assertThat(waiters.waiting()).isZero();
+  }
+
+  /** Cancelling drops the queued rest of the batch and announces every cancelled row. */
+  @Test
+  void cancelAnalysis_queuedBatch_cancelsSiblings() {
+    UUID analysisId = UUID.randomUUID();
+    UUID sibling = UUID.randomUUID();
+    AnalysisReport running = ownedReport(analysisId, AnalysisReport.ReportStatus.RUNNING);
+    when(repo.findById(analysisId)).thenReturn(Optional.of(running));
+    when(jobs.cancel(analysisId, fixedNow)).thenReturn(List.of(analysisId, sibling));
+
+    Dtos.AnalyzeCancelResponse out = service.cancelAnalysis(analysisId);
+
+    assertThat(out).isEqualTo(
+        new Dtos.AnalyzeCancelResponse(analysisId.toString(), "CANCELLED", 1));
+    verify(imageService).getById(userId, imageId);
+    verify(events).publishEvent(
+        new AnalysisProgressEvent(analysisId, AnalysisProgressEvent.Stage.CANCELLED));
+    verify(events).publishEvent(
+        new AnalysisProgressEvent(sibling, AnalysisProgressEvent.Stage.CANCELLED));
+  }
+
+  /** Cancelling again answers with the same status. */
+  @Test
+  void cancelAnalysis_alreadyCancelled_isIdempotent() {
+    UUID analysisId = UUID.randomUUID();
+    AnalysisReport cancelled = ownedReport(analysisId, AnalysisReport.ReportStatus.CANCELLED);
+    when(repo.findById(analysisId)).thenReturn(Optional.of(cancelled));
+    when(jobs.cancel(analysisId, fixedNow)).thenReturn(List.of());
+
+    Dtos.AnalyzeCancelResponse out = service.cancelAnalysis(analysisId);
+
+    assertThat(out.status()).isEqualTo("CANCELLED");
+    assertThat(out.droppedFromBatch()).isZero();
+    verify(events, never()).publishEvent(any(AnalysisProgressEvent.class));
+  }
+
+  /** A finished analysis cannot be cancelled; the status is re-read after the attempt. */
+  @Test
+  void cancelAnalysis_finishedMeanwhile_throwsConflict() {
+    UUID analysisId = UUID.randomUUID();
+    AnalysisReport running = ownedReport(analysisId, AnalysisReport.ReportStatus.RUNNING);
+    AnalysisReport done = ownedReport(analysisId, AnalysisReport.ReportStatus.DONE);
+    when(repo.findById(analysisId)).thenReturn(Optional.of(running), Optional.of(done));
+    when(jobs.cancel(analysisId, fixedNow)).thenReturn(List.of());
+
+    AnalysisFinishedException ex = assertThrows(AnalysisFinishedException.class,
+        () -> service.cancelAnalysis(analysisId));
+    assertThat(ex.getMessage()).contains("DONE");
+  }
+
+  /** Another user's analysis is reported as missing and left alone. */
+  @Test
+  void cancelAnalysis_notOwned_throws404() {
+    UUID analysisId = UUID.randomUUID();
+    AnalysisReport report = new AnalysisReport(imageId);
+    report.setId(analysisId);
+    when(repo.findById(analysisId)).thenReturn(Optional.of(report));
+    when(imageService.getById(userId, imageId)).thenThrow(new NotFoundException("nope"));
+
+    assertThrows(NotFoundException.class, () -> service.cancelAnalysis(analysisId));
+    verify(jobs, never()).cancel(any(), any());
+  }
+
+  /**
+   * A cancellation interrupts an in-progress download: the partial file is
+   * removed and the job is not failed (its row is already CANCELLED).
+   */
+  @Test
+  void cancel_duringDownload_abortsAndRemovesTempFile() throws Exception {
+    UUID analysisId = UUID.randomUUID();
+    AnalysisJob job = job(analysisId, "https://signed/u/i/file.png", "u/i/file.png");
+    CountDownLatch downloading = new CountDownLatch(1);
+    AtomicReference<Path> partial = new AtomicReference<>();
+    when(storage.downloadToFile(anyString(), any(Path.class), anyLong(), any(Duration.class)))
+        .thenAnswer(inv -> {
+          partial.set(inv.getArgument(1));
+          Files.writeString(partial.get(), "partial", StandardCharsets.UTF_8);
+          downloading.countDown();
+          try {
+            Thread.sleep(10_000);
+          } catch (InterruptedException e) {
+            // What a blocking Reactor call does when interrupted
+            throw new IllegalStateException(e);
+          }
+          return 7L;
+        });
+    assertThat(service.coalesce(job)).isNull();
+
+    CompletableFuture<AnalyzeService.FetchedJob> fetch =
+        CompletableFuture.supplyAsync(() -> service.fetchJob(job));
+    assertTrue(downloading.await(5, TimeUnit.SECONDS));
+    service.onProgress(
+        new AnalysisProgressEvent(analysisId, AnalysisProgressEvent.Stage.CANCELLED));
+
+    assertThat(fetch.get(5, TimeUnit.SECONDS)).isNull();
+    assertThat(partial.get()).doesNotExist();
+    verify(jobs, never()).markFailed(any(), anyString(), anyString(), any());
+  }
+
+  /** A job cancelled while waiting for an extraction thread never runs the extractor. */
+  @Test
+  void cancel_whileWaitingForExtraction_skipsAndDeletesFile() throws Exception {
+    UUID analysisId = UUID.randomUUID();
+    AnalysisJob job = job(analysisId, "https://signed/u/i/file.png", "u/i/file.png");
+    File downloaded = File.createTempFile("analysis-", ".png");
+    service.coalesce(job);
+
+    service.onProgress(
+        new AnalysisProgressEvent(analysisId, AnalysisProgressEvent.Stage.CANCELLED));
+    service.extractJob(new AnalyzeService.FetchedJob(job, downloaded));
+
+    assertThat(downloaded).doesNotExist();
+    verify(c2pa, never()).extractManifest(any(File.class));
+    verify(jobs, never()).markFailed(any(), anyString(), anyString(), any());
+    verify(jobs, never()).markDone(any(), anyString(), anyString(), anyString(), any(), any());
+  }
+
   /**
    * compare enforces ownership of both images and returns a stub response
    * in Iteration 1.
@@ -376,6 +1115,25 @@ class AnalyzeServiceTest {
     src.delete();
   }
 
+  /** Download limits come from configuration and a failed transfer leaves no temp file. */
+  @Test
+  void processJob_downloadRejected_marksFailedWithLimitsApplied() throws Exception {
+    when(storage.downloadToFile(eq("https://signed/big"), any(Path.class), eq(1L << 20),
+        eq(Duration.ofMillis(5000))))
+        .thenThrow(new IOException("Object exceeds download limit of 1048576 bytes"));
+
+    UUID analysisId = UUID.randomUUID();
+    service.processJob(job(analysisId, "https://signed/big", "u/i/big.png"));
+
+    ArgumentCaptor<Path> target = ArgumentCaptor.forClass(Path.class);
+    verify(storage).downloadToFile(eq("https://signed/big"), target.capture(), anyLong(),
+        any(Duration.class));
+    assertThat(target.getValue()).doesNotExist();
+    ArgumentCaptor<String> details = ArgumentCaptor.forClass(String.class);
+    verify(jobs).markFailed(eq(analysisId), eq("node-a"), details.capture(), eq(fixedNow));
+    assertThat(details.getValue()).contains("download limit");
+  }
+
   // Reflection helper used to reach private test targets.
   // Avoids adding package-private visibility in main code.
   @SuppressWarnings("unchecked")
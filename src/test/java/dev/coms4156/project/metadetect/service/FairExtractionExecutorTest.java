@@ -0,0 +1,125 @@
+package dev.coms4156.project.metadetect.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link FairExtractionExecutor}.
+ * Strategy:
+ * - One thread, held busy by a latch, so queued tasks start in a
+ *   deterministic order once it is released.
+ */
+class FairExtractionExecutorTest {
+
+  private final FairExtractionExecutor executor = new FairExtractionExecutor(1, 10, "test-x-");
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /** Queued tasks alternate between users instead of running in arrival order. */
+  @Test
+  void queuedTasks_runRoundRobinAcrossUsers() throws Exception {
+    UUID bulk = UUID.randomUUID();
+    UUID other = UUID.randomUUID();
+    List<String> order = new CopyOnWriteArrayList<>();
+    CountDownLatch gate = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(5);
+
+    executor.execute(bulk, () -> await(gate));
+    for (int i = 1; i <= 3; i++) {
+      String name = "bulk-" + i;
+      executor.execute(bulk, () -> {
+        order.add(name);
+        done.countDown();
+      });
+    }
+    for (int i = 1; i <= 2; i++) {
+      String name = "other-" + i;
+      executor.execute(other, () -> {
+        order.add(name);
+        done.countDown();
+      });
+    }
+    assertThat(executor.queued()).isEqualTo(5);
+
+    gate.countDown();
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    assertThat(order).containsExactly("bulk-1", "other-1", "bulk-2", "other-2", "bulk-3");
+  }
+
+  /** Beyond maxQueued waiting tasks, submissions are rejected. */
+  @Test
+  void fullQueue_rejects() {
+    FairExtractionExecutor small = new FairExtractionExecutor(1, 1, "test-y-");
+    CountDownLatch gate = new CountDownLatch(1);
+    try {
+      small.execute(null, () -> await(gate));
+      small.execute(null, () -> { });
+
+      assertThrows(RejectedExecutionException.class, () -> small.execute(null, () -> { }));
+    } finally {
+      gate.countDown();
+      small.shutdownNow();
+    }
+  }
+
+  /** Time spent queued is recorded once queued tasks start. */
+  @Test
+  void queueWait_isRecorded() throws Exception {
+    CountDownLatch gate = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    executor.execute(null, () -> await(gate));
+    executor.execute(null, done::countDown);
+
+    Thread.sleep(30);
+    gate.countDown();
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    assertThat(executor.maxQueueWaitMs()).isGreaterThanOrEqualTo(20);
+    assertThat(executor.averageQueueWaitMs()).isPositive();
+  }
+
+  /** Graceful shutdown lets queued work finish and then refuses new work. */
+  @Test
+  void shutdownAndAwait_drainsQueue_thenRejects() throws Exception {
+    CountDownLatch done = new CountDownLatch(2);
+    executor.execute(null, done::countDown);
+    executor.execute(null, done::countDown);
+
+    assertTrue(executor.shutdownAndAwait(2, TimeUnit.SECONDS));
+    assertThat(done.getCount()).isZero();
+    assertThrows(RejectedExecutionException.class, () -> executor.execute(null, () -> { }));
+  }
+
+  /** A non-positive concurrency falls back to the CPU-aware default. */
+  @Test
+  void zeroConcurrency_usesDefault() {
+    FairExtractionExecutor auto = new FairExtractionExecutor(0, 1, "test-z-");
+    try {
+      assertThat(auto.concurrency()).isEqualTo(FairExtractionExecutor.defaultConcurrency());
+    } finally {
+      auto.shutdownNow();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package dev.coms4156.project.metadetect.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.coms4156.project.metadetect.dto.Dtos;
+import dev.coms4156.project.metadetect.repository.IdempotencyKeyRepository;
+import dev.coms4156.project.metadetect.repository.IdempotencyKeyRepository.IdempotencyRecord;
+import dev.coms4156.project.metadetect.service.errors.IdempotencyKeyInFlightException;
+import dev.coms4156.project.metadetect.service.errors.IdempotencyKeyReusedException;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link IdempotencyService}.
+ * Strategy:
+ * - Mock the key table; script what a concurrent or earlier request left in it.
+ * - Count runs of the request to show when it is (not) executed.
+ */
+class IdempotencyServiceTest {
+
+  private final Instant fixedNow = Instant.parse("2025-01-01T00:00:00Z");
+  private final UUID userId = UUID.randomUUID();
+  private final String fingerprint = IdempotencyService.fingerprint("img-1");
+  private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+  private IdempotencyKeyRepository keys;
+  private UserService userService;
+  private IdempotencyService service;
+  private final AtomicInteger runs = new AtomicInteger();
+
+  @BeforeEach
+  void setUp() {
+    keys = mock(IdempotencyKeyRepository.class);
+    userService = mock(UserService.class);
+    when(userService.getCurrentUserIdOrThrow()).thenReturn(userId);
+    service = service(2000);
+  }
+
+  private IdempotencyService service(long waitMs) {
+    return new IdempotencyService(keys, userService, objectMapper,
+        Clock.fixed(fixedNow, ZoneOffset.UTC), 3600, waitMs, 60_000, 5);
+  }
+
+  private Dtos.AnalyzeStartResponse submit() {
+    runs.incrementAndGet();
+    return new Dtos.AnalyzeStartResponse("analysis-" + runs.get());
+  }
+
+  /** Without a key the request simply runs. */
+  @Test
+  void noKey_runsWithoutTouchingTable() {
+    Dtos.AnalyzeStartResponse out = service.execute("analyze", null, "img-1",
+        Dtos.AnalyzeStartResponse.class, this::submit);
+
+    assertThat(out.analysisId()).isEqualTo("analysis-1");
+    verifyNoInteractions(keys);
+  }
+
+  /** The first request with a key runs and stores its response. */
+  @Test
+  void firstRequest_runsAndStoresResponse() {
+    when(keys.tryBegin(userId, "analyze", "k", fingerprint, fixedNow, fixedNow.plusSeconds(3600)))
+        .thenReturn(true);
+    when(keys.complete(any(), anyString(), anyString(), any(), anyString())).thenReturn(true);
+
+    Dtos.AnalyzeStartResponse out = service.execute("analyze", "k", "img-1",
+        Dtos.AnalyzeStartResponse.class, this::submit);
+
+    assertThat(out.analysisId()).isEqualTo("analysis-1");
+    verify(keys).complete(userId, "analyze", "k", fixedNow, "{\"analysisId\":\"analysis-1\"}");
+    verify(keys, never()).release(any(), anyString(), anyString(), any());
+  }
+
+  /** A repeat of a finished request returns its response without running. */
+  @Test
+  void completedKey_replaysStoredResponse() {
+    when(keys.find(userId, "analyze", "k")).thenReturn(Optional.of(new IdempotencyRecord(
+        fingerprint, "{\"analysisId\":\"original\"}", fixedNow, fixedNow.plusSeconds(60))));
+
+    Dtos.AnalyzeStartResponse out = service.execute("analyze", "k", "img-1",
+        Dtos.AnalyzeStartResponse.class, this::submit);
+
+    assertThat(out.analysisId()).isEqualTo("original");
+    assertThat(runs).hasValue(0);
+  }
+
+  /** The same key for a different request is rejected. */
+  @Test
+  void differentRequest_isRejected() {
+    when(keys.find(userId, "analyze", "k")).thenReturn(Optional.of(new IdempotencyRecord(
+        IdempotencyService.fingerprint("img-2"), "{\"analysisId\":\"a\"}", fixedNow,
+        fixedNow.plusSeconds(60))));
+
+    assertThrows(IdempotencyKeyReusedException.class, () -> service.execute("analyze", "k",
+        "img-1", Dtos.AnalyzeStartResponse.class, this::submit));
+    assertThat(runs).hasValue(0);
+  }
+
+  /** A duplicate of a running request waits for it, then replays its response. */
+  @Test
+  void inFlightDuplicate_waitsForOriginal() {
+    IdempotencyRecord running = new IdempotencyRecord(fingerprint, null, fixedNow,
+        fixedNow.plusSeconds(60));
+    IdempotencyRecord finished = new IdempotencyRecord(fingerprint,
+        "{\"analysisId\":\"original\"}", fixedNow, fixedNow.plusSeconds(60));
+    when(keys.find(userId, "analyze", "k"))
+        .thenReturn(Optional.of(running), Optional.of(running), Optional.of(finished));
+
+    Dtos.AnalyzeStartResponse out = service.execute("analyze", "k", "img-1",
+        Dtos.AnalyzeStartResponse.class, this::submit);
+
+    assertThat(out.analysisId()).isEqualTo("original");
+    assertThat(runs).hasValue(0);
+  }
+
+  /** A duplicate gives up with 409 once the original outlasts the wait. */
+  @Test
+  void inFlightDuplicate_pastWait_throws() {
+    when(keys.find(userId, "analyze", "k")).thenReturn(Optional.of(
+        new IdempotencyRecord(fingerprint, null, fixedNow, fixedNow.plusSeconds(60))));
+
+    IdempotencyKeyInFlightException ex = assertThrows(IdempotencyKeyInFlightException.class,
+        () -> service(0).execute("analyze", "k", "img-1", Dtos.AnalyzeStartResponse.class,
+            this::submit));
+
+    assertThat(ex.getRetryAfterSeconds()).isEqualTo(IdempotencyService.RETRY_AFTER_SECONDS);
+    assertThat(runs).hasValue(0);
+  }
+
+  /** A failed request frees its key and its error reaches the caller. */
+  @Test
+  void failedRequest_releasesKey() {
+    when(keys.tryBegin(any(), anyString(), anyString(), anyString(), any(), any()))
+        .thenReturn(true);
+
+    assertThrows(IOException.class, () -> service.execute("upload", "k", "img-1",
+        Dtos.AnalyzeStartResponse.class, () -> {
+          throw new IOException("storage down");
+        }));
+
+    verify(keys).release(userId, "upload", "k", fixedNow);
+    verify(keys, never()).complete(any(), anyString(), anyString(), any(), anyString());
+  }
+
+  /** An expired or abandoned key is taken over and the request runs. */
+  @Test
+  void staleKey_isTakenOver() {
+    when(keys.takeOver(userId, "analyze", "k", fingerprint, fixedNow.minusMillis(60_000),
+        fixedNow, fixedNow.plusSeconds(3600))).thenReturn(true);
+
+    Dtos.AnalyzeStartResponse out = service.execute("analyze", "k", "img-1",
+        Dtos.AnalyzeStartResponse.class, this::submit);
+
+    assertThat(out.analysisId()).isEqualTo("analysis-1");
+    verify(keys, never()).find(any(), anyString(), anyString());
+  }
+
+  /** Empty, overlong and non-printable keys are client errors. */
+  @Test
+  void invalidKey_isRejected() {
+    for (String bad : new String[] {"", "x".repeat(256), "has space", "tab\t"}) {
+      assertThrows(IllegalArgumentException.class, () -> service.execute("analyze", bad,
+          "img-1", Dtos.AnalyzeStartResponse.class, this::submit));
+    }
+    verifyNoInteractions(keys);
+  }
+
+  /** Expired keys are purged in batches until none are left. */
+  @Test
+  void purgeExpired_loopsUntilShortBatch() {
+    when(keys.purgeExpired(eq(fixedNow), eq(1000))).thenReturn(1000, 3);
+
+    assertThat(service.purgeExpired()).isEqualTo(1003);
+  }
+}
@@ -0,0 +1,130 @@
+package dev.coms4156.project.metadetect.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import dev.coms4156.project.metadetect.service.errors.UnsupportedImageException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ImageIngest}: format sniffing, header-only
+ * dimensions, digesting while streaming and early rejection.
+ */
+class ImageIngestTest {
+
+  /** Minimal PNG: signature followed by an IHDR chunk (CRC not checked). */
+  static byte[] png(int width, int height) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.writeBytes(new byte[] {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A});
+    out.writeBytes(new byte[] {0, 0, 0, 13, 'I', 'H', 'D', 'R'});
+    out.writeBytes(be32(width));
+    out.writeBytes(be32(height));
+    out.writeBytes(new byte[] {8, 6, 0, 0, 0, 0, 0, 0, 0});
+    return out.toByteArray();
+  }
+
+  static String sha256Hex(byte[] data) throws Exception {
+    return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+  }
+
+  private static byte[] be32(int v) {
+    return new byte[] {(byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v};
+  }
+
+  @Test
+  void png_sniffsTypeAndDimensions_andDigestsWhileStreaming() throws Exception {
+    byte[] data = png(1920, 1080);
+
+    try (ImageIngest ingest = ImageIngest.open(new ByteArrayInputStream(data))) {
+      assertThat(ingest.contentType()).isEqualTo("image/png");
+      assertThat(ingest.readAllBytes()).isEqualTo(data);
+
+      ImageIngest.Content content = ingest.content();
+      assertThat(content.width()).isEqualTo(1920);
+      assertThat(content.height()).isEqualTo(1080);
+      assertThat(content.sizeBytes()).isEqualTo(data.length);
+      assertThat(content.sha256()).isEqualTo(sha256Hex(data));
+    }
+  }
+
+  @Test
+  void payloadLargerThanHead_isReplayedWhole() throws Exception {
+    byte[] data = new byte[ImageIngest.HEAD_BYTES * 3 + 17];
+    System.arraycopy(png(2, 3), 0, data, 0, png(2, 3).length);
+
+    try (ImageIngest ingest = ImageIngest.open(new ByteArrayInputStream(data))) {
+      ingest.transferTo(OutputStream.nullOutputStream());
+      assertThat(ingest.content().sizeBytes()).isEqualTo(data.length);
+      assertThat(ingest.content().sha256()).isEqualTo(sha256Hex(data));
+    }
+  }
+
+  @Test
+  void jpeg_readsDimensionsFromStartOfFrame() {
+    byte[] jpeg = {
+      (byte) 0xFF, (byte) 0xD8,
+      (byte) 0xFF, (byte) 0xE0, 0, 4, 0, 0,                     // APP0, 2 payload bytes
+      (byte) 0xFF, (byte) 0xC0, 0, 11, 8, 0x01, 0x2C, 0x02, 0x58, // SOF0 600x300
+      3, 0, 0, 0
+    };
+
+    ImageIngest.Sniffed sniffed = ImageIngest.sniff(jpeg);
+
+    assertThat(sniffed.contentType()).isEqualTo("image/jpeg");
+    assertThat(sniffed.width()).isEqualTo(600);
+    assertThat(sniffed.height()).isEqualTo(300);
+  }
+
+  @Test
+  void gif_readsLogicalScreenSize() {
+    byte[] gif = {'G', 'I', 'F', '8', '9', 'a', 0x40, 0x01, (byte) 0xF0, 0x00};
+
+    ImageIngest.Sniffed sniffed = ImageIngest.sniff(gif);
+
+    assertThat(sniffed.contentType()).isEqualTo("image/gif");
+    assertThat(sniffed.width()).isEqualTo(320);
+    assertThat(sniffed.height()).isEqualTo(240);
+  }
+
+  @Test
+  void fixtureImage_isRecognised() throws Exception {
+    byte[] data = Files.readAllBytes(Path.of("src/test/resources/mock-images/Spaghetti.png"));
+
+    ImageIngest.Sniffed sniffed = ImageIngest.sniff(data);
+
+    assertThat(sniffed.contentType()).isEqualTo("image/png");
+    assertThat(sniffed.width()).isPositive();
+    assertThat(sniffed.height()).isPositive();
+  }
+
+  @Test
+  void nonImage_isRejected_andSourceClosed() {
+    boolean[] closed = {false};
+    InputStream source = new ByteArrayInputStream("hello, world".getBytes()) {
+      @Override
+      public void close() {
+        closed[0] = true;
+      }
+    };
+
+    assertThatThrownBy(() -> ImageIngest.open(source))
+        .isInstanceOf(UnsupportedImageException.class);
+    assertThat(closed[0]).isTrue();
+  }
+
+  @Test
+  void content_beforeEndOfStream_throws() throws Exception {
+    try (ImageIngest ingest = ImageIngest.open(new ByteArrayInputStream(png(1, 1)))) {
+      ingest.read();
+      assertThatThrownBy(ingest::content).isInstanceOf(IllegalStateException.class);
+    }
+  }
+}
@@ -3,6 +3,8 @@ package dev.coms4156.project.metadetect.service;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
@@ -13,26 +15,36 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import dev.coms4156.project.metadetect.db.RlsContext;
+import dev.coms4156.project.metadetect.model.AnalysisReport.ReportStatus;
+import dev.coms4156.project.metadetect.model.AnalysisSummary;
 import dev.coms4156.project.metadetect.model.Image;
+import dev.coms4156.project.metadetect.repository.BlobRepository;
+import dev.coms4156.project.metadetect.repository.ImageListingRepository;
 import dev.coms4156.project.metadetect.repository.ImageRepository;
 import dev.coms4156.project.metadetect.service.SupabaseStorageService;
 import dev.coms4156.project.metadetect.service.errors.ForbiddenException;
 import dev.coms4156.project.metadetect.service.errors.NotFoundException;
+import dev.coms4156.project.metadetect.service.errors.UnsupportedImageException;
+import dev.coms4156.project.metadetect.service.errors.UploadIncompleteException;
 import java.io.IOException;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.UUID;
 import java.util.function.Supplier;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.web.multipart.MultipartFile;
 
 /**
@@ -50,10 +62,12 @@ import org.springframework.web.multipart.MultipartFile;
 class ImageServiceTest {
 
   @Mock private ImageRepository repo;
+  @Mock private ImageListingRepository listing;
+  @Mock private BlobRepository blobs;
   @Mock private RlsContext rls;
   @Mock private SupabaseStorageService storage;
 
-  @InjectMocks private ImageService service;
+  private ImageService service;
 
   private UUID ownerId;
   private UUID otherUserId;
@@ -64,6 +78,8 @@ class ImageServiceTest {
     ownerId = UUID.randomUUID();
     otherUserId = UUID.randomUUID();
     imageId = UUID.randomUUID();
+    service = new ImageService(repo, listing, blobs, rls, storage,
+        TransactionOperations.withoutTransaction());
 
     // Make RLS helpers simply run provided work in tests.
     when(rls.asUser(any(UUID.class), any(Supplier.class)))
@@ -101,6 +117,14 @@ class ImageServiceTest {
     return out;
   }
 
+  /** Storage stub that reads the upload to the end, as the real client does. */
+  private static boolean drain(org.mockito.invocation.InvocationOnMock inv) throws IOException {
+    try (java.io.InputStream in = ((InputStreamSource) inv.getArgument(0)).getInputStream()) {
+      in.transferTo(java.io.OutputStream.nullOutputStream());
+    }
+    return true;
+  }
+
   // ---- CREATE ---------------------------------------------------------------
 
   /**
@@ -168,25 +192,136 @@ class ImageServiceTest {
 
   // ---- LIST ----------------------------------------------------------------
 
-  /** listByOwner(): uses repository sorted query and returns all within page. */
+  /** Image with a DB-assigned upload time, as the keyset queries return it. */
+  private static Image uploadedAt(UUID userId, String instant) {
+    Image img = newImage(userId);
+    ReflectionTestUtils.setField(img, "uploadedAt",
+        java.time.OffsetDateTime.parse(instant));
+    return img;
+  }
+
+  /** getOwnedByIds(): one owner-scoped query, results keyed by id. */
   @Test
-  void listByOwner_usesSortedQuery() {
+  void getOwnedByIds_returnsOwnedImagesById() {
+    Image a = newImage(ownerId);
+    UUID missing = UUID.randomUUID();
+    when(repo.findAllByUserIdAndIdIn(ownerId, List.of(a.getId(), missing)))
+        .thenReturn(List.of(a));
+
+    var out = service.getOwnedByIds(ownerId, List.of(a.getId(), missing));
+
+    assertThat(out).containsOnlyKeys(a.getId());
+    assertThat(out.get(a.getId())).isSameAs(a);
+    verify(rls).asUser(eq(ownerId), any(Supplier.class));
+  }
+
+  /** getOwnedByIds(): nothing to look up -> no query. */
+  @Test
+  void getOwnedByIds_empty_skipsQuery() {
+    assertThat(service.getOwnedByIds(ownerId, List.of())).isEmpty();
+    verify(repo, never()).findAllByUserIdAndIdIn(any(), any());
+  }
+
+  /** listByOwner(): last page -> all rows, no next cursor. */
+  @Test
+  void listByOwner_lastPage_hasNoNextCursor() {
     Image a = newImage(ownerId);
     Image b = newImage(ownerId);
-    when(repo.findAllByUserIdOrderByUploadedAtDesc(ownerId)).thenReturn(List.of(a, b));
+    when(repo.findFirstPageByUserId(ownerId, 6)).thenReturn(List.of(a, b));
 
-    List<Image> out = service.listByOwner(ownerId, 0, 5);
+    ImageService.ImagePage out = service.listByOwner(ownerId, null, 5);
 
-    assertThat(out).containsExactly(a, b);
-    verify(repo).findAllByUserIdOrderByUploadedAtDesc(ownerId);
+    assertThat(out.items()).containsExactly(a, b);
+    assertThat(out.nextCursor()).isNull();
+  }
+
+  /**
+   * listByOwner(): a full page returns a cursor for its last row, and that
+   * cursor seeks the next page from exactly that (uploaded_at, id).
+   */
+  @Test
+  void listByOwner_fullPage_cursorSeeksPastLastRow() {
+    Image a = uploadedAt(ownerId, "2025-03-01T10:00:00.123456Z");
+    Image b = uploadedAt(ownerId, "2025-03-01T09:00:00Z");
+    Image c = uploadedAt(ownerId, "2025-03-01T08:00:00Z");
+    when(repo.findFirstPageByUserId(ownerId, 3)).thenReturn(List.of(a, b, c));
+
+    ImageService.ImagePage first = service.listByOwner(ownerId, null, 2);
+
+    assertThat(first.items()).containsExactly(a, b);
+    assertThat(first.nextCursor()).isNotBlank();
+
+    when(repo.findPageByUserIdAfter(ownerId, b.getUploadedAt(), b.getId(), 3))
+        .thenReturn(List.of(c));
+
+    ImageService.ImagePage second = service.listByOwner(ownerId, first.nextCursor(), 2);
+
+    assertThat(second.items()).containsExactly(c);
+    assertThat(second.nextCursor()).isNull();
+  }
+
+  /** listByOwner(): page size is capped at MAX_PAGE_SIZE. */
+  @Test
+  void listByOwner_oversizedPage_isCapped() {
+    when(repo.findFirstPageByUserId(ownerId, ImageService.MAX_PAGE_SIZE + 1))
+        .thenReturn(List.of());
+
+    service.listByOwner(ownerId, null, 10_000);
+
+    verify(repo).findFirstPageByUserId(ownerId, ImageService.MAX_PAGE_SIZE + 1);
   }
 
   /** listByOwner(): invalid args -> IllegalArgumentException. */
   @Test
   void listByOwner_invalidArgs_throwIllegalArgument() {
-    assertThatThrownBy(() -> service.listByOwner(ownerId, -1, 5))
+    assertThatThrownBy(() -> service.listByOwner(ownerId, null, 0))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> service.listByOwner(ownerId, "not-a-cursor!", 5))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  /**
+   * listByOwnerWithLatestAnalysis(): one listing query; summaries keyed by
+   * image id, images never analyzed have no entry, the probe row is dropped.
+   */
+  @Test
+  void listWithLatestAnalysis_mapsSummariesAndPages() {
+    Image a = uploadedAt(ownerId, "2025-03-01T10:00:00Z");
+    Image b = uploadedAt(ownerId, "2025-03-01T09:00:00Z");
+    Image c = uploadedAt(ownerId, "2025-03-01T08:00:00Z");
+    AnalysisSummary done = new AnalysisSummary(UUID.randomUUID(), a.getId(),
+        ReportStatus.DONE, 0.9, Instant.parse("2025-03-02T00:00:00Z"),
+        Instant.parse("2025-03-02T00:00:05Z"));
+    when(listing.findPage(ownerId, null, null, 3)).thenReturn(List.of(
+        new ImageListingRepository.Row(a, done),
+        new ImageListingRepository.Row(b, null),
+        new ImageListingRepository.Row(c, null)));
+
+    ImageService.ImagePage out = service.listByOwnerWithLatestAnalysis(ownerId, null, 2);
+
+    assertThat(out.items()).containsExactly(a, b);
+    assertThat(out.latestAnalyses()).containsOnlyKeys(a.getId());
+    assertThat(out.latestAnalyses().get(a.getId())).isEqualTo(done);
+    assertThat(out.nextCursor()).isNotBlank();
+    verify(repo, never()).findFirstPageByUserId(any(), anyInt());
+
+    when(listing.findPage(ownerId, b.getUploadedAt(), b.getId(), 3))
+        .thenReturn(List.of(new ImageListingRepository.Row(c, null)));
+
+    ImageService.ImagePage next =
+        service.listByOwnerWithLatestAnalysis(ownerId, out.nextCursor(), 2);
+
+    assertThat(next.items()).containsExactly(c);
+    assertThat(next.latestAnalyses()).isEmpty();
+    assertThat(next.nextCursor()).isNull();
+  }
+
+  /** listByOwnerWithLatestAnalysis(): same argument validation as listByOwner. */
+  @Test
+  void listWithLatestAnalysis_invalidArgs_throwIllegalArgument() {
+    assertThatThrownBy(() -> service.listByOwnerWithLatestAnalysis(ownerId, null, -1))
         .isInstanceOf(IllegalArgumentException.class);
-    assertThatThrownBy(() -> service.listByOwner(ownerId, 0, 0))
+    assertThatThrownBy(() -> service.listByOwnerWithLatestAnalysis(ownerId, "%%%", 5))
         .isInstanceOf(IllegalArgumentException.class);
   }
 
@@ -287,103 +422,181 @@ class ImageServiceTest {
 
   // ---- NEW BRANCH COVERAGE: upload / signed URL / purge --------------------
 
-  /**
-   * upload(): creates row, uploads bytes, then updates row with storage path.
-   * Verifies storage key structure and save sequence.
-   */
-  @Test
-  void upload_happyPath_setsStoragePathAndSaves() throws Exception {
-    UUID newId = UUID.randomUUID();
-
-    // First save creates row; mimic DB id assignment when id is null.
+  /** Save stub that echoes content facts and assigns an id to new rows. */
+  private void echoSavesWithContent(UUID newId) {
     when(repo.save(any(Image.class))).thenAnswer(inv -> {
       Image in = inv.getArgument(0);
-      Image out = new Image();
+      Image out = dbEchoSave(in);
       out.setId(in.getId() == null ? newId : in.getId());
-      out.setUserId(in.getUserId());
-      out.setFilename(in.getFilename());
-      out.setStoragePath(in.getStoragePath());
-      out.setLabels(in.getLabels());
-      out.setNote(in.getNote());
+      out.setContentSha256(in.getContentSha256());
+      out.setContentType(in.getContentType());
+      out.setWidth(in.getWidth());
+      out.setHeight(in.getHeight());
+      out.setSizeBytes(in.getSizeBytes());
       return out;
     });
+  }
 
-    // findById used by update() to re-load and persist new storage path.
-    Image found = new Image();
-    found.setId(newId);
-    found.setUserId(ownerId);
-    found.setFilename("pic.png");
-    when(repo.findById(newId)).thenReturn(Optional.of(found));
+  /**
+   * upload(): new content is uploaded to its content-addressed key, then a
+   * single row is saved pointing at it with the content facts.
+   */
+  @Test
+  void upload_newContent_uploadsBlobAndSavesRow() throws Exception {
+    UUID newId = UUID.randomUUID();
+    echoSavesWithContent(newId);
 
-    when(storage.uploadObject(any(byte[].class), eq("image/png"),
-      anyString(), eq("jwt"))).thenReturn("ok");
+    byte[] png = ImageIngestTest.png(640, 480);
+    String sha = ImageIngestTest.sha256Hex(png);
+    String expectedKey = "blobs/" + sha + ".png";
+    when(blobs.acquire(sha, expectedKey, png.length)).thenReturn(true);
+    when(storage.putBlob(any(InputStreamSource.class), eq((long) png.length),
+        eq("image/png"), anyString())).thenAnswer(ImageServiceTest::drain);
 
     MultipartFile file = new org.springframework.mock.web.MockMultipartFile(
-        "file", "pic.png", "image/png", "DATA".getBytes());
+        "file", "pic.png", "image/png", png);
 
-    Image result = service.upload(ownerId, "jwt", file);
+    Image result = service.upload(ownerId, file);
 
-    String expectedKey = ownerId + "/" + newId + "--pic.png";
     assertThat(result.getId()).isEqualTo(newId);
     assertThat(result.getUserId()).isEqualTo(ownerId);
     assertThat(result.getFilename()).isEqualTo("pic.png");
     assertThat(result.getStoragePath()).isEqualTo(expectedKey);
+    assertThat(result.getContentType()).isEqualTo("image/png");
+    assertThat(result.getWidth()).isEqualTo(640);
+    assertThat(result.getHeight()).isEqualTo(480);
+    assertThat(result.getSizeBytes()).isEqualTo(png.length);
+    assertThat(result.getContentSha256()).isEqualTo(sha);
+
+    verify(blobs).lock(sha);
+    verify(storage).putBlob(eq(file), eq((long) png.length),
+        eq("image/png"), eq(expectedKey));
+    verify(blobs).markStored(sha);
+    verify(blobs, never()).release(anyString());
+    verify(repo, org.mockito.Mockito.times(1)).save(any(Image.class));
+  }
 
-    verify(storage).uploadObject(any(byte[].class), eq("image/png"),
-        eq(expectedKey), eq("jwt"));
+  /** upload(): bytes already stored become a metadata-only insert, no PUT. */
+  @Test
+  void upload_duplicateContent_skipsStoragePut() throws Exception {
+    UUID newId = UUID.randomUUID();
+    echoSavesWithContent(newId);
 
-    // Two saves: create (no storage path) then update (with storage path).
-    ArgumentCaptor<Image> saveCap = ArgumentCaptor.forClass(Image.class);
-    verify(repo, org.mockito.Mockito.times(2)).save(saveCap.capture());
+    byte[] png = ImageIngestTest.png(8, 8);
+    String sha = ImageIngestTest.sha256Hex(png);
+    when(blobs.acquire(eq(sha), anyString(), anyLong())).thenReturn(false);
 
-    List<Image> saves = saveCap.getAllValues();
-    Image first = saves.get(0);
-    Image second = saves.get(1);
+    MultipartFile file = new org.springframework.mock.web.MockMultipartFile(
+        "file", "copy.png", "image/png", png);
 
-    assertThat(first.getUserId()).isEqualTo(ownerId);
-    assertThat(first.getFilename()).isEqualTo("pic.png");
-    assertThat(first.getStoragePath()).isNull();
+    Image result = service.upload(ownerId, file);
 
-    assertThat(second.getUserId()).isEqualTo(ownerId);
-    assertThat(second.getFilename()).isEqualTo("pic.png");
-    assertThat(second.getStoragePath()).isEqualTo(expectedKey);
+    assertThat(result.getStoragePath()).isEqualTo("blobs/" + sha + ".png");
+    assertThat(result.getFilename()).isEqualTo("copy.png");
+    verify(storage, never()).putBlob(any(), anyLong(), anyString(), anyString());
   }
 
-  /** upload(): null content type falls back to application/octet-stream. */
+  /**
+   * upload(): a second user uploading bytes that are already stored only
+   * adds a reference; the existing blob is never rewritten, and no write
+   * under blobs/ is made with the caller's token.
+   */
   @Test
-  void upload_nullContentType_defaultsToOctetStream() throws Exception {
-    UUID newId = UUID.randomUUID();
+  void upload_secondUserSameContent_cannotReplaceBlob() throws Exception {
+    echoSavesWithContent(UUID.randomUUID());
+    byte[] png = ImageIngestTest.png(8, 8);
+    String sha = ImageIngestTest.sha256Hex(png);
+    when(blobs.acquire(eq(sha), anyString(), anyLong())).thenReturn(true, false);
+    when(storage.putBlob(any(InputStreamSource.class), anyLong(), anyString(), anyString()))
+        .thenAnswer(ImageServiceTest::drain);
+
+    service.upload(ownerId, new org.springframework.mock.web.MockMultipartFile(
+        "file", "a.png", "image/png", png));
+    Image second = service.upload(otherUserId, new org.springframework.mock.web.MockMultipartFile(
+        "file", "b.png", "image/png", png));
+
+    assertThat(second.getStoragePath()).isEqualTo("blobs/" + sha + ".png");
+    verify(storage, org.mockito.Mockito.times(1))
+        .putBlob(any(), anyLong(), anyString(), eq("blobs/" + sha + ".png"));
+    verify(storage, never()).uploadObject(any(), anyLong(), anyString(), anyString(),
+        anyString());
+  }
 
-    when(repo.save(any(Image.class))).thenAnswer(inv -> {
-      Image in = inv.getArgument(0);
-      Image out = dbEchoSave(in);
-      if (in.getId() == null) {
-        out.setId(newId);
-      }
-      return out;
-    });
+  /**
+   * upload(): a failed PUT releases the reference it took and, as the last
+   * one, deletes whatever the blob key holds.
+   */
+  @Test
+  void upload_storageFails_releasesReferenceAndDeletesObject() throws Exception {
+    byte[] png = ImageIngestTest.png(8, 8);
+    String sha = ImageIngestTest.sha256Hex(png);
+    when(blobs.acquire(eq(sha), anyString(), anyLong())).thenReturn(true);
+    when(blobs.release(sha)).thenReturn(true);
+    when(storage.putBlob(any(InputStreamSource.class), anyLong(), anyString(), anyString()))
+        .thenThrow(new RuntimeException("Supabase upload failed: 503"));
+
+    assertThatThrownBy(() -> service.upload(ownerId,
+        new org.springframework.mock.web.MockMultipartFile("file", "a.png", "image/png", png)))
+        .hasMessageContaining("503");
+
+    verify(blobs, never()).markStored(anyString());
+    verify(blobs, org.mockito.Mockito.times(2)).lock(sha);
+    verify(storage).deleteBlob("blobs/" + sha + ".png");
+    verify(repo, never()).save(any());
+  }
+
+  /** upload(): a failed row insert keeps an object other images still reference. */
+  @Test
+  void upload_saveFails_releasesReferenceOnly() throws Exception {
+    byte[] png = ImageIngestTest.png(8, 8);
+    String sha = ImageIngestTest.sha256Hex(png);
+    when(blobs.acquire(eq(sha), anyString(), anyLong())).thenReturn(false);
+    when(blobs.release(sha)).thenReturn(false);
+    when(repo.save(any(Image.class))).thenThrow(new IllegalStateException("db down"));
+
+    assertThatThrownBy(() -> service.upload(ownerId,
+        new org.springframework.mock.web.MockMultipartFile("file", "a.png", "image/png", png)))
+        .isInstanceOf(IllegalStateException.class);
+
+    verify(blobs).release(sha);
+    verify(storage, never()).deleteBlob(anyString());
+  }
 
-    Image found = new Image();
-    found.setId(newId);
-    found.setUserId(ownerId);
-    found.setFilename("pic.bin");
-    when(repo.findById(newId)).thenReturn(Optional.of(found));
+  /** upload(): the sniffed format is stored, not the client's declared type. */
+  @Test
+  void upload_declaredContentTypeIgnored_usesSniffedType() throws Exception {
+    echoSavesWithContent(UUID.randomUUID());
+    when(blobs.acquire(anyString(), anyString(), anyLong())).thenReturn(true);
 
     ArgumentCaptor<String> contentTypeCap = ArgumentCaptor.forClass(String.class);
-    when(storage.uploadObject(any(byte[].class),
-      contentTypeCap.capture(), anyString(), anyString()))
-        .thenReturn("ok");
+    when(storage.putBlob(any(InputStreamSource.class), anyLong(),
+      contentTypeCap.capture(), anyString()))
+        .thenAnswer(ImageServiceTest::drain);
+
+    MultipartFile file = new org.springframework.mock.web.MockMultipartFile(
+        "file", "pic.bin", MediaType.APPLICATION_OCTET_STREAM_VALUE,
+        ImageIngestTest.png(1, 1));
+
+    service.upload(ownerId, file);
+
+    assertThat(contentTypeCap.getValue()).isEqualTo("image/png");
+  }
 
+  /** upload(): non-image bytes are rejected before any DB or storage write. */
+  @Test
+  void upload_notAnImage_rejectedBeforeAnyWrite() {
     MultipartFile file = new org.springframework.mock.web.MockMultipartFile(
-        "file", "pic.bin", null, "DATA".getBytes());
+        "file", "pic.png", "image/png", "DATA".getBytes());
 
-    service.upload(ownerId, "jwt", file);
+    assertThatThrownBy(() -> service.upload(ownerId, file))
+        .isInstanceOf(UnsupportedImageException.class);
 
-    assertThat(contentTypeCap.getValue())
-        .isEqualTo(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    verify(repo, never()).save(any());
+    verify(blobs, never()).acquire(anyString(), anyString(), anyLong());
+    verify(storage, never()).putBlob(any(), anyLong(), anyString(), anyString());
   }
 
-  /** upload(): propagates IOException from MultipartFile.getBytes(). */
+  /** upload(): propagates IOException from reading the multipart stream. */
   @Test
   void upload_fileBytesThrowIoException_bubblesUp() throws Exception {
     UUID newId = UUID.randomUUID();
@@ -399,9 +612,14 @@ class ImageServiceTest {
     MultipartFile bad = org.mockito.Mockito.mock(MultipartFile.class);
     when(bad.getOriginalFilename()).thenReturn("x.png");
     when(bad.getContentType()).thenReturn("image/png");
-    when(bad.getBytes()).thenThrow(new IOException("read fail"));
-
-    assertThatThrownBy(() -> service.upload(ownerId, "jwt", bad))
+    when(bad.getInputStream()).thenThrow(new IOException("read fail"));
+    when(storage.putBlob(any(InputStreamSource.class), anyLong(), anyString(), anyString()))
+        .thenAnswer(inv -> {
+          ((InputStreamSource) inv.getArgument(0)).getInputStream();
+          return true;
+        });
+
+    assertThatThrownBy(() -> service.upload(ownerId, bad))
         .isInstanceOf(IOException.class);
   }
 
@@ -438,6 +656,44 @@ class ImageServiceTest {
     verify(repo).deleteById(imageId);
   }
 
+  /** deleteAndPurge(): shared blob with references left -> keep the object. */
+  @Test
+  void deleteAndPurge_sharedBlob_keepsObjectWhileReferenced() {
+    Image img = new Image();
+    img.setId(imageId);
+    img.setUserId(ownerId);
+    img.setFilename("f.png");
+    img.setContentSha256("abc");
+    img.setStoragePath("blobs/abc.png");
+    when(repo.findById(imageId)).thenReturn(Optional.of(img));
+    when(blobs.release("abc")).thenReturn(false);
+
+    service.deleteAndPurge(ownerId, "jwt", imageId);
+
+    verify(blobs).lock("abc");
+    verify(storage, never()).deleteBlob(anyString());
+    verify(repo).deleteById(imageId);
+  }
+
+  /** deleteAndPurge(): last reference to a blob -> delete the object too. */
+  @Test
+  void deleteAndPurge_lastBlobReference_deletesObject() {
+    Image img = new Image();
+    img.setId(imageId);
+    img.setUserId(ownerId);
+    img.setFilename("f.png");
+    img.setContentSha256("abc");
+    img.setStoragePath("blobs/abc.png");
+    when(repo.findById(imageId)).thenReturn(Optional.of(img));
+    when(blobs.release("abc")).thenReturn(true);
+
+    service.deleteAndPurge(ownerId, "jwt", imageId);
+
+    verify(storage).deleteBlob("blobs/abc.png");
+    verify(storage, never()).deleteObject(anyString(), anyString());
+    verify(repo).deleteById(imageId);
+  }
+
   /** deleteAndPurge(): blank storage path -> skip storage delete, remove DB row. */
   @Test
   void deleteAndPurge_noStoragePath_skipsStorageDelete() {
@@ -552,4 +808,77 @@ class ImageServiceTest {
     verify(storage, never()).deleteObject(anyString(), anyString());
     verify(repo).deleteById(imageId);
   }
+
+  // ---- DIRECT UPLOADS -------------------------------------------------------
+
+  /** createUploadIntent(): creates the row without a path and signs its canonical key. */
+  @Test
+  void createUploadIntent_createsRowAndSignsCanonicalKey() throws Exception {
+    UUID newId = UUID.randomUUID();
+    when(repo.save(any(Image.class))).thenAnswer(inv -> {
+      Image img = dbEchoSave(inv.getArgument(0));
+      img.setId(newId);
+      return img;
+    });
+    String key = ownerId + "/" + newId + "--a_b.png";
+    when(storage.createSignedUploadUrl(key, "jwt")).thenReturn("https://signed/upload");
+
+    ImageService.UploadIntent intent = service.createUploadIntent(ownerId, "jwt", "a/b.png");
+
+    assertThat(intent.uploadUrl()).isEqualTo("https://signed/upload");
+    assertThat(intent.image().getId()).isEqualTo(newId);
+    assertThat(intent.image().getStoragePath()).isNull();
+    verify(storage, never()).putBlob(any(), anyLong(), anyString(), anyString());
+  }
+
+  /** createUploadIntent(): a blank filename is rejected before anything is created. */
+  @Test
+  void createUploadIntent_blankFilename_throwsIllegalArgument() {
+    assertThatThrownBy(() -> service.createUploadIntent(ownerId, "jwt", " "))
+        .isInstanceOf(IllegalArgumentException.class);
+    verify(repo, never()).save(any(Image.class));
+  }
+
+  /** commitUpload(): object present in storage -> storage path recorded. */
+  @Test
+  void commitUpload_objectPresent_recordsStoragePath() {
+    Image img = newImage(ownerId);
+    img.setId(imageId);
+    img.setFilename("pic.png");
+    img.setStoragePath(null);
+    when(repo.findById(imageId)).thenReturn(Optional.of(img));
+    when(repo.save(any(Image.class))).thenAnswer(inv -> inv.getArgument(0));
+    String key = ownerId + "/" + imageId + "--pic.png";
+    when(storage.objectSize(key, "jwt")).thenReturn(OptionalLong.of(1234));
+
+    Image out = service.commitUpload(ownerId, "jwt", imageId);
+
+    assertThat(out.getStoragePath()).isEqualTo(key);
+  }
+
+  /** commitUpload(): nothing uploaded yet -> UploadIncompleteException, row untouched. */
+  @Test
+  void commitUpload_objectMissing_throwsUploadIncomplete() {
+    Image img = newImage(ownerId);
+    img.setId(imageId);
+    img.setStoragePath(null);
+    when(repo.findById(imageId)).thenReturn(Optional.of(img));
+    when(storage.objectSize(anyString(), eq("jwt"))).thenReturn(OptionalLong.empty());
+
+    assertThatThrownBy(() -> service.commitUpload(ownerId, "jwt", imageId))
+        .isInstanceOf(UploadIncompleteException.class);
+    verify(repo, never()).save(any(Image.class));
+  }
+
+  /** commitUpload(): already committed -> returned as is, storage not consulted. */
+  @Test
+  void commitUpload_alreadyCommitted_isNoOp() {
+    Image img = newImage(ownerId);
+    when(repo.findById(imageId)).thenReturn(Optional.of(img));
+
+    Image out = service.commitUpload(ownerId, "jwt", imageId);
+
+    assertThat(out).isSameAs(img);
+    verify(storage, never()).objectSize(anyString(), anyString());
+  }
 }
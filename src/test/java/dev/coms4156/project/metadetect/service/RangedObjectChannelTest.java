@@ -0,0 +1,116 @@
+package dev.coms4156.project.metadetect.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import dev.coms4156.project.metadetect.c2pa.JumbfManifestReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link RangedObjectChannel}: block fetching, caching,
+ * size discovery and the fetch budget.
+ */
+class RangedObjectChannelTest {
+
+  private final List<Long> requested = new ArrayList<>();
+
+  /** Fetcher over an in-memory object that records requested offsets. */
+  private RangedObjectChannel.RangeFetcher over(byte[] object, boolean reportTotal) {
+    return (offset, length) -> {
+      requested.add(offset);
+      int from = (int) Math.min(offset, object.length);
+      int to = (int) Math.min(offset + length, object.length);
+      return new SupabaseStorageService.RangedBytes(
+          Arrays.copyOfRange(object, from, to), reportTotal ? object.length : -1);
+    };
+  }
+
+  private static byte[] sequence(int n) {
+    byte[] b = new byte[n];
+    for (int i = 0; i < n; i++) {
+      b[i] = (byte) i;
+    }
+    return b;
+  }
+
+  @Test
+  void readsAcrossBlocks_andServesRepeatsFromCache() throws Exception {
+    RangedObjectChannel ch = new RangedObjectChannel(over(sequence(100), true), 16, 8, 1000);
+
+    ByteBuffer buf = ByteBuffer.allocate(20);
+    ch.position(10);
+    while (buf.hasRemaining()) {
+      ch.read(buf);
+    }
+    assertThat(buf.array()[0]).isEqualTo((byte) 10);
+    assertThat(buf.array()[19]).isEqualTo((byte) 29);
+
+    ch.position(12);
+    ch.read(ByteBuffer.allocate(4));
+    assertThat(requested).containsExactly(0L, 16L);
+    assertThat(ch.size()).isEqualTo(100);
+  }
+
+  @Test
+  void learnsSizeFromShortBlock_whenTotalNotReported() throws Exception {
+    RangedObjectChannel ch = new RangedObjectChannel(over(sequence(40), false), 32, 4, 1000);
+
+    assertThat(ch.size()).isEqualTo(Long.MAX_VALUE);
+    ch.position(32);
+    assertThat(ch.read(ByteBuffer.allocate(32))).isEqualTo(8);
+    assertThat(ch.size()).isEqualTo(40);
+    assertThat(ch.read(ByteBuffer.allocate(1))).isEqualTo(-1);
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedBlocks() throws Exception {
+    RangedObjectChannel ch = new RangedObjectChannel(over(sequence(64), true), 16, 2, 1000);
+
+    for (long p : new long[] {0, 16, 32, 0}) {
+      ch.position(p);
+      ch.read(ByteBuffer.allocate(1));
+    }
+    assertThat(requested).containsExactly(0L, 16L, 32L, 0L);
+  }
+
+  @Test
+  void failsOnceBudgetIsSpent() throws Exception {
+    RangedObjectChannel ch = new RangedObjectChannel(over(sequence(100), true), 16, 8, 32);
+
+    ch.read(ByteBuffer.allocate(16));
+    ch.read(ByteBuffer.allocate(16));
+    assertThatThrownBy(() -> ch.read(ByteBuffer.allocate(16)))
+        .isInstanceOf(RangedObjectChannel.RangeBudgetExceededException.class);
+  }
+
+  @Test
+  void manifestExtraction_readsOnlyHeaderWindows() throws Exception {
+    byte[] png = Files.readAllBytes(Path.of("src/test/resources/mock-images/Spaghetti.png"));
+    RangedObjectChannel ch = new RangedObjectChannel(over(png, true), 64 * 1024, 16, 1 << 20);
+
+    String report = new JumbfManifestReader().extractManifest(ch);
+
+    assertThat(report).contains("\"active_manifest\"");
+    assertThat(ch.fetchedBytes()).isLessThan(png.length / 8);
+  }
+
+  @Test
+  void manifestExtraction_largeStore_stopsAtBudget() throws Exception {
+    byte[] png = new byte[2 * 1024 * 1024];
+    ByteBuffer.wrap(png)
+        .put(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'})
+        .putInt(png.length - 20).put("caBX".getBytes(StandardCharsets.US_ASCII));
+    RangedObjectChannel ch = new RangedObjectChannel(over(png, true), 64 * 1024, 16, 256 * 1024);
+
+    assertThatThrownBy(() -> new JumbfManifestReader().extractManifest(ch))
+        .isInstanceOf(RangedObjectChannel.RangeBudgetExceededException.class);
+    assertThat(ch.fetchedBytes()).isLessThanOrEqualTo(256 * 1024);
+  }
+}
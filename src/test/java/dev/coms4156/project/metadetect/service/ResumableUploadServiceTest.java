@@ -0,0 +1,154 @@
+package dev.coms4156.project.metadetect.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import dev.coms4156.project.metadetect.model.Image;
+import dev.coms4156.project.metadetect.model.UploadSession;
+import dev.coms4156.project.metadetect.repository.UploadSessionRepository;
+import dev.coms4156.project.metadetect.service.errors.UploadOffsetConflictException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+/**
+ * Unit tests for {@link ResumableUploadService}: session creation, offset
+ * bookkeeping, conflict handling and the final storage_path commit.
+ */
+class ResumableUploadServiceTest {
+
+  private static final String UPSTREAM = "https://x.supabase.co/storage/v1/upload/resumable/abc";
+
+  private UploadSessionRepository sessions;
+  private ImageService images;
+  private SupabaseStorageService storage;
+  private ResumableUploadService service;
+
+  private UUID userId;
+  private UUID imageId;
+  private UUID uploadId;
+  private String key;
+
+  @BeforeEach
+  void setUp() {
+    sessions = mock(UploadSessionRepository.class);
+    images = mock(ImageService.class);
+    storage = mock(SupabaseStorageService.class);
+    Clock clock = Clock.fixed(Instant.parse("2025-01-01T00:00:00Z"), ZoneOffset.UTC);
+    service = new ResumableUploadService(sessions, images, storage, clock);
+
+    userId = UUID.randomUUID();
+    imageId = UUID.randomUUID();
+    uploadId = UUID.randomUUID();
+    key = ImageService.storageKey(userId, imageId, "movie.png");
+  }
+
+  private UploadSession session(long offset, Instant completedAt) {
+    return new UploadSession(uploadId, imageId, userId, key, UPSTREAM, 10, offset, completedAt);
+  }
+
+  private static InputStream bytes(int n) {
+    return new ByteArrayInputStream(new byte[n]);
+  }
+
+  @Test
+  void create_opensUpstreamUploadForImageKey() {
+    Image img = new Image();
+    img.setId(imageId);
+    img.setFilename("movie.png");
+    when(images.create(eq(userId), eq("movie.png"), isNull(), isNull(), isNull())).thenReturn(img);
+    when(storage.createResumableUpload(key, 10, "image/png", "jwt")).thenReturn(UPSTREAM);
+    when(sessions.create(eq(imageId), eq(userId), eq(key), eq(UPSTREAM), eq(10L), any()))
+        .thenReturn(session(0, null));
+
+    UploadSession s = service.create(userId, "jwt", 10, "movie.png", "image/png");
+
+    assertThat(s.uploadOffset()).isZero();
+    assertThat(s.storagePath()).isEqualTo(key);
+  }
+
+  @Test
+  void create_nonPositiveLength_rejected() {
+    assertThatThrownBy(() -> service.create(userId, "jwt", 0, "a.png", null))
+        .isInstanceOf(IllegalArgumentException.class);
+    verify(images, never()).create(any(), anyString(), any(), any(), any());
+  }
+
+  @Test
+  void append_advancesPersistedOffset() throws Exception {
+    when(sessions.findForUser(uploadId, userId))
+        .thenReturn(Optional.of(session(0, null)), Optional.of(session(4, null)));
+    when(storage.appendResumable(eq(UPSTREAM), eq(0L), any(), eq(4L), eq("jwt"))).thenReturn(4L);
+    when(sessions.advanceOffset(eq(uploadId), eq(0L), eq(4L), any())).thenReturn(true);
+
+    UploadSession s = service.append(userId, "jwt", uploadId, 0, 4, bytes(4));
+
+    assertThat(s.uploadOffset()).isEqualTo(4);
+    verify(images, never()).update(any(), any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void append_lastChunk_commitsStoragePath() throws Exception {
+    when(sessions.findForUser(uploadId, userId)).thenReturn(
+        Optional.of(session(6, null)),
+        Optional.of(session(10, null)),
+        Optional.of(session(10, Instant.EPOCH)));
+    when(storage.appendResumable(eq(UPSTREAM), eq(6L), any(), eq(4L), eq("jwt"))).thenReturn(10L);
+    when(sessions.advanceOffset(eq(uploadId), eq(6L), eq(10L), any())).thenReturn(true);
+    when(sessions.markCompleted(eq(uploadId), any())).thenReturn(true);
+
+    UploadSession s = service.append(userId, "jwt", uploadId, 6, 4, bytes(4));
+
+    assertThat(s.isComplete()).isTrue();
+    verify(images).update(userId, imageId, null, key, null, null);
+  }
+
+  @Test
+  void append_wrongOffset_conflictsWithCurrentOffset() {
+    when(sessions.findForUser(uploadId, userId)).thenReturn(Optional.of(session(4, null)));
+
+    assertThatThrownBy(() -> service.append(userId, "jwt", uploadId, 2, 4, bytes(4)))
+        .isInstanceOfSatisfying(UploadOffsetConflictException.class,
+            e -> assertThat(e.getCurrentOffset()).isEqualTo(4));
+  }
+
+  @Test
+  void append_chunkPastLength_rejected() {
+    when(sessions.findForUser(uploadId, userId)).thenReturn(Optional.of(session(8, null)));
+
+    assertThatThrownBy(() -> service.append(userId, "jwt", uploadId, 8, 4, bytes(4)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void append_upstreamConflict_resyncsOffsetFromStorage() throws Exception {
+    when(sessions.findForUser(uploadId, userId)).thenReturn(Optional.of(session(0, null)));
+    when(storage.appendResumable(eq(UPSTREAM), eq(0L), any(), anyLong(), eq("jwt")))
+        .thenThrow(WebClientResponseException.create(409, "Conflict", HttpHeaders.EMPTY,
+            "offset mismatch".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+    when(storage.resumableOffset(UPSTREAM, "jwt")).thenReturn(6L);
+
+    assertThatThrownBy(() -> service.append(userId, "jwt", uploadId, 0, 4, bytes(4)))
+        .isInstanceOfSatisfying(UploadOffsetConflictException.class,
+            e -> assertThat(e.getCurrentOffset()).isEqualTo(6));
+    verify(sessions).advanceOffset(eq(uploadId), eq(0L), eq(6L), any());
+  }
+}
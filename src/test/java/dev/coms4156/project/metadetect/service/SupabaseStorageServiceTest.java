@@ -1,14 +1,35 @@
 package dev.coms4156.project.metadetect.service;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.WebClient;
 
@@ -26,6 +47,7 @@ class SupabaseStorageServiceTest {
   private SupabaseStorageService storageService;
   private String projectBase;
   private String anonKey;
+  private String serviceKey;
 
   /**
    * Sets up a mock Supabase endpoint and constructs the service using it.
@@ -39,6 +61,7 @@ class SupabaseStorageServiceTest {
     // Mock URLs from MockWebServer always end with a trailing slash.
     projectBase = server.url("/").toString();
     anonKey = "anon-test-key";
+    serviceKey = "service-test-key";
 
     WebClient webClient = WebClient.builder().build();
     storageService = new SupabaseStorageService(
@@ -46,7 +69,10 @@ class SupabaseStorageServiceTest {
       projectBase,
       "metadetect-images",
       900,
-      anonKey
+      anonKey,
+      serviceKey,
+      4,
+      8
     );
   }
 
@@ -72,7 +98,8 @@ class SupabaseStorageServiceTest {
     byte[] bytes = "hello".getBytes();
 
     String returnedPath = storageService.uploadObject(
-        bytes,
+        new ByteArrayResource(bytes),
+        bytes.length,
         MediaType.IMAGE_PNG_VALUE,
         "user-123/img-uuid--photo.png",
         "bearer.jwt.here"
@@ -90,6 +117,136 @@ class SupabaseStorageServiceTest {
     assertEquals(anonKey, req.getHeader("apikey"));
     assertEquals("true", req.getHeader("x-upsert"));
     assertEquals(MediaType.IMAGE_PNG_VALUE, req.getHeader("Content-Type"));
+    assertEquals("5", req.getHeader("Content-Length"));
+    assertEquals("hello", req.getBody().readUtf8());
+  }
+
+  /**
+   * Verifies a multi-chunk source arrives intact and is read in
+   * upload-sized chunks rather than all at once.
+   */
+  @Test
+  void uploadObject_streamsSourceInChunks() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+    byte[] payload = new byte[300_000];
+    for (int i = 0; i < payload.length; i++) {
+      payload[i] = (byte) (i * 31);
+    }
+    int[] largestRead = {0};
+    InputStreamSource source = () -> new ByteArrayInputStream(payload) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        largestRead[0] = Math.max(largestRead[0], len);
+        return super.read(b, off, len);
+      }
+    };
+
+    storageService.uploadObject(source, payload.length, "image/png", "u/big.png", "jwt");
+
+    RecordedRequest req = server.takeRequest();
+    assertArrayEquals(payload, req.getBody().readByteArray());
+    assertTrue(largestRead[0] <= SupabaseStorageService.UPLOAD_CHUNK_BYTES);
+  }
+
+  /** A source that fails mid-read surfaces as an IOException. */
+  @Test
+  void uploadObject_sourceReadFailure_throwsIoException() {
+    server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+    InputStreamSource source = () -> new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("disk gone");
+      }
+    };
+
+    assertThrows(IOException.class, () ->
+        storageService.uploadObject(source, 10, "image/png", "u/x.png", "jwt"));
+  }
+
+  /**
+   * putBlob writes with the service-role key, never the caller's token, and
+   * asks Storage not to overwrite an existing object.
+   */
+  @Test
+  void putBlob_usesServiceKey_withoutUpsert() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+    boolean written = storageService.putBlob(new ByteArrayResource("hello".getBytes()), 5,
+        MediaType.IMAGE_PNG_VALUE, "blobs/abc.png");
+
+    assertTrue(written);
+    RecordedRequest req = server.takeRequest();
+    assertEquals("PUT", req.getMethod());
+    assertEquals("/storage/v1/object/metadetect-images/blobs/abc.png", req.getPath());
+    assertEquals("Bearer " + serviceKey, req.getHeader("Authorization"));
+    assertEquals(serviceKey, req.getHeader("apikey"));
+    assertEquals("false", req.getHeader("x-upsert"));
+  }
+
+  /** An object already at the blob key is reported, not replaced or treated as a failure. */
+  @Test
+  void putBlob_existingObject_isNotReplaced() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(409)
+        .setBody("{\"error\":\"Duplicate\",\"message\":\"The resource already exists\"}"));
+    server.enqueue(new MockResponse().setResponseCode(400)
+        .setBody("{\"statusCode\":\"409\",\"error\":\"Duplicate\"}"));
+
+    assertFalse(storageService.putBlob(new ByteArrayResource(new byte[] {1}), 1,
+        MediaType.IMAGE_PNG_VALUE, "blobs/abc.png"));
+    assertFalse(storageService.putBlob(new ByteArrayResource(new byte[] {1}), 1,
+        MediaType.IMAGE_PNG_VALUE, "blobs/abc.png"));
+  }
+
+  /** Other rejections of a blob write still fail. */
+  @Test
+  void putBlob_otherError_throws() {
+    server.enqueue(new MockResponse().setResponseCode(403).setBody("{\"error\":\"denied\"}"));
+
+    assertThrows(RuntimeException.class, () -> storageService.putBlob(
+        new ByteArrayResource(new byte[] {1}), 1, MediaType.IMAGE_PNG_VALUE, "blobs/abc.png"));
+  }
+
+  /** deleteBlob deletes with the service-role key. */
+  @Test
+  void deleteBlob_usesServiceKey() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200));
+
+    storageService.deleteBlob("blobs/abc.png");
+
+    RecordedRequest req = server.takeRequest();
+    assertEquals("DELETE", req.getMethod());
+    assertEquals("/storage/v1/object/metadetect-images/blobs/abc.png", req.getPath());
+    assertEquals("Bearer " + serviceKey, req.getHeader("Authorization"));
+    assertEquals(serviceKey, req.getHeader("apikey"));
+  }
+
+  /** Queued work re-signs with the service-role key. */
+  @Test
+  void createServiceSignedUrl_usesServiceKey() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200)
+        .setBody("{\"signedURL\":\"/object/sign/metadetect-images/u/a.png?token=t\"}"));
+
+    String url = storageService.createServiceSignedUrl("u/a.png");
+
+    assertTrue(url.endsWith("/storage/v1/object/sign/metadetect-images/u/a.png?token=t"));
+    RecordedRequest req = server.takeRequest();
+    assertEquals("Bearer " + serviceKey, req.getHeader("Authorization"));
+    assertEquals(serviceKey, req.getHeader("apikey"));
+  }
+
+  /** The expiry of a signed URL is the exp claim of its token; anything else is unknown. */
+  @Test
+  void signedUrlExpiry_readsTokenExp() {
+    String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+        "{\"url\":\"metadetect-images/u/a.png\",\"exp\":1735690500}"
+            .getBytes(StandardCharsets.UTF_8));
+    String signed = projectBase + "storage/v1/object/sign/metadetect-images/u/a.png?token=h."
+        + payload + ".sig";
+
+    assertEquals(Optional.of(Instant.ofEpochSecond(1735690500)),
+        storageService.signedUrlExpiry(signed));
+    assertEquals(Optional.empty(), storageService.signedUrlExpiry("file:/tmp/x.png"));
+    assertEquals(Optional.empty(), storageService.signedUrlExpiry(projectBase + "x?token=junk"));
   }
 
   /**
@@ -124,4 +281,224 @@ class SupabaseStorageServiceTest {
     assertEquals(anonKey, req.getHeader("apikey"));
     assertEquals("application/json", req.getHeader("Content-Type"));
   }
+
+  /**
+   * Verifies createSignedUrls signs every path in one POST to the bucket's
+   * sign endpoint and drops paths Storage reports an error for.
+   */
+  @Test
+  void createSignedUrls_signsAllPathsInOneRequest() throws Exception {
+    server.enqueue(new MockResponse()
+        .setResponseCode(200)
+        .setHeader("Content-Type", "application/json")
+        .setBody("[{\"error\":null,\"path\":\"u/a.png\","
+            + "\"signedURL\":\"/object/sign/metadetect-images/u/a.png?token=t1\"},"
+            + "{\"error\":\"Either the object does not exist or you do not have access to it\","
+            + "\"path\":\"u/b.png\",\"signedURL\":null}]"));
+
+    Map<String, String> signed = storageService.createSignedUrls(
+        List.of("u/a.png", "u/b.png"), "bearer.jwt.here");
+
+    assertEquals(1, signed.size());
+    assertTrue(signed.get("u/a.png")
+        .endsWith("/storage/v1/object/sign/metadetect-images/u/a.png?token=t1"));
+
+    RecordedRequest req = server.takeRequest();
+    assertEquals("POST", req.getMethod());
+    assertEquals("/storage/v1/object/sign/metadetect-images", req.getPath());
+    assertEquals("Bearer bearer.jwt.here", req.getHeader("Authorization"));
+    assertEquals(anonKey, req.getHeader("apikey"));
+    String body = req.getBody().readUtf8();
+    assertTrue(body.contains("\"paths\":[\"u/a.png\",\"u/b.png\"]"));
+    assertTrue(body.contains("\"expiresIn\":900"));
+    assertEquals(1, server.getRequestCount());
+  }
+
+  /**
+   * Verifies readRange sends a Range header to the signed URL as-is and
+   * takes the total object size from Content-Range on a 206.
+   */
+  @Test
+  void readRange_partialContent_returnsWindowAndTotal() throws Exception {
+    server.enqueue(new MockResponse()
+        .setResponseCode(206)
+        .setHeader("Content-Range", "bytes 0-3/1000")
+        .setBody("abcd"));
+
+    String signed = projectBase + "storage/v1/object/sign/b/u/a%20b.png?token=t%2Bx";
+    SupabaseStorageService.RangedBytes out = storageService.readRange(signed, 0, 4);
+
+    assertArrayEquals("abcd".getBytes(), out.data());
+    assertEquals(1000L, out.totalSize());
+
+    RecordedRequest req = server.takeRequest();
+    assertEquals("GET", req.getMethod());
+    assertEquals("bytes=0-3", req.getHeader("Range"));
+    assertEquals("/storage/v1/object/sign/b/u/a%20b.png?token=t%2Bx", req.getPath());
+  }
+
+  /**
+   * If the server ignores Range and answers 200, only the requested window
+   * is returned.
+   */
+  @Test
+  void readRange_rangeIgnored_trimsFullBodyToWindow() {
+    server.enqueue(new MockResponse().setResponseCode(200).setBody("0123456789"));
+
+    SupabaseStorageService.RangedBytes out =
+        storageService.readRange(projectBase + "obj", 2, 3);
+
+    assertArrayEquals("234".getBytes(), out.data());
+    assertEquals(10L, out.totalSize());
+  }
+
+  /**
+   * Verifies downloadToFile streams a chunked body into the target file and
+   * reports the byte count.
+   */
+  @Test
+  void downloadToFile_streamsBodyIntoFile() throws Exception {
+    byte[] payload = new byte[200_000];
+    for (int i = 0; i < payload.length; i++) {
+      payload[i] = (byte) i;
+    }
+    server.enqueue(new MockResponse().setResponseCode(200)
+        .setChunkedBody(new Buffer().write(payload), 8192));
+    Path target = Files.createTempFile("dl-", ".bin");
+
+    long n = storageService.downloadToFile(projectBase + "obj?token=t", target, 1 << 20,
+        Duration.ofSeconds(10));
+
+    assertEquals(payload.length, n);
+    assertArrayEquals(payload, Files.readAllBytes(target));
+    assertEquals("/obj?token=t", server.takeRequest().getPath());
+    Files.deleteIfExists(target);
+  }
+
+  /** An announced Content-Length over the limit is rejected before reading the body. */
+  @Test
+  void downloadToFile_contentLengthOverLimit_fails() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200).setBody("0123456789"));
+    Path target = Files.createTempFile("dl-", ".bin");
+
+    IOException e = assertThrows(IOException.class, () ->
+        storageService.downloadToFile(projectBase + "obj", target, 4, Duration.ofSeconds(10)));
+
+    assertTrue(e.getMessage().contains("download limit"));
+    Files.deleteIfExists(target);
+  }
+
+  /** Without a Content-Length, the limit is enforced on the bytes received. */
+  @Test
+  void downloadToFile_chunkedBodyOverLimit_fails() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200)
+        .setChunkedBody("0123456789".repeat(100), 64));
+    Path target = Files.createTempFile("dl-", ".bin");
+
+    IOException e = assertThrows(IOException.class, () ->
+        storageService.downloadToFile(projectBase + "obj", target, 256, Duration.ofSeconds(10)));
+
+    assertTrue(e.getMessage().contains("download limit"));
+    Files.deleteIfExists(target);
+  }
+
+  /** A transfer slower than the total timeout fails with an IOException. */
+  @Test
+  void downloadToFile_slowBody_timesOut() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200).setBody("0123456789")
+        .throttleBody(1, 1, TimeUnit.SECONDS));
+    Path target = Files.createTempFile("dl-", ".bin");
+
+    IOException e = assertThrows(IOException.class, () ->
+        storageService.downloadToFile(projectBase + "obj", target, 1024,
+            Duration.ofMillis(300)));
+
+    assertTrue(e.getMessage().contains("did not finish"));
+    Files.deleteIfExists(target);
+  }
+
+  /**
+   * Verifies createSignedUploadUrl posts to the upload-sign endpoint with the
+   * caller's JWT and makes the returned relative URL absolute.
+   */
+  @Test
+  void createSignedUploadUrl_returnsAbsoluteUploadUrl() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200)
+        .setBody("{\"url\":\"/object/upload/sign/metadetect-images/u/a.png?token=tok\"}"));
+
+    String url = storageService.createSignedUploadUrl("u/a.png", "user.jwt");
+
+    assertEquals(projectBase + "/storage/v1/object/upload/sign/metadetect-images/u/a.png"
+        + "?token=tok", url);
+    RecordedRequest req = server.takeRequest();
+    assertEquals("POST", req.getMethod());
+    assertTrue(req.getPath().contains("/storage/v1/object/upload/sign/metadetect-images/u/a.png"));
+    assertEquals("Bearer user.jwt", req.getHeader("Authorization"));
+    assertEquals(anonKey, req.getHeader("apikey"));
+  }
+
+  /** objectSize reads Content-Length from HEAD and maps missing objects to empty. */
+  @Test
+  void objectSize_presentAndMissing() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200).setHeader("Content-Length", "1234"));
+    server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\":\"not_found\"}"));
+
+    assertEquals(OptionalLong.of(1234), storageService.objectSize("u/a.png", "user.jwt"));
+    assertEquals(OptionalLong.empty(), storageService.objectSize("u/b.png", "user.jwt"));
+
+    RecordedRequest req = server.takeRequest();
+    assertEquals("HEAD", req.getMethod());
+    assertTrue(req.getPath()
+        .endsWith("/storage/v1/object/authenticated/metadetect-images/u/a.png"));
+  }
+  /** createResumableUpload sends tus creation headers and resolves Location. */
+  @Test
+  void createResumableUpload_sendsMetadata_andResolvesLocation() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(201)
+        .setHeader("Location", "/storage/v1/upload/resumable/abc123"));
+
+    String url = storageService.createResumableUpload("u/a.png", 10, "image/png", "user.jwt");
+
+    assertTrue(url.endsWith("/storage/v1/upload/resumable/abc123"));
+    RecordedRequest req = server.takeRequest();
+    assertEquals("POST", req.getMethod());
+    assertTrue(req.getPath().endsWith("/storage/v1/upload/resumable"));
+    assertEquals("1.0.0", req.getHeader("Tus-Resumable"));
+    assertEquals("10", req.getHeader("Upload-Length"));
+    assertEquals("Bearer user.jwt", req.getHeader("Authorization"));
+    String metadata = req.getHeader("Upload-Metadata");
+    assertTrue(metadata.contains("bucketName " + Base64.getEncoder()
+        .encodeToString("metadetect-images".getBytes(StandardCharsets.UTF_8))));
+    assertTrue(metadata.contains("objectName " + Base64.getEncoder()
+        .encodeToString("u/a.png".getBytes(StandardCharsets.UTF_8))));
+  }
+
+  /** appendResumable PATCHes the chunk at the offset and returns Storage's new offset. */
+  @Test
+  void appendResumable_patchesChunk_andReturnsAckedOffset() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(204).setHeader("Upload-Offset", "7"));
+    String uploadUrl = server.url("/storage/v1/upload/resumable/abc").toString();
+
+    long acked = storageService.appendResumable(uploadUrl, 3,
+        new ByteArrayInputStream(new byte[] {1, 2, 3, 4}), 4, "user.jwt");
+
+    assertEquals(7, acked);
+    RecordedRequest req = server.takeRequest();
+    assertEquals("PATCH", req.getMethod());
+    assertEquals("3", req.getHeader("Upload-Offset"));
+    assertEquals("application/offset+octet-stream", req.getHeader("Content-Type"));
+    assertArrayEquals(new byte[] {1, 2, 3, 4}, req.getBody().readByteArray());
+  }
+
+  /** resumableOffset reads Upload-Offset from HEAD. */
+  @Test
+  void resumableOffset_readsHeadOffset() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(200).setHeader("Upload-Offset", "42"));
+
+    long offset = storageService.resumableOffset(
+        server.url("/storage/v1/upload/resumable/abc").toString(), "user.jwt");
+
+    assertEquals(42, offset);
+    assertEquals("HEAD", server.takeRequest().getMethod());
+  }
 }